@@ -0,0 +1,323 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides whether a new connection gets a seat, waits in line or is turned away.
+ *
+ * Up to maxSessions connections play at once. Beyond that, up to queueSize connections
+ * wait in arrival order and are told their position as it changes; anything more is
+ * rejected straight away. Seats and queue places are counted with compare-and-set on
+ * atomic counters. Joining the line is the one step that takes a lock, so that tickets
+ * follow the order of the line: it is held for a counter increment and a queue append,
+ * and only connections being queued at the same moment contend for it. Taking a free
+ * seat, releasing, leaving the line and reading a position never take it.
+ *
+ * The line is strictly first come, first served: a released seat goes straight to the
+ * head of the line, and a new arrival only takes a free seat while nobody is waiting.
+ * Each place in line has a ticket, so a position is the distance to the head's ticket
+ * rather than a walk of the line. A connection that leaves from the middle of the line
+ * still counts for those behind it until the head gets past it.
+ *
+ * A seat change wakes at most NOTIFY_HEAD + NOTIFY_SWEEP waiters rather than the whole
+ * line: the places nearest the head on every change, and the rest a stretch at a time in
+ * turn, so a waiter far back learns its position within a few seat changes.
+ */
+public class AdmissionController {
+    /**
+     * Outcome of admit().
+     */
+    public enum Decision {
+        ADMITTED,   // Has a seat, may play right away
+        QUEUED,     // Waiting for a seat; Waiter.admitted() is called when one frees up
+        REJECTED    // Server and queue are full
+    }
+    
+    /**
+     * A connection waiting for a seat. Callbacks come from whichever thread freed
+     * the seat, so they must only signal the connection's own thread, never block.
+     */
+    public interface Waiter {
+        
+        /**
+         * The connection now holds a seat.
+         */
+        void admitted();
+        
+        /**
+         * Someone ahead left the queue; positionOf() has changed.
+         */
+        void queueChanged();
+    }
+    
+    // Places nearest the head, told on every seat change
+    private static final int NOTIFY_HEAD = 64;
+    // Places further back, told per seat change in turn
+    private static final int NOTIFY_SWEEP = 64;
+    
+    private static final int WAITING = 0;
+    private static final int SEATED = 1;
+    private static final int CANCELLED = 2;
+    
+    /**
+     * A place in line. Its state moves once, from WAITING to SEATED or CANCELLED, so a
+     * seat being handed to a connection that is leaving at the same time goes to one or the other.
+     */
+    private static class Place {
+        final Waiter waiter;
+        final long ticket;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+        
+        Place(Waiter waiter, long ticket) {
+            this.waiter = waiter;
+            this.ticket = ticket;
+        }
+    }
+    
+    private final int maxSessions;
+    private final int queueSize;
+    
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Queue<Place> queue = new ConcurrentLinkedQueue<>();
+    private final Map<Waiter, Place> places = new ConcurrentHashMap<>();
+    private final ReentrantLock joining = new ReentrantLock();  // Tickets follow the order of the line
+    private long nextTicket;
+    private final AtomicInteger notifyPasses = new AtomicInteger();
+    private Iterator<Place> sweep;  // Only used by the thread running a notify pass
+    
+    private final LongAdder admittedCount = new LongAdder();
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder abandonedCount = new LongAdder();
+    
+    public AdmissionController(int maxSessions, int queueSize) {
+        if (maxSessions < 1 || queueSize < 0) {
+            throw new IllegalArgumentException("Invalid limits: " + maxSessions + " sessions, queue " + queueSize);
+        }
+        this.maxSessions = maxSessions;
+        this.queueSize = queueSize;
+    }
+    
+    /**
+     * Decide on a new connection.
+     * @param waiter notified if the connection is queued and later gets a seat
+     * @return the decision; a QUEUED waiter may already have been admitted when this returns
+     */
+    public Decision admit(Waiter waiter) {
+        // Only take a free seat directly if nobody is waiting for one
+        if (waiting.get() == 0 && tryTake(active, maxSessions)) {
+            admittedCount.increment();
+            return Decision.ADMITTED;
+        }
+        if (!tryTake(waiting, queueSize)) {
+            rejectedCount.increment();
+            return Decision.REJECTED;
+        }
+        
+        queuedCount.increment();
+        joining.lock();
+        try {
+            Place place = new Place(waiter, nextTicket++);
+            places.put(waiter, place);
+            queue.add(place);
+        } finally {
+            joining.unlock();
+        }
+        // A seat may have been released between the check above and joining the queue
+        promote();
+        return Decision.QUEUED;
+    }
+    
+    /**
+     * An admitted connection has ended: hand its seat to the next in line, or free it
+     * if nobody is waiting.
+     */
+    public void release() {
+        if (!seatNext()) {
+            active.decrementAndGet();
+            // Someone may have joined the line after seatNext found it empty
+            promote();
+        }
+    }
+    
+    /**
+     * A queued connection went away before getting a seat.
+     * @return false if it had already been given a seat, which the caller must release()
+     */
+    public boolean cancel(Waiter waiter) {
+        Place place = places.remove(waiter);
+        if (place == null || !place.state.compareAndSet(WAITING, CANCELLED)) {
+            return false;
+        }
+        boolean wasHead = queue.peek() == place;
+        queue.remove(place);
+        waiting.decrementAndGet();
+        abandonedCount.increment();
+        if (wasHead) {
+            notifyQueue(); // Everyone moved up
+        }
+        return true;
+    }
+    
+    /**
+     * Position of a waiting connection (1 = next to be admitted), or 0 if it is not queued.
+     * Counts from the head's ticket, so it may include connections that left from further ahead.
+     */
+    public int positionOf(Waiter waiter) {
+        Place place = places.get(waiter);
+        if (place == null || place.state.get() != WAITING) {
+            return 0;
+        }
+        Place head = queue.peek();
+        long headTicket = head != null ? head.ticket : place.ticket;
+        return (int) Math.max(1, place.ticket - headTicket + 1);
+    }
+    
+    /**
+     * Fill seats that are free while connections wait.
+     */
+    private void promote() {
+        while (!queue.isEmpty() && tryTake(active, maxSessions)) {
+            if (!seatNext()) {
+                // Someone else emptied the queue first; give the seat back
+                active.decrementAndGet();
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Give a seat the caller already holds to the head of the line.
+     * @return false if nobody was waiting, and the caller still holds the seat
+     */
+    private boolean seatNext() {
+        Place next;
+        while ((next = queue.poll()) != null) {
+            if (next.state.compareAndSet(WAITING, SEATED)) {
+                places.remove(next.waiter);
+                waiting.decrementAndGet();
+                admittedCount.increment();
+                next.waiter.admitted();
+                notifyQueue();
+                return true;
+            }
+            // Cancelled while being polled; cancel() did the accounting
+        }
+        return false;
+    }
+    
+    /**
+     * Tell those in line their position may have changed: the first NOTIFY_HEAD places and
+     * the next NOTIFY_SWEEP of the sweep. Passes requested while one is running are folded
+     * into one more pass by that thread.
+     */
+    private void notifyQueue() {
+        if (notifyPasses.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            int told = 0;
+            for (Place place : queue) {
+                if (told++ == NOTIFY_HEAD) {
+                    break;
+                }
+                place.waiter.queueChanged();
+            }
+            if (told > NOTIFY_HEAD) {
+                sweepQueue();
+            }
+            missed = notifyPasses.addAndGet(-missed);
+        } while (missed != 0);
+    }
+    
+    /**
+     * Tell the next NOTIFY_SWEEP places behind the head their position, carrying on from
+     * where the last pass stopped and starting again once the end of the line is reached.
+     */
+    private void sweepQueue() {
+        boolean restarted = false;
+        for (int told = 0; told < NOTIFY_SWEEP; told++) {
+            if (sweep == null || !sweep.hasNext()) {
+                if (restarted) {
+                    break;
+                }
+                restarted = true;
+                sweep = queue.iterator();
+                for (int skipped = 0; skipped < NOTIFY_HEAD && sweep.hasNext(); skipped++) {
+                    sweep.next();
+                }
+                if (!sweep.hasNext()) {
+                    break;
+                }
+            }
+            sweep.next().waiter.queueChanged();
+        }
+    }
+    
+    /**
+     * Increment counter if it is below limit, without locking.
+     */
+    private static boolean tryTake(AtomicInteger counter, int limit) {
+        while (true) {
+            int current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+    
+    public int getQueueSize() {
+        return queueSize;
+    }
+    
+    /** Connections currently holding a seat. */
+    public int getActive() {
+        return active.get();
+    }
+    
+    /** Connections currently waiting for a seat. */
+    public int getWaiting() {
+        return waiting.get();
+    }
+    
+    /** Total connections given a seat, directly or from the queue. */
+    public long getAdmittedCount() {
+        return admittedCount.sum();
+    }
+    
+    /** Total connections that had to wait. */
+    public long getQueuedCount() {
+        return queuedCount.sum();
+    }
+    
+    /** Total connections turned away because the queue was full. */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+    
+    /** Total connections that left while waiting. */
+    public long getAbandonedCount() {
+        return abandonedCount.sum();
+    }
+    
+    @Override
+    public String toString() {
+        return "active=" + getActive() + "/" + maxSessions + ", waiting=" + getWaiting() + "/" + queueSize
+                + ", admitted=" + getAdmittedCount() + ", queued=" + getQueuedCount()
+                + ", rejected=" + getRejectedCount() + ", abandoned=" + getAbandonedCount();
+    }
+}
@@ -1,30 +1,26 @@
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Automated test client that plays a few hands automatically.
  * Useful for testing the server without manual input.
  */
 public class AutoPokerClient {
-    private Socket socket;
-    private ObjectInputStream input;
-    private ObjectOutputStream output;
+    private MessageChannel channel;
     private int totalWinnings;
+    private FairnessVerifier verifier;
     private int handNumber;
     
     public AutoPokerClient(String host, int port) {
         totalWinnings = 0;
+        verifier = new FairnessVerifier();
         handNumber = 0;
         
         try {
             System.out.println("=== 3 Card Poker Client ===");
             System.out.println("Connecting to server at " + host + ":" + port + "...");
-            socket = new Socket(host, port);
-            output = new ObjectOutputStream(socket.getOutputStream());
-            input = new ObjectInputStream(socket.getInputStream());
+            channel = Connections.connect(host, port, WireFormat.fromSystemProperty());
             System.out.println("✓ Connected to server!");
             System.out.println();
         } catch (IOException e) {
@@ -48,11 +44,10 @@ public class AutoPokerClient {
             betInfo.setMessageType(PokerInfo.MessageType.INITIAL_BET);
             betInfo.setAnteBet(anteBet);
             betInfo.setPairPlusBet(pairPlusBet);
-            output.writeObject(betInfo);
-            output.flush();
+            channel.send(betInfo);
             
             // Receive dealt cards
-            PokerInfo cardsInfo = (PokerInfo) input.readObject();
+            PokerInfo cardsInfo = Connections.receiveReply(channel, this::printQueuePosition);
             System.out.println("Your cards:");
             printCards(cardsInfo.getPlayerCards());
             System.out.println();
@@ -63,24 +58,19 @@ public class AutoPokerClient {
             
             PokerInfo actionInfo = new PokerInfo();
             actionInfo.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
-            actionInfo.setAnteBet(anteBet);
-            actionInfo.setPairPlusBet(pairPlusBet);
-            actionInfo.setPlayerCards(cardsInfo.getPlayerCards());
-            actionInfo.setDealerCards(cardsInfo.getDealerCards());
+            actionInfo.setHandId(cardsInfo.getHandId()); // The server kept the cards and bets
+            actionInfo.setHandToken(cardsInfo.getHandToken()); // Only set by stateless servers
             
             if (shouldPlay) {
                 actionInfo.setPlayerAction(PokerInfo.PlayerAction.PLAY);
-                actionInfo.setPlayBet(anteBet);
             } else {
                 actionInfo.setPlayerAction(PokerInfo.PlayerAction.FOLD);
-                actionInfo.setPlayBet(0);
             }
             
-            output.writeObject(actionInfo);
-            output.flush();
+            channel.send(actionInfo);
             
             // Receive game result
-            PokerInfo result = (PokerInfo) input.readObject();
+            PokerInfo result = Connections.receiveReply(channel, this::printQueuePosition);
             System.out.println();
             System.out.println("=== RESULT ===");
             System.out.println("Dealer cards:");
@@ -103,6 +93,12 @@ public class AutoPokerClient {
                 System.out.println("❌ Pair Plus: Lost " + pairPlusBet);
             }
             
+            if (FairnessVerifier.isCommitted(cardsInfo)) {
+                String problem = verifier.verifyHand(cardsInfo, result);
+                System.out.println(problem == null ? "🔒 Deal verified against the server's commitment"
+                                                   : "⚠ Deal verification FAILED: " + problem);
+            }
+            
             System.out.println("📊 Delta this hand: " + result.getDeltaWinningsThisHand());
             totalWinnings = result.getTotalWinnings();
             System.out.println("💵 Total winnings: " + totalWinnings);
@@ -111,11 +107,10 @@ public class AutoPokerClient {
             // Send play again
             PokerInfo playAgainInfo = new PokerInfo();
             playAgainInfo.setMessageType(PokerInfo.MessageType.PLAY_AGAIN);
-            output.writeObject(playAgainInfo);
-            output.flush();
+            channel.send(playAgainInfo);
             
             Thread.sleep(1000); // Brief pause between hands
-            
+        
         } catch (Exception e) {
             System.err.println("Error during gameplay: " + e.getMessage());
             e.printStackTrace();
@@ -144,11 +139,107 @@ public class AutoPokerClient {
             // Disconnect
             PokerInfo disconnectInfo = new PokerInfo();
             disconnectInfo.setMessageType(PokerInfo.MessageType.DISCONNECT);
-            output.writeObject(disconnectInfo);
-            output.flush();
+            channel.send(disconnectInfo);
             
             System.out.println("Disconnected from server.");
+        
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            close();
+        }
+    }
+    
+    /**
+     * Play hands with ONE_SHOT_HAND: the server deals, applies the strategy and settles,
+     * so each hand is a single round trip. Every deal is still checked against the
+     * server's commitment, and the throughput is reported.
+     */
+    public void playOneShot(int hands, PokerInfo.Strategy strategy) {
+        try {
+            System.out.println("Playing " + hands + " one-shot hands (" + strategy + ")...");
+            long start = System.nanoTime();
+            int played = 0;
+            int unverified = 0;
+            for (; played < hands; played++) {
+                PokerInfo handInfo = new PokerInfo();
+                handInfo.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+                handInfo.setAnteBet(10);
+                handInfo.setStrategy(strategy);
+                channel.send(handInfo);
+                
+                PokerInfo result = Connections.receiveReply(channel, this::printQueuePosition);
+                if (result.getHandId() == 0) {
+                    System.out.println("➤ " + result.getStatusMessage());
+                    break;
+                }
+                // The result carries the commitment itself, so it stands in for the deal
+                if (FairnessVerifier.isCommitted(result) && verifier.verifyHand(result, result) != null) {
+                    unverified++;
+                }
+                totalWinnings = result.getTotalWinnings();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            
+            System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            System.out.printf("Played %d hands in %.2f s (%.0f hands/s)%n", played, seconds, played / seconds);
+            if (unverified > 0) {
+                System.out.println("⚠ " + unverified + " deals FAILED verification");
+            }
+            System.out.println("Final total winnings: " + totalWinnings);
+            System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            
+            PokerInfo disconnectInfo = new PokerInfo();
+            disconnectInfo.setMessageType(PokerInfo.MessageType.DISCONNECT);
+            channel.send(disconnectInfo);
+        
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            close();
+        }
+    }
+    
+    /**
+     * Play many hands with BATCH_HANDS, letting the server apply a strategy,
+     * and report the throughput. One round trip covers up to MAX_BATCH_HANDS hands.
+     */
+    public void playBatches(int hands, PokerInfo.Strategy strategy) {
+        try {
+            System.out.println("Playing " + hands + " hands in batches (" + strategy + ")...");
+            long start = System.nanoTime();
+            int played = 0;
+            while (played < hands) {
+                int count = Math.min(PokerInfo.MAX_BATCH_HANDS, hands - played);
+                int[] antes = new int[count];
+                Arrays.fill(antes, 10);
+                
+                PokerInfo batchInfo = new PokerInfo();
+                batchInfo.setMessageType(PokerInfo.MessageType.BATCH_HANDS);
+                batchInfo.setBatchAnteBets(antes);
+                batchInfo.setBatchPairPlusBets(new int[count]);
+                batchInfo.setStrategy(strategy);
+                channel.send(batchInfo);
+                
+                PokerInfo result = Connections.receiveReply(channel, this::printQueuePosition);
+                if (result.getStatusMessage() != null) {
+                    System.out.println("➤ " + result.getStatusMessage());
+                    break;
+                }
+                played += result.getBatchDeltas().length;
+                totalWinnings = result.getTotalWinnings();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
             
+            System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            System.out.printf("Played %d hands in %.2f s (%.0f hands/s)%n", played, seconds, played / seconds);
+            System.out.println("Final total winnings: " + totalWinnings);
+            System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            
+            PokerInfo disconnectInfo = new PokerInfo();
+            disconnectInfo.setMessageType(PokerInfo.MessageType.DISCONNECT);
+            channel.send(disconnectInfo);
+        
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
         } finally {
@@ -156,6 +247,14 @@ public class AutoPokerClient {
         }
     }
     
+    private void printQueuePosition(int position) {
+        if (position > 0) {
+            System.out.println("Table is full. You are #" + position + " in line...");
+        } else {
+            System.out.println("A seat is free, joining the table.");
+        }
+    }
+    
     private void printCards(ArrayList<Card> cards) {
         for (int i = 0; i < cards.size(); i++) {
             Card card = cards.get(i);
@@ -164,13 +263,7 @@ public class AutoPokerClient {
     }
     
     private void close() {
-        try {
-            if (input != null) input.close();
-            if (output != null) output.close();
-            if (socket != null) socket.close();
-        } catch (IOException e) {
-            // Ignore
-        }
+        if (channel != null) channel.close();
     }
     
     public static void main(String[] args) {
@@ -185,7 +278,14 @@ public class AutoPokerClient {
         }
         
         AutoPokerClient client = new AutoPokerClient(host, port);
-        client.playDemo();
+        // e.g. AutoPokerClient localhost 5555 --batch 100000 (or --one-shot 10000)
+        if (args.length >= 4 && args[2].equals("--batch")) {
+            client.playBatches(Integer.parseInt(args[3]), PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        } else if (args.length >= 4 && args[2].equals("--one-shot")) {
+            client.playOneShot(Integer.parseInt(args[3]), PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        } else {
+            client.playDemo();
+        }
     }
 }
 
@@ -0,0 +1,137 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * MessageChannel using the compact binary frames from WireCodec.
+ * Frames are encoded into and decoded from buffers that are reused for the whole
+ * connection, so steady-state traffic allocates nothing but the PokerInfo objects.
+ * Supports one sending thread and one receiving thread at a time. An idle connection
+ * can release its buffers; they are allocated again by the next message.
+ */
+public class BinaryChannel implements MessageChannel {
+    private static final int INITIAL_BUFFER = 512;
+    
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final Runnable onClose;
+    
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER);
+    private volatile byte[] readBuffer = new byte[INITIAL_BUFFER];
+    private boolean helloReceived;
+    private volatile boolean closed;
+    
+    private BinaryChannel(InputStream input, OutputStream output, Runnable onClose) {
+        this.input = new DataInputStream(input);
+        this.output = output;
+        this.onClose = onClose;
+    }
+    
+    /**
+     * Open the client side: sends the hello right away, the server's hello is read with the first reply.
+     * @param input stream from the server (should be buffered)
+     * @param output stream to the server
+     * @param onClose closes the underlying connection
+     */
+    public static BinaryChannel client(InputStream input, OutputStream output, Runnable onClose) throws IOException {
+        BinaryChannel channel = new BinaryChannel(input, output, onClose);
+        output.write(WireCodec.HELLO);
+        output.flush();
+        return channel;
+    }
+    
+    /**
+     * Open the server side: checks the client's hello and answers with our own.
+     * @param input stream from the client, positioned at the hello (should be buffered)
+     * @param output stream to the client
+     * @param onClose closes the underlying connection
+     */
+    public static BinaryChannel server(InputStream input, OutputStream output, Runnable onClose) throws IOException {
+        BinaryChannel channel = new BinaryChannel(input, output, onClose);
+        channel.readHello();
+        output.write(WireCodec.HELLO);
+        output.flush();
+        return channel;
+    }
+    
+    @Override
+    public void send(PokerInfo info) throws IOException {
+        if (writeBuffer == null) {
+            writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER);
+        }
+        while (true) {
+            writeBuffer.clear();
+            try {
+                WireCodec.encodeFrame(info, writeBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                writeBuffer = ByteBuffer.allocate(writeBuffer.capacity() * 2);
+            }
+        }
+        output.write(writeBuffer.array(), 0, writeBuffer.position());
+        output.flush();
+    }
+    
+    /**
+     * Send a frame that is already encoded, such as a table event shared by many spectators.
+     * @param frame a length-prefixed frame from WireCodec.encodeFrame; not modified
+     */
+    public void sendFrame(byte[] frame) throws IOException {
+        output.write(frame);
+        output.flush();
+    }
+    
+    @Override
+    public PokerInfo receive() throws IOException {
+        if (!helloReceived) {
+            readHello();
+        }
+        
+        int length = input.readUnsignedShort();
+        byte[] buffer = readBuffer; // May have been released while this thread waited
+        if (buffer == null || length > buffer.length) {
+            buffer = new byte[Math.max(length, buffer == null ? INITIAL_BUFFER : buffer.length * 2)];
+            readBuffer = buffer;
+        }
+        input.readFully(buffer, 0, length);
+        return WireCodec.decode(ByteBuffer.wrap(buffer, 0, length));
+    }
+    
+    /**
+     * Let go of the encode and decode buffers of an idle connection. Call it from the
+     * sending thread, or holding what keeps it from sending; the receiving thread may be
+     * waiting in receive() meanwhile.
+     */
+    public void releaseBuffers() {
+        writeBuffer = null;
+        readBuffer = null;
+    }
+    
+    private void readHello() throws IOException {
+        byte[] hello = new byte[WireCodec.HELLO.length];
+        try {
+            input.readFully(hello);
+        } catch (EOFException e) {
+            throw new EOFException("Connection closed before protocol hello");
+        }
+        if (!Arrays.equals(hello, WireCodec.HELLO)) {
+            throw new ProtocolException("Peer does not speak the binary protocol (version " + WireCodec.HELLO[3] + ")");
+        }
+        helloReceived = true;
+    }
+    
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        onClose.run();
+    }
+}
@@ -1,12 +1,54 @@
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 /**
  * Represents a playing card with a suit and rank.
+ * Cards are identified by an index 0-51 (suit-major, the same order Deck builds in),
+ * which is what seeded deals and replays work with.
  */
 public class Card implements Serializable {
+    // Pinned to the value computed for the original class so older peers keep deserializing
+    private static final long serialVersionUID = 7007987374431148431L;
+    
+    public static final int DECK_SIZE = 52;
+    
+    // Canonical instances, indexed by getIndex()
+    private static final Card[] ALL = new Card[DECK_SIZE];
+    
+    static {
+        Suit[] suits = Suit.values();
+        Rank[] ranks = Rank.values();
+        for (int i = 0; i < DECK_SIZE; i++) {
+            ALL[i] = new Card(suits[i / ranks.length], ranks[i % ranks.length]);
+        }
+    }
+    
     private Suit suit;
     private Rank rank;
     
+    /**
+     * Compact serialized form: the card index as one byte, instead of a class descriptor
+     * and two enum constant names. Resolves to the canonical instance. Only written to
+     * peers that announced they read it (see ObjectStreamChannel), since older ones lack this class.
+     */
+    static final class SerialForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final byte index;
+        
+        SerialForm(Card card) {
+            this.index = (byte) card.getIndex();
+        }
+        
+        private Object readResolve() throws ObjectStreamException {
+            if (index < 0 || index >= DECK_SIZE) {
+                throw new InvalidObjectException("Card index out of range: " + index);
+            }
+            return ALL[index];
+        }
+    }
+    
     public Card(Suit suit, Rank rank) {
         this.suit = suit;
         this.rank = rank;
@@ -20,6 +62,42 @@ public class Card implements Serializable {
         return rank;
     }
     
+    /**
+     * Index of this card in a fresh deck (suit-major, 0-51).
+     */
+    public int getIndex() {
+        return suit.ordinal() * Rank.values().length + rank.ordinal();
+    }
+    
+    /**
+     * Get the shared instance for a card index.
+     * @param index card index 0-51
+     * @return the canonical card
+     */
+    public static Card of(int index) {
+        if (index < 0 || index >= DECK_SIZE) {
+            throw new IllegalArgumentException("Card index out of range: " + index);
+        }
+        return ALL[index];
+    }
+    
+    /**
+     * Compact form to serialize in place of this card.
+     */
+    Object serialForm() {
+        return new SerialForm(this);
+    }
+    
+    /**
+     * Cards read in the original form resolve to the canonical instance too.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        if (suit == null || rank == null) {
+            throw new InvalidObjectException("Card without suit or rank");
+        }
+        return ALL[getIndex()];
+    }
+    
     @Override
     public String toString() {
         return rank + " of " + suit;
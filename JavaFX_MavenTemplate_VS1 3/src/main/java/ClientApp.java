@@ -11,10 +11,6 @@ import javafx.scene.text.FontWeight;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 import java.util.ArrayList;
 
 /**
@@ -23,9 +19,7 @@ import java.util.ArrayList;
  */
 public class ClientApp extends Application {
     private Stage primaryStage;
-    private Socket socket;
-    private ObjectInputStream input;
-    private ObjectOutputStream output;
+    private MessageChannel channel;
     private int totalWinnings = 0;
     private boolean connected = false;
     
@@ -62,6 +56,7 @@ public class ClientApp extends Application {
     private Button backToMenuButton;
     
     private PokerInfo currentCardsInfo;
+    private FairnessVerifier verifier = new FairnessVerifier();
     
     @Override
     public void start(Stage stage) {
@@ -519,10 +514,9 @@ public class ClientApp extends Application {
             String host = welcomeHostField.getText().trim();
             int port = Integer.parseInt(welcomePortField.getText().trim());
             
-            socket = new Socket(host, port);
-            output = new ObjectOutputStream(socket.getOutputStream());
-            input = new ObjectInputStream(socket.getInputStream());
+            channel = Connections.connect(host, port, WireFormat.fromSystemProperty());
             connected = true;
+            verifier = new FairnessVerifier();
             
             gameStatusLabel.setText("Connected to " + host + ":" + port);
             gameWinningsLabel.setText("Total Winnings: 0");
@@ -536,10 +530,10 @@ public class ClientApp extends Application {
     
     private void disconnectAndReturnToWelcome() {
         try {
-            if (connected && output != null) {
+            if (connected && channel != null) {
                 PokerInfo disconnect = new PokerInfo();
                 disconnect.setMessageType(PokerInfo.MessageType.DISCONNECT);
-                output.writeObject(disconnect);
+                channel.send(disconnect);
             }
         } catch (Exception e) {
             // Ignore
@@ -572,10 +566,9 @@ public class ClientApp extends Application {
                     betInfo.setMessageType(PokerInfo.MessageType.INITIAL_BET);
                     betInfo.setAnteBet(anteBet);
                     betInfo.setPairPlusBet(pairPlusBet);
-                    output.writeObject(betInfo);
-                    output.flush();
+                    channel.send(betInfo);
                     
-                    PokerInfo cardsInfo = (PokerInfo) input.readObject();
+                    PokerInfo cardsInfo = Connections.receiveReply(channel, this::showQueuePosition);
                     
                     if (cardsInfo == null || cardsInfo.getPlayerCards() == null || cardsInfo.getPlayerCards().isEmpty()) {
                         Platform.runLater(() -> {
@@ -680,20 +673,13 @@ public class ClientApp extends Application {
         
         new Thread(() -> {
             try {
-                int anteBet = Integer.parseInt(anteField.getText());
-                int pairPlusBet = Integer.parseInt(pairPlusField.getText());
-                
                 PokerInfo actionInfo = new PokerInfo();
                 actionInfo.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
                 actionInfo.setPlayerAction(PokerInfo.PlayerAction.PLAY);
-                actionInfo.setAnteBet(anteBet);
-                actionInfo.setPairPlusBet(pairPlusBet);
-                actionInfo.setPlayBet(anteBet);
-                actionInfo.setPlayerCards(currentCardsInfo.getPlayerCards());
-                actionInfo.setDealerCards(currentCardsInfo.getDealerCards());
+                actionInfo.setHandId(currentCardsInfo.getHandId()); // The server kept the cards and bets
+                actionInfo.setHandToken(currentCardsInfo.getHandToken()); // Only set by stateless servers
                 
-                output.writeObject(actionInfo);
-                output.flush();
+                channel.send(actionInfo);
                 
                 processResult();
             } catch (Exception e) {
@@ -714,20 +700,13 @@ public class ClientApp extends Application {
         
         new Thread(() -> {
             try {
-                int anteBet = Integer.parseInt(anteField.getText());
-                int pairPlusBet = Integer.parseInt(pairPlusField.getText());
-                
                 PokerInfo actionInfo = new PokerInfo();
                 actionInfo.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
                 actionInfo.setPlayerAction(PokerInfo.PlayerAction.FOLD);
-                actionInfo.setAnteBet(anteBet);
-                actionInfo.setPairPlusBet(pairPlusBet);
-                actionInfo.setPlayBet(0);
-                actionInfo.setPlayerCards(currentCardsInfo.getPlayerCards());
-                actionInfo.setDealerCards(currentCardsInfo.getDealerCards());
+                actionInfo.setHandId(currentCardsInfo.getHandId()); // The server kept the cards and bets
+                actionInfo.setHandToken(currentCardsInfo.getHandToken()); // Only set by stateless servers
                 
-                output.writeObject(actionInfo);
-                output.flush();
+                channel.send(actionInfo);
                 
                 processResult();
             } catch (Exception e) {
@@ -741,9 +720,18 @@ public class ClientApp extends Application {
         }).start();
     }
     
+    /**
+     * Show the place in line while the server has no free seat (called from a background thread).
+     */
+    private void showQueuePosition(int position) {
+        Platform.runLater(() -> gameStatusLabel.setText(position > 0
+                ? "Table is full. You are #" + position + " in line..."
+                : "A seat is free. Dealing cards..."));
+    }
+    
     private void processResult() {
         try {
-            PokerInfo result = (PokerInfo) input.readObject();
+            PokerInfo result = Connections.receiveReply(channel, this::showQueuePosition);
             
             if (result == null) {
                 Platform.runLater(() -> showAlert("Error", "Received null result from server"));
@@ -801,6 +789,12 @@ public class ClientApp extends Application {
                     details.append("❌ Pair Plus: Lost ").append(Integer.parseInt(pairPlusField.getText())).append("\n");
                 }
                 
+                if (FairnessVerifier.isCommitted(currentCardsInfo)) {
+                    String problem = verifier.verifyHand(currentCardsInfo, result);
+                    details.append(problem == null ? "🔒 Deal verified against the server's commitment\n"
+                                                   : "⚠ Deal verification FAILED: " + problem + "\n");
+                }
+                
                 details.append("\n");
                 details.append("This Hand: ").append(delta >= 0 ? "+" : "").append(delta).append("\n");
                 details.append("═══════════════════════════════");
@@ -829,8 +823,7 @@ public class ClientApp extends Application {
             
             PokerInfo playAgain = new PokerInfo();
             playAgain.setMessageType(PokerInfo.MessageType.PLAY_AGAIN);
-            output.writeObject(playAgain);
-            output.flush();
+            channel.send(playAgain);
             
         } catch (Exception e) {
             Platform.runLater(() -> {
@@ -959,12 +952,8 @@ public class ClientApp extends Application {
     
     private void closeConnection() {
         connected = false;
-        try {
-            if (input != null) input.close();
-            if (output != null) output.close();
-            if (socket != null) socket.close();
-        } catch (IOException e) {
-            // Ignore
+        if (channel != null) {
+            channel.close();
         }
     }
     
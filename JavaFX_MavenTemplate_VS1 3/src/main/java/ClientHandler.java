@@ -1,120 +1,467 @@
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Handles communication and game logic for a single client.
- * Each client runs on its own thread with its own deck and game state.
+ * Each client has its own deck and game state, and runs either on its own thread,
+ * in NIO mode on the event loop that owns its connection, or for an in-process
+ * client on the threads that send to it. A session left idle hibernates: it keeps its
+ * id, winnings, hand count and next seed, and lets go of the rest until its next message.
  */
-public class ClientHandler implements Runnable {
-    private Socket socket;
-    private ObjectInputStream input;
-    private ObjectOutputStream output;
+public class ClientHandler implements Runnable, AdmissionController.Waiter {
+    private static final long QUEUE_RECHECK_NANOS = 1_000_000_000L;
+    // Unseeded hand seeds are revealed with each result, so they must not predict the next one
+    private static final SecureRandom SEEDS = new SecureRandom();
+    
+    private Closeable socket; // Blocking Socket or Unix domain SocketChannel read by run()
+    private MessageSink channel;
+    private volatile MultiplexedConnection gateway; // Set instead of channel for a gateway's connection
     private int clientId;
     private PokerServer server;
     private Deck deck;
     private int playerWinnings;
     private int currentHandId;
-    private boolean connected;
+    private ShuffleCommitments commitments;
+    private final AtomicBoolean connected = new AtomicBoolean(true); // Cleared once, by whoever disconnects first
+    
+    // The open hand, kept here so PLAY/FOLD only has to name it; null once settled.
+    // Stateless servers keep nothing and send it to the client sealed instead.
+    private DealtHand openHand;
+    private HandTokens handTokens;
+    // Stateless hands: tokens name the session that dealt them. Another session's tokens carry
+    // its total as a base, taken from the newest of its hands settled here
+    private final long sessionId = ThreadLocalRandom.current().nextLong();
+    private long carriedSession;
+    private int carriedHandId;
+    private int carriedBase;
+    
+    // Id of the request being handled, echoed on its replies
+    private int requestId;
+    
+    // Admission: set once the client has a seat; until then its messages are not read
+    private volatile boolean admitted;
+    private volatile Thread thread;
+    private final AtomicBoolean seatReleased = new AtomicBoolean();
+    private int sentQueuePosition;
+    
+    // Rolling restart: set by PokerServer.drain, acted on once no hand is open. On a blocking
+    // connection the drain thread may hand the client off itself, so messages are handled
+    // holding the turn lock there.
+    private volatile boolean handOffRequested;
+    private final ReentrantLock turn = new ReentrantLock();
+    private boolean resumed;
+    
+    // Spectating: this player's table, once someone watches it; or, for a spectator,
+    // the table it watches and the last event it was sent
+    private TableFeed tableFeed;
+    private TableFeed watching;
+    private long watchedSequence;
     
+    // Resumable session: the token to reattach with if the connection drops (see ParkedSessions),
+    // the last reply, kept to send again in case it was lost, and the last request handled
+    private byte[] resumeToken;
+    private PokerInfo lastReply;
+    private int lastRequestId;
+    private int resentUpTo;             // After reattaching: requests up to here were handled before
+    private boolean leaving;            // Disconnecting on purpose, so there is nothing to keep
+    private volatile boolean evicted;   // The client reattached while this connection looked alive
+    
+    // Hibernation (see PokerServer.hibernateIdleClients): when the last message was handled,
+    // and whether the session has let go of its deck, commitment batches and channel buffers
+    private volatile long lastActiveNanos;
+    private volatile boolean hibernateRequested;
+    private volatile boolean hibernating;
+    
+    /**
+     * Create a handler for a blocking socket; run() opens the channel and reads messages on this thread.
+     */
     public ClientHandler(Socket socket, int clientId, PokerServer server) {
+        this(clientId, server);
         this.socket = socket;
+    }
+    
+    /**
+     * Create a handler for a blocking Unix domain socket; run() serves it like a TCP socket.
+     */
+    public ClientHandler(SocketChannel socket, int clientId, PokerServer server) {
+        this(clientId, server);
+        this.socket = socket;
+    }
+    
+    /**
+     * Create a handler for a channel whose messages are delivered by the caller
+     * through handleMessage (used by the event-loop server and in-process connections).
+     */
+    public ClientHandler(MessageSink channel, int clientId, PokerServer server) {
+        this(clientId, server);
+        this.channel = channel;
+    }
+    
+    private ClientHandler(int clientId, PokerServer server) {
         this.clientId = clientId;
         this.server = server;
-        this.deck = new Deck();
         this.playerWinnings = 0;
         this.currentHandId = 0;
-        this.connected = true;
+        if (server.getConfig().isCommitments()) {
+            this.commitments = new ShuffleCommitments(server.getConfig(), clientId);
+        }
+        this.handTokens = server.getHandTokens();
+        this.lastActiveNanos = System.nanoTime();
     }
     
     @Override
     public void run() {
+        thread = Thread.currentThread();
         try {
-            // Create streams (output first to avoid blocking)
-            output = new ObjectOutputStream(socket.getOutputStream());
-            input = new ObjectInputStream(socket.getInputStream());
+            // Open the channel; the client's first bytes decide between binary frames and Java serialization
+            Connections.Accepted accepted = socket instanceof Socket
+                    ? Connections.accept((Socket) socket) : Connections.accept((SocketChannel) socket);
+            if (accepted.getGateway() != null) {
+                // A gateway: each of its sessions is admitted on its own, the connection needs no seat
+                gateway = accepted.getGateway();
+                releaseSeat();
+                server.log("Client " + clientId + " carries multiplexed sessions");
+                gateway.serve(server);
+                return;
+            }
+            MessageChannel input = accepted.getChannel();
+            ServerConfig config = server.getConfig();
+            if (config.isWriterThreads()) {
+                // Replies go out on a writer thread, so a client that does not read cannot block this one
+                int limit = config.getOutboundQueueLimit() > 0 ? config.getOutboundQueueLimit() : Integer.MAX_VALUE;
+                QueuedChannel queued = new QueuedChannel(input, limit, config.getSlowClientPolicy());
+                server.startClientThread(queued);
+                input = queued;
+            }
+            channel = input;
+            awaitAdmission();
             
             // Main game loop
-            while (connected && !socket.isClosed()) {
-                PokerInfo info = (PokerInfo) input.readObject();
-                
-                if (info == null) {
-                    break;
+            while (connected.get()) {
+                PokerInfo info = input.receive();
+                turn.lock();
+                try {
+                    handleMessage(info);
+                } finally {
+                    turn.unlock();
                 }
-                
-                switch (info.getMessageType()) {
-                    case INITIAL_BET:
-                        handleInitialBet(info);
-                        break;
-                    case PLAYER_ACTION:
-                        handlePlayerAction(info);
-                        break;
-                    case PLAY_AGAIN:
-                        handlePlayAgain(info);
-                        break;
-                    case DISCONNECT:
-                        disconnect();
-                        break;
-                    default:
-                        server.log("Client " + clientId + ": Unknown message type");
+                if (watching != null) {
+                    watch(); // A spectator from now on: this thread writes the table's events
+                    return;
                 }
             }
+        } catch (ProtocolException e) {
+            server.log("Client " + clientId + ": Invalid message received: " + e.getMessage());
         } catch (IOException e) {
-            if (connected) {
+            if (connected.get()) {
                 server.log("Client " + clientId + " connection error: " + e.getMessage());
             }
-        } catch (ClassNotFoundException e) {
-            server.log("Client " + clientId + ": Invalid object received");
         } finally {
             disconnect();
         }
     }
     
+    /**
+     * Block until the client has a seat, keeping it informed of its place in line.
+     */
+    private void awaitAdmission() throws IOException {
+        while (!admitted && connected.get()) {
+            wokenUpLocked();
+            LockSupport.parkNanos(this, QUEUE_RECHECK_NANOS); // Woken early by admitted(), queueChanged() and handOff()
+        }
+        if (connected.get()) {
+            wokenUpLocked();
+        }
+    }
+    
+    private void wokenUpLocked() throws IOException {
+        turn.lock();
+        try {
+            onWakeUp();
+        } finally {
+            turn.unlock();
+        }
+    }
+    
+    /**
+     * Catch up after a wake-up, on the thread that serves this connection: send the client
+     * its place in line, hand it off if the server is draining, close the connection if
+     * the client reattached on another, and hibernate if the session went idle.
+     */
+    void onWakeUp() throws IOException {
+        if (evicted) {
+            disconnect(); // Parks the session for the client that reattached
+            return;
+        }
+        updateQueuePosition();
+        if (handOffRequested) {
+            handOffIfIdle();
+        }
+        if (hibernateRequested) {
+            hibernate();
+        }
+    }
+    
+    /**
+     * Send the client its place in line if it changed, or tell it its seat is ready.
+     * Runs on the thread that serves this connection.
+     */
+    void updateQueuePosition() throws IOException {
+        int position = admitted ? 0 : server.getAdmission().positionOf(this);
+        if (position == sentQueuePosition || (position == 0 && !admitted)) {
+            return;
+        }
+        sentQueuePosition = position;
+        
+        PokerInfo update = new PokerInfo();
+        update.setMessageType(PokerInfo.MessageType.QUEUE_POSITION);
+        update.setQueuePosition(position);
+        update.setClientId(clientId);
+        channel.send(update);
+        if (position > 0) {
+            server.log("Client " + clientId + " waiting for a seat, position " + position);
+        }
+    }
+    
+    @Override
+    public void admitted() {
+        admitted = true;
+        wakeUp();
+    }
+    
+    @Override
+    public void queueChanged() {
+        wakeUp();
+    }
+    
+    private void wakeUp() {
+        if (channel instanceof NioConnection) {
+            ((NioConnection) channel).wakeUp();
+        } else if (channel instanceof InProcessConnection) {
+            ((InProcessConnection) channel).wakeUp();
+        } else if (channel instanceof MultiplexedConnection.Session) {
+            ((MultiplexedConnection.Session) channel).wakeUp();
+        } else {
+            Thread waiting = thread;
+            if (waiting != null) {
+                LockSupport.unpark(waiting);
+            }
+        }
+    }
+    
+    public boolean isAdmitted() {
+        return admitted;
+    }
+    
+    /**
+     * Handle one message from the client.
+     */
+    void handleMessage(PokerInfo info) throws IOException {
+        lastActiveNanos = System.nanoTime();
+        hibernateRequested = false;
+        if (hibernating) {
+            hibernating = false; // Whatever it let go of is rebuilt as the message needs it
+            server.countRehydrated();
+        }
+        requestId = info.getRequestId();
+        if (info.getMessageType() == null) {
+            server.log("Client " + clientId + ": Unknown message type");
+            return;
+        }
+        
+        if (watching != null && info.getMessageType() != PokerInfo.MessageType.DISCONNECT) {
+            server.log("Client " + clientId + ": Spectators cannot play");
+            return;
+        }
+        if (requestId != 0 && requestId <= resentUpTo) {
+            // Sent again by a client that reattached; handled before the connection dropped
+            return;
+        }
+        if (requestId != 0) {
+            lastRequestId = requestId;
+            resentUpTo = 0;
+        }
+        
+        switch (info.getMessageType()) {
+            case INITIAL_BET:
+                handleInitialBet(info);
+                break;
+            case PLAYER_ACTION:
+                handlePlayerAction(info);
+                break;
+            case PLAY_AGAIN:
+                handlePlayAgain(info);
+                break;
+            case BATCH_HANDS:
+                handleBatchHands(info);
+                break;
+            case ONE_SHOT_HAND:
+                handleOneShotHand(info);
+                break;
+            case RESUME_SESSION:
+                handleResumeSession(info);
+                break;
+            case WATCH_TABLE:
+                handleWatchTable(info);
+                break;
+            case DISCONNECT:
+                leaving = true;
+                disconnect();
+                break;
+            default:
+                server.log("Client " + clientId + ": Unknown message type");
+        }
+        if (handOffRequested) {
+            handOffIfIdle();
+        }
+    }
+    
+    /**
+     * Show an event to this table's spectators, if it has any feed. Called before the
+     * reply tags the message with the player's request id.
+     */
+    private void publish(PokerInfo event) {
+        TableFeed feed = tableFeed;
+        if (feed != null) {
+            feed.publish(event);
+        }
+    }
+    
+    /**
+     * Send a reply to the request being handled, tagged with its request id.
+     * Requests are handled one at a time in arrival order, so replies keep that order
+     * even when a client sends several requests without waiting.
+     */
+    private void reply(PokerInfo response) throws IOException {
+        response.setRequestId(requestId);
+        if (resumeToken != null && response.getMessageType() != PokerInfo.MessageType.RESUME_SESSION) {
+            lastReply = response;
+        }
+        channel.send(response);
+    }
+    
     /**
      * Handle initial bet from client.
      */
     private void handleInitialBet(PokerInfo info) throws IOException {
-        currentHandId++;
         int anteBet = info.getAnteBet();
         int pairPlusBet = info.getPairPlusBet();
         
-        // Validate bets
-        if (anteBet < 5 || anteBet > 25) {
-            server.log("Client " + clientId + ": Invalid ante bet: " + anteBet);
-            return;
+        // Validate bets; a new bet cannot walk away from cards already dealt
+        String problem = betProblem(anteBet, pairPlusBet);
+        if (problem == null && openHand != null) {
+            problem = "Finish hand #" + openHand.getHandId() + " first";
         }
-        if (pairPlusBet < 0 || (pairPlusBet > 0 && (pairPlusBet < 5 || pairPlusBet > 25))) {
-            server.log("Client " + clientId + ": Invalid pair plus bet: " + pairPlusBet);
+        if (problem != null) {
+            server.log("Client " + clientId + ": " + problem);
             return;
         }
         
-        server.log("Client " + clientId + " Hand #" + currentHandId + ": Ante=" + anteBet + ", PairPlus=" + pairPlusBet);
+        ShuffleCommitments.Commitment commitment = nextCommitment();
+        DealtHand hand = deal(anteBet, pairPlusBet, commitment);
         
-        // Reset and shuffle deck for new hand
-        deck.reset();
-        
-        // Deal cards: 3 to player, 3 to dealer
-        ArrayList<Card> playerCards = deck.dealCards(3);
-        ArrayList<Card> dealerCards = deck.dealCards(3);
+        server.log("Client " + clientId + " Hand #" + currentHandId + ": Ante=" + anteBet + ", PairPlus=" + pairPlusBet +
+                  ", Seed=" + ServerConfig.formatSeed(hand.getSeed()));
         
         // Send cards back to client (dealer cards hidden)
         PokerInfo response = new PokerInfo();
         response.setMessageType(PokerInfo.MessageType.CARDS_DEALT);
-        response.setPlayerCards(playerCards);
-        response.setDealerCards(dealerCards);
+        response.setPlayerCards(hand.getPlayerCards());
+        response.setDealerCards(hand.getDealerCards());
         response.setDealerCardsHidden(true);
         response.setAnteBet(anteBet);
         response.setPairPlusBet(pairPlusBet);
         response.setClientId(clientId);
+        response.setHandId(currentHandId);
+        
+        if (commitment != null) {
+            response.setDeckCommitment(commitment.getLeaf());
+            response.setCommitmentIndex(commitment.getIndex());
+            response.setCommitmentProof(commitment.getProof());
+            response.setCommitmentRoot(commitment.getRoot());
+        }
+        
+        if (handTokens != null) {
+            response.setHandToken(handTokens.seal(hand));
+        } else {
+            openHand = hand;
+        }
+        
+        TableFeed feed = tableFeed;
+        if (feed != null) {
+            // Spectators see the player's cards and bets, not the dealer's cards or the proofs
+            PokerInfo dealt = new PokerInfo();
+            dealt.setMessageType(PokerInfo.MessageType.CARDS_DEALT);
+            dealt.setPlayerCards(hand.getPlayerCards());
+            dealt.setDealerCardsHidden(true);
+            dealt.setAnteBet(anteBet);
+            dealt.setPairPlusBet(pairPlusBet);
+            dealt.setClientId(clientId);
+            dealt.setHandId(currentHandId);
+            feed.publish(dealt);
+        }
+        reply(response);
+    }
+    
+    /**
+     * Check bets against the table limits.
+     * @return what is wrong, or null if the bets are valid
+     */
+    private static String betProblem(int anteBet, int pairPlusBet) {
+        if (anteBet < 5 || anteBet > 25) {
+            return "Invalid ante bet: " + anteBet;
+        }
+        if (pairPlusBet < 0 || (pairPlusBet > 0 && (pairPlusBet < 5 || pairPlusBet > 25))) {
+            return "Invalid pair plus bet: " + pairPlusBet;
+        }
+        return null;
+    }
+    
+    /**
+     * Start the next hand number. Only valid bets start a hand, so hand numbers
+     * (and seeded deals) follow dealt hands.
+     * @return the new hand's commitment, or null when commitments are off
+     */
+    private ShuffleCommitments.Commitment nextCommitment() {
+        currentHandId++;
+        return commitments != null ? commitments.next(currentHandId) : null;
+    }
+    
+    /**
+     * Deal the current hand: 3 cards each from a deck shuffled with the hand's seed.
+     * Every hand is dealt from a seed so it can be replayed later (see DealReplay).
+     */
+    private DealtHand deal(int anteBet, int pairPlusBet, ShuffleCommitments.Commitment commitment) {
+        long handSeed = commitment != null ? commitment.getSeed() : nextHandSeed();
+        
+        // Reset and shuffle deck for new hand (created on first use so idle sessions stay small)
+        if (deck == null) {
+            deck = new Deck();
+        }
+        deck.reset(handSeed);
         
-        output.writeObject(response);
-        output.flush();
+        // Deal cards: 3 to player, 3 to dealer
+        ArrayList<Card> playerCards = deck.dealCards(3);
+        ArrayList<Card> dealerCards = deck.dealCards(3);
+        return new DealtHand(currentHandId, anteBet, pairPlusBet, playerCards, dealerCards, handSeed,
+                commitment != null ? commitment.getSalt() : null, playerWinnings, sessionId);
     }
     
     /**
-     * Handle player action (PLAY or FOLD).
+     * Handle player action (PLAY or FOLD) for the open hand.
+     * Cards and bets come from what was dealt, never from the message; a hand id of 0
+     * (clients that predate hand ids) means the open hand. Stateless servers take the
+     * hand from the token instead, which may have been issued by another server.
      */
     private void handlePlayerAction(PokerInfo info) throws IOException {
         PokerInfo.PlayerAction action = info.getPlayerAction();
@@ -124,10 +471,59 @@ public class ClientHandler implements Runnable {
             return;
         }
         
-        int anteBet = info.getAnteBet();
-        int pairPlusBet = info.getPairPlusBet();
-        ArrayList<Card> playerCards = info.getPlayerCards();
-        ArrayList<Card> dealerCards = info.getDealerCards();
+        DealtHand hand;
+        if (handTokens != null) {
+            try {
+                hand = handTokens.open(info.getHandToken());
+            } catch (GeneralSecurityException e) {
+                server.log("Client " + clientId + ": Rejected hand #" + info.getHandId() + ": " + e.getMessage());
+                return;
+            }
+            carryOver(hand);
+        } else {
+            if (openHand == null || (info.getHandId() != 0 && info.getHandId() != openHand.getHandId())) {
+                server.log("Client " + clientId + ": No open hand #" + info.getHandId());
+                return;
+            }
+            hand = openHand;
+            openHand = null;
+        }
+        
+        PokerInfo result = settleHand(hand, action);
+        publish(result);
+        reply(result);
+    }
+    
+    /**
+     * Take on the total a hand token carries, if another session dealt the hand (the player
+     * moved here from another server or connection). The total is this session's results
+     * on top of the carried base, and only a newer hand from the same session moves the base,
+     * so the order open hands are settled in does not matter. A session's own hands, or any
+     * in a session continued from a token, only add their result.
+     */
+    private void carryOver(DealtHand hand) {
+        if (hand.getSession() == sessionId || resumed) {
+            return;
+        }
+        if (carriedSession == 0) {
+            carriedSession = hand.getSession();
+        } else if (hand.getSession() != carriedSession || hand.getHandId() <= carriedHandId) {
+            return;
+        }
+        carriedHandId = hand.getHandId();
+        playerWinnings += hand.getWinningsBefore() - carriedBase;
+        carriedBase = hand.getWinningsBefore();
+    }
+    
+    /**
+     * Settle a dealt hand with the player's decision, update the total and build the GAME_RESULT.
+     */
+    private PokerInfo settleHand(DealtHand hand, PokerInfo.PlayerAction action) {
+        int handId = hand.getHandId();
+        int anteBet = hand.getAnteBet();
+        int pairPlusBet = hand.getPairPlusBet();
+        ArrayList<Card> playerCards = hand.getPlayerCards();
+        ArrayList<Card> dealerCards = hand.getDealerCards();
         
         PokerInfo result = new PokerInfo();
         result.setMessageType(PokerInfo.MessageType.GAME_RESULT);
@@ -135,87 +531,57 @@ public class ClientHandler implements Runnable {
         result.setPlayerCards(playerCards);
         result.setDealerCards(dealerCards);
         result.setDealerCardsHidden(false); // Reveal dealer cards
+        result.setHandId(handId);
+        result.setPlayerAction(action);
+        result.setHandSeed(hand.getSeed()); // Reveal the seed so the deal can be verified
+        result.setHandSalt(hand.getSalt());
+        if (commitments != null) {
+            result.setNextDeckCommitment(commitments.peekNextLeaf()); // Published before the next bet
+        }
         
-        int deltaWinnings = 0;
+        // The rules live in ThreeCardLogic.settle; the parts below only describe the outcome
+        boolean play = action == PokerInfo.PlayerAction.PLAY;
+        int deltaWinnings = ThreeCardLogic.settle(playerCards, dealerCards, anteBet, pairPlusBet, play);
         
-        if (action == PokerInfo.PlayerAction.FOLD) {
-            // Player folds: loses Ante and Pair Plus
-            deltaWinnings = -anteBet - pairPlusBet;
-            result.setStatusMessage("Player folded. Lost Ante and Pair Plus.");
-            server.log("Client " + clientId + " Hand #" + currentHandId + ": FOLDED - Lost " + 
+        if (!play) {
+            result.setStatusCode(StatusCode.FOLDED);
+            server.log("Client " + clientId + " Hand #" + handId + ": FOLDED - Lost " + 
                       Math.abs(deltaWinnings));
         } else {
-            // Player plays: must send Play bet equal to Ante
-            int playBet = info.getPlayBet();
-            if (playBet != anteBet) {
-                server.log("Client " + clientId + ": Play bet (" + playBet + ") must equal Ante (" + anteBet + ")");
-                return;
-            }
-            
-            server.log("Client " + clientId + " Hand #" + currentHandId + ": PLAY with Play bet=" + playBet);
+            // Player plays: the Play bet always equals the Ante
+            server.log("Client " + clientId + " Hand #" + handId + ": PLAY with Play bet=" + anteBet);
             
-            // Evaluate hands
-            int playerRank = ThreeCardLogic.evalHand(playerCards);
-            int dealerRank = ThreeCardLogic.evalHand(dealerCards);
             boolean dealerQualified = ThreeCardLogic.dealerQualifies(dealerCards);
-            
-            result.setHandRankPlayer(playerRank);
-            result.setHandRankDealer(dealerRank);
+            result.setHandRankPlayer(ThreeCardLogic.evalHand(playerCards));
+            result.setHandRankDealer(ThreeCardLogic.evalHand(dealerCards));
             result.setDealerQualified(dealerQualified);
             
-            // Calculate ante/play result
-            int antePlayResult = 0;
-            if (!dealerQualified) {
-                // Dealer not qualified: Play bet returned, Ante pushes
-                antePlayResult = playBet; // Get back play bet
-                result.setStatusMessage("Dealer not qualified. Play bet returned. Ante pushes.");
-                server.log("Client " + clientId + " Hand #" + currentHandId + ": Dealer not qualified");
-            } else {
-                // Compare hands
-                int comparison = ThreeCardLogic.compareHands(dealerCards, playerCards);
-                if (comparison < 0) {
-                    // Dealer wins
-                    antePlayResult = -anteBet - playBet;
-                    result.setStatusMessage("Dealer wins. Lost Ante and Play.");
-                    server.log("Client " + clientId + " Hand #" + currentHandId + ": DEALER WINS - Lost " + 
-                              Math.abs(antePlayResult));
-                } else if (comparison > 0) {
-                    // Player wins: 1:1 on both Ante and Play
-                    // "1:1" means double each wager: get back bet + equal profit
-                    // Total return = 2*anteBet + 2*playBet, but player already bet anteBet+playBet
-                    // So net profit = (2*anteBet + 2*playBet) - (anteBet + playBet) = anteBet + playBet
-                    antePlayResult = anteBet + playBet; // Net profit (total return - bets)
-                    result.setStatusMessage("Player wins! Paid 1:1 on Ante and Play.");
-                    server.log("Client " + clientId + " Hand #" + currentHandId + ": PLAYER WINS - Won " + 
-                              antePlayResult + " (total return: " + (2*anteBet + 2*playBet) + ")");
-                } else {
-                    // Tie: push
-                    antePlayResult = 0;
-                    result.setStatusMessage("Tie. Ante and Play push.");
-                    server.log("Client " + clientId + " Hand #" + currentHandId + ": TIE");
-                }
-            }
-            
-            result.setAntePlayPayout(antePlayResult);
-            deltaWinnings += antePlayResult;
-            
-            // Calculate Pair Plus result
             // evalPPWinnings returns total payout (bet * multiplier), so net = payout - bet
             int pairPlusPayout = ThreeCardLogic.evalPPWinnings(playerCards, pairPlusBet);
+            int pairPlusNet = pairPlusBet == 0 ? 0 : pairPlusPayout > 0 ? pairPlusPayout - pairPlusBet : -pairPlusBet;
+            int antePlayResult = deltaWinnings - pairPlusNet;
+            result.setAntePlayPayout(antePlayResult);
             result.setPairPlusPayout(pairPlusPayout);
             
+            if (!dealerQualified) {
+                // Play bet returned, Ante pushes
+                result.setStatusCode(StatusCode.DEALER_NOT_QUALIFIED);
+                server.log("Client " + clientId + " Hand #" + handId + ": Dealer not qualified");
+            } else if (antePlayResult < 0) {
+                result.setStatusCode(StatusCode.DEALER_WINS);
+                server.log("Client " + clientId + " Hand #" + handId + ": DEALER WINS - Lost " + 
+                          Math.abs(antePlayResult));
+            } else if (antePlayResult > 0) {
+                // 1:1 on both Ante and Play
+                result.setStatusCode(StatusCode.PLAYER_WINS);
+                server.log("Client " + clientId + " Hand #" + handId + ": PLAYER WINS - Won " + antePlayResult);
+            } else {
+                result.setStatusCode(StatusCode.TIE);
+                server.log("Client " + clientId + " Hand #" + handId + ": TIE");
+            }
             if (pairPlusBet > 0) {
-                if (pairPlusPayout > 0) {
-                    // Net winnings = payout - original bet
-                    int pairPlusNet = pairPlusPayout - pairPlusBet;
-                    deltaWinnings += pairPlusNet;
-                    server.log("Client " + clientId + " Hand #" + currentHandId + ": Pair Plus won " + 
-                              pairPlusNet + " (payout: " + pairPlusPayout + ")");
-                } else {
-                    // Lost Pair Plus bet
-                    deltaWinnings -= pairPlusBet;
-                    server.log("Client " + clientId + " Hand #" + currentHandId + ": Pair Plus lost " + pairPlusBet);
-                }
+                server.log("Client " + clientId + " Hand #" + handId + ": Pair Plus " + 
+                          (pairPlusNet > 0 ? "won " + pairPlusNet : "lost " + pairPlusBet));
             }
         }
         
@@ -224,12 +590,489 @@ public class ClientHandler implements Runnable {
         result.setDeltaWinningsThisHand(deltaWinnings);
         result.setTotalWinnings(playerWinnings);
         
-        server.log("Client " + clientId + " Hand #" + currentHandId + ": Delta=" + deltaWinnings + 
+        server.log("Client " + clientId + " Hand #" + handId + ": Delta=" + deltaWinnings + 
                   ", Total=" + playerWinnings);
         
-        // Send result to client
-        output.writeObject(result);
-        output.flush();
+        return result;
+    }
+    
+    /**
+     * Handle a one-shot hand: deal, decide with the client's strategy and settle right away.
+     * The client gets a single GAME_RESULT instead of CARDS_DEALT followed by a wait for
+     * its decision. The result also carries the deal's commitment, which would otherwise
+     * have come with the cards.
+     */
+    private void handleOneShotHand(PokerInfo info) throws IOException {
+        int anteBet = info.getAnteBet();
+        int pairPlusBet = info.getPairPlusBet();
+        PokerInfo.Strategy strategy = info.getStrategy();
+        
+        String problem = betProblem(anteBet, pairPlusBet);
+        if (problem == null && strategy == null) {
+            problem = "No strategy specified";
+        }
+        if (problem == null && openHand != null) {
+            problem = "Finish hand #" + openHand.getHandId() + " first";
+        }
+        if (problem != null) {
+            // Answer anyway, so a client waiting for the result is not left hanging
+            server.log("Client " + clientId + ": Rejected one-shot hand: " + problem);
+            PokerInfo result = new PokerInfo();
+            result.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+            result.setClientId(clientId);
+            result.setStatusMessage(problem);
+            result.setTotalWinnings(playerWinnings);
+            reply(result);
+            return;
+        }
+        
+        ShuffleCommitments.Commitment commitment = nextCommitment();
+        DealtHand hand = deal(anteBet, pairPlusBet, commitment);
+        
+        server.log("Client " + clientId + " Hand #" + currentHandId + ": One-shot Ante=" + anteBet +
+                  ", PairPlus=" + pairPlusBet + ", Strategy=" + strategy + ", Seed=" + ServerConfig.formatSeed(hand.getSeed()));
+        
+        boolean play = decide(strategy, hand.getPlayerCards());
+        PokerInfo result = settleHand(hand, play ? PokerInfo.PlayerAction.PLAY : PokerInfo.PlayerAction.FOLD);
+        if (commitment != null) {
+            result.setDeckCommitment(commitment.getLeaf());
+            result.setCommitmentIndex(commitment.getIndex());
+            result.setCommitmentProof(commitment.getProof());
+            result.setCommitmentRoot(commitment.getRoot());
+        }
+        publish(result);
+        reply(result);
+    }
+    
+    /**
+     * Handle a batch: deal, decide and settle every hand in one pass and answer with a
+     * single BATCH_RESULT. Hands are numbered, seeded and committed like single hands,
+     * so each can be replayed from its seed; only the batch as a whole is logged. Salts
+     * and proofs are not sent (a proof per hand would not fit in one frame), so batched
+     * deals cannot be checked against their commitment.
+     */
+    private void handleBatchHands(PokerInfo info) throws IOException {
+        int[] antes = info.getBatchAnteBets();
+        int[] pairPluses = info.getBatchPairPlusBets();
+        PokerInfo.PlayerAction[] actions = info.getBatchActions();
+        PokerInfo.Strategy strategy = info.getStrategy();
+        
+        PokerInfo result = new PokerInfo();
+        result.setMessageType(PokerInfo.MessageType.BATCH_RESULT);
+        result.setClientId(clientId);
+        
+        String problem = batchProblem(antes, pairPluses, actions, strategy);
+        if (problem != null) {
+            // Answer anyway, so a bot waiting for the result is not left hanging
+            server.log("Client " + clientId + ": Rejected batch: " + problem);
+            result.setStatusMessage(problem);
+            result.setBatchActions(new PokerInfo.PlayerAction[0]);
+            result.setBatchDeltas(new int[0]);
+            result.setBatchSeeds(new long[0]);
+            result.setTotalWinnings(playerWinnings);
+            reply(result);
+            return;
+        }
+        
+        int count = antes.length;
+        PokerInfo.PlayerAction[] taken = new PokerInfo.PlayerAction[count];
+        int[] deltas = new int[count];
+        long[] seeds = new long[count];
+        int firstHandId = currentHandId + 1;
+        int batchDelta = 0;
+        
+        for (int i = 0; i < count; i++) {
+            DealtHand hand = deal(antes[i], pairPluses[i], nextCommitment());
+            boolean play = actions != null ? actions[i] == PokerInfo.PlayerAction.PLAY
+                                           : decide(strategy, hand.getPlayerCards());
+            int delta = ThreeCardLogic.settle(hand.getPlayerCards(), hand.getDealerCards(), antes[i], pairPluses[i], play);
+            taken[i] = play ? PokerInfo.PlayerAction.PLAY : PokerInfo.PlayerAction.FOLD;
+            deltas[i] = delta;
+            seeds[i] = hand.getSeed();
+            batchDelta += delta;
+        }
+        playerWinnings += batchDelta;
+        
+        result.setHandId(firstHandId);
+        result.setBatchActions(taken);
+        result.setBatchDeltas(deltas);
+        result.setBatchSeeds(seeds);
+        result.setDeltaWinningsThisHand(batchDelta);
+        result.setTotalWinnings(playerWinnings);
+        if (commitments != null) {
+            result.setNextDeckCommitment(commitments.peekNextLeaf());
+        }
+        
+        server.log("Client " + clientId + " Hands #" + firstHandId + "-#" + currentHandId + ": Batch of " + count
+                + (strategy != null ? " (" + strategy + ")" : "") + ", Delta=" + batchDelta + ", Total=" + playerWinnings);
+        publish(result);
+        reply(result);
+    }
+    
+    /**
+     * Check a batch request before any hand is dealt.
+     * @return what is wrong, or null if the whole batch can be played
+     */
+    private String batchProblem(int[] antes, int[] pairPluses, PokerInfo.PlayerAction[] actions,
+                                PokerInfo.Strategy strategy) {
+        if (openHand != null) {
+            return "Finish hand #" + openHand.getHandId() + " first";
+        }
+        if (antes == null || antes.length == 0 || antes.length > PokerInfo.MAX_BATCH_HANDS) {
+            return "A batch needs 1 to " + PokerInfo.MAX_BATCH_HANDS + " hands";
+        }
+        if (pairPluses == null || pairPluses.length != antes.length) {
+            return "Pair Plus bets do not match the hands";
+        }
+        if (strategy == null && (actions == null || actions.length != antes.length)) {
+            return "Each hand needs an action when no strategy is given";
+        }
+        for (int i = 0; i < antes.length; i++) {
+            String problem = betProblem(antes[i], pairPluses[i]);
+            if (problem == null && strategy == null && actions[i] == null) {
+                problem = "No player action specified";
+            }
+            if (problem != null) {
+                return "Hand " + (i + 1) + ": " + problem;
+            }
+        }
+        return null;
+    }
+    
+    private static boolean decide(PokerInfo.Strategy strategy, ArrayList<Card> playerCards) {
+        switch (strategy) {
+            case ALWAYS_PLAY:
+                return true;
+            case ALWAYS_FOLD:
+                return false;
+            case QUEEN_SIX_FOUR:
+            default:
+                return ThreeCardLogic.playsQueenSixFour(playerCards);
+        }
+    }
+    
+    /**
+     * Continue a session: one handed off by a draining server, from the winnings and hand
+     * count its token carries, or one of this server's whose connection dropped, parked
+     * with its open hand. Only a session that has not played yet can take one over. A
+     * request without a token makes this session resumable instead.
+     */
+    private void handleResumeSession(PokerInfo info) throws IOException {
+        byte[] token = info.getSessionToken();
+        if (token == null) {
+            makeResumable();
+            return;
+        }
+        PokerInfo response = new PokerInfo();
+        response.setMessageType(PokerInfo.MessageType.RESUME_SESSION);
+        PokerInfo replay = null;
+        if (currentHandId != 0 || resumed) {
+            response.setStatusMessage("Session already started");
+        } else if (ParkedSessions.isResumeToken(token)) {
+            ParkedSessions parked = server.getParkedSessions();
+            try {
+                if (parked == null) {
+                    throw new GeneralSecurityException("Session resumption is off");
+                }
+                ParkedSessions.Session session = parked.claim(token);
+                playerWinnings = session.getWinnings();
+                currentHandId = session.getHandsPlayed();
+                openHand = session.getOpenHand();
+                resentUpTo = session.getLastRequestId();
+                replay = session.getLastReply();
+                resumed = true;
+                renewResumeToken();
+                response.setSessionToken(resumeToken);
+                server.log("Client " + clientId + " reattached a dropped session: " + currentHandId + " hands, Total="
+                        + playerWinnings + (openHand != null ? ", hand #" + openHand.getHandId() + " open" : ""));
+            } catch (GeneralSecurityException e) {
+                response.setStatusMessage(e.getMessage());
+            }
+        } else {
+            try {
+                SessionTokens.Session session = server.getSessionTokens().open(token);
+                playerWinnings = session.getWinnings();
+                currentHandId = session.getHandsPlayed();
+                resumed = true;
+                server.log("Client " + clientId + " resumed a session: " + currentHandId + " hands, Total=" + playerWinnings);
+            } catch (GeneralSecurityException e) {
+                response.setStatusMessage(e.getMessage());
+            }
+        }
+        if (response.getStatusMessage() != null) {
+            server.log("Client " + clientId + ": Rejected session token: " + response.getStatusMessage());
+        }
+        response.setTotalWinnings(playerWinnings);
+        response.setHandId(currentHandId);
+        reply(response);
+        if (replay != null) {
+            channel.send(replay); // Tagged with its own request id; a client that had it drops it
+        }
+    }
+    
+    /**
+     * Reply with a resume token the client can reattach with if its connection drops.
+     * Asking again replaces the token.
+     */
+    private void makeResumable() throws IOException {
+        PokerInfo response = new PokerInfo();
+        response.setMessageType(PokerInfo.MessageType.RESUME_SESSION);
+        if (server.getParkedSessions() == null) {
+            response.setStatusMessage("Session resumption is off");
+        } else {
+            renewResumeToken();
+            response.setSessionToken(resumeToken);
+        }
+        response.setTotalWinnings(playerWinnings);
+        response.setHandId(currentHandId);
+        reply(response);
+    }
+    
+    private void renewResumeToken() {
+        ParkedSessions parked = server.getParkedSessions();
+        if (resumeToken != null) {
+            parked.forget(resumeToken);
+        }
+        resumeToken = parked.issue(this);
+    }
+    
+    byte[] getResumeToken() {
+        return resumeToken;
+    }
+    
+    /**
+     * Close this connection because its client reattached on another one; the session is
+     * parked for it. Called from any thread, like handOff.
+     */
+    void evict() {
+        evicted = true;
+        if (socket != null) {
+            turn.lock();
+            try {
+                disconnect();
+            } finally {
+                turn.unlock();
+            }
+        }
+        wakeUp();
+    }
+    
+    /**
+     * Start watching a player's table instead of playing. The spectator gives up its seat;
+     * it is acknowledged with WATCH_TABLE and then sent the table's latest event and every
+     * event after that it keeps up with (see TableFeed).
+     */
+    private void handleWatchTable(PokerInfo info) throws IOException {
+        int tableId = info.getClientId();
+        PokerInfo response = new PokerInfo();
+        response.setMessageType(PokerInfo.MessageType.WATCH_TABLE);
+        response.setClientId(tableId);
+        TableFeed feed = null;
+        if (currentHandId != 0 || resumed) {
+            response.setStatusMessage("Session already started");
+        } else if (!(channel instanceof NioConnection) && !(channel instanceof BinaryChannel)) {
+            // Events are shared as binary frames, written by the loop or by this handler's thread
+            response.setStatusMessage("Spectators need a binary connection of their own, without writer threads");
+        } else {
+            feed = tableId != clientId ? server.getTableFeed(tableId) : null;
+            if (feed == null) {
+                response.setStatusMessage("No table " + tableId);
+            }
+        }
+        reply(response);
+        if (feed == null) {
+            server.log("Client " + clientId + ": Cannot watch table " + tableId + ": " + response.getStatusMessage());
+            return;
+        }
+        
+        server.log("Client " + clientId + " watching table " + tableId);
+        releaseSeat();
+        watching = feed;
+        if (resumeToken != null) {
+            server.getParkedSessions().forget(resumeToken);
+            resumeToken = null;
+        }
+        if (channel instanceof NioConnection) {
+            feed.watch(this, ((NioConnection) channel).getLoop());
+        }
+    }
+    
+    /**
+     * Serve a spectator on a blocking connection: whenever the table has a new event,
+     * write the latest one, skipping any that came and went while the last write blocked.
+     * The client leaving is only noticed by the next write.
+     */
+    private void watch() throws IOException {
+        BinaryChannel binary = (BinaryChannel) channel;
+        TableFeed feed = watching;
+        feed.watch(thread);
+        try {
+            while (connected.get()) {
+                TableFeed.Event event = feed.getLatest();
+                if (event.sequence <= watchedSequence) {
+                    LockSupport.parkNanos(this, QUEUE_RECHECK_NANOS); // Woken by the next event
+                    continue;
+                }
+                advanceTo(event);
+                binary.sendFrame(event.bytes);
+                if (event.closing) {
+                    return;
+                }
+            }
+        } finally {
+            feed.unwatch(thread);
+        }
+    }
+    
+    /**
+     * Send a table event to this NIO spectator unless it already has it. Runs on the loop thread.
+     * @return false once the spectator is disconnected
+     */
+    boolean deliver(TableFeed.Event event) {
+        if (!connected.get() || event.sequence <= watchedSequence) {
+            return connected.get();
+        }
+        advanceTo(event);
+        if (((NioConnection) channel).sendShared(event.frame)) {
+            watching.countSkipped(1);
+        }
+        if (event.closing) {
+            disconnect();
+        }
+        return connected.get();
+    }
+    
+    private void advanceTo(TableFeed.Event event) {
+        if (watchedSequence > 0 && event.sequence > watchedSequence + 1) {
+            watching.countSkipped(event.sequence - watchedSequence - 1);
+        }
+        watchedSequence = event.sequence;
+    }
+    
+    /**
+     * The feed of this player's table, created when someone first wants to watch it.
+     * @return null for clients that are not seated players (spectators, gateways, the disconnected)
+     */
+    synchronized TableFeed getTableFeed() {
+        if (!connected.get() || !admitted || watching != null || carriesSessions()) {
+            return null;
+        }
+        if (tableFeed == null) {
+            tableFeed = new TableFeed(clientId);
+        }
+        return tableFeed;
+    }
+    
+    private synchronized void closeTableFeed() {
+        if (tableFeed != null) {
+            tableFeed.close();
+        }
+    }
+    
+    /**
+     * Hibernate if no message came since cutoffNanos (a System.nanoTime() value). Called
+     * from any thread, like handOff; the session hibernates on the thread that serves it.
+     */
+    void hibernateIfIdle(long cutoffNanos) {
+        if (hibernating || !connected.get() || lastActiveNanos - cutoffNanos > 0 || watching != null
+                || carriesSessions()) {
+            return;
+        }
+        if (socket != null) {
+            // A blocking connection's thread waits in receive(), so act from here unless it is handling a message
+            if (turn.tryLock()) {
+                try {
+                    hibernate();
+                } finally {
+                    turn.unlock();
+                }
+            }
+            return;
+        }
+        hibernateRequested = true;
+        wakeUp();
+    }
+    
+    /**
+     * Let go of everything the session can rebuild: the deck, the commitment batches
+     * (all but the next hand's seed and salt, see ShuffleCommitments.compact) and the
+     * binary channel's buffers. What is left is the handler's own fields: id, winnings,
+     * hand count, the open hand if any. Runs on the thread that serves the connection,
+     * or holding the turn lock.
+     */
+    private void hibernate() {
+        hibernateRequested = false;
+        if (hibernating || !connected.get() || watching != null) {
+            return;
+        }
+        deck = null;
+        if (commitments != null) {
+            commitments.compact();
+        }
+        if (channel instanceof BinaryChannel) {
+            // Not behind a writer thread, which could be sending
+            ((BinaryChannel) channel).releaseBuffers();
+        }
+        hibernating = true;
+        server.countHibernated();
+    }
+    
+    /**
+     * Whether the session is hibernating: idle, and holding only its compact state.
+     */
+    public boolean isHibernating() {
+        return hibernating;
+    }
+    
+    /**
+     * Ask the client to move to the server replacing this one (see PokerServer.drain).
+     * An open hand is settled first; then the client gets RECONNECT with a session token
+     * and is disconnected. Called from any thread.
+     */
+    void handOff() {
+        handOffRequested = true;
+        if (socket != null) {
+            // A blocking connection's thread waits in receive(), so act from here; if it is
+            // handling a message, it checks again when done
+            try {
+                handOffIfIdle();
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+        wakeUp();
+    }
+    
+    /**
+     * Hand the client off if the server is draining and no hand is open: send RECONNECT
+     * with its winnings and hand count signed into a token, and disconnect. A client still
+     * waiting for a seat has nothing to carry over, but is sent on all the same. The
+     * sessions of a multiplexed connection are handed off one by one instead of the connection.
+     */
+    private void handOffIfIdle() throws IOException {
+        turn.lock();
+        try {
+            if (!handOffRequested || !connected.get() || openHand != null || channel == null) {
+                return;
+            }
+            if (watching != null) {
+                disconnect(); // Nothing to carry over, and the table moves with its player
+                return;
+            }
+            leaving = true; // The session goes with the token
+            PokerInfo reconnect = new PokerInfo();
+            reconnect.setMessageType(PokerInfo.MessageType.RECONNECT);
+            reconnect.setSessionToken(server.getSessionTokens().seal(playerWinnings, currentHandId));
+            reconnect.setStatusMessage("Server restarting. Reconnect to continue.");
+            server.log("Client " + clientId + " handed off after " + currentHandId + " hands, Total=" + playerWinnings);
+            try {
+                channel.send(reconnect);
+            } finally {
+                disconnect();
+            }
+        } finally {
+            turn.unlock();
+        }
     }
     
     /**
@@ -241,35 +1084,101 @@ public class ClientHandler implements Runnable {
         server.log("Client " + clientId + " ready for another hand");
     }
     
+    /**
+     * Pick the seed for the next hand when commitments are off. In seeded mode it is
+     * derived from the server's master seed, this client's id and the hand number;
+     * otherwise it comes from a SecureRandom, as commitment seeds do.
+     */
+    private long nextHandSeed() {
+        ServerConfig config = server.getConfig();
+        if (config.isSeeded()) {
+            return SeededShuffle.handSeed(config.getMasterSeed(), clientId, currentHandId);
+        }
+        return SEEDS.nextLong();
+    }
+    
     /**
      * Disconnect this client.
      */
     public void disconnect() {
-        if (!connected) {
+        if (!connected.compareAndSet(true, false)) {
             return;
         }
         
-        connected = false;
+        if (channel != null) {
+            channel.close();
+        } else {
+            Connections.closeQuietly(socket);
+        }
         
-        try {
-            if (input != null) {
-                input.close();
-            }
-            if (output != null) {
-                output.close();
-            }
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-            }
-        } catch (IOException e) {
-            // Ignore errors during cleanup
+        releaseSeat();
+        closeTableFeed();
+        if (resumeToken != null) {
+            keepResumable();
         }
+        LockSupport.unpark(thread);
         
         server.removeClient(this);
     }
     
+    /**
+     * Park a resumable session whose connection dropped, for its client to reattach. A
+     * session that ended on purpose, or on a server that is stopping or draining, is not kept.
+     */
+    private void keepResumable() {
+        ParkedSessions parked = server.getParkedSessions();
+        if (leaving || !server.isRunning() || server.isDraining()) {
+            parked.forget(resumeToken);
+            return;
+        }
+        parked.park(resumeToken, playerWinnings, currentHandId, lastRequestId, openHand, lastReply);
+        server.log("Client " + clientId + " dropped; session kept for " + server.getConfig().getResumeGraceSeconds()
+                + " s: " + currentHandId + " hands, Total=" + playerWinnings);
+    }
+    
+    /**
+     * Free the seat, or the place in line (unless a seat was given to us meanwhile).
+     */
+    private void releaseSeat() {
+        if (!seatReleased.compareAndSet(false, true)) {
+            return;
+        }
+        AdmissionController admission = server.getAdmission();
+        if (admitted || !admission.cancel(this)) {
+            admission.release();
+        }
+    }
+    
     public int getClientId() {
         return clientId;
     }
+    
+    /**
+     * Whether this is a multiplexed connection, which only carries sessions with handlers of their own.
+     */
+    public boolean carriesSessions() {
+        return gateway != null;
+    }
+    
+    /**
+     * The queue this client's messages wait in until it reads them, or null if they are
+     * written as they are sent (in-process and multiplexed connections, and blocking
+     * sockets without writer threads).
+     */
+    public OutboundQueue getOutboundQueue() {
+        MessageSink current = channel;
+        return current instanceof OutboundQueue ? (OutboundQueue) current : null;
+    }
+    
+    /**
+     * Objects held by this client's Java serialization stream, or 0 for other wire formats.
+     */
+    public int getRetainedStreamHandles() {
+        MessageSink current = channel;
+        if (current instanceof QueuedChannel) {
+            current = ((QueuedChannel) current).getChannel();
+        }
+        return current instanceof ObjectStreamChannel ? ((ObjectStreamChannel) current).getRetainedHandles() : 0;
+    }
 }
 
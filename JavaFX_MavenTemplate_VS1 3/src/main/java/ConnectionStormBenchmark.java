@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Reconnect storm: many clients connect at the same moment and each asks for a deal.
+ *
+ *   java -cp target/classes ConnectionStormBenchmark [clients] [acceptors,...] [threads|nio] [backlog]
+ *
+ * For each acceptor count a fresh server is started and stormed twice (the first storm
+ * warms up the JIT). Reports connections per second until the last client had its cards,
+ * and each client's time from the start of the storm to its first CARDS_DEALT.
+ */
+public class ConnectionStormBenchmark {
+    private static final int PORT = 5600;
+    
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        String[] acceptorCounts = (args.length > 1 ? args[1] : "1,4").split(",");
+        ServerConfig.IoMode mode = args.length > 2 ? ServerConfig.IoMode.valueOf(args[2].toUpperCase())
+                : ServerConfig.IoMode.THREADS;
+        int backlog = args.length > 3 ? Integer.parseInt(args[3]) : new ServerConfig(PORT).getAcceptBacklog();
+        
+        System.out.printf("%d clients, %s server, backlog %d%n", clients, mode, backlog);
+        for (String count : acceptorCounts) {
+            ServerConfig config = new ServerConfig(PORT);
+            config.setIoMode(mode);
+            config.setCommitments(false);
+            config.setMaxClients(clients);
+            config.setAcceptors(Integer.parseInt(count.trim()));
+            config.setAcceptBacklog(backlog);
+            PokerServer server = new PokerServer(config, null);
+            server.start();
+            Thread.sleep(500);
+            
+            for (int round = 0; round < 2; round++) {
+                long[] firstDeal = storm(clients);
+                long elapsed = Arrays.stream(firstDeal).max().getAsLong();
+                if (round == 1) {
+                    long failed = Arrays.stream(firstDeal).filter(t -> t == Long.MAX_VALUE).count();
+                    long[] dealt = Arrays.stream(firstDeal).filter(t -> t != Long.MAX_VALUE).sorted().toArray();
+                    System.out.printf("%d acceptor(s): %7.0f connections/s, first deal p50 %6.1f ms, p99 %6.1f ms, max %6.1f ms%s%n",
+                            config.getAcceptors(), dealt.length * 1e9 / dealt[dealt.length - 1],
+                            dealt[dealt.length / 2] / 1e6, dealt[dealt.length * 99 / 100] / 1e6,
+                            dealt[dealt.length - 1] / 1e6, failed > 0 ? ", " + failed + " failed" : "");
+                } else if (elapsed == Long.MAX_VALUE) {
+                    System.out.println("Some clients failed to connect while warming up");
+                }
+                while (server.getClientCount() > 0) {
+                    Thread.sleep(50);
+                }
+            }
+            server.stop();
+        }
+        System.exit(0);
+    }
+    
+    /**
+     * Release every client at once and wait until all have their first cards.
+     * @return each client's nanoseconds from the start to its CARDS_DEALT, or Long.MAX_VALUE if it failed
+     */
+    private static long[] storm(int clients) throws InterruptedException {
+        long[] firstDeal = new long[clients];
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] start = new long[1];
+        List<Thread> threads = new ArrayList<>();
+        List<MessageChannel> channels = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    MessageChannel channel = Connections.connect("localhost", PORT, WireFormat.BINARY);
+                    synchronized (channels) {
+                        channels.add(channel);
+                    }
+                    PokerInfo bet = new PokerInfo();
+                    bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+                    bet.setAnteBet(10);
+                    channel.send(bet);
+                    Connections.receiveReply(channel, position -> { });
+                    firstDeal[client] = System.nanoTime() - start[0];
+                } catch (Exception e) {
+                    firstDeal[client] = Long.MAX_VALUE;
+                }
+            }, "storm-client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        ready.await();
+        start[0] = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (MessageChannel channel : channels) {
+            channel.close();
+        }
+        return firstDeal;
+    }
+}
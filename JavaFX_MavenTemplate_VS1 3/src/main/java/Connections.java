@@ -0,0 +1,278 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.function.IntConsumer;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Opens MessageChannels over sockets, for both clients and the server.
+ * Sockets are TCP, or Unix domain sockets for clients on the server's host (see UnixSockets).
+ * Clients connect over TLS when given a trust store with -Dpoker.trustStore (see Tls).
+ */
+public final class Connections {
+    // First byte of a Java serialization stream header (0xACED)
+    private static final int JAVA_STREAM_MAGIC = 0xAC;
+    
+    private Connections() {
+    }
+    
+    /**
+     * What an accepted connection turned out to be: one client's channel, or a gateway's
+     * multiplexed connection, which is served rather than read. Exactly one is set.
+     */
+    public static final class Accepted {
+        private final MessageChannel channel;
+        private final MultiplexedConnection gateway;
+        
+        private Accepted(MessageChannel channel, MultiplexedConnection gateway) {
+            this.channel = channel;
+            this.gateway = gateway;
+        }
+        
+        public MessageChannel getChannel() {
+            return channel;
+        }
+        
+        public MultiplexedConnection getGateway() {
+            return gateway;
+        }
+    }
+    
+    /**
+     * Connect to a server, over TLS if a trust store is configured (Tls.clientFromSystemProperties).
+     * @param host server host, or unix:/path/to/socket for a server on this host (the port is then unused)
+     * @param port server port
+     * @param format wire format to use
+     * @return the open channel
+     */
+    public static MessageChannel connect(String host, int port, WireFormat format) throws IOException {
+        return connect(host, port, format, UnixSockets.isSocketHost(host) ? null : Tls.clientFromSystemProperties());
+    }
+    
+    /**
+     * Connect to a server.
+     * @param host server host, or unix:/path/to/socket for a server on this host (the port is then unused)
+     * @param port server port
+     * @param format wire format to use
+     * @param tls context for a TLS connection, or null for plaintext; reusing it resumes earlier sessions
+     * @return the open channel
+     */
+    public static MessageChannel connect(String host, int port, WireFormat format, SSLContext tls) throws IOException {
+        if (UnixSockets.isSocketHost(host)) {
+            return connect(UnixSockets.pathOf(host), format);
+        }
+        Socket socket = tls != null ? Tls.connect(tls, host, port) : new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            return open(socket, format);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+    
+    /**
+     * Connect to a server's Unix domain socket.
+     * @param path socket file the server listens on (ServerConfig.setUnixSocketPath)
+     * @param format wire format to use
+     * @return the open channel
+     */
+    public static MessageChannel connect(Path path, WireFormat format) throws IOException {
+        SocketChannel socket = UnixSockets.connect(path);
+        try {
+            return open(new BufferedInputStream(inputOf(socket)), outputOf(socket), () -> closeQuietly(socket), format);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+    
+    /**
+     * Open the client side of a channel over a connected socket.
+     */
+    public static MessageChannel open(Socket socket, WireFormat format) throws IOException {
+        return open(new BufferedInputStream(socket.getInputStream()), socket.getOutputStream(),
+                () -> closeQuietly(socket), format);
+    }
+    
+    private static MessageChannel open(InputStream input, OutputStream output, Runnable onClose,
+                                       WireFormat format) throws IOException {
+        if (format == WireFormat.JAVA) {
+            return new ObjectStreamChannel(input, output, onClose);
+        }
+        return BinaryChannel.client(input, output, onClose);
+    }
+    
+    /**
+     * Open the server side of a channel over an accepted socket.
+     * Blocks until the client sends its first bytes, which tell the wire format apart:
+     * Java serialization, binary frames, or a gateway's MultiplexedConnection.
+     * @param socket accepted socket
+     * @return the open channel or gateway connection
+     */
+    public static Accepted accept(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        return accept(new BufferedInputStream(socket.getInputStream()), socket.getOutputStream(),
+                () -> closeQuietly(socket));
+    }
+    
+    /**
+     * Open the server side of a channel over an accepted blocking Unix domain socket.
+     * @param socket accepted socket
+     * @return the open channel or gateway connection
+     */
+    public static Accepted accept(SocketChannel socket) throws IOException {
+        return accept(new BufferedInputStream(inputOf(socket)), outputOf(socket), () -> closeQuietly(socket));
+    }
+    
+    private static Accepted accept(InputStream input, OutputStream output, Runnable onClose) throws IOException {
+        input.mark(WireCodec.MULTIPLEXED_HELLO.length);
+        byte[] start = input.readNBytes(WireCodec.MULTIPLEXED_HELLO.length);
+        input.reset();
+        
+        if (start.length > 0 && (start[0] & 0xFF) == JAVA_STREAM_MAGIC) {
+            return new Accepted(new ObjectStreamChannel(input, output, onClose), null);
+        }
+        if (MultiplexedConnection.isHello(start)) {
+            return new Accepted(null, MultiplexedConnection.server(input, output, onClose));
+        }
+        return new Accepted(BinaryChannel.server(input, output, onClose), null);
+    }
+    
+    /**
+     * Turn a connection away without reading from it. Binary clients get the greeting and a
+     * SERVER_FULL message; Java serialization clients only see the connection close.
+     * @param socket accepted socket
+     * @param reason shown to the client
+     */
+    public static void reject(Socket socket, String reason) {
+        try {
+            ByteBuffer buffer = rejection(reason);
+            
+            // A few bytes always fit in a new socket's send buffer, so this does not block
+            socket.getOutputStream().write(buffer.array(), 0, buffer.position());
+            socket.shutdownOutput();
+            
+            // Discard whatever the client already sent, so closing does not reset the connection
+            InputStream input = socket.getInputStream();
+            int available = input.available();
+            if (available > 0) {
+                input.skip(available);
+            }
+        } catch (IOException | RuntimeException e) {
+            // The client is being turned away anyway
+        }
+        closeQuietly(socket);
+    }
+    
+    /**
+     * Turn a connection away without reading from it, as reject(Socket, String) does.
+     * @param socket accepted socket, still in blocking mode
+     * @param reason shown to the client
+     */
+    public static void reject(SocketChannel socket, String reason) {
+        try {
+            ByteBuffer buffer = rejection(reason);
+            buffer.flip();
+            socket.write(buffer);
+            socket.shutdownOutput();
+            
+            // Discard whatever the client already sent, so closing does not reset the connection
+            socket.configureBlocking(false);
+            ByteBuffer discard = ByteBuffer.allocate(4096);
+            while (socket.read(discard) > 0) {
+                discard.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The client is being turned away anyway
+        }
+        closeQuietly(socket);
+    }
+    
+    /**
+     * The greeting and a SERVER_FULL frame, written up to the buffer's position.
+     */
+    private static ByteBuffer rejection(String reason) {
+        PokerInfo full = new PokerInfo();
+        full.setMessageType(PokerInfo.MessageType.SERVER_FULL);
+        full.setStatusMessage(reason);
+        ByteBuffer buffer = ByteBuffer.allocate(WireCodec.HELLO.length + WireCodec.LENGTH_PREFIX + 256);
+        buffer.put(WireCodec.HELLO);
+        WireCodec.encodeFrame(full, buffer);
+        return buffer;
+    }
+    
+    /**
+     * Receive the server's next reply, passing queue position updates to the listener first.
+     * @param channel open channel
+     * @param onQueuePosition called with the place in line while waiting for a seat (0 = seat ready)
+     * @return the next message that is not a queue update
+     * @throws ConnectException if the server is full
+     */
+    public static PokerInfo receiveReply(MessageChannel channel, IntConsumer onQueuePosition) throws IOException {
+        while (true) {
+            PokerInfo info = channel.receive();
+            if (info.getMessageType() == PokerInfo.MessageType.QUEUE_POSITION) {
+                onQueuePosition.accept(info.getQueuePosition());
+            } else if (info.getMessageType() == PokerInfo.MessageType.SERVER_FULL) {
+                throw new ConnectException(info.getStatusMessage() != null ? info.getStatusMessage() : "Server is full");
+            } else {
+                return info;
+            }
+        }
+    }
+    
+    /**
+     * Stream over a blocking socket channel. Channels.newInputStream would hold the channel's
+     * blocking lock while waiting for input, stalling any thread that writes meanwhile.
+     */
+    private static InputStream inputOf(SocketChannel socket) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+            
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                return socket.read(ByteBuffer.wrap(bytes, offset, length));
+            }
+        };
+    }
+    
+    private static OutputStream outputOf(SocketChannel socket) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+            
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) {
+                    socket.write(buffer);
+                }
+            }
+        };
+    }
+    
+    static void closeQuietly(Closeable socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore errors during cleanup
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+
+/**
+ * Offline tool that regenerates deals from their seeds, without a server.
+ *
+ * Usage:
+ *   DealReplay --seed <handSeed>                                   replay one logged hand
+ *   DealReplay <masterSeed> <clientId> [firstHand] [count]          replay a session of a seeded server
+ *   DealReplay --bench [hands]                                      measure replay throughput
+ *
+ * Seeds can be given in decimal or as 0x-prefixed hex (the format the server logs).
+ */
+public class DealReplay {
+    private static final int CARDS_PER_HAND = 3;
+    
+    private final int[] scratch = new int[Card.DECK_SIZE];
+    
+    /**
+     * Regenerate the deal for a hand seed.
+     * @param seed hand seed
+     * @param playerCards filled with the player's 3 cards
+     * @param dealerCards filled with the dealer's 3 cards
+     */
+    public void replay(long seed, ArrayList<Card> playerCards, ArrayList<Card> dealerCards) {
+        SeededShuffle.deal(seed, 2 * CARDS_PER_HAND, scratch);
+        playerCards.clear();
+        dealerCards.clear();
+        for (int i = 0; i < CARDS_PER_HAND; i++) {
+            playerCards.add(Card.of(scratch[i]));
+            dealerCards.add(Card.of(scratch[CARDS_PER_HAND + i]));
+        }
+    }
+    
+    /**
+     * Regenerate the deal for a hand seed as card indexes (player first, then dealer).
+     * This is the allocation-free path used for bulk replays.
+     * @param seed hand seed
+     * @param out array of at least 52 entries; the first 6 hold the deal
+     */
+    public static void replayIndexes(long seed, int[] out) {
+        SeededShuffle.deal(seed, 2 * CARDS_PER_HAND, out);
+    }
+    
+    private void printHand(String label, long seed) {
+        ArrayList<Card> player = new ArrayList<>();
+        ArrayList<Card> dealer = new ArrayList<>();
+        replay(seed, player, dealer);
+        System.out.println(label + " seed=" + ServerConfig.formatSeed(seed));
+        System.out.println("  Player: " + player + " (" + handName(ThreeCardLogic.evalHand(player)) + ")");
+        System.out.println("  Dealer: " + dealer + " (" + handName(ThreeCardLogic.evalHand(dealer)) + ")");
+    }
+    
+    private static String handName(int rank) {
+        switch (rank) {
+            case ThreeCardLogic.STRAIGHT_FLUSH:
+                return "Straight Flush";
+            case ThreeCardLogic.THREE_OF_A_KIND:
+                return "Three of a Kind";
+            case ThreeCardLogic.STRAIGHT:
+                return "Straight";
+            case ThreeCardLogic.FLUSH:
+                return "Flush";
+            case ThreeCardLogic.PAIR:
+                return "Pair";
+            default:
+                return "High Card";
+        }
+    }
+    
+    private static void bench(int hands) {
+        int[] out = new int[Card.DECK_SIZE];
+        long checksum = 0;
+        
+        // Replays logged seeds: deriving them from a master seed (an HMAC each) is not timed
+        // Warm up before timing
+        for (int i = 0; i < 1_000_000; i++) {
+            replayIndexes(SeededShuffle.mix64(i), out);
+            checksum += out[0];
+        }
+        
+        long start = System.nanoTime();
+        for (int i = 1; i <= hands; i++) {
+            replayIndexes(SeededShuffle.mix64(i), out);
+            checksum += out[0] + out[5];
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        System.out.printf("Replayed %,d hands in %.1f ms: %,.0f hands/sec (%.1f ns/hand, checksum %d)%n",
+                hands, elapsed / 1e6, hands * 1e9 / elapsed, (double) elapsed / hands, checksum);
+    }
+    
+    private static void usage() {
+        System.err.println("Usage:");
+        System.err.println("  DealReplay --seed <handSeed>");
+        System.err.println("  DealReplay <masterSeed> <clientId> [firstHand] [count]");
+        System.err.println("  DealReplay --bench [hands]");
+        System.exit(1);
+    }
+    
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+        }
+        
+        if (args[0].equals("--bench")) {
+            bench(args.length >= 2 ? Integer.parseInt(args[1]) : 20_000_000);
+            return;
+        }
+        
+        DealReplay replay = new DealReplay();
+        
+        if (args[0].equals("--seed")) {
+            if (args.length < 2) {
+                usage();
+            }
+            replay.printHand("Hand", ServerConfig.parseSeed(args[1]));
+            return;
+        }
+        
+        if (args.length < 2) {
+            usage();
+        }
+        long masterSeed = ServerConfig.parseSeed(args[0]);
+        int clientId = Integer.parseInt(args[1]);
+        int firstHand = args.length >= 3 ? Integer.parseInt(args[2]) : 1;
+        int count = args.length >= 4 ? Integer.parseInt(args[3]) : 1;
+        
+        for (int hand = firstHand; hand < firstHand + count; hand++) {
+            long seed = SeededShuffle.handSeed(masterSeed, clientId, hand);
+            replay.printHand("Client " + clientId + " Hand #" + hand, seed);
+        }
+    }
+}
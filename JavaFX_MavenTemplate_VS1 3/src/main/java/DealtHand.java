@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+
+/**
+ * Everything needed to settle a hand once the player decides: the cards, bets and
+ * seed as dealt, and the player's total before the hand. ClientHandler keeps the
+ * open hand in memory, or in stateless mode seals it into a token (see HandTokens).
+ */
+public class DealtHand {
+    private final int handId;
+    private final int anteBet;
+    private final int pairPlusBet;
+    private final ArrayList<Card> playerCards;
+    private final ArrayList<Card> dealerCards;
+    private final long seed;
+    private final byte[] salt;
+    private final int winningsBefore;
+    private final long session;
+    
+    public DealtHand(int handId, int anteBet, int pairPlusBet, ArrayList<Card> playerCards,
+                     ArrayList<Card> dealerCards, long seed, byte[] salt, int winningsBefore, long session) {
+        this.handId = handId;
+        this.anteBet = anteBet;
+        this.pairPlusBet = pairPlusBet;
+        this.playerCards = playerCards;
+        this.dealerCards = dealerCards;
+        this.seed = seed;
+        this.salt = salt;
+        this.winningsBefore = winningsBefore;
+        this.session = session;
+    }
+    
+    public int getHandId() {
+        return handId;
+    }
+    
+    public int getAnteBet() {
+        return anteBet;
+    }
+    
+    public int getPairPlusBet() {
+        return pairPlusBet;
+    }
+    
+    public ArrayList<Card> getPlayerCards() {
+        return playerCards;
+    }
+    
+    public ArrayList<Card> getDealerCards() {
+        return dealerCards;
+    }
+    
+    public long getSeed() {
+        return seed;
+    }
+    
+    /** Commitment salt, or null if the deal had no commitment. */
+    public byte[] getSalt() {
+        return salt;
+    }
+    
+    /** Player's total winnings before this hand. */
+    public int getWinningsBefore() {
+        return winningsBefore;
+    }
+    
+    /** Id of the session that dealt the hand, so a stateless server can tell its own hands from carried-over ones. */
+    public long getSession() {
+        return session;
+    }
+}
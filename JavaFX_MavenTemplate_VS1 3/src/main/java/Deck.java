@@ -6,9 +6,11 @@ import java.util.Collections;
  */
 public class Deck {
     private ArrayList<Card> cards;
+    private int[] order;
     
     public Deck() {
-        cards = new ArrayList<>();
+        cards = new ArrayList<>(Card.DECK_SIZE);
+        order = new int[Card.DECK_SIZE];
         initializeDeck();
     }
     
@@ -17,10 +19,8 @@ public class Deck {
      */
     private void initializeDeck() {
         cards.clear();
-        for (Suit suit : Suit.values()) {
-            for (Rank rank : Rank.values()) {
-                cards.add(new Card(suit, rank));
-            }
+        for (int i = 0; i < Card.DECK_SIZE; i++) {
+            cards.add(Card.of(i));
         }
     }
     
@@ -63,6 +63,19 @@ public class Deck {
         shuffle();
     }
     
+    /**
+     * Reset the deck into the order given by a hand seed (see SeededShuffle).
+     * The same seed always produces the same deal.
+     * @param seed hand seed
+     */
+    public void reset(long seed) {
+        SeededShuffle.shuffle(seed, order);
+        cards.clear();
+        for (int i = 0; i < Card.DECK_SIZE; i++) {
+            cards.add(Card.of(order[i]));
+        }
+    }
+    
     public int size() {
         return cards.size();
     }
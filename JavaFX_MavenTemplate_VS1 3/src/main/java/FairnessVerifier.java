@@ -0,0 +1,139 @@
+import java.security.MessageDigest;
+import java.util.ArrayList;
+
+/**
+ * Checks that a hand was dealt from the deck the server committed to.
+ *
+ * The CARDS_DEALT message carries the deck's leaf hash, its Merkle proof and the batch root;
+ * GAME_RESULT reveals the hand seed and salt and announces the leaf hash of the next hand.
+ * A verifier instance keeps that announcement so it can also check that the next deal
+ * uses the deck published before it was bet on.
+ *
+ * It can also be run offline:
+ *   FairnessVerifier --root <hex> --index <n> --proof <hex> --leaf <hex> --seed <seed> --salt <hex>
+ */
+public class FairnessVerifier {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private byte[] announcedLeaf;
+    
+    /**
+     * Check whether a deal carries a commitment at all (the server may run with commitments off).
+     */
+    public static boolean isCommitted(PokerInfo deal) {
+        return deal != null && deal.getDeckCommitment() != null && deal.getCommitmentRoot() != null;
+    }
+    
+    /**
+     * Verify one hand.
+     * @param deal the CARDS_DEALT message
+     * @param result the GAME_RESULT message for the same hand
+     * @return null if the hand checks out, otherwise a description of what failed
+     */
+    public String verifyHand(PokerInfo deal, PokerInfo result) {
+        byte[] expectedLeaf = announcedLeaf;
+        announcedLeaf = result.getNextDeckCommitment();
+        
+        if (!isCommitted(deal)) {
+            return "Deal carries no commitment";
+        }
+        if (result.getHandSalt() == null) {
+            return "Result does not reveal the hand salt";
+        }
+        if (expectedLeaf != null && !MessageDigest.isEqual(expectedLeaf, deal.getDeckCommitment())) {
+            return "Deck differs from the one announced before the hand";
+        }
+        
+        String problem = verify(deal.getDeckCommitment(), deal.getCommitmentIndex(), deal.getCommitmentProof(),
+                deal.getCommitmentRoot(), result.getHandSeed(), result.getHandSalt());
+        if (problem != null) {
+            return problem;
+        }
+        
+        ArrayList<Card> player = new ArrayList<>();
+        ArrayList<Card> dealer = new ArrayList<>();
+        new DealReplay().replay(result.getHandSeed(), player, dealer);
+        if (!player.equals(deal.getPlayerCards())) {
+            return "Player cards do not match the committed deck";
+        }
+        if (result.getDealerCards() != null && !result.getDealerCards().isEmpty()
+                && !dealer.equals(result.getDealerCards())) {
+            return "Dealer cards do not match the committed deck";
+        }
+        return null;
+    }
+    
+    /**
+     * Verify a revealed seed and salt against a committed leaf and its Merkle proof.
+     * @return null if valid, otherwise a description of what failed
+     */
+    public static String verify(byte[] leaf, int index, byte[] proof, byte[] root, long seed, byte[] salt) {
+        if (!MessageDigest.isEqual(ShuffleCommitments.leafHash(salt, seed), leaf)) {
+            return "Seed and salt do not hash to the committed deck";
+        }
+        if (!MerkleTree.verify(leaf, index, proof, root)) {
+            return "Commitment is not part of the published batch root";
+        }
+        return null;
+    }
+    
+    public static String toHex(byte[] bytes) {
+        if (bytes == null) {
+            return "";
+        }
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+    
+    public static byte[] fromHex(String hex) {
+        String text = hex.trim();
+        if (text.length() % 2 != 0) {
+            throw new IllegalArgumentException("Hex string has odd length");
+        }
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+    
+    private static String argument(String[] args, String name) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        System.err.println("Missing " + name);
+        System.err.println("Usage: FairnessVerifier --root <hex> --index <n> --proof <hex> --leaf <hex> "
+                + "--seed <seed> --salt <hex>");
+        System.exit(1);
+        return null;
+    }
+    
+    public static void main(String[] args) {
+        byte[] root = fromHex(argument(args, "--root"));
+        int index = Integer.parseInt(argument(args, "--index"));
+        byte[] proof = fromHex(argument(args, "--proof"));
+        byte[] leaf = fromHex(argument(args, "--leaf"));
+        long seed = ServerConfig.parseSeed(argument(args, "--seed"));
+        byte[] salt = fromHex(argument(args, "--salt"));
+        
+        ArrayList<Card> player = new ArrayList<>();
+        ArrayList<Card> dealer = new ArrayList<>();
+        new DealReplay().replay(seed, player, dealer);
+        System.out.println("Player: " + player);
+        System.out.println("Dealer: " + dealer);
+        
+        String problem = verify(leaf, index, proof, root, seed, salt);
+        if (problem == null) {
+            System.out.println("VERIFIED: deal matches the committed deck");
+        } else {
+            System.out.println("FAILED: " + problem);
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Seals a dealt hand into an opaque token for stateless servers, and opens it again
+ * when the player's decision comes back, on this server or any other that shares the key.
+ *
+ * A token is a 16-byte IV, the hand encrypted with AES-128-CTR, and the first 16 bytes
+ * of an HMAC-SHA256 over IV and ciphertext (encrypt-then-MAC). Both keys are derived
+ * from one shared secret (see TokenKeys). The sealed hand carries its issue time; tokens
+ * older than the time to live are refused, and within it a NonceFilter refuses any token
+ * that was already settled here.
+ */
+public class HandTokens {
+    public static final int KEY_SIZE = 16;
+    
+    private static final int VERSION = 2;
+    private static final int IV_SIZE = 16;
+    private static final int TAG_SIZE = 16;
+    private static final int MAX_PLAINTEXT = 128;
+    
+    private final SecretKeySpec encryptionKey;
+    private final SecretKeySpec macKey;
+    private final long ttlSeconds;
+    private final NonceFilter nonces;
+    
+    // IVs only need to be unique per key: a random prefix per server plus a counter
+    private final byte[] ivPrefix = new byte[8];
+    private final AtomicLong ivCounter = new AtomicLong();
+    
+    // Cipher and Mac objects are not thread safe; each serving thread gets its own
+    private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(() -> newInstance("AES/CTR/NoPadding"));
+    private final ThreadLocal<Mac> mac;
+    
+    /**
+     * @param secret shared secret, at least KEY_SIZE bytes; every server settling the same hands needs it
+     * @param ttlSeconds how long a token stays valid
+     */
+    public HandTokens(byte[] secret, long ttlSeconds) {
+        if (secret == null || secret.length < KEY_SIZE) {
+            throw new IllegalArgumentException("Token secret must be at least " + KEY_SIZE + " bytes");
+        }
+        if (ttlSeconds <= 0) {
+            throw new IllegalArgumentException("Token lifetime must be positive: " + ttlSeconds);
+        }
+        this.encryptionKey = new SecretKeySpec(TokenKeys.derive(secret, "3cp hand token encryption"), 0, KEY_SIZE, "AES");
+        this.macKey = new SecretKeySpec(TokenKeys.derive(secret, "3cp hand token mac"), TokenKeys.MAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> TokenKeys.newMac(macKey));
+        this.ttlSeconds = ttlSeconds;
+        this.nonces = new NonceFilter(TokenKeys.nonceWindowMillis(ttlSeconds));
+        new SecureRandom().nextBytes(ivPrefix);
+    }
+    
+    /**
+     * Create a random secret, for a single server that settles only its own hands.
+     */
+    public static byte[] randomSecret() {
+        byte[] secret = new byte[KEY_SIZE * 2];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+    
+    /**
+     * Parse a secret written as hex, as given in poker.tokenKey.
+     */
+    public static byte[] parseSecret(String hex) {
+        String text = hex.trim();
+        if (text.length() % 2 != 0) {
+            throw new IllegalArgumentException("Token key must have an even number of hex digits");
+        }
+        byte[] secret = new byte[text.length() / 2];
+        for (int i = 0; i < secret.length; i++) {
+            int high = Character.digit(text.charAt(2 * i), 16);
+            int low = Character.digit(text.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Token key is not hex: " + text);
+            }
+            secret[i] = (byte) ((high << 4) | low);
+        }
+        return secret;
+    }
+    
+    /**
+     * Seal a hand into a token.
+     */
+    public byte[] seal(DealtHand hand) {
+        return seal(hand, System.currentTimeMillis() / 1000);
+    }
+    
+    byte[] seal(DealtHand hand, long nowSeconds) {
+        ByteBuffer token = ByteBuffer.allocate(IV_SIZE + MAX_PLAINTEXT + TAG_SIZE);
+        token.put(ivPrefix).putLong(ivCounter.incrementAndGet());
+        
+        ByteBuffer plain = ByteBuffer.allocate(MAX_PLAINTEXT);
+        try {
+            plain.put((byte) VERSION);
+            plain.putInt((int) nowSeconds);
+            WireCodec.putUnsigned(plain, hand.getHandId());
+            WireCodec.putSigned(plain, hand.getAnteBet());
+            WireCodec.putSigned(plain, hand.getPairPlusBet());
+            WireCodec.putSigned(plain, hand.getWinningsBefore());
+            plain.putLong(hand.getSession());
+            WireCodec.putCards(plain, hand.getPlayerCards());
+            WireCodec.putCards(plain, hand.getDealerCards());
+            plain.putLong(hand.getSeed());
+            WireCodec.putBytes(plain, hand.getSalt());
+        } catch (BufferOverflowException e) {
+            throw new IllegalArgumentException("Hand too large for a token", e);
+        }
+        plain.flip();
+        
+        try {
+            Cipher aes = cipher.get();
+            aes.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(token.array(), 0, IV_SIZE));
+            aes.doFinal(plain, token);
+            Mac hmac = mac.get();
+            hmac.update(token.array(), 0, token.position());
+            token.put(hmac.doFinal(), 0, TAG_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not seal hand token", e);
+        }
+        return Arrays.copyOf(token.array(), token.position());
+    }
+    
+    /**
+     * Check a token and return the hand it carries. Succeeds at most once per token.
+     * @throws GeneralSecurityException if the token is forged, damaged, expired or already used
+     */
+    public DealtHand open(byte[] token) throws GeneralSecurityException {
+        return open(token, System.currentTimeMillis() / 1000);
+    }
+    
+    DealtHand open(byte[] token, long nowSeconds) throws GeneralSecurityException {
+        if (token == null || token.length < IV_SIZE + TAG_SIZE + 1) {
+            throw new GeneralSecurityException("Missing or short hand token");
+        }
+        int tagStart = token.length - TAG_SIZE;
+        Mac hmac = mac.get();
+        hmac.update(token, 0, tagStart);
+        byte[] expected = hmac.doFinal();
+        if (!MessageDigest.isEqual(Arrays.copyOf(expected, TAG_SIZE), Arrays.copyOfRange(token, tagStart, token.length))) {
+            throw new GeneralSecurityException("Hand token signature does not match");
+        }
+        
+        Cipher aes = cipher.get();
+        aes.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(token, 0, IV_SIZE));
+        ByteBuffer plain = ByteBuffer.wrap(aes.doFinal(token, IV_SIZE, tagStart - IV_SIZE));
+        
+        DealtHand hand;
+        long issued;
+        try {
+            if (plain.get() != VERSION) {
+                throw new GeneralSecurityException("Unknown hand token version");
+            }
+            issued = plain.getInt() & 0xFFFFFFFFL;
+            int handId = WireCodec.getUnsigned(plain);
+            int anteBet = WireCodec.getSigned(plain);
+            int pairPlusBet = WireCodec.getSigned(plain);
+            int winningsBefore = WireCodec.getSigned(plain);
+            long session = plain.getLong();
+            hand = new DealtHand(handId, anteBet, pairPlusBet, WireCodec.getCards(plain), WireCodec.getCards(plain),
+                    plain.getLong(), WireCodec.getBytes(plain), winningsBefore, session);
+        } catch (ProtocolException | RuntimeException e) {
+            // Only reachable with the right key, i.e. a bug rather than an attack
+            throw new GeneralSecurityException("Malformed hand token", e);
+        }
+        
+        if (nowSeconds - issued > ttlSeconds) {
+            throw new GeneralSecurityException("Hand token expired");
+        }
+        if (issued - nowSeconds > TokenKeys.MAX_CLOCK_SKEW_SECONDS) {
+            throw new GeneralSecurityException("Hand token issued in the future");
+        }
+        // The tag is unique per token, so its first 8 bytes serve as the nonce
+        if (!nonces.firstUse(ByteBuffer.wrap(expected).getLong())) {
+            throw new GeneralSecurityException("Hand token already used");
+        }
+        return hand;
+    }
+    
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+    
+    /**
+     * Number of settled tokens currently remembered for replay protection.
+     */
+    public int getRememberedNonces() {
+        return nonces.size();
+    }
+    
+    private static Cipher newInstance(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(transformation + " not available", e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Idle sessions before and after they hibernate:
+ *
+ *   java -cp target/classes HibernationBenchmark [clients] [threads|virtual_threads|nio]
+ *
+ * Every client plays a hand and goes quiet, keeping its connection. Then all sessions are
+ * hibernated at once and every client plays another hand, which wakes its session up; a
+ * third hand is timed for comparison. Reports the heap each session let go of, how long
+ * hibernating them took, and the round trip of the hand that woke a session against one
+ * on a session already awake.
+ */
+public class HibernationBenchmark {
+    private static final int PORT = 5608;
+    
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        ServerConfig.IoMode mode = args.length > 1 ? ServerConfig.IoMode.valueOf(args[1].toUpperCase())
+                : ServerConfig.IoMode.NIO;
+        
+        ServerConfig config = new ServerConfig(PORT);
+        config.setIoMode(mode);
+        config.setMaxClients(clients);
+        config.setHibernateAfterSeconds(0); // Hibernated below, all at once
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        System.out.printf("%d clients, %s server%n", clients, mode);
+        
+        MessageChannel[] channels = new MessageChannel[clients];
+        for (int i = 0; i < clients; i++) {
+            channels[i] = Connections.connect("localhost", PORT, WireFormat.BINARY);
+            playHand(channels[i]);
+        }
+        long heapAwake = usedHeap();
+        
+        long start = System.nanoTime();
+        while (server.getHibernatingCount() < clients) {
+            server.hibernateIdleClients(start);
+            Thread.sleep(10);
+        }
+        double sweepMillis = (System.nanoTime() - start) / 1e6;
+        long heapHibernated = usedHeap();
+        System.out.printf("hibernated: %d sessions in %.0f ms, %.0f bytes of heap released each (%d active)%n",
+                clients, sweepMillis, (double) (heapAwake - heapHibernated) / clients, server.getActiveCount());
+        
+        long[] waking = new long[clients];
+        long[] awake = new long[clients];
+        for (int i = 0; i < clients; i++) {
+            waking[i] = playHand(channels[i]);
+        }
+        for (int i = 0; i < clients; i++) {
+            awake[i] = playHand(channels[i]);
+        }
+        Arrays.sort(waking);
+        Arrays.sort(awake);
+        System.out.printf("waking hand: p50 %.3f ms, p99 %.3f ms; awake hand: p50 %.3f ms, p99 %.3f ms; "
+                        + "%d woke up, %d hibernating%n",
+                waking[clients / 2] / 1e6, waking[clients * 99 / 100] / 1e6,
+                awake[clients / 2] / 1e6, awake[clients * 99 / 100] / 1e6,
+                server.getRehydratedTotal(), server.getHibernatingCount());
+        
+        for (MessageChannel channel : channels) {
+            channel.close();
+        }
+        server.stop();
+        System.exit(0);
+    }
+    
+    /**
+     * Bet and fold one hand.
+     * @return the time from the bet to the cards
+     */
+    private static long playHand(MessageChannel channel) throws IOException {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        bet.setAnteBet(10);
+        long start = System.nanoTime();
+        channel.send(bet);
+        PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+        long nanos = System.nanoTime() - start;
+        
+        PokerInfo fold = new PokerInfo();
+        fold.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+        fold.setPlayerAction(PokerInfo.PlayerAction.FOLD);
+        fold.setHandId(dealt.getHandId());
+        channel.send(fold);
+        if (channel.receive().getMessageType() != PokerInfo.MessageType.GAME_RESULT) {
+            throw new IOException("Hand not settled");
+        }
+        return nanos;
+    }
+    
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures what idle connections cost the server. Run the two roles in separate
+ * processes so the client's sockets do not count against the server:
+ *
+ *   java -cp target/classes IdleConnectionBenchmark server 5555 nio
+ *   java -cp target/classes IdleConnectionBenchmark client 127.0.0.1 5555 50000
+ *
+ * The server prints heap (after GC), resident memory and thread count as connections
+ * arrive, and the cost per connection relative to the empty server. The client opens
+ * binary-protocol connections, completes the hello on each and then leaves them idle.
+ * Connections are spread over 127.0.0.1-127.0.0.8 so more than one range of ephemeral
+ * ports is available. Each side needs an open-file limit above the connection count.
+ */
+public class IdleConnectionBenchmark {
+    private static final int ADDRESSES = 8;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("server")) {
+            String io = args.length > 2 ? args[2] : "nio";
+            runServer(Integer.parseInt(args[1]), ServerConfig.IoMode.valueOf(io.toUpperCase()));
+        } else if (args.length >= 4 && args[0].equals("client")) {
+            runClient(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        } else {
+            System.out.println("Usage: IdleConnectionBenchmark server <port> [threads|nio]");
+            System.out.println("       IdleConnectionBenchmark client <host> <port> <connections>");
+        }
+    }
+    
+    private static void runServer(int port, ServerConfig.IoMode mode) throws Exception {
+        ServerConfig config = ServerConfig.fromSystemProperties(port);
+        config.setIoMode(mode);
+        config.setMaxClients(Integer.MAX_VALUE);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        
+        long baseHeap = usedHeap();
+        long baseRss = residentBytes();
+        System.out.printf("%s server on port %d: heap %.1f MB, rss %.1f MB%n",
+                mode, port, baseHeap / 1e6, baseRss / 1e6);
+        
+        int last = -1;
+        while (true) {
+            Thread.sleep(2000);
+            int clients = server.getClientCount();
+            if (clients == last) {
+                continue;
+            }
+            last = clients;
+            
+            long heap = usedHeap();
+            long rss = residentBytes();
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            String perConnection = clients == 0 ? "" : String.format(", per connection: heap %d B, rss %d B",
+                    (heap - baseHeap) / clients, (rss - baseRss) / clients);
+            System.out.printf("%6d connections  heap %7.1f MB  rss %7.1f MB  threads %6d%s%n",
+                    clients, heap / 1e6, rss / 1e6, threads, perConnection);
+        }
+    }
+    
+    private static void runClient(String host, int port, int count) throws IOException, InterruptedException {
+        List<SocketChannel> sockets = new ArrayList<>(count);
+        boolean loopback = host.equals("127.0.0.1") || host.equals("localhost");
+        ByteBuffer hello = ByteBuffer.allocate(WireCodec.HELLO.length);
+        long start = System.nanoTime();
+        
+        for (int i = 0; i < count; i++) {
+            String target = loopback ? "127.0.0." + (1 + i % ADDRESSES) : host;
+            SocketChannel socket = SocketChannel.open(new InetSocketAddress(target, port));
+            socket.write(ByteBuffer.wrap(WireCodec.HELLO));
+            hello.clear();
+            while (hello.hasRemaining()) {
+                if (socket.read(hello) < 0) {
+                    throw new IOException("Server closed connection " + i);
+                }
+            }
+            sockets.add(socket);
+            if ((i + 1) % 5000 == 0) {
+                System.out.printf("%d connections open%n", i + 1);
+            }
+        }
+        
+        System.out.printf("%d connections open in %.1f s; press Ctrl+C to close them%n",
+                sockets.size(), (System.nanoTime() - start) / 1e9);
+        Thread.sleep(Long.MAX_VALUE);
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    /**
+     * Resident set size from /proc (Linux only), or 0 if unavailable.
+     */
+    private static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not on Linux
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Server side of a connection from a client in the same JVM (see PokerServer.connectInProcess).
+ * Messages are handed over as they are, through two lock-free queues: nothing is encoded,
+ * copied or sent through a socket, so neither side may change a message after sending it.
+ *
+ * There is no thread of its own. Like an NioConnection, it pushes messages to the
+ * ClientHandler, but on the thread of whoever sent them or admitted the client. A drain
+ * counter makes sure only one thread runs the handler at a time and that messages are
+ * handled in the order they were sent. While the client waits for a seat its messages
+ * stay queued.
+ */
+public class InProcessConnection implements MessageSink {
+    private final PokerServer server;
+    private final Queue<PokerInfo> toServer;
+    private final Queue<PokerInfo> toClient;
+    private final AtomicInteger drainRequests;
+    private final ClientEnd clientEnd;
+    private ClientHandler handler;
+    private volatile Thread receiver;   // Client thread parked in receive()
+    private volatile boolean closed;
+    
+    /**
+     * The client's end of the connection.
+     */
+    private class ClientEnd implements MessageChannel {
+        
+        @Override
+        public void send(PokerInfo info) throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            toServer.add(info);
+            drain();
+        }
+        
+        @Override
+        public PokerInfo receive() throws IOException {
+            PokerInfo info = toClient.poll();
+            if (info != null) {
+                return info;
+            }
+            receiver = Thread.currentThread();
+            try {
+                while ((info = toClient.poll()) == null) {
+                    if (closed) {
+                        throw new EOFException("Server closed the connection");
+                    }
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                return info;
+            } finally {
+                receiver = null;
+            }
+        }
+        
+        @Override
+        public void close() {
+            if (!closed) {
+                handler.disconnect();
+            }
+        }
+    }
+    
+    public InProcessConnection(PokerServer server) {
+        this.server = server;
+        this.toServer = new ConcurrentLinkedQueue<>();
+        this.toClient = new ConcurrentLinkedQueue<>();
+        this.drainRequests = new AtomicInteger();
+        this.clientEnd = new ClientEnd();
+    }
+    
+    void setHandler(ClientHandler handler) {
+        this.handler = handler;
+    }
+    
+    /**
+     * The channel the client talks through.
+     */
+    public MessageChannel getClientEnd() {
+        return clientEnd;
+    }
+    
+    /**
+     * Called by the handler from any thread when its place in the queue changed, it was
+     * admitted or is to be handed off: sends the update and handles whatever the client
+     * sent meanwhile.
+     */
+    void wakeUp() {
+        drain();
+    }
+    
+    /**
+     * Run the handler on this thread until nothing is left for it, unless another thread
+     * already does; that thread then goes round once more for what was added meanwhile.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            try {
+                handler.onWakeUp();
+                PokerInfo info;
+                while (!closed && handler.isAdmitted() && (info = toServer.poll()) != null) {
+                    handler.handleMessage(info);
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    server.log("Client " + handler.getClientId() + " connection error: " + e.getMessage());
+                }
+                handler.disconnect();
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+    
+    /**
+     * Turn the client away with a SERVER_FULL message.
+     */
+    void reject(String reason) {
+        PokerInfo full = new PokerInfo();
+        full.setMessageType(PokerInfo.MessageType.SERVER_FULL);
+        full.setStatusMessage(reason);
+        toClient.add(full);
+        close();
+    }
+    
+    /**
+     * Pass a message to the client. Called by the handler.
+     */
+    @Override
+    public void send(PokerInfo info) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        toClient.add(info);
+        LockSupport.unpark(receiver);
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        toServer.clear();
+        LockSupport.unpark(receiver);
+    }
+}
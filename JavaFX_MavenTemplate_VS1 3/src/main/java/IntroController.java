@@ -43,7 +43,7 @@ public class IntroController {
             statusController = loader.getController();
             
             // Create and start server
-            server = new PokerServer(port, statusController);
+            server = new PokerServer(ServerConfig.fromSystemProperties(port), statusController);
             server.start();
             
             // Switch to status scene
@@ -54,7 +54,7 @@ public class IntroController {
             
             // Store server reference in status controller
             statusController.setServer(server);
-            
+        
         } catch (NumberFormatException e) {
             showAlert("Invalid Input", "Please enter a valid port number");
         } catch (Exception e) {
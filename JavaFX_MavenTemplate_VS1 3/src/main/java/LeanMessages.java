@@ -0,0 +1,284 @@
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Small per-type messages for Java serialization, and the adapter to and from PokerInfo.
+ *
+ * A serialized PokerInfo carries all of its fields whatever the message type, so the
+ * four messages of every hand travel as these instead: only the fields the type uses,
+ * cards as one byte each and the outcome as a StatusCode. ObjectStreamChannel sends them
+ * only to peers that have announced they read compact forms (see PokerInfo.writeObject),
+ * and turns them back into PokerInfo on receipt, so the rest of the code never sees them.
+ * Other message types still travel as PokerInfo.
+ */
+public final class LeanMessages {
+    private static final PokerInfo.PlayerAction[] ACTIONS = PokerInfo.PlayerAction.values();
+    
+    private LeanMessages() {
+    }
+    
+    /**
+     * Common part of every lean message.
+     */
+    public abstract static class LeanMessage implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        final int requestId;
+        
+        LeanMessage(PokerInfo info) {
+            this.requestId = info.getRequestId();
+        }
+        
+        /**
+         * The equivalent PokerInfo.
+         * @throws InvalidObjectException if the message carries an invalid card
+         */
+        public abstract PokerInfo toPokerInfo() throws InvalidObjectException;
+        
+        PokerInfo newInfo(PokerInfo.MessageType type) {
+            PokerInfo info = new PokerInfo();
+            info.setMessageType(type);
+            info.setRequestId(requestId);
+            return info;
+        }
+    }
+    
+    /** INITIAL_BET */
+    public static final class BetRequest extends LeanMessage {
+        private static final long serialVersionUID = 1L;
+        
+        private final int anteBet;
+        private final int pairPlusBet;
+        
+        BetRequest(PokerInfo info) {
+            super(info);
+            this.anteBet = info.getAnteBet();
+            this.pairPlusBet = info.getPairPlusBet();
+        }
+        
+        @Override
+        public PokerInfo toPokerInfo() {
+            PokerInfo info = newInfo(PokerInfo.MessageType.INITIAL_BET);
+            info.setAnteBet(anteBet);
+            info.setPairPlusBet(pairPlusBet);
+            return info;
+        }
+    }
+    
+    /** CARDS_DEALT */
+    public static final class DealResponse extends LeanMessage {
+        private static final long serialVersionUID = 1L;
+        
+        private final int clientId;
+        private final int handId;
+        private final int anteBet;
+        private final int pairPlusBet;
+        private final byte[] playerCards;
+        private final byte[] dealerCards; // Shown face down
+        private final byte[] deckCommitment;
+        private final int commitmentIndex;
+        private final byte[] commitmentProof;
+        private final byte[] commitmentRoot;
+        private final byte[] handToken;
+        
+        DealResponse(PokerInfo info) {
+            super(info);
+            this.clientId = info.getClientId();
+            this.handId = info.getHandId();
+            this.anteBet = info.getAnteBet();
+            this.pairPlusBet = info.getPairPlusBet();
+            this.playerCards = pack(info.getPlayerCards());
+            this.dealerCards = pack(info.getDealerCards());
+            this.deckCommitment = info.getDeckCommitment();
+            this.commitmentIndex = info.getCommitmentIndex();
+            this.commitmentProof = info.getCommitmentProof();
+            this.commitmentRoot = info.getCommitmentRoot();
+            this.handToken = info.getHandToken();
+        }
+        
+        @Override
+        public PokerInfo toPokerInfo() throws InvalidObjectException {
+            PokerInfo info = newInfo(PokerInfo.MessageType.CARDS_DEALT);
+            info.setClientId(clientId);
+            info.setHandId(handId);
+            info.setAnteBet(anteBet);
+            info.setPairPlusBet(pairPlusBet);
+            info.setPlayerCards(unpack(playerCards));
+            info.setDealerCards(unpack(dealerCards));
+            info.setDealerCardsHidden(true);
+            info.setDeckCommitment(deckCommitment);
+            info.setCommitmentIndex(commitmentIndex);
+            info.setCommitmentProof(commitmentProof);
+            info.setCommitmentRoot(commitmentRoot);
+            info.setHandToken(handToken);
+            return info;
+        }
+    }
+    
+    /** PLAYER_ACTION */
+    public static final class ActionRequest extends LeanMessage {
+        private static final long serialVersionUID = 1L;
+        
+        private final byte action;
+        private final int handId;
+        private final byte[] handToken;
+        
+        ActionRequest(PokerInfo info) {
+            super(info);
+            this.action = packAction(info.getPlayerAction());
+            this.handId = info.getHandId();
+            this.handToken = info.getHandToken();
+        }
+        
+        @Override
+        public PokerInfo toPokerInfo() throws InvalidObjectException {
+            PokerInfo info = newInfo(PokerInfo.MessageType.PLAYER_ACTION);
+            info.setPlayerAction(unpackAction(action));
+            info.setHandId(handId);
+            info.setHandToken(handToken);
+            return info;
+        }
+    }
+    
+    /** GAME_RESULT */
+    public static final class SettlementResponse extends LeanMessage {
+        private static final long serialVersionUID = 1L;
+        
+        private final int clientId;
+        private final int handId;
+        private final byte action;
+        private final boolean dealerQualified;
+        private final byte handRankPlayer;
+        private final byte handRankDealer;
+        private final int pairPlusPayout;
+        private final int antePlayPayout;
+        private final int deltaWinnings;
+        private final int totalWinnings;
+        private final byte[] playerCards;
+        private final byte[] dealerCards;
+        private final long handSeed;
+        private final byte[] handSalt;
+        private final byte[] nextDeckCommitment;
+        private final byte status;
+        private final String statusMessage; // Only for statuses without a code
+        private final byte[] deckCommitment; // One-shot hands only
+        private final int commitmentIndex;
+        private final byte[] commitmentProof;
+        private final byte[] commitmentRoot;
+        
+        SettlementResponse(PokerInfo info) {
+            super(info);
+            this.clientId = info.getClientId();
+            this.handId = info.getHandId();
+            this.action = packAction(info.getPlayerAction());
+            this.dealerQualified = info.isDealerQualified();
+            this.handRankPlayer = (byte) info.getHandRankPlayer();
+            this.handRankDealer = (byte) info.getHandRankDealer();
+            this.pairPlusPayout = info.getPairPlusPayout();
+            this.antePlayPayout = info.getAntePlayPayout();
+            this.deltaWinnings = info.getDeltaWinningsThisHand();
+            this.totalWinnings = info.getTotalWinnings();
+            this.playerCards = pack(info.getPlayerCards());
+            this.dealerCards = pack(info.getDealerCards());
+            this.handSeed = info.getHandSeed();
+            this.handSalt = info.getHandSalt();
+            this.nextDeckCommitment = info.getNextDeckCommitment();
+            this.status = (byte) StatusCode.toCode(info.getStatusCode());
+            this.statusMessage = info.getStatusCode() == null ? info.getStatusMessage() : null;
+            this.deckCommitment = info.getDeckCommitment();
+            this.commitmentIndex = info.getCommitmentIndex();
+            this.commitmentProof = info.getCommitmentProof();
+            this.commitmentRoot = info.getCommitmentRoot();
+        }
+        
+        @Override
+        public PokerInfo toPokerInfo() throws InvalidObjectException {
+            PokerInfo info = newInfo(PokerInfo.MessageType.GAME_RESULT);
+            info.setClientId(clientId);
+            info.setHandId(handId);
+            info.setPlayerAction(unpackAction(action));
+            info.setDealerCardsHidden(false);
+            info.setDealerQualified(dealerQualified);
+            info.setHandRankPlayer(handRankPlayer);
+            info.setHandRankDealer(handRankDealer);
+            info.setPairPlusPayout(pairPlusPayout);
+            info.setAntePlayPayout(antePlayPayout);
+            info.setDeltaWinningsThisHand(deltaWinnings);
+            info.setTotalWinnings(totalWinnings);
+            info.setPlayerCards(unpack(playerCards));
+            info.setDealerCards(unpack(dealerCards));
+            info.setHandSeed(handSeed);
+            info.setHandSalt(handSalt);
+            info.setNextDeckCommitment(nextDeckCommitment);
+            info.setStatusCode(StatusCode.fromCode(status));
+            info.setStatusMessage(statusMessage);
+            info.setDeckCommitment(deckCommitment);
+            info.setCommitmentIndex(commitmentIndex);
+            info.setCommitmentProof(commitmentProof);
+            info.setCommitmentRoot(commitmentRoot);
+            return info;
+        }
+    }
+    
+    /**
+     * Lean form of a message, for the four message types of a hand.
+     * @return the lean message, or null if the type has none and goes as PokerInfo
+     */
+    public static LeanMessage toLean(PokerInfo info) {
+        if (info.getMessageType() == null) {
+            return null;
+        }
+        switch (info.getMessageType()) {
+            case INITIAL_BET:
+                return new BetRequest(info);
+            case CARDS_DEALT:
+                return new DealResponse(info);
+            case PLAYER_ACTION:
+                return new ActionRequest(info);
+            case GAME_RESULT:
+                return new SettlementResponse(info);
+            default:
+                return null;
+        }
+    }
+    
+    private static byte[] pack(ArrayList<Card> cards) {
+        if (cards == null) {
+            return null;
+        }
+        byte[] packed = new byte[cards.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = (byte) cards.get(i).getIndex();
+        }
+        return packed;
+    }
+    
+    private static ArrayList<Card> unpack(byte[] packed) throws InvalidObjectException {
+        if (packed == null) {
+            return null;
+        }
+        ArrayList<Card> cards = new ArrayList<>(packed.length);
+        for (byte index : packed) {
+            if (index < 0 || index >= Card.DECK_SIZE) {
+                throw new InvalidObjectException("Card index out of range: " + index);
+            }
+            cards.add(Card.of(index));
+        }
+        return cards;
+    }
+    
+    private static byte packAction(PokerInfo.PlayerAction action) {
+        return (byte) (action == null ? 0 : action.ordinal() + 1);
+    }
+    
+    private static PokerInfo.PlayerAction unpackAction(byte code) throws InvalidObjectException {
+        if (code == 0) {
+            return null;
+        }
+        if (code < 0 || code > ACTIONS.length) {
+            throw new InvalidObjectException("Unknown player action " + code);
+        }
+        return ACTIONS[code - 1];
+    }
+}
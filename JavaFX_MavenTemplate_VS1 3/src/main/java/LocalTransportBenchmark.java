@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares TCP loopback, a Unix domain socket and an in-process connection for a
+ * client on the server's host:
+ *
+ *   java -cp target/classes LocalTransportBenchmark [hands] [threads|nio]
+ *
+ * Latency: one client waits for every reply, two round trips per hand.
+ * Throughput: one client keeps WINDOW one-shot hands in flight (see RequestPipeline).
+ */
+public class LocalTransportBenchmark {
+    private static final int PORT = 5598;
+    private static final int WINDOW = 64;
+    
+    public static void main(String[] args) throws Exception {
+        int hands = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        ServerConfig.IoMode mode = args.length > 1 ? ServerConfig.IoMode.valueOf(args[1].toUpperCase())
+                : ServerConfig.IoMode.THREADS;
+        if (!UnixSockets.isSupported()) {
+            System.err.println("Unix domain sockets need Java 16 or newer");
+            System.exit(1);
+        }
+        
+        Path socketPath = Files.createTempDirectory("poker").resolve("poker.sock");
+        ServerConfig config = new ServerConfig(PORT);
+        config.setIoMode(mode);
+        config.setCommitments(false);
+        config.setUnixSocketPath(socketPath);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        
+        String[] hosts = {"localhost", UnixSockets.HOST_PREFIX + socketPath, null};
+        String[] labels = {"tcp", "unix", "in-process"};
+        System.out.printf("%d hands per run, %s server%n", hands, mode);
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            for (int i = 0; i < hosts.length; i++) {
+                long waiting = playWaiting(connect(server, hosts[i]), hands);
+                long pipelined = playPipelined(connect(server, hosts[i]), hands);
+                if (round == 1) {
+                    System.out.printf("%-10s %6.2f us/round trip, %8.0f hands/s pipelined (%.0f messages/s)%n",
+                            labels[i], waiting / 1e3 / (2.0 * hands), hands * 1e9 / pipelined,
+                            2 * hands * 1e9 / pipelined);
+                }
+            }
+        }
+        
+        server.stop();
+        System.exit(0);
+    }
+    
+    /**
+     * @param host TCP host, unix:/path, or null for an in-process connection
+     */
+    private static RequestPipeline connect(PokerServer server, String host) throws IOException {
+        MessageChannel channel = host == null ? server.connectInProcess() : Connections.connect(host, PORT, WireFormat.BINARY);
+        return new RequestPipeline(channel, position -> { });
+    }
+    
+    private static long playWaiting(RequestPipeline pipeline, int hands) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < hands; i++) {
+            PokerInfo dealt = pipeline.await(pipeline.send(bet(PokerInfo.MessageType.INITIAL_BET)));
+            PokerInfo fold = new PokerInfo();
+            fold.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+            fold.setPlayerAction(PokerInfo.PlayerAction.FOLD);
+            fold.setHandId(dealt.getHandId());
+            pipeline.await(pipeline.send(fold));
+        }
+        long elapsed = System.nanoTime() - start;
+        pipeline.getChannel().close();
+        return elapsed;
+    }
+    
+    private static long playPipelined(RequestPipeline pipeline, int hands) throws IOException {
+        int[] ids = new int[hands];
+        long start = System.nanoTime();
+        for (int i = 0; i < hands; i++) {
+            if (i >= WINDOW) {
+                pipeline.await(ids[i - WINDOW]);
+            }
+            ids[i] = pipeline.send(bet(PokerInfo.MessageType.ONE_SHOT_HAND));
+        }
+        for (int i = Math.max(0, hands - WINDOW); i < hands; i++) {
+            pipeline.await(ids[i]);
+        }
+        long elapsed = System.nanoTime() - start;
+        pipeline.getChannel().close();
+        return elapsed;
+    }
+    
+    private static PokerInfo bet(PokerInfo.MessageType type) {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(type);
+        bet.setAnteBet(10);
+        bet.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        return bet;
+    }
+}
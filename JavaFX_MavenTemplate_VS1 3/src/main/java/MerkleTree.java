@@ -0,0 +1,131 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 Merkle tree over a power-of-two number of leaf hashes.
+ * Used to commit to a whole batch of shuffled decks with a single root hash;
+ * each hand then only needs its leaf hash and the sibling path up to the root.
+ *
+ * Leaves and internal nodes are hashed with different prefixes (0x00 / 0x01) so a
+ * node can never be passed off as a leaf.
+ */
+public class MerkleTree {
+    public static final int HASH_SIZE = 32;
+    
+    static final byte LEAF_PREFIX = 0x00;
+    static final byte NODE_PREFIX = 0x01;
+    
+    private final int leafCount;
+    
+    // Heap layout: node i has children 2i and 2i+1, the root is node 1 and leaves start at node leafCount
+    private final byte[] nodes;
+    
+    /**
+     * Build a tree from leaf hashes.
+     * @param leaves leaf hashes (32 bytes each); the count must be a power of two
+     */
+    public MerkleTree(byte[][] leaves) {
+        int count = leaves.length;
+        if (count == 0 || Integer.bitCount(count) != 1) {
+            throw new IllegalArgumentException("Leaf count must be a power of two: " + count);
+        }
+        
+        leafCount = count;
+        nodes = new byte[2 * count * HASH_SIZE];
+        for (int i = 0; i < count; i++) {
+            if (leaves[i].length != HASH_SIZE) {
+                throw new IllegalArgumentException("Leaf " + i + " is not a SHA-256 hash");
+            }
+            System.arraycopy(leaves[i], 0, nodes, (count + i) * HASH_SIZE, HASH_SIZE);
+        }
+        
+        MessageDigest digest = sha256();
+        for (int i = count - 1; i >= 1; i--) {
+            digest.update(NODE_PREFIX);
+            digest.update(nodes, 2 * i * HASH_SIZE, HASH_SIZE);
+            digest.update(nodes, (2 * i + 1) * HASH_SIZE, HASH_SIZE);
+            byte[] hash = digest.digest();
+            System.arraycopy(hash, 0, nodes, i * HASH_SIZE, HASH_SIZE);
+        }
+    }
+    
+    public int getLeafCount() {
+        return leafCount;
+    }
+    
+    public byte[] getRoot() {
+        return node(1);
+    }
+    
+    public byte[] getLeaf(int index) {
+        return node(leafCount + index);
+    }
+    
+    /**
+     * Get the proof path for a leaf: the sibling hashes from the leaf level up, concatenated.
+     * @param index leaf index
+     * @return log2(leafCount) * 32 bytes
+     */
+    public byte[] getProof(int index) {
+        if (index < 0 || index >= leafCount) {
+            throw new IllegalArgumentException("Leaf index out of range: " + index);
+        }
+        
+        int depth = Integer.numberOfTrailingZeros(leafCount);
+        byte[] proof = new byte[depth * HASH_SIZE];
+        int node = leafCount + index;
+        for (int level = 0; level < depth; level++) {
+            System.arraycopy(nodes, (node ^ 1) * HASH_SIZE, proof, level * HASH_SIZE, HASH_SIZE);
+            node >>= 1;
+        }
+        return proof;
+    }
+    
+    /**
+     * Check that a leaf hash at the given index is part of the tree with this root.
+     * @param leaf leaf hash
+     * @param index leaf index
+     * @param proof sibling path from getProof
+     * @param root expected root hash
+     * @return true if the path leads to the root
+     */
+    public static boolean verify(byte[] leaf, int index, byte[] proof, byte[] root) {
+        if (leaf == null || proof == null || root == null || proof.length % HASH_SIZE != 0) {
+            return false;
+        }
+        int depth = proof.length / HASH_SIZE;
+        if (index < 0 || depth > 30 || index >= (1 << depth)) {
+            return false;
+        }
+        
+        MessageDigest digest = sha256();
+        byte[] hash = leaf;
+        for (int level = 0; level < depth; level++) {
+            digest.update(NODE_PREFIX);
+            if (((index >> level) & 1) == 0) {
+                digest.update(hash);
+                digest.update(proof, level * HASH_SIZE, HASH_SIZE);
+            } else {
+                digest.update(proof, level * HASH_SIZE, HASH_SIZE);
+                digest.update(hash);
+            }
+            hash = digest.digest();
+        }
+        return MessageDigest.isEqual(hash, root);
+    }
+    
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private byte[] node(int i) {
+        byte[] hash = new byte[HASH_SIZE];
+        System.arraycopy(nodes, i * HASH_SIZE, hash, 0, HASH_SIZE);
+        return hash;
+    }
+}
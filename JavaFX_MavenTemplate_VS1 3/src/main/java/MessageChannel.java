@@ -0,0 +1,16 @@
+import java.io.IOException;
+
+/**
+ * A connection that carries PokerInfo messages, independent of how they are encoded.
+ * ClientHandler and the clients talk through this instead of raw object streams.
+ */
+public interface MessageChannel extends MessageSink {
+    
+    /**
+     * Block until the next message arrives.
+     * @return the message
+     * @throws java.io.EOFException if the peer closed the connection
+     * @throws java.net.ProtocolException if the peer sent something that is not a valid message
+     */
+    PokerInfo receive() throws IOException;
+}
@@ -0,0 +1,19 @@
+import java.io.IOException;
+
+/**
+ * The sending half of a connection. Server ends whose incoming messages are pushed to
+ * their ClientHandler (multiplexed sessions, in-process and NIO connections) are only
+ * this; a MessageChannel can also be read from.
+ */
+public interface MessageSink {
+    
+    /**
+     * Send a message to the peer.
+     */
+    void send(PokerInfo info) throws IOException;
+    
+    /**
+     * Close the connection. Safe to call more than once.
+     */
+    void close();
+}
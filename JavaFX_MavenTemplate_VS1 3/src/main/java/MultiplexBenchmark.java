@@ -0,0 +1,98 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares N clients on N connections with N sessions over one multiplexed connection:
+ *
+ *   java -cp target/classes MultiplexBenchmark [sessions] [hands per session]
+ *
+ * Every client keeps WINDOW one-shot hands in flight (see RequestPipeline). Reports the
+ * hands per second and the threads the JVM was running once every client had connected.
+ */
+public class MultiplexBenchmark {
+    private static final int PORT = 5599;
+    private static final int WINDOW = 16;
+    
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int hands = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        
+        ServerConfig config = new ServerConfig(PORT);
+        config.setCommitments(false);
+        config.setMaxClients(sessions + 1);
+        config.setWaitQueueSize(sessions);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        
+        ExecutorService players = Executors.newFixedThreadPool(sessions);
+        System.out.printf("%d clients, %d hands each%n", sessions, hands);
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            for (boolean multiplexed : new boolean[] {false, true}) {
+                MultiplexedClient gateway = multiplexed ? MultiplexedClient.connect("localhost", PORT) : null;
+                List<MessageChannel> channels = new ArrayList<>();
+                for (int i = 0; i < sessions; i++) {
+                    channels.add(multiplexed ? gateway.openSession()
+                            : Connections.connect("localhost", PORT, WireFormat.BINARY));
+                }
+                Thread.sleep(200); // Let the server start the connections' threads
+                int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+                
+                long start = System.nanoTime();
+                List<CompletableFuture<Void>> runs = new ArrayList<>();
+                for (MessageChannel channel : channels) {
+                    runs.add(CompletableFuture.runAsync(() -> play(channel, hands), players));
+                }
+                for (CompletableFuture<Void> run : runs) {
+                    run.join();
+                }
+                long elapsed = System.nanoTime() - start;
+                
+                for (MessageChannel channel : channels) {
+                    channel.close();
+                }
+                if (gateway != null) {
+                    gateway.close();
+                }
+                if (round == 1) {
+                    System.out.printf("%-12s %8.0f hands/s, %4d threads in the JVM (%d of them players)%n",
+                            multiplexed ? "multiplexed" : "connections", (double) sessions * hands * 1e9 / elapsed,
+                            threads, sessions);
+                }
+                while (server.getClientCount() > 0) { // Let the server close the last round's connections
+                    Thread.sleep(50);
+                }
+            }
+        }
+        
+        players.shutdown();
+        server.stop();
+        System.exit(0);
+    }
+    
+    private static void play(MessageChannel channel, int hands) {
+        try {
+            RequestPipeline pipeline = new RequestPipeline(channel, position -> { });
+            int[] ids = new int[hands];
+            for (int i = 0; i < hands; i++) {
+                if (i >= WINDOW) {
+                    pipeline.await(ids[i - WINDOW]);
+                }
+                PokerInfo bet = new PokerInfo();
+                bet.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+                bet.setAnteBet(10);
+                bet.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+                ids[i] = pipeline.send(bet);
+            }
+            for (int i = Math.max(0, hands - WINDOW); i < hands; i++) {
+                pipeline.await(ids[i]);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Gateway side of a multiplexed connection (see MultiplexedConnection): one socket to the
+ * server carrying a session per end user. Each session is a MessageChannel of its own and
+ * plays exactly like a separate connection; one reader thread hands incoming frames to
+ * their sessions.
+ *
+ * A session starts with SESSION_WINDOW credits, spends one per message sent and gets
+ * more from the server's SESSION_CREDIT messages; send() blocks while it has none, so a
+ * busy session waits on its own without holding up the others.
+ */
+public class MultiplexedClient {
+    private static final int INITIAL_BUFFER = 512;
+    
+    // Queued for a session's reader once the session or connection has closed
+    private static final PokerInfo END = new PokerInfo();
+    
+    private final Socket socket;
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER);
+    private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+    private int lastSessionId; // Guarded by writeLock
+    private volatile boolean closed;
+    
+    /**
+     * One end user's session; used like any other MessageChannel.
+     */
+    public class Session implements MessageChannel {
+        private volatile int id; // 0 until its first message opens it on the server
+        private final LinkedBlockingQueue<PokerInfo> inbox = new LinkedBlockingQueue<>();
+        private final Semaphore credits = new Semaphore(MultiplexedConnection.SESSION_WINDOW);
+        private volatile boolean sessionClosed;
+        
+        public int getId() {
+            return id;
+        }
+        
+        /**
+         * Send a message, waiting for credit from the server if the session's window is used up.
+         */
+        @Override
+        public void send(PokerInfo info) throws IOException {
+            if (sessionClosed || closed) {
+                throw new EOFException("Session " + id + " is closed");
+            }
+            try {
+                credits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            writeFrame(this, info);
+        }
+        
+        @Override
+        public PokerInfo receive() throws IOException {
+            PokerInfo info;
+            try {
+                info = inbox.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (info == END) {
+                inbox.add(END); // Every later receive ends the same way
+                throw new EOFException("Session " + id + " closed");
+            }
+            return info;
+        }
+        
+        /**
+         * Close the session; the connection and the other sessions stay open.
+         */
+        @Override
+        public void close() {
+            if (sessionClosed) {
+                return;
+            }
+            end();
+            if (!closed && id != 0) {
+                PokerInfo disconnect = new PokerInfo();
+                disconnect.setMessageType(PokerInfo.MessageType.DISCONNECT);
+                try {
+                    writeFrame(this, disconnect); // Needs no credit, the server acts on it at once
+                } catch (IOException e) {
+                    // The connection is closing anyway
+                }
+            }
+        }
+        
+        private void end() {
+            sessionClosed = true;
+            sessions.remove(id);
+            inbox.add(END);
+        }
+    }
+    
+    private MultiplexedClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.output = socket.getOutputStream();
+    }
+    
+    /**
+     * Open a multiplexed connection to a server running in a thread mode, over TLS if a
+     * trust store is configured (Tls.clientFromSystemProperties).
+     */
+    public static MultiplexedClient connect(String host, int port) throws IOException {
+        return connect(host, port, Tls.clientFromSystemProperties());
+    }
+    
+    /**
+     * Open a multiplexed connection to a server running in a thread mode.
+     * @param tls context for a TLS connection, or null for plaintext
+     */
+    public static MultiplexedClient connect(String host, int port, SSLContext tls) throws IOException {
+        Socket socket = tls != null ? Tls.connect(tls, host, port) : new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            MultiplexedClient client = new MultiplexedClient(socket);
+            client.output.write(WireCodec.MULTIPLEXED_HELLO);
+            client.output.flush();
+            byte[] hello = new byte[WireCodec.MULTIPLEXED_HELLO.length];
+            client.input.readFully(hello);
+            if (!Arrays.equals(hello, WireCodec.MULTIPLEXED_HELLO)) {
+                throw new ProtocolException("Server does not support multiplexed connections");
+            }
+            Thread reader = new Thread(client::readFrames, "poker-mux-reader");
+            reader.setDaemon(true);
+            reader.start();
+            return client;
+        } catch (IOException e) {
+            Connections.closeQuietly(socket);
+            throw e;
+        }
+    }
+    
+    /**
+     * Open a new session. It gets its id, and the server sets it up, with its first message.
+     */
+    public Session openSession() throws IOException {
+        if (closed) {
+            throw new EOFException("Connection closed");
+        }
+        return new Session();
+    }
+    
+    /**
+     * Number of sessions open on the server.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    private void readFrames() {
+        byte[] buffer = new byte[INITIAL_BUFFER];
+        try {
+            while (!closed) {
+                int length = input.readUnsignedShort();
+                if (length > buffer.length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                input.readFully(buffer, 0, length);
+                ByteBuffer body = ByteBuffer.wrap(buffer, 0, length);
+                Session session = sessions.get(WireCodec.getUnsigned(body));
+                PokerInfo info = WireCodec.decode(body);
+                if (session == null) {
+                    continue; // Closed here while the reply was on its way
+                }
+                
+                if (info.getMessageType() == PokerInfo.MessageType.SESSION_CREDIT) {
+                    session.credits.release(info.getSessionCredit());
+                } else if (info.getMessageType() == PokerInfo.MessageType.DISCONNECT) {
+                    session.end();
+                } else {
+                    session.inbox.add(info);
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed or broken: end every session
+        }
+        close();
+    }
+    
+    /**
+     * Write a message for a session, giving the session its id first if this is its first
+     * message. Ids are handed out under the write lock, so new sessions reach the server
+     * in increasing order as it requires.
+     */
+    private void writeFrame(Session session, PokerInfo info) throws IOException {
+        writeLock.lock();
+        try {
+            if (session.id == 0) {
+                session.id = ++lastSessionId;
+                sessions.put(session.id, session);
+            }
+            while (true) {
+                writeBuffer.clear();
+                try {
+                    WireCodec.encodeSessionFrame(session.id, info, writeBuffer);
+                    break;
+                } catch (BufferOverflowException e) {
+                    writeBuffer = ByteBuffer.allocate(writeBuffer.capacity() * 2);
+                }
+            }
+            output.write(writeBuffer.array(), 0, writeBuffer.position());
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Close the connection and with it every session.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Connections.closeQuietly(socket);
+        for (Session session : new ArrayList<>(sessions.values())) {
+            session.end();
+        }
+    }
+}
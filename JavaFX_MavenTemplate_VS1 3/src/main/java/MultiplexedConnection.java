@@ -0,0 +1,382 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server side of a multiplexed connection: one socket from a gateway carrying many
+ * independent game sessions, each with its own ClientHandler (deck, hand counter,
+ * winnings, seat). Served in the thread modes; NIO mode takes single sessions only.
+ *
+ * The connection opens with WireCodec.MULTIPLEXED_HELLO and every frame then names its
+ * session (WireCodec.encodeSessionFrame). The first frame with a new, higher session id
+ * opens that session, which is admitted like a connection of its own; DISCONNECT closes
+ * it, and the server sends DISCONNECT when it closes a session itself.
+ *
+ * Flow control is per session. A session may have SESSION_WINDOW messages on their way
+ * to its handler; the server grants more with SESSION_CREDIT as it handles them, and a
+ * session that sends beyond its window is closed. Fairness: one thread reads frames and
+ * queues them per session, another serves sessions round-robin, one message per turn,
+ * so a busy session cannot hold back the others for more than a message each. Handlers
+ * only run on the serving thread: a session the reader closes is marked and closed there.
+ */
+public class MultiplexedConnection {
+    /** Messages a session may send before the server grants more. */
+    public static final int SESSION_WINDOW = 32;
+    
+    private static final int INITIAL_BUFFER = 512;
+    
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final Runnable onClose;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER);
+    private byte[] readBuffer = new byte[INITIAL_BUFFER];
+    
+    private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+    private int highestSessionId;
+    
+    // Sessions with work for the serving thread, in turn order
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readyChanged = lock.newCondition();
+    private final ArrayDeque<Session> ready = new ArrayDeque<>();
+    private volatile boolean closed;
+    
+    /**
+     * One game session on the connection; the ClientHandler's channel.
+     */
+    public class Session implements MessageSink {
+        private final int id;
+        private ClientHandler handler;
+        private final ArrayDeque<PokerInfo> inbox = new ArrayDeque<>(); // Guarded by lock
+        private boolean scheduled;      // In ready, or being served
+        private boolean wakeRequested;  // Queue position changed while being served
+        private boolean closeRequested; // Client closed the session or overran its window
+        private int handledSinceCredit; // Serving thread only
+        private volatile boolean sessionClosed;
+        
+        Session(int id) {
+            this.id = id;
+        }
+        
+        void setHandler(ClientHandler handler) {
+            this.handler = handler;
+        }
+        
+        public int getId() {
+            return id;
+        }
+        
+        /**
+         * Queue a message from the client. Called by the reading thread.
+         * @return false if the session exceeded its window
+         */
+        private boolean deliver(PokerInfo info) {
+            lock.lock();
+            try {
+                if (inbox.size() >= SESSION_WINDOW) {
+                    return false;
+                }
+                inbox.add(info);
+                schedule();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Called by the handler from any thread when its place in the queue changed, it was
+         * admitted or is to be handed off: the serving thread sends the update and handles
+         * what was held meanwhile.
+         */
+        void wakeUp() {
+            lock.lock();
+            try {
+                wakeRequested = true;
+                schedule();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Have the serving thread disconnect the handler, after any turn it is in. Called by the reading thread.
+         */
+        private void requestClose() {
+            lock.lock();
+            try {
+                closeRequested = true;
+                inbox.clear();
+                schedule();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        private void schedule() {
+            if (!scheduled && !sessionClosed) {
+                scheduled = true;
+                ready.add(this);
+                readyChanged.signal();
+            }
+        }
+        
+        /**
+         * One turn on the serving thread: the queue update if any, and at most one message.
+         */
+        private void serveOnce() {
+            try {
+                boolean closing;
+                lock.lock();
+                try {
+                    wakeRequested = false;
+                    closing = closeRequested;
+                } finally {
+                    lock.unlock();
+                }
+                if (closing) {
+                    handler.disconnect(); // Closes the session, so it is never scheduled again
+                    return;
+                }
+                handler.onWakeUp();
+                PokerInfo next = null;
+                if (handler.isAdmitted()) {
+                    lock.lock();
+                    try {
+                        next = inbox.poll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                if (next != null) {
+                    handler.handleMessage(next);
+                    if (++handledSinceCredit >= SESSION_WINDOW / 2 && !sessionClosed) {
+                        PokerInfo credit = new PokerInfo();
+                        credit.setMessageType(PokerInfo.MessageType.SESSION_CREDIT);
+                        credit.setSessionCredit(handledSinceCredit);
+                        send(credit);
+                        handledSinceCredit = 0;
+                    }
+                }
+            } catch (IOException e) {
+                if (!sessionClosed) {
+                    handler.disconnect();
+                }
+            }
+            
+            lock.lock();
+            try {
+                scheduled = false;
+                if (wakeRequested || (handler.isAdmitted() && !inbox.isEmpty())) {
+                    schedule();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public void send(PokerInfo info) throws IOException {
+            if (sessionClosed) {
+                throw new EOFException("Session " + id + " is closed");
+            }
+            writeFrame(id, info);
+        }
+        
+        /**
+         * Close the session and tell the client, unless the whole connection is closing.
+         */
+        @Override
+        public void close() {
+            if (sessionClosed) {
+                return;
+            }
+            sessionClosed = true;
+            sessions.remove(id);
+            lock.lock();
+            try {
+                inbox.clear();
+            } finally {
+                lock.unlock();
+            }
+            if (!closed) {
+                PokerInfo end = new PokerInfo();
+                end.setMessageType(PokerInfo.MessageType.DISCONNECT);
+                try {
+                    writeFrame(id, end);
+                } catch (IOException e) {
+                    // The connection is failing; its reader closes the other sessions
+                }
+            }
+        }
+    }
+    
+    private MultiplexedConnection(InputStream input, OutputStream output, Runnable onClose) {
+        this.input = new DataInputStream(input);
+        this.output = output;
+        this.onClose = onClose;
+    }
+    
+    /**
+     * Whether a connection's first bytes are the multiplexed hello.
+     */
+    public static boolean isHello(byte[] start) {
+        return Arrays.equals(start, WireCodec.MULTIPLEXED_HELLO);
+    }
+    
+    /**
+     * Open the server side: consumes the client's hello and answers with our own.
+     * @param input stream from the gateway, positioned at the hello (should be buffered)
+     */
+    public static MultiplexedConnection server(InputStream input, OutputStream output, Runnable onClose)
+            throws IOException {
+        MultiplexedConnection connection = new MultiplexedConnection(input, output, onClose);
+        connection.input.readFully(new byte[WireCodec.MULTIPLEXED_HELLO.length]);
+        output.write(WireCodec.MULTIPLEXED_HELLO);
+        output.flush();
+        return connection;
+    }
+    
+    /**
+     * Serve the connection's sessions until it closes. Reads on the calling thread and
+     * runs the handlers on a second one, started like a client thread (a virtual thread
+     * when the server uses them).
+     */
+    public void serve(PokerServer server) throws IOException {
+        server.startClientThread(this::serveSessions);
+        try {
+            readFrames(server);
+        } finally {
+            close();
+            for (Session session : new ArrayList<>(sessions.values())) {
+                session.handler.disconnect();
+            }
+        }
+    }
+    
+    private void readFrames(PokerServer server) throws IOException {
+        while (!closed) {
+            int length = input.readUnsignedShort();
+            if (length > readBuffer.length) {
+                readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+            }
+            input.readFully(readBuffer, 0, length);
+            ByteBuffer body = ByteBuffer.wrap(readBuffer, 0, length);
+            int sessionId = WireCodec.getUnsigned(body);
+            PokerInfo info = WireCodec.decode(body);
+            
+            Session session = sessions.get(sessionId);
+            if (session == null) {
+                if (sessionId <= highestSessionId || info.getMessageType() == PokerInfo.MessageType.DISCONNECT) {
+                    continue; // Still in flight when its session closed
+                }
+                highestSessionId = sessionId;
+                session = open(sessionId, server);
+                if (session == null) {
+                    continue;
+                }
+            }
+            
+            if (info.getMessageType() == PokerInfo.MessageType.DISCONNECT) {
+                session.requestClose();
+            } else if (!session.deliver(info)) {
+                server.log("Client " + session.handler.getClientId() + ": session " + sessionId
+                        + " sent more than its window of " + SESSION_WINDOW + " messages");
+                session.requestClose();
+            }
+        }
+    }
+    
+    /**
+     * Open a session and admit it, or turn it away if the server is full.
+     */
+    private Session open(int sessionId, PokerServer server) throws IOException {
+        Session session = new Session(sessionId);
+        sessions.put(sessionId, session);
+        if (!server.admitSession(session)) {
+            sessions.remove(sessionId);
+            PokerInfo full = new PokerInfo();
+            full.setMessageType(PokerInfo.MessageType.SERVER_FULL);
+            full.setStatusMessage(server.rejectReason());
+            writeFrame(sessionId, full);
+            return null;
+        }
+        session.wakeUp(); // Tells a queued session its place in line
+        return session;
+    }
+    
+    private void serveSessions() {
+        while (true) {
+            Session session;
+            lock.lock();
+            try {
+                while (ready.isEmpty() && !closed) {
+                    readyChanged.await();
+                }
+                if (closed) {
+                    return;
+                }
+                session = ready.poll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            session.serveOnce();
+        }
+    }
+    
+    private void writeFrame(int sessionId, PokerInfo info) throws IOException {
+        writeLock.lock();
+        try {
+            while (true) {
+                writeBuffer.clear();
+                try {
+                    WireCodec.encodeSessionFrame(sessionId, info, writeBuffer);
+                    break;
+                } catch (BufferOverflowException e) {
+                    writeBuffer = ByteBuffer.allocate(writeBuffer.capacity() * 2);
+                }
+            }
+            output.write(writeBuffer.array(), 0, writeBuffer.position());
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Number of open sessions.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * Close the connection; its sessions are disconnected by serve(). Safe to call more than once.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        lock.lock();
+        try {
+            readyChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        onClose.run();
+    }
+}
@@ -0,0 +1,430 @@
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Server side of a binary-protocol connection served by an NioEventLoop.
+ * Frames are cut out of the loop's read buffer without blocking and passed to the
+ * ClientHandler on the loop thread. Replies are staged in the loop's buffer and written
+ * together when the loop flushes the connection (or straight away without
+ * ServerConfig.isWriteCoalescing()); whatever the socket does not take is copied and
+ * queued until it becomes writable again. While the client
+ * waits for a seat, the connection stops reading so its messages stay in the socket.
+ * A client that lets more than ServerConfig.getOutboundQueueLimit() writes pile up is
+ * too slow, and ServerConfig.SlowClientPolicy decides what happens to it.
+ *
+ * Over TLS, what is read goes through the TlsCodec first and frames are cut out of the
+ * decrypted bytes; what is sent is encrypted before it takes the same way to the socket.
+ */
+public class NioConnection implements MessageSink, OutboundQueue {
+    // First byte of a Java serialization stream header (0xACED)
+    private static final int JAVA_STREAM_MAGIC = 0xAC;
+    
+    private final SocketChannel socket;
+    private final NioEventLoop loop;
+    private final PokerServer server;
+    private final TlsCodec tls;                 // Null for plaintext
+    private ClientHandler handler;
+    private SelectionKey key;
+    
+    private boolean helloReceived;
+    private boolean paused;                     // Not reading while the client waits for a seat
+    private ByteBuffer partial;                 // Unprocessed input, only while a frame is incomplete
+    private ByteBuffer[] staged;                // Frames waiting for the loop to flush the connection
+    private int stagedCount;
+    private ArrayDeque<ByteBuffer> pendingWrites; // Output the socket has not taken yet
+    private ByteBuffer latestShared;            // Newest shared frame held back while the socket is backed up
+    private volatile int peakPendingWrites;
+    private volatile long shed;
+    private volatile boolean closed;
+    
+    public NioConnection(SocketChannel socket, NioEventLoop loop, PokerServer server) {
+        this(socket, loop, server, null);
+    }
+    
+    /**
+     * @param tls encrypts the connection, or null for plaintext
+     */
+    NioConnection(SocketChannel socket, NioEventLoop loop, PokerServer server, TlsCodec tls) {
+        this.socket = socket;
+        this.loop = loop;
+        this.server = server;
+        this.tls = tls;
+    }
+    
+    void setHandler(ClientHandler handler) {
+        this.handler = handler;
+    }
+    
+    /**
+     * Register with the loop's selector. Called on the loop thread.
+     */
+    void register(Selector selector) {
+        try {
+            key = socket.register(selector, SelectionKey.OP_READ, this);
+        } catch (ClosedChannelException e) {
+            handler.disconnect();
+        }
+    }
+    
+    /**
+     * Read what is available and handle every complete frame.
+     * @param buffer the loop's shared read buffer
+     */
+    void onReadable(ByteBuffer buffer) {
+        try {
+            buffer.clear();
+            int read = socket.read(buffer);
+            if (read < 0) {
+                handler.disconnect();
+                return;
+            }
+            buffer.flip();
+            if (tls != null) {
+                buffer = tls.unwrap(buffer, this::writeToSocket);
+                if (tls.isInboundClosed()) {
+                    handler.disconnect();
+                    return;
+                }
+            }
+            
+            if (partial != null) {
+                partial = append(partial, buffer);
+                processPartial();
+                return;
+            }
+            
+            process(buffer);
+            // Keep the start of an incomplete frame for the next read
+            if (!closed && buffer.hasRemaining()) {
+                partial = ByteBuffer.allocate(Math.max(buffer.remaining(), WireCodec.LENGTH_PREFIX + 64));
+                partial.put(buffer);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    private void processPartial() throws IOException {
+        partial.flip();
+        process(partial);
+        if (closed) {
+            return;
+        }
+        if (partial.hasRemaining()) {
+            partial.compact();
+        } else {
+            partial = null;
+        }
+    }
+    
+    private void process(ByteBuffer input) throws IOException {
+        if (!helloReceived) {
+            if (input.remaining() < WireCodec.HELLO.length) {
+                return;
+            }
+            if ((input.get(input.position()) & 0xFF) == JAVA_STREAM_MAGIC) {
+                throw new ProtocolException("Java serialization clients are not supported in NIO mode");
+            }
+            for (byte expected : WireCodec.HELLO) {
+                if (input.get() != expected) {
+                    throw new ProtocolException("Peer does not speak the binary protocol (version " + WireCodec.HELLO[3] + ")");
+                }
+            }
+            helloReceived = true;
+            write(ByteBuffer.wrap(WireCodec.HELLO));
+        }
+        
+        while (!closed && input.remaining() >= WireCodec.LENGTH_PREFIX) {
+            if (!handler.isAdmitted()) {
+                // Waiting for a seat: stop reading until admitted, the rest stays in the socket
+                pauseReading();
+                handler.updateQueuePosition();
+                return;
+            }
+            
+            int start = input.position();
+            int length = input.getShort(start) & 0xFFFF;
+            int end = start + WireCodec.LENGTH_PREFIX + length;
+            if (end > input.limit()) {
+                return;
+            }
+            
+            ByteBuffer body = input.duplicate();
+            body.position(start + WireCodec.LENGTH_PREFIX).limit(end);
+            PokerInfo info = WireCodec.decode(body);
+            input.position(end);
+            handler.handleMessage(info);
+        }
+        
+        if (!closed && !handler.isAdmitted()) {
+            pauseReading();
+            handler.updateQueuePosition();
+        }
+    }
+    
+    private void pauseReading() {
+        if (!paused) {
+            paused = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+    
+    /**
+     * Called by the handler from any thread when its place in the queue changed, it was
+     * admitted or is to be handed off: sends the update and resumes reading on the loop thread.
+     */
+    void wakeUp() {
+        loop.execute(this::resume);
+    }
+    
+    private void resume() {
+        if (closed || key == null || !helloReceived) {
+            return;
+        }
+        try {
+            handler.onWakeUp();
+            if (paused && !closed && handler.isAdmitted()) {
+                paused = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                if (partial != null) {
+                    processPartial();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    private void fail(IOException e) {
+        if (e instanceof ProtocolException) {
+            server.log("Client " + handler.getClientId() + ": Invalid message received: " + e.getMessage());
+        } else if (!closed) {
+            server.log("Client " + handler.getClientId() + " connection error: " + e.getMessage());
+        }
+        handler.disconnect();
+    }
+    
+    /**
+     * Close this connection after an unexpected error on the loop thread; the loop carries on.
+     */
+    void abort(RuntimeException e) {
+        server.log("Client " + handler.getClientId() + ": closed after an unexpected error: " + e);
+        try {
+            handler.disconnect();
+        } catch (RuntimeException suppressed) {
+            close();
+        }
+    }
+    
+    private static ByteBuffer append(ByteBuffer target, ByteBuffer source) {
+        if (target.remaining() < source.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(target.capacity() * 2, target.position() + source.remaining()));
+            target.flip();
+            larger.put(target);
+            target = larger;
+        }
+        target.put(source);
+        return target;
+    }
+    
+    /**
+     * Write any queued output once the socket can take more.
+     */
+    void onWritable() {
+        try {
+            while (!pendingWrites.isEmpty()) {
+                ByteBuffer next = pendingWrites.peek();
+                socket.write(next);
+                loop.countWrite(1);
+                if (next.hasRemaining()) {
+                    return;
+                }
+                pendingWrites.poll();
+            }
+            pendingWrites = null;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (latestShared != null) {
+                ByteBuffer latest = latestShared;
+                latestShared = null;
+                write(latest);
+            }
+        } catch (IOException e) {
+            handler.disconnect();
+        }
+    }
+    
+    /**
+     * Send a message. Must be called on the loop thread (i.e. from the handler).
+     */
+    @Override
+    public void send(PokerInfo info) throws IOException {
+        int limit = server.getConfig().getOutboundQueueLimit();
+        if (pendingWrites != null && limit > 0 && pendingWrites.size() >= limit) {
+            if (server.getConfig().getSlowClientPolicy() == ServerConfig.SlowClientPolicy.SHED
+                    && OutboundQueue.isSheddable(info)) {
+                shed++;
+                return;
+            }
+            throw OutboundQueue.tooSlow(pendingWrites.size());
+        }
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        write(loop.stage(info));
+    }
+    
+    /**
+     * Send a frame shared with other connections, such as a table event for spectators
+     * (see TableFeed). The frame is written from a duplicate and never copied. While the
+     * socket is backed up, only the newest shared frame is kept for when it drains.
+     * Must be called on the loop thread.
+     * @return whether an older shared frame that had not been sent yet was dropped for this one
+     */
+    boolean sendShared(ByteBuffer frame) {
+        if (closed) {
+            return false;
+        }
+        if (pendingWrites != null) {
+            boolean skipped = latestShared != null;
+            latestShared = frame.duplicate();
+            return skipped;
+        }
+        write(frame.duplicate());
+        return false;
+    }
+    
+    NioEventLoop getLoop() {
+        return loop;
+    }
+    
+    /**
+     * Stage a frame until the connection is flushed.
+     * @param frame in read mode; must stay unchanged until then
+     */
+    private void write(ByteBuffer frame) {
+        if (staged == null) {
+            staged = new ByteBuffer[8];
+        } else if (stagedCount == staged.length) {
+            staged = Arrays.copyOf(staged, stagedCount * 2);
+        }
+        staged[stagedCount++] = frame;
+        if (!server.getConfig().isWriteCoalescing()) {
+            flush();
+        } else if (stagedCount == 1) {
+            loop.scheduleFlush(this);
+        }
+    }
+    
+    /**
+     * Write the staged frames with one gathering write. Called by the loop, which reuses
+     * the staging buffer afterwards: whatever the socket does not take is copied.
+     */
+    void flush() {
+        int count = stagedCount;
+        if (count == 0) {
+            return;
+        }
+        stagedCount = 0;
+        try {
+            if (closed) {
+                return;
+            }
+            if (tls != null) {
+                tls.wrap(staged, count, this::writeToSocket);
+                return;
+            }
+            if (pendingWrites == null) {
+                socket.write(staged, 0, count);
+                loop.countWrite(count);
+            }
+            for (int i = 0; i < count; i++) {
+                if (staged[i].hasRemaining()) {
+                    queue(staged[i]);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            Arrays.fill(staged, 0, count, null);
+        }
+    }
+    
+    private void writeToSocket(ByteBuffer buffer) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (pendingWrites == null) {
+            socket.write(buffer);
+            loop.countWrite(1);
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+        }
+        queue(buffer);
+    }
+    
+    private void queue(ByteBuffer buffer) {
+        if (pendingWrites == null) {
+            pendingWrites = new ArrayDeque<>();
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+        
+        // Copy the rest, the buffer belongs to the loop
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer);
+        copy.flip();
+        pendingWrites.add(copy);
+        peakPendingWrites = Math.max(peakPendingWrites, pendingWrites.size());
+    }
+    
+    /**
+     * Writes the socket has not taken yet: roughly messages, or TLS records over TLS.
+     */
+    @Override
+    public int getQueuedMessages() {
+        ArrayDeque<ByteBuffer> pending = pendingWrites;
+        return pending == null ? 0 : pending.size(); // Read from other threads, so only a snapshot
+    }
+    
+    @Override
+    public int getPeakQueuedMessages() {
+        return peakPendingWrites;
+    }
+    
+    @Override
+    public long getShedMessages() {
+        return shed;
+    }
+    
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (loop.inLoop()) {
+            flush(); // Replies sent just before closing, e.g. RECONNECT
+            if (closed) {
+                return; // The flush failed and closed the connection
+            }
+        }
+        if (tls != null && pendingWrites == null && loop.inLoop()) {
+            tls.close(this::writeToSocket); // close_notify, if the socket takes it straight away
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore errors during cleanup
+        }
+    }
+}
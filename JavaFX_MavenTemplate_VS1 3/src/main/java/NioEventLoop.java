@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread of the NIO server. Owns a set of NioConnections and runs their
+ * reads, writes and game logic, so a connection's handler is only ever touched here.
+ * The read and encode buffers are shared by all connections of the loop; a connection
+ * only keeps buffers of its own while a frame or a write is incomplete.
+ *
+ * Frames are encoded one after the other into the staging buffer and stay there until
+ * the connection is flushed: at the end of the iteration, once the oldest has waited
+ * ServerConfig.getFlushDeadlineMicros(), or when the staging buffer is full. A flush
+ * hands all of a connection's frames to the socket in one gathering write.
+ */
+public class NioEventLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int STAGING_BUFFER_SIZE = 64 * 1024;
+    
+    private final PokerServer server;
+    private final Selector selector;
+    private final Queue<NioConnection> pending;
+    private final Queue<Runnable> tasks;
+    private final ByteBuffer readBuffer;
+    private final List<NioConnection> unflushed;  // Connections with frames in the staging buffer
+    private final long flushDeadlineNanos;
+    private ByteBuffer staging;
+    private long stagedSince;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile long socketWrites;
+    private volatile long framesWritten;
+    
+    public NioEventLoop(PokerServer server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        this.unflushed = new ArrayList<>();
+        this.flushDeadlineNanos = server.getConfig().getFlushDeadlineMicros() * 1000L;
+        this.staging = ByteBuffer.allocateDirect(STAGING_BUFFER_SIZE);
+    }
+    
+    /**
+     * Start the loop on its own thread.
+     */
+    public void start(String name) {
+        running = true;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Hand a new connection to this loop. Safe to call from any thread.
+     */
+    public void register(NioConnection connection) {
+        pending.add(connection);
+        selector.wakeup();
+    }
+    
+    /**
+     * Run a task on the loop thread, after the connections registered before it.
+     * Safe to call from any thread.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+    
+    /**
+     * Whether the caller runs on the loop thread.
+     */
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+    
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPending();
+                runTasks();
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isWritable()) {
+                            connection.onWritable();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable(readBuffer);
+                        }
+                    } catch (RuntimeException e) {
+                        // One connection's failure must not stop the loop serving the others
+                        connection.abort(e);
+                    }
+                    if (!unflushed.isEmpty() && System.nanoTime() - stagedSince >= flushDeadlineNanos) {
+                        flush();
+                    }
+                }
+                flush();
+            }
+        } catch (IOException e) {
+            server.log("Event loop error: " + e.getMessage());
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Ignore errors during cleanup
+            }
+        }
+    }
+    
+    private void registerPending() {
+        NioConnection connection;
+        while ((connection = pending.poll()) != null) {
+            connection.register(selector);
+        }
+    }
+    
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                server.log("Event loop task failed: " + e);
+            }
+        }
+    }
+    
+    /**
+     * Encode a frame into the staging buffer. Only used on the loop thread.
+     * @return the frame, in read mode, valid until the connection is flushed
+     */
+    ByteBuffer stage(PokerInfo info) {
+        while (true) {
+            int start = staging.position();
+            try {
+                WireCodec.encodeFrame(info, staging);
+                ByteBuffer frame = staging.duplicate();
+                frame.position(start).limit(staging.position());
+                return frame;
+            } catch (BufferOverflowException e) {
+                staging.position(start);
+                if (start > 0) {
+                    flush(); // Frees the staging buffer
+                } else {
+                    staging = ByteBuffer.allocateDirect(staging.capacity() * 2);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Remember to flush a connection that has just staged its first frame.
+     */
+    void scheduleFlush(NioConnection connection) {
+        if (unflushed.isEmpty()) {
+            stagedSince = System.nanoTime();
+        }
+        unflushed.add(connection);
+    }
+    
+    /**
+     * Flush every connection with staged frames, then start the staging buffer over.
+     */
+    private void flush() {
+        // Flushing may disconnect a client, and what that sends is staged again: keep going
+        for (int i = 0; i < unflushed.size(); i++) {
+            unflushed.get(i).flush();
+        }
+        unflushed.clear();
+        staging.clear();
+    }
+    
+    void countWrite(int frames) {
+        socketWrites++; // Only the loop thread writes
+        framesWritten += frames;
+    }
+    
+    /**
+     * Write calls made on sockets of this loop, gathering or not.
+     */
+    long getSocketWrites() {
+        return socketWrites;
+    }
+    
+    /**
+     * Frames (and TLS records) handed to those writes.
+     */
+    long getFramesWritten() {
+        return framesWritten;
+    }
+    
+    /**
+     * Stop the loop and wait briefly for it to exit. Connections should already be closed.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers which 64-bit nonces were used within a time window, to refuse replays.
+ *
+ * Nonces go into the current generation; once a window has passed it becomes the
+ * previous generation and the one before is dropped. A nonce is therefore remembered
+ * for at least one full window, which is as long as a token stays valid. Each
+ * generation is an open-addressing table of longs (8-16 bytes per nonce, no objects).
+ * A ReentrantLock rather than a monitor keeps virtual threads from pinning.
+ */
+public class NonceFilter {
+    private final long windowNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private LongSet current = new LongSet();
+    private LongSet previous = new LongSet();
+    private long generationStart;
+    
+    /**
+     * Open-addressing set of longs; 0 marks an empty slot, so 0 itself is stored as 1.
+     */
+    private static class LongSet {
+        private long[] table = new long[64];
+        private int size;
+        
+        boolean add(long value) {
+            if (value == 0) {
+                value = 1;
+            }
+            if (size * 2 >= table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+                if (table[i] == value) {
+                    return false;
+                }
+                if (table[i] == 0) {
+                    table[i] = value;
+                    size++;
+                    return true;
+                }
+            }
+        }
+        
+        boolean contains(long value) {
+            if (value == 0) {
+                value = 1;
+            }
+            int mask = table.length - 1;
+            for (int i = slot(value, mask); table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            size = 0;
+            for (long value : old) {
+                if (value != 0) {
+                    add(value);
+                }
+            }
+        }
+        
+        private static int slot(long value, int mask) {
+            long mixed = value * 0x9E3779B97F4A7C15L;
+            return (int) (mixed >>> 32) & mask;
+        }
+    }
+    
+    /**
+     * @param windowMillis how long a nonce must be remembered
+     */
+    public NonceFilter(long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.generationStart = System.nanoTime();
+    }
+    
+    /**
+     * Record a nonce.
+     * @return true the first time a nonce is seen within the window, false for a replay
+     */
+    public boolean firstUse(long nonce) {
+        return firstUse(nonce, System.nanoTime());
+    }
+    
+    boolean firstUse(long nonce, long nowNanos) {
+        lock.lock();
+        try {
+            rotate(nowNanos);
+            if (previous.contains(nonce)) {
+                return false;
+            }
+            return current.add(nonce);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void rotate(long nowNanos) {
+        long elapsed = nowNanos - generationStart;
+        if (elapsed < windowNanos) {
+            return;
+        }
+        // After two or more idle windows nothing recorded is still needed
+        previous = elapsed < 2 * windowNanos ? current : new LongSet();
+        current = new LongSet();
+        generationStart = nowNanos;
+    }
+    
+    /**
+     * Number of nonces currently remembered.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return current.size + previous.size;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+
+/**
+ * MessageChannel using Java serialization of PokerInfo, the original wire format.
+ * Kept so that clients built before the binary protocol can still connect.
+ *
+ * An object stream remembers every object it has written so it can send back-references,
+ * and the peer's input stream remembers every object it has read; neither ever forgets
+ * on its own. So that long sessions stay within a fixed amount of memory, the output
+ * stream is reset once it holds handleBudget objects. The reset also travels to the
+ * peer and clears its input table. Each reset costs one resend of the class descriptors.
+ *
+ * Cards are sent packed as one byte each once the peer has shown that it reads that
+ * form: every PokerInfo written by this version announces it (see PokerInfo.writeObject).
+ * Older peers never announce it and keep getting the original form. Peers that have
+ * announced it also get the messages of a hand as LeanMessages, which are turned back
+ * into PokerInfo on receipt.
+ */
+public class ObjectStreamChannel implements MessageChannel {
+    /** Objects a stream may hold on to before it is reset, overridable with poker.streamHandleBudget. */
+    public static final int DEFAULT_HANDLE_BUDGET = Integer.getInteger("poker.streamHandleBudget", 4096);
+    
+    /**
+     * Object stream that counts the objects added to its handle table.
+     * replaceObject is called once for every object that is not already in the table.
+     */
+    private static class CountingObjectOutputStream extends ObjectOutputStream {
+        private int retainedHandles;
+        private volatile boolean packCards; // Set once the peer announced it reads packed cards
+        
+        CountingObjectOutputStream(OutputStream output) throws IOException {
+            super(output);
+            enableReplaceObject(true);
+        }
+        
+        @Override
+        protected Object replaceObject(Object obj) {
+            retainedHandles++;
+            if (packCards && obj instanceof Card) {
+                return ((Card) obj).serialForm();
+            }
+            return obj;
+        }
+        
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            retainedHandles = 0;
+        }
+    }
+    
+    /**
+     * Object stream that knows the output stream to the same peer, so that reading
+     * the peer's announcement can switch the output to packed cards.
+     */
+    private static class PeerObjectInputStream extends ObjectInputStream {
+        private final CountingObjectOutputStream reply;
+        
+        PeerObjectInputStream(InputStream input, CountingObjectOutputStream reply) throws IOException {
+            super(input);
+            this.reply = reply;
+        }
+    }
+    
+    private final CountingObjectOutputStream output;
+    private final ObjectInputStream input;
+    private final Runnable onClose;
+    private volatile boolean closed;
+    private int handleBudget = DEFAULT_HANDLE_BUDGET;
+    private long resets;
+    
+    /**
+     * Open the channel. Both sides create their output stream first, so the
+     * stream headers cross without blocking.
+     * @param input stream from the peer
+     * @param output stream to the peer
+     * @param onClose closes the underlying connection
+     */
+    public ObjectStreamChannel(InputStream input, OutputStream output, Runnable onClose) throws IOException {
+        this.output = new CountingObjectOutputStream(output);
+        this.output.flush();
+        this.input = new PeerObjectInputStream(input, this.output);
+        this.onClose = onClose;
+    }
+    
+    @Override
+    public void send(PokerInfo info) throws IOException {
+        LeanMessages.LeanMessage lean = output.packCards ? LeanMessages.toLean(info) : null;
+        output.writeObject(lean != null ? lean : info);
+        if (output.retainedHandles >= handleBudget) {
+            output.reset();
+            resets++;
+        }
+        output.flush();
+    }
+    
+    @Override
+    public PokerInfo receive() throws IOException {
+        try {
+            Object message = input.readObject();
+            if (message instanceof LeanMessages.LeanMessage) {
+                output.packCards = true; // Only sent by peers that read compact forms
+                return ((LeanMessages.LeanMessage) message).toPokerInfo();
+            }
+            if (!(message instanceof PokerInfo)) {
+                throw new ProtocolException("Invalid object received");
+            }
+            return (PokerInfo) message;
+        } catch (ClassNotFoundException e) {
+            throw new ProtocolException("Invalid object received: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Whether PokerInfo should pack its cards when written to this stream.
+     */
+    static boolean packsCards(ObjectOutputStream out) {
+        return out instanceof CountingObjectOutputStream && ((CountingObjectOutputStream) out).packCards;
+    }
+    
+    /**
+     * Note that the peer on this stream reads packed cards, so they are sent that way from now on.
+     */
+    static void peerReadsPackedCards(ObjectInputStream in) {
+        if (in instanceof PeerObjectInputStream) {
+            ((PeerObjectInputStream) in).reply.packCards = true;
+        }
+    }
+    
+    /**
+     * Whether cards are sent packed, i.e. the peer has announced that it reads them.
+     */
+    public boolean isPackingCards() {
+        return output.packCards;
+    }
+    
+    /**
+     * Objects the output stream (and so the peer's input stream) currently holds on to.
+     */
+    public int getRetainedHandles() {
+        return output.retainedHandles;
+    }
+    
+    /**
+     * How many times the stream has been reset to stay within its budget.
+     */
+    public long getResetCount() {
+        return resets;
+    }
+    
+    public int getHandleBudget() {
+        return handleBudget;
+    }
+    
+    /**
+     * Set how many objects the streams may hold on to before a reset.
+     * @param handleBudget at least 1; 1 resets after every message
+     */
+    public void setHandleBudget(int handleBudget) {
+        if (handleBudget < 1) {
+            throw new IllegalArgumentException("Handle budget must be at least 1");
+        }
+        this.handleBudget = handleBudget;
+    }
+    
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            input.close();
+            output.close();
+        } catch (IOException e) {
+            // Ignore errors during cleanup
+        }
+        onClose.run();
+    }
+}
@@ -0,0 +1,40 @@
+import java.io.IOException;
+
+/**
+ * A channel whose messages wait in a bounded queue until the client takes them
+ * (QueuedChannel in the thread modes, NioConnection in NIO mode). The depth shows how
+ * far behind a client is; once it reaches ServerConfig.getOutboundQueueLimit() the
+ * client is too slow and ServerConfig.SlowClientPolicy decides what happens.
+ */
+public interface OutboundQueue {
+    
+    /**
+     * Messages sent but not yet taken by the socket.
+     */
+    int getQueuedMessages();
+    
+    /**
+     * Most messages that were ever waiting at once.
+     */
+    int getPeakQueuedMessages();
+    
+    /**
+     * Messages dropped because the queue was full (SlowClientPolicy.SHED).
+     */
+    long getShedMessages();
+    
+    /**
+     * Whether a message only reports state that a later one supersedes, so a slow
+     * client can do without it.
+     */
+    static boolean isSheddable(PokerInfo info) {
+        return info.getMessageType() == PokerInfo.MessageType.QUEUE_POSITION;
+    }
+    
+    /**
+     * The error for a client whose queue is full with a message that must not be dropped.
+     */
+    static IOException tooSlow(int queued) {
+        return new IOException("Client too slow: " + queued + " messages waiting to be sent");
+    }
+}
@@ -0,0 +1,279 @@
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sessions of clients whose connection dropped, kept for a grace period so the client
+ * can connect again and carry on where it was: the same winnings and hand count, the
+ * hand it had open, and the last reply in case that was lost with the connection.
+ *
+ * A client asks for this with a RESUME_SESSION without a token and gets a resume token.
+ * If its connection drops, it sends RESUME_SESSION with that token as the first message
+ * on a new connection (see ReconnectingChannel.connectResumable). A token is a type byte
+ * and 16 random bytes: the first 8 name the session, the other 8 must match. It only
+ * works on the server that issued it, and once; reattaching hands out a new one.
+ *
+ * Parked sessions go into the current of two generations, like NonceFilter's nonces, so
+ * one is forgotten between one and two grace periods after it was parked. It can only be
+ * claimed within the grace period. A ReentrantLock rather than a monitor keeps virtual
+ * threads from pinning.
+ */
+public class ParkedSessions {
+    static final byte TOKEN_TYPE = 2; // SessionTokens start with their version, 1
+    static final int TOKEN_SIZE = 17;
+    
+    /** Why a claim was refused when the old connection has not been noticed dropping yet; try again shortly. */
+    public static final String STILL_CONNECTED = "Session still connected";
+    
+    /**
+     * What is kept of a session while it waits for its client.
+     */
+    public static class Session {
+        private final long check;
+        private final int winnings;
+        private final int handsPlayed;
+        private final int lastRequestId;
+        private final DealtHand openHand;
+        private final byte[] lastReply;
+        private final long parkedAt;
+        
+        Session(long check, int winnings, int handsPlayed, int lastRequestId, DealtHand openHand,
+                byte[] lastReply, long parkedAt) {
+            this.check = check;
+            this.winnings = winnings;
+            this.handsPlayed = handsPlayed;
+            this.lastRequestId = lastRequestId;
+            this.openHand = openHand;
+            this.lastReply = lastReply;
+            this.parkedAt = parkedAt;
+        }
+        
+        public int getWinnings() {
+            return winnings;
+        }
+        
+        public int getHandsPlayed() {
+            return handsPlayed;
+        }
+        
+        /** Id of the last request the session handled; resent copies of it and earlier ones are ignored. */
+        public int getLastRequestId() {
+            return lastRequestId;
+        }
+        
+        /** The hand dealt but not settled when the connection dropped, or null. */
+        public DealtHand getOpenHand() {
+            return openHand;
+        }
+        
+        /**
+         * The last reply sent before the connection dropped, or null if there was none.
+         */
+        public PokerInfo getLastReply() {
+            if (lastReply == null) {
+                return null;
+            }
+            try {
+                return WireCodec.decode(ByteBuffer.wrap(lastReply));
+            } catch (ProtocolException e) {
+                throw new IllegalStateException("Parked reply does not decode", e);
+            }
+        }
+    }
+    
+    private final long graceNanos;
+    private final Map<Long, ClientHandler> live;    // Resumable sessions still connected
+    private final ReentrantLock lock = new ReentrantLock();
+    private HashMap<Long, Session> current = new HashMap<>();
+    private HashMap<Long, Session> previous = new HashMap<>();
+    private long generationStart;
+    private final SecureRandom random = new SecureRandom();
+    private final LongAdder parked = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    
+    /**
+     * @param graceSeconds how long a dropped session waits for its client
+     */
+    public ParkedSessions(long graceSeconds) {
+        if (graceSeconds <= 0) {
+            throw new IllegalArgumentException("Grace period must be positive: " + graceSeconds);
+        }
+        this.graceNanos = graceSeconds * 1_000_000_000L;
+        this.live = new ConcurrentHashMap<>();
+        this.generationStart = System.nanoTime();
+    }
+    
+    /**
+     * Make a connected session resumable.
+     * @return the token its client reattaches with
+     */
+    public byte[] issue(ClientHandler handler) {
+        byte[] token = new byte[TOKEN_SIZE];
+        random.nextBytes(token);
+        token[0] = TOKEN_TYPE;
+        live.put(idOf(token), handler);
+        return token;
+    }
+    
+    /**
+     * Forget a token whose session ended for good, or was given a new one.
+     */
+    public void forget(byte[] token) {
+        live.remove(idOf(token));
+    }
+    
+    /**
+     * Keep a session whose connection dropped until its client claims it or the grace period ends.
+     * @param lastReply the last reply sent, or null
+     */
+    public void park(byte[] token, int winnings, int handsPlayed, int lastRequestId, DealtHand openHand,
+                     PokerInfo lastReply) {
+        long now = System.nanoTime();
+        Session session = new Session(checkOf(token), winnings, handsPlayed, lastRequestId, openHand,
+                lastReply != null ? encode(lastReply) : null, now);
+        long id = idOf(token);
+        lock.lock();
+        try {
+            rotate(now);
+            current.put(id, session);
+        } finally {
+            lock.unlock();
+        }
+        live.remove(id);
+        parked.increment();
+    }
+    
+    /**
+     * Take back a parked session for a client that reattached. If the session still looks
+     * connected, its old connection is closed (the client would not reattach otherwise)
+     * and the claim is refused with STILL_CONNECTED; it is parked by the time the client
+     * tries again.
+     * @throws GeneralSecurityException if the token is unknown, does not match, or its grace period ended
+     */
+    public Session claim(byte[] token) throws GeneralSecurityException {
+        if (!isResumeToken(token)) {
+            throw new GeneralSecurityException("Not a resume token");
+        }
+        long id = idOf(token);
+        long now = System.nanoTime();
+        Session session;
+        lock.lock();
+        try {
+            rotate(now);
+            session = current.get(id);
+            if (session == null) {
+                session = previous.get(id);
+            }
+            if (session != null && session.check == checkOf(token)) {
+                current.remove(id);
+                previous.remove(id);
+            } else {
+                session = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        
+        if (session == null) {
+            ClientHandler connected = live.get(id);
+            if (connected != null && Arrays.equals(connected.getResumeToken(), token)) {
+                connected.evict();
+                throw new GeneralSecurityException(STILL_CONNECTED);
+            }
+            throw new GeneralSecurityException("Unknown or expired session");
+        }
+        if (now - session.parkedAt > graceNanos) {
+            expired.increment();
+            throw new GeneralSecurityException("Session expired");
+        }
+        resumed.increment();
+        return session;
+    }
+    
+    /**
+     * Whether a token given with RESUME_SESSION is a resume token rather than a SessionTokens token.
+     */
+    public static boolean isResumeToken(byte[] token) {
+        return token != null && token.length == TOKEN_SIZE && token[0] == TOKEN_TYPE;
+    }
+    
+    private void rotate(long nowNanos) {
+        long elapsed = nowNanos - generationStart;
+        if (elapsed < graceNanos) {
+            return;
+        }
+        expired.add(previous.size());
+        if (elapsed < 2 * graceNanos) {
+            previous = current;
+        } else {
+            expired.add(current.size());
+            previous = new HashMap<>();
+        }
+        current = new HashMap<>();
+        generationStart = nowNanos;
+    }
+    
+    private static long idOf(byte[] token) {
+        return ByteBuffer.wrap(token, 1, 8).getLong();
+    }
+    
+    private static long checkOf(byte[] token) {
+        return ByteBuffer.wrap(token, 9, 8).getLong();
+    }
+    
+    private static byte[] encode(PokerInfo info) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        while (true) {
+            try {
+                WireCodec.encode(info, buffer);
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+    
+    /**
+     * Sessions waiting for their client, including some whose grace period has just ended.
+     */
+    public int getParkedCount() {
+        lock.lock();
+        try {
+            rotate(System.nanoTime());
+            return current.size() + previous.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Connected sessions that can be resumed if their connection drops.
+     */
+    public int getResumableCount() {
+        return live.size();
+    }
+    
+    public long getParkedTotal() {
+        return parked.sum();
+    }
+    
+    public long getResumedTotal() {
+        return resumed.sum();
+    }
+    
+    /**
+     * Parked sessions whose client did not come back in time.
+     */
+    public long getExpiredTotal() {
+        return expired.sum();
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays hands through a proxy that adds network latency, once waiting for every reply
+ * and once pipelining, and reports the time per hand:
+ *
+ *   java -cp target/classes PipelineBenchmark [rttMillis] [hands]
+ *
+ * The waiting client sends INITIAL_BET, waits for the cards, sends PLAYER_ACTION and
+ * PLAY_AGAIN and waits for the result: two round trips per hand. The pipelining client
+ * sends each decision together with the next hand's bet and leaves out PLAY_AGAIN, so
+ * a hand costs one round trip. Both decide with the Q-6-4 rule.
+ */
+public class PipelineBenchmark {
+    private static final int SERVER_PORT = 5597;
+    private static final int PROXY_PORT = 5596;
+    
+    /**
+     * Forwards one connection to the server, delaying every chunk by half the round trip
+     * in each direction. One scheduler thread per direction keeps the bytes in order.
+     */
+    private static class LatencyProxy {
+        private final ServerSocket listener;
+        private final long delayMicros;
+        
+        LatencyProxy(int port, long rttMillis) throws IOException {
+            this.listener = new ServerSocket(port);
+            this.delayMicros = rttMillis * 1000 / 2;
+            Thread acceptor = new Thread(this::acceptLoop, "latency-proxy");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        
+        private void acceptLoop() {
+            try {
+                while (true) {
+                    Socket client = listener.accept();
+                    Socket server = new Socket("localhost", SERVER_PORT);
+                    client.setTcpNoDelay(true);
+                    server.setTcpNoDelay(true);
+                    forward(client.getInputStream(), server.getOutputStream());
+                    forward(server.getInputStream(), client.getOutputStream());
+                }
+            } catch (IOException e) {
+                // Listener closed
+            }
+        }
+        
+        private void forward(InputStream from, OutputStream to) {
+            ScheduledExecutorService delayed = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "latency-proxy-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            Thread reader = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try {
+                    int count;
+                    while ((count = from.read(buffer)) > 0) {
+                        byte[] chunk = Arrays.copyOf(buffer, count);
+                        delayed.schedule(() -> {
+                            try {
+                                to.write(chunk);
+                            } catch (IOException e) {
+                                // The other side is gone
+                            }
+                        }, delayMicros, TimeUnit.MICROSECONDS);
+                    }
+                } catch (IOException e) {
+                    // Connection closed
+                }
+                delayed.shutdown();
+            }, "latency-proxy-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int rttMillis = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int hands = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        
+        ServerConfig config = new ServerConfig(SERVER_PORT);
+        config.setCommitments(false);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        new LatencyProxy(PROXY_PORT, rttMillis);
+        Thread.sleep(500);
+        
+        System.out.printf("%d hands per client, %d ms round trip%n", hands, rttMillis);
+        report("waiting", hands, playWaiting(connect(), hands));
+        report("pipelined", hands, playPipelined(connect(), hands));
+        
+        server.stop();
+        System.exit(0);
+    }
+    
+    private static RequestPipeline connect() throws IOException {
+        return new RequestPipeline(Connections.connect("localhost", PROXY_PORT, WireFormat.BINARY), position -> { });
+    }
+    
+    private static long playWaiting(RequestPipeline pipeline, int hands) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < hands; i++) {
+            PokerInfo dealt = pipeline.await(pipeline.send(bet()));
+            int actionId = pipeline.send(decide(dealt));
+            PokerInfo playAgain = new PokerInfo();
+            playAgain.setMessageType(PokerInfo.MessageType.PLAY_AGAIN);
+            pipeline.sendOneWay(playAgain);
+            pipeline.await(actionId);
+        }
+        long elapsed = System.nanoTime() - start;
+        pipeline.getChannel().close();
+        return elapsed;
+    }
+    
+    private static long playPipelined(RequestPipeline pipeline, int hands) throws IOException {
+        long start = System.nanoTime();
+        PokerInfo dealt = pipeline.await(pipeline.send(bet()));
+        for (int i = 0; i < hands; i++) {
+            int actionId = pipeline.send(decide(dealt));
+            int betId = i + 1 < hands ? pipeline.send(bet()) : 0; // Next hand's bet rides along
+            pipeline.await(actionId);
+            if (betId != 0) {
+                dealt = pipeline.await(betId);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pipeline.getChannel().close();
+        return elapsed;
+    }
+    
+    private static PokerInfo bet() {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        bet.setAnteBet(10);
+        return bet;
+    }
+    
+    private static PokerInfo decide(PokerInfo dealt) {
+        PokerInfo action = new PokerInfo();
+        action.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+        action.setHandId(dealt.getHandId());
+        action.setPlayerAction(ThreeCardLogic.playsQueenSixFour(dealt.getPlayerCards())
+                ? PokerInfo.PlayerAction.PLAY : PokerInfo.PlayerAction.FOLD);
+        return action;
+    }
+    
+    private static void report(String label, int hands, long nanos) {
+        System.out.printf("%-10s %6.1f ms/hand, %6.1f hands/s%n", label, nanos / 1e6 / hands, hands * 1e9 / nanos);
+    }
+}
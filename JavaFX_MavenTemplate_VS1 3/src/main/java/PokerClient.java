@@ -1,7 +1,4 @@
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Scanner;
 
@@ -10,21 +7,19 @@ import java.util.Scanner;
  * Connects to the server and allows playing the game via console input.
  */
 public class PokerClient {
-    private Socket socket;
-    private ObjectInputStream input;
-    private ObjectOutputStream output;
+    private MessageChannel channel;
     private Scanner scanner;
     private int totalWinnings;
+    private FairnessVerifier verifier;
     
     public PokerClient(String host, int port) {
         scanner = new Scanner(System.in);
         totalWinnings = 0;
+        verifier = new FairnessVerifier();
         
         try {
             System.out.println("Connecting to server at " + host + ":" + port + "...");
-            socket = new Socket(host, port);
-            output = new ObjectOutputStream(socket.getOutputStream());
-            input = new ObjectInputStream(socket.getInputStream());
+            channel = Connections.connect(host, port, WireFormat.fromSystemProperty());
             System.out.println("Connected to server!");
             System.out.println();
         } catch (IOException e) {
@@ -54,11 +49,10 @@ public class PokerClient {
                 betInfo.setMessageType(PokerInfo.MessageType.INITIAL_BET);
                 betInfo.setAnteBet(anteBet);
                 betInfo.setPairPlusBet(pairPlusBet);
-                output.writeObject(betInfo);
-                output.flush();
+                channel.send(betInfo);
                 
                 // Receive dealt cards
-                PokerInfo cardsInfo = (PokerInfo) input.readObject();
+                PokerInfo cardsInfo = Connections.receiveReply(channel, this::printQueuePosition);
                 System.out.println();
                 System.out.println("=== Your Cards ===");
                 printCards(cardsInfo.getPlayerCards());
@@ -72,24 +66,19 @@ public class PokerClient {
                 
                 PokerInfo actionInfo = new PokerInfo();
                 actionInfo.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
-                actionInfo.setAnteBet(anteBet);
-                actionInfo.setPairPlusBet(pairPlusBet);
-                actionInfo.setPlayerCards(cardsInfo.getPlayerCards());
-                actionInfo.setDealerCards(cardsInfo.getDealerCards());
+                actionInfo.setHandId(cardsInfo.getHandId()); // The server kept the cards and bets
+                actionInfo.setHandToken(cardsInfo.getHandToken()); // Only set by stateless servers
                 
                 if (action.equals("P") || action.equals("PLAY")) {
                     actionInfo.setPlayerAction(PokerInfo.PlayerAction.PLAY);
-                    actionInfo.setPlayBet(anteBet);
                 } else {
                     actionInfo.setPlayerAction(PokerInfo.PlayerAction.FOLD);
-                    actionInfo.setPlayBet(0);
                 }
                 
-                output.writeObject(actionInfo);
-                output.flush();
+                channel.send(actionInfo);
                 
                 // Receive game result
-                PokerInfo result = (PokerInfo) input.readObject();
+                PokerInfo result = Connections.receiveReply(channel, this::printQueuePosition);
                 System.out.println();
                 System.out.println("=== Game Result ===");
                 System.out.println("Your cards:");
@@ -113,6 +102,12 @@ public class PokerClient {
                     System.out.println("Pair Plus: Lost " + pairPlusBet);
                 }
                 
+                if (FairnessVerifier.isCommitted(cardsInfo)) {
+                    String problem = verifier.verifyHand(cardsInfo, result);
+                    System.out.println(problem == null ? "Deal verified against the server's commitment"
+                                                       : "Deal verification FAILED: " + problem);
+                }
+                
                 System.out.println("Delta this hand: " + result.getDeltaWinningsThisHand());
                 totalWinnings = result.getTotalWinnings();
                 System.out.println("Total winnings: " + totalWinnings);
@@ -124,8 +119,7 @@ public class PokerClient {
                 
                 PokerInfo playAgainInfo = new PokerInfo();
                 playAgainInfo.setMessageType(PokerInfo.MessageType.PLAY_AGAIN);
-                output.writeObject(playAgainInfo);
-                output.flush();
+                channel.send(playAgainInfo);
                 
                 if (!playAgain.equals("Y") && !playAgain.equals("YES")) {
                     break;
@@ -136,11 +130,10 @@ public class PokerClient {
             // Disconnect
             PokerInfo disconnectInfo = new PokerInfo();
             disconnectInfo.setMessageType(PokerInfo.MessageType.DISCONNECT);
-            output.writeObject(disconnectInfo);
-            output.flush();
+            channel.send(disconnectInfo);
             
             System.out.println("Disconnected from server. Final winnings: " + totalWinnings);
-            
+        
         } catch (Exception e) {
             System.err.println("Error during gameplay: " + e.getMessage());
             e.printStackTrace();
@@ -149,6 +142,14 @@ public class PokerClient {
         }
     }
     
+    private void printQueuePosition(int position) {
+        if (position > 0) {
+            System.out.println("Table is full. You are #" + position + " in line...");
+        } else {
+            System.out.println("A seat is free, joining the table.");
+        }
+    }
+    
     private void printCards(ArrayList<Card> cards) {
         for (int i = 0; i < cards.size(); i++) {
             Card card = cards.get(i);
@@ -157,14 +158,8 @@ public class PokerClient {
     }
     
     private void close() {
-        try {
-            if (input != null) input.close();
-            if (output != null) output.close();
-            if (socket != null) socket.close();
-            if (scanner != null) scanner.close();
-        } catch (IOException e) {
-            // Ignore
-        }
+        if (channel != null) channel.close();
+        if (scanner != null) scanner.close();
     }
     
     public static void main(String[] args) {
@@ -1,13 +1,32 @@
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Serializable class used for all communication between client and server.
  * Contains all necessary fields for the complete game flow.
+ *
+ * Java serialization keeps the original field layout, so the serialVersionUID stays 1
+ * and older peers read and write it as before. After the fields comes a marker byte,
+ * which older peers skip: it announces that this peer reads packed cards, or says
+ * that the card lists follow packed, one byte per card, instead of as Card objects,
+ * followed by the status code. Peers that have not announced it get the status code
+ * as its text in statusMessage instead.
  */
 public class PokerInfo implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    // Marker after the fields: the writer reads packed cards / the card lists follow packed
+    private static final int READS_PACKED_CARDS = 1;
+    private static final int PACKED_CARDS = 2;
+    private static final int NO_CARDS = 0xFF;
+    
+    /** Most hands one BATCH_HANDS message may ask for. */
+    public static final int MAX_BATCH_HANDS = 1024;
+    
     // Message types/phases
     public enum MessageType {
         INITIAL_BET,        // Client sends initial bets
@@ -15,16 +34,39 @@ public class PokerInfo implements Serializable {
         PLAYER_ACTION,      // Client sends PLAY or FOLD
         GAME_RESULT,        // Server sends final result
         PLAY_AGAIN,         // Client asks to play again
-        DISCONNECT          // Client disconnects
+        DISCONNECT,         // Client disconnects
+        QUEUE_POSITION,     // Server tells a waiting client its place in line (0 = seat ready)
+        SERVER_FULL,        // Server turns the connection away
+        BATCH_HANDS,        // Client asks for many hands at once, with decisions or a strategy
+        BATCH_RESULT,       // Server sends the outcome of every hand in the batch
+        ONE_SHOT_HAND,      // Client sends bets and a strategy; the server answers with GAME_RESULT
+        SESSION_CREDIT,     // Server lets a multiplexed session send more messages (see MultiplexedConnection)
+        RECONNECT,          // Draining server asks the client to reconnect and resume with the session token
+        RESUME_SESSION,     // Client continues a session from its token (or, without one, asks for a resume token); the server answers with the restored total
+        WATCH_TABLE         // Client watches a player's table (clientId) instead of playing; see TableFeed
     }
     
     public enum PlayerAction {
         PLAY, FOLD
     }
     
+    /**
+     * How the server decides PLAY or FOLD for hands sent without explicit decisions
+     * (one-shot hands, and batches without actions).
+     */
+    public enum Strategy {
+        ALWAYS_PLAY,
+        ALWAYS_FOLD,
+        QUEEN_SIX_FOUR      // Play Q-6-4 or better (see ThreeCardLogic.playsQueenSixFour)
+    }
+    
     private MessageType messageType;
     private PlayerAction playerAction;
     
+    // Correlation id: chosen by the client for a request and echoed on every reply to it
+    // (0 = none, e.g. queue updates). See RequestPipeline.
+    private int requestId;
+    
     // Betting fields
     private int anteBet;
     private int pairPlusBet;
@@ -46,10 +88,51 @@ public class PokerInfo implements Serializable {
     
     // Status message for logging
     private String statusMessage;
+    // Outcome of a settled hand, rendered by the client. Kept out of the default
+    // serialized form, since older peers do not have the class (see writeObject)
+    private transient StatusCode statusCode;
     
     // Client identification
     private int clientId;
     
+    // Hand identification (seed is revealed with the result so the deal can be replayed)
+    private int handId;
+    private long handSeed;
+    
+    // Deck commitment (see ShuffleCommitments): the leaf, its index, proof path and batch root
+    // are sent with the deal; the salt is revealed with the result together with the seed
+    private byte[] deckCommitment;
+    private int commitmentIndex;
+    private byte[] commitmentProof;
+    private byte[] commitmentRoot;
+    private byte[] handSalt;
+    private byte[] nextDeckCommitment;
+    
+    // Admission: place in the wait queue (see AdmissionController)
+    private int queuePosition;
+    
+    // Multiplexed sessions: how many more messages the session may send
+    private int sessionCredit;
+    
+    // Stateless hands: sealed deal sent with the cards and returned with the decision (see HandTokens)
+    private byte[] handToken;
+    
+    // Rolling restarts: the session signed by a draining server, returned to its replacement (see SessionTokens);
+    // or the resume token of a session parked when its connection dropped (see ParkedSessions)
+    private byte[] sessionToken;
+    
+    // Decision rule for ONE_SHOT_HAND, and for BATCH_HANDS sent without actions
+    private Strategy strategy;
+    
+    // Batches: one entry per hand. The request carries bets and either actions or a strategy;
+    // the result carries the actions taken, net winnings and seeds, starting at handId.
+    // Without salts and proofs, batched hands can be replayed but not verified
+    private int[] batchAnteBets;
+    private int[] batchPairPlusBets;
+    private PlayerAction[] batchActions;
+    private int[] batchDeltas;
+    private long[] batchSeeds;
+    
     public PokerInfo() {
         playerCards = new ArrayList<>();
         dealerCards = new ArrayList<>();
@@ -177,7 +260,13 @@ public class PokerInfo implements Serializable {
         this.totalWinnings = totalWinnings;
     }
     
+    /**
+     * Free-text status, or the text of the status code if there is none.
+     */
     public String getStatusMessage() {
+        if (statusMessage == null && statusCode != null) {
+            return statusCode.getText();
+        }
         return statusMessage;
     }
     
@@ -192,5 +281,233 @@ public class PokerInfo implements Serializable {
     public void setClientId(int clientId) {
         this.clientId = clientId;
     }
+    
+    public int getHandId() {
+        return handId;
+    }
+    
+    public void setHandId(int handId) {
+        this.handId = handId;
+    }
+    
+    public long getHandSeed() {
+        return handSeed;
+    }
+    
+    public void setHandSeed(long handSeed) {
+        this.handSeed = handSeed;
+    }
+    
+    public byte[] getDeckCommitment() {
+        return deckCommitment;
+    }
+    
+    public void setDeckCommitment(byte[] deckCommitment) {
+        this.deckCommitment = deckCommitment;
+    }
+    
+    public int getCommitmentIndex() {
+        return commitmentIndex;
+    }
+    
+    public void setCommitmentIndex(int commitmentIndex) {
+        this.commitmentIndex = commitmentIndex;
+    }
+    
+    public byte[] getCommitmentProof() {
+        return commitmentProof;
+    }
+    
+    public void setCommitmentProof(byte[] commitmentProof) {
+        this.commitmentProof = commitmentProof;
+    }
+    
+    public byte[] getCommitmentRoot() {
+        return commitmentRoot;
+    }
+    
+    public void setCommitmentRoot(byte[] commitmentRoot) {
+        this.commitmentRoot = commitmentRoot;
+    }
+    
+    public byte[] getHandSalt() {
+        return handSalt;
+    }
+    
+    public void setHandSalt(byte[] handSalt) {
+        this.handSalt = handSalt;
+    }
+    
+    public byte[] getNextDeckCommitment() {
+        return nextDeckCommitment;
+    }
+    
+    public void setNextDeckCommitment(byte[] nextDeckCommitment) {
+        this.nextDeckCommitment = nextDeckCommitment;
+    }
+    
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+    
+    public void setQueuePosition(int queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+    
+    public int getSessionCredit() {
+        return sessionCredit;
+    }
+    
+    public void setSessionCredit(int sessionCredit) {
+        this.sessionCredit = sessionCredit;
+    }
+    
+    public byte[] getHandToken() {
+        return handToken;
+    }
+    
+    public void setHandToken(byte[] handToken) {
+        this.handToken = handToken;
+    }
+    
+    public byte[] getSessionToken() {
+        return sessionToken;
+    }
+    
+    public void setSessionToken(byte[] sessionToken) {
+        this.sessionToken = sessionToken;
+    }
+    
+    public int[] getBatchAnteBets() {
+        return batchAnteBets;
+    }
+    
+    public void setBatchAnteBets(int[] batchAnteBets) {
+        this.batchAnteBets = batchAnteBets;
+    }
+    
+    public int[] getBatchPairPlusBets() {
+        return batchPairPlusBets;
+    }
+    
+    public void setBatchPairPlusBets(int[] batchPairPlusBets) {
+        this.batchPairPlusBets = batchPairPlusBets;
+    }
+    
+    public PlayerAction[] getBatchActions() {
+        return batchActions;
+    }
+    
+    public void setBatchActions(PlayerAction[] batchActions) {
+        this.batchActions = batchActions;
+    }
+    
+    public Strategy getStrategy() {
+        return strategy;
+    }
+    
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+    
+    public int[] getBatchDeltas() {
+        return batchDeltas;
+    }
+    
+    public void setBatchDeltas(int[] batchDeltas) {
+        this.batchDeltas = batchDeltas;
+    }
+    
+    public long[] getBatchSeeds() {
+        return batchSeeds;
+    }
+    
+    public void setBatchSeeds(long[] batchSeeds) {
+        this.batchSeeds = batchSeeds;
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (!ObjectStreamChannel.packsCards(out)) {
+            String message = statusMessage;
+            statusMessage = getStatusMessage();
+            try {
+                out.defaultWriteObject();
+            } finally {
+                statusMessage = message;
+            }
+            out.writeByte(READS_PACKED_CARDS);
+            return;
+        }
+        // Write the other fields as usual, with the lists left out for the moment
+        ArrayList<Card> player = playerCards;
+        ArrayList<Card> dealer = dealerCards;
+        playerCards = null;
+        dealerCards = null;
+        try {
+            out.defaultWriteObject();
+        } finally {
+            playerCards = player;
+            dealerCards = dealer;
+        }
+        out.writeByte(PACKED_CARDS);
+        writeCards(out, player);
+        writeCards(out, dealer);
+        out.writeByte(StatusCode.toCode(statusCode));
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int marker = in.read(); // -1 if written by a peer that predates the marker
+        if (marker == PACKED_CARDS) {
+            playerCards = readCards(in);
+            dealerCards = readCards(in);
+            statusCode = StatusCode.fromCode(in.readUnsignedByte());
+        }
+        if (marker == READS_PACKED_CARDS || marker == PACKED_CARDS) {
+            ObjectStreamChannel.peerReadsPackedCards(in);
+        }
+    }
+    
+    private static void writeCards(ObjectOutputStream out, ArrayList<Card> cards) throws IOException {
+        if (cards == null) {
+            out.writeByte(NO_CARDS);
+            return;
+        }
+        out.writeByte(cards.size());
+        for (Card card : cards) {
+            out.writeByte(card.getIndex());
+        }
+    }
+    
+    private static ArrayList<Card> readCards(ObjectInputStream in) throws IOException {
+        int count = in.readUnsignedByte();
+        if (count == NO_CARDS) {
+            return null;
+        }
+        ArrayList<Card> cards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = in.readUnsignedByte();
+            if (index >= Card.DECK_SIZE) {
+                throw new InvalidObjectException("Card index out of range: " + index);
+            }
+            cards.add(Card.of(index));
+        }
+        return cards;
+    }
+    
+    public StatusCode getStatusCode() {
+        return statusCode;
+    }
+    
+    public void setStatusCode(StatusCode statusCode) {
+        this.statusCode = statusCode;
+    }
+    
+    public int getRequestId() {
+        return requestId;
+    }
+    
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
 }
-
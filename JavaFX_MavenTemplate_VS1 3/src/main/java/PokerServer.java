@@ -1,28 +1,105 @@
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
 
 /**
  * Main server class that manages ServerSocket and client connections.
- * Runs on a background thread (not JavaFX thread).
+ * Runs on a background thread (not JavaFX thread). Clients are served either by a
+ * thread each (platform or virtual) or by a few NIO event loops (see ServerConfig.IoMode).
+ * Optionally a Unix domain socket is served alongside the port, the same way.
+ *
+ * Connections on the port are accepted by ServerConfig.getAcceptors() threads: the server
+ * thread and as many more as configured, each with its own SO_REUSEPORT socket where the
+ * platform has it.
+ *
+ * Sessions idle for ServerConfig.getHibernateAfterSeconds() are hibernated by a sweeper
+ * thread and wake up with their next message (see ClientHandler.hibernate).
+ *
+ * For a rolling restart (ServerConfig.setReusePort), a new server binds the same port
+ * while this one is running, and drain() then hands this one's clients over to it.
+ *
+ * With ServerConfig.setTlsContext the port speaks TLS 1.3: blocking modes layer an
+ * SSLSocket over each accepted socket, NIO mode runs an SSLEngine per connection (see TlsCodec).
  */
 public class PokerServer {
-    private ServerSocket serverSocket;
+    // A TLS client being turned away gets this long to complete the handshake
+    private static final int REJECT_TIMEOUT_MILLIS = 2000;
+    
+    private ServerSocket[] serverSockets;
     private boolean running;
+    private volatile boolean draining;
+    private Thread drainOnShutdown;
     private int port;
-    private List<ClientHandler> clients;
+    private ServerConfig config;
+    private SSLContext tls;
+    private ServerSocketChannel[] acceptChannels;
+    private ArrayList<Thread> acceptorThreads;
+    private NioEventLoop[] eventLoops;
+    private AtomicInteger nextEventLoop;
+    private ServerSocketChannel localChannel;
+    private Thread localThread;
+    private Set<ClientHandler> clients;
+    private Map<Integer, TableFeed> tableFeeds;  // By player id, once watched
+    private AdmissionController admission;
+    private HandTokens handTokens;
+    private SessionTokens sessionTokens;
+    private ParkedSessions parkedSessions;
+    private Thread hibernator;
+    private LongAdder hibernated;
+    private LongAdder rehydrated;
     private AtomicInteger clientIdCounter;
     private StatusController statusController;
     private Thread serverThread;
+    private ExecutorService clientExecutor;
     
     public PokerServer(int port, StatusController statusController) {
-        this.port = port;
+        this(new ServerConfig(port), statusController);
+    }
+    
+    public PokerServer(ServerConfig config, StatusController statusController) {
+        this.config = config;
+        this.port = config.getPort();
         this.statusController = statusController;
-        this.clients = new ArrayList<>();
+        this.tls = config.getTlsContext();
+        if (tls != null) {
+            SSLSessionContext sessions = tls.getServerSessionContext();
+            sessions.setSessionCacheSize(config.getTlsSessionCacheSize());
+            sessions.setSessionTimeout(config.getTlsSessionTimeoutSeconds());
+        }
+        this.clients = ConcurrentHashMap.newKeySet();
+        this.tableFeeds = new ConcurrentHashMap<>();
+        this.admission = new AdmissionController(config.getMaxClients(), config.getWaitQueueSize());
+        byte[] key = config.getTokenKey() != null ? config.getTokenKey() : HandTokens.randomSecret();
+        if (config.isStatelessHands()) {
+            this.handTokens = new HandTokens(key, config.getTokenTtlSeconds());
+        }
+        this.sessionTokens = new SessionTokens(key, config.getTokenTtlSeconds());
+        if (config.getResumeGraceSeconds() > 0) {
+            this.parkedSessions = new ParkedSessions(config.getResumeGraceSeconds());
+        }
+        this.hibernated = new LongAdder();
+        this.rehydrated = new LongAdder();
         this.clientIdCounter = new AtomicInteger(1);
+        this.nextEventLoop = new AtomicInteger();
+        this.acceptorThreads = new ArrayList<>();
         this.running = false;
     }
     
@@ -37,41 +114,456 @@ public class PokerServer {
         
         running = true;
         serverThread = new Thread(() -> {
+            if (config.getIoMode() == ServerConfig.IoMode.NIO) {
+                serveEventLoops();
+            } else {
+                serveThreads(config.getIoMode() == ServerConfig.IoMode.VIRTUAL_THREADS);
+            }
+        });
+        
+        serverThread.start();
+        
+        if (config.getHibernateAfterSeconds() > 0) {
+            hibernator = new Thread(this::runHibernator, "poker-hibernator");
+            hibernator.setDaemon(true);
+            hibernator.start();
+        }
+        
+        if (config.isReusePort()) {
+            // Rolling restart: being told to shut down hands the clients to the new server
+            drainOnShutdown = new Thread(() -> drain(config.getDrainTimeoutSeconds() * 1000L), "poker-drain");
+            Runtime.getRuntime().addShutdownHook(drainOnShutdown);
+        }
+    }
+    
+    /**
+     * Accept loop for thread-per-client mode.
+     * @param virtual run each client on a virtual thread instead of a platform thread
+     */
+    private void serveThreads(boolean virtual) {
+        try {
+            serverSockets = bindServerSockets();
+            logStarted();
+            if (virtual) {
+                if (VirtualThreads.isSupported()) {
+                    clientExecutor = VirtualThreads.newPerTaskExecutor();
+                    log("Clients run on virtual threads");
+                } else {
+                    log("Virtual threads need Java 21 or newer. Using platform threads.");
+                }
+            }
+            startLocalAcceptor();
+            startAcceptors(i -> acceptClients(serverSockets[i % serverSockets.length]));
+            acceptClients(serverSockets[0]);
+        } catch (IOException e) {
+            log("Error starting server: " + e.getMessage());
+        } finally {
+            log(draining ? "Server stopped accepting connections" : "Server stopped");
+        }
+    }
+    
+    /**
+     * Accept loop of one acceptor in thread-per-client mode.
+     */
+    private void acceptClients(ServerSocket listener) {
+        while (running && !draining) {
             try {
-                serverSocket = new ServerSocket(port);
-                log("Server started on port " + port);
+                Socket clientSocket = listener.accept();
+                if (tls != null) {
+                    // The handshake happens on the client's thread, when it first reads
+                    clientSocket.setTcpNoDelay(true);
+                    clientSocket = Tls.serverSocket(tls, clientSocket);
+                }
                 
-                while (running) {
-                    try {
-                        Socket clientSocket = serverSocket.accept();
-                        
-                        if (clients.size() >= 8) {
-                            log("Maximum clients (8) reached. Rejecting connection.");
-                            clientSocket.close();
-                            continue;
-                        }
-                        
-                        int clientId = clientIdCounter.getAndIncrement();
-                        ClientHandler handler = new ClientHandler(clientSocket, clientId, this);
-                        clients.add(handler);
-                        Thread clientThread = new Thread(handler);
-                        clientThread.start();
-                        
-                        log("Client " + clientId + " connected. Total clients: " + clients.size());
-                    } catch (IOException e) {
-                        if (running) {
-                            log("Error accepting client: " + e.getMessage());
-                        }
-                    }
+                ClientHandler handler = new ClientHandler(clientSocket, clientIdCounter.getAndIncrement(), this);
+                if (!admit(handler)) {
+                    reject(clientSocket);
+                    continue;
                 }
+                startClientThread(handler);
             } catch (IOException e) {
-                log("Error starting server: " + e.getMessage());
-            } finally {
-                log("Server stopped");
+                if (running && !draining) {
+                    log("Error accepting client: " + e.getMessage());
+                }
             }
-        });
+        }
+    }
+    
+    /**
+     * Accept loop for NIO mode. Accepted connections are spread round-robin over the
+     * event loops, which do all reading, writing and game logic without blocking.
+     */
+    private void serveEventLoops() {
+        try {
+            acceptChannels = bindAcceptChannels();
+            
+            eventLoops = new NioEventLoop[config.getEventLoops()];
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new NioEventLoop(this);
+                eventLoops[i].start("poker-event-loop-" + i);
+            }
+            logStarted();
+            log("NIO mode with " + eventLoops.length + " event loop(s)");
+            startLocalAcceptor();
+            startAcceptors(i -> acceptConnections(acceptChannels[i % acceptChannels.length]));
+            acceptConnections(acceptChannels[0]);
+        } catch (IOException e) {
+            log("Error starting server: " + e.getMessage());
+        } finally {
+            log(draining ? "Server stopped accepting connections" : "Server stopped");
+        }
+    }
+    
+    /**
+     * Accept loop of one acceptor in NIO mode.
+     */
+    private void acceptConnections(ServerSocketChannel listener) {
+        while (running && !draining) {
+            try {
+                SocketChannel socket = listener.accept();
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                registerWithEventLoop(socket, tls != null);
+            } catch (IOException e) {
+                if (running && !draining) {
+                    log("Error accepting client: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Bind the port for the acceptors: a socket each with SO_REUSEPORT, so the kernel
+     * spreads new connections over their backlogs, or one socket they all accept on
+     * where the option is missing.
+     */
+    private ServerSocket[] bindServerSockets() throws IOException {
+        ServerSocket first = new ServerSocket();
+        boolean reusePort = (config.getAcceptors() > 1 || config.isReusePort())
+                && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        ServerSocket[] sockets = new ServerSocket[reusePort ? config.getAcceptors() : 1];
+        sockets[0] = first;
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                if (sockets[i] == null) {
+                    sockets[i] = new ServerSocket();
+                }
+                if (reusePort) {
+                    sockets[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                // The others join the first one's port, which matters when port 0 picked it
+                sockets[i].bind(new InetSocketAddress(i == 0 ? port : sockets[0].getLocalPort()),
+                        config.getAcceptBacklog());
+            }
+        } catch (IOException e) {
+            for (ServerSocket socket : sockets) {
+                if (socket != null) {
+                    Connections.closeQuietly(socket);
+                }
+            }
+            throw e;
+        }
+        logAcceptors(sockets.length, reusePort);
+        return sockets;
+    }
+    
+    /**
+     * NIO counterpart of bindServerSockets.
+     */
+    private ServerSocketChannel[] bindAcceptChannels() throws IOException {
+        ServerSocketChannel first = ServerSocketChannel.open();
+        boolean reusePort = (config.getAcceptors() > 1 || config.isReusePort())
+                && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        ServerSocketChannel[] channels = new ServerSocketChannel[reusePort ? config.getAcceptors() : 1];
+        channels[0] = first;
+        try {
+            for (int i = 0; i < channels.length; i++) {
+                if (channels[i] == null) {
+                    channels[i] = ServerSocketChannel.open();
+                }
+                if (reusePort) {
+                    channels[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                int boundPort = i == 0 ? port : channels[0].socket().getLocalPort();
+                channels[i].bind(new InetSocketAddress(boundPort), config.getAcceptBacklog());
+            }
+        } catch (IOException e) {
+            for (ServerSocketChannel channel : channels) {
+                if (channel != null) {
+                    Connections.closeQuietly(channel);
+                }
+            }
+            throw e;
+        }
+        logAcceptors(channels.length, reusePort);
+        return channels;
+    }
+    
+    private void logAcceptors(int sockets, boolean reusePort) {
+        if (config.isReusePort()) {
+            log(reusePort ? "Port bound with SO_REUSEPORT: a new server can start on it, then drain this one"
+                    : "SO_REUSEPORT is not supported here, so rolling restarts are not possible");
+        }
+        int acceptors = config.getAcceptors();
+        if (acceptors == 1) {
+            return;
+        }
+        if (sockets == acceptors) {
+            log(acceptors + " acceptors, each on its own SO_REUSEPORT socket (backlog " + config.getAcceptBacklog() + ")");
+        } else {
+            log(acceptors + " acceptors sharing one socket: SO_REUSEPORT is not supported here");
+        }
+    }
+    
+    /**
+     * Start the acceptors beyond the first, which runs on the server thread.
+     * @param acceptLoop accept loop, given the acceptor's number
+     */
+    private void startAcceptors(IntConsumer acceptLoop) {
+        for (int i = 1; i < config.getAcceptors(); i++) {
+            int acceptor = i;
+            Thread thread = new Thread(() -> acceptLoop.accept(acceptor), "poker-acceptor-" + i);
+            acceptorThreads.add(thread);
+            thread.start();
+        }
+    }
+    
+    /**
+     * Run a client's handler, or its writer (see QueuedChannel), on a thread of its own:
+     * a virtual one if clients run on virtual threads.
+     */
+    void startClientThread(Runnable task) {
+        if (clientExecutor != null) {
+            clientExecutor.execute(task);
+        } else {
+            Thread clientThread = new Thread(task);
+            clientThread.start();
+        }
+    }
+    
+    /**
+     * Admit an accepted connection and hand it to the next event loop, or turn it away.
+     * @param secure serve TLS on it (TCP connections when the server has a TLS context)
+     */
+    private void registerWithEventLoop(SocketChannel socket, boolean secure) throws IOException {
+        // TCP and Unix socket accept loops both come here, so claim the index in one step
+        int next = Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length);
+        NioEventLoop loop = eventLoops[next];
+        TlsCodec codec = secure ? new TlsCodec(Tls.serverEngine(tls)) : null;
+        NioConnection connection = new NioConnection(socket, loop, this, codec);
+        ClientHandler handler = new ClientHandler(connection, clientIdCounter.getAndIncrement(), this);
+        connection.setHandler(handler);
+        if (!admit(handler)) {
+            if (secure) {
+                // Still blocking, so the rejection can go through an SSLSocket on the channel's socket adaptor
+                reject(Tls.serverSocket(tls, socket.socket()));
+            } else {
+                Connections.reject(socket, rejectReason());
+            }
+            return;
+        }
         
-        serverThread.start();
+        socket.configureBlocking(false);
+        loop.register(connection);
+    }
+    
+    /**
+     * Listen on the configured Unix domain socket, if any, with an accept loop on its own thread.
+     * Called once the TCP side is ready, so connections are served the same way.
+     */
+    private void startLocalAcceptor() {
+        Path path = config.getUnixSocketPath();
+        if (path == null) {
+            return;
+        }
+        if (!UnixSockets.isSupported()) {
+            log("Unix domain sockets need Java 16 or newer. Serving TCP only.");
+            return;
+        }
+        try {
+            localChannel = UnixSockets.listen(path, config.getAcceptBacklog());
+        } catch (IOException e) {
+            log("Error opening Unix domain socket " + path + ": " + e.getMessage());
+            return;
+        }
+        localThread = new Thread(this::serveLocal, "poker-unix-acceptor");
+        localThread.start();
+        log("Also listening on Unix domain socket " + path);
+    }
+    
+    /**
+     * Accept loop for the Unix domain socket.
+     */
+    private void serveLocal() {
+        while (running && !draining) {
+            try {
+                SocketChannel socket = localChannel.accept();
+                if (eventLoops != null) {
+                    registerWithEventLoop(socket, false);
+                    continue;
+                }
+                
+                ClientHandler handler = new ClientHandler(socket, clientIdCounter.getAndIncrement(), this);
+                if (!admit(handler)) {
+                    Connections.reject(socket, rejectReason());
+                    continue;
+                }
+                startClientThread(handler);
+            } catch (IOException e) {
+                if (running && !draining) {
+                    log("Error accepting local client: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private void logStarted() {
+        log("Server started on port " + port);
+        if (tls != null) {
+            log("TLS 1.3 on the port, sessions resumable for " + config.getTlsSessionTimeoutSeconds() + " s");
+        }
+        if (config.isSeeded()) {
+            log("Seeded deals enabled. Master seed: " + ServerConfig.formatSeed(config.getMasterSeed()));
+        }
+        if (handTokens != null) {
+            log("Stateless hands enabled, tokens valid for " + config.getTokenTtlSeconds() + " s"
+                    + (config.getTokenKey() == null ? ". No poker.tokenKey set, so only this server can settle them" : ""));
+        }
+    }
+    
+    /**
+     * Ask the admission controller about a new connection and track it if it may stay.
+     * @return false if the connection must be rejected
+     */
+    private boolean admit(ClientHandler handler) {
+        AdmissionController.Decision decision = admission.admit(handler);
+        if (decision == AdmissionController.Decision.REJECTED) {
+            log("Server full (" + admission + "). Rejecting connection.");
+            return false;
+        }
+        
+        clients.add(handler);
+        if (decision == AdmissionController.Decision.ADMITTED) {
+            handler.admitted();
+            log("Client " + handler.getClientId() + " connected. Total clients: " + clients.size());
+        } else {
+            log("Client " + handler.getClientId() + " connected and waiting for a seat (" + admission + ")");
+        }
+        if (draining) {
+            handler.handOff(); // Came in while the listeners closed, or a new multiplexed session
+        }
+        return true;
+    }
+    
+    /**
+     * Turn a TCP client away. Over TLS that takes a handshake first, so it runs on a
+     * thread of its own instead of holding up the acceptor.
+     */
+    private void reject(Socket socket) {
+        String reason = rejectReason();
+        if (!(socket instanceof SSLSocket)) {
+            Connections.reject(socket, reason);
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                socket.setSoTimeout(REJECT_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                // Rejected all the same
+            }
+            Connections.reject(socket, reason);
+        }, "poker-reject");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    String rejectReason() {
+        return "Server is full (" + admission.getMaxSessions() + " players, " + admission.getQueueSize()
+                + " waiting). Try again later.";
+    }
+    
+    /**
+     * Connect a client from this JVM, for tests, simulations and embedded use. Messages
+     * go straight to the client's handler, without a socket or any encoding (see
+     * InProcessConnection). Works whether or not the server was started.
+     * @return the client's end of the connection; a full server sends SERVER_FULL on it
+     */
+    public MessageChannel connectInProcess() {
+        InProcessConnection connection = new InProcessConnection(this);
+        ClientHandler handler = new ClientHandler(connection, clientIdCounter.getAndIncrement(), this);
+        connection.setHandler(handler);
+        if (admit(handler)) {
+            connection.wakeUp(); // Tells a queued client its place in line
+        } else {
+            connection.reject(rejectReason());
+        }
+        return connection.getClientEnd();
+    }
+    
+    /**
+     * Create a handler for a new session of a multiplexed connection and admit it like a connection.
+     * @return false if the session must be turned away
+     */
+    boolean admitSession(MultiplexedConnection.Session session) {
+        ClientHandler handler = new ClientHandler(session, clientIdCounter.getAndIncrement(), this);
+        session.setHandler(handler);
+        return admit(handler);
+    }
+    
+    /**
+     * Hand every client over to a server that replaces this one, then stop. The new server
+     * must already listen on the same port, both with reusePort and the same poker.tokenKey:
+     * once this one closes its listeners, the kernel sends it every new connection. Open
+     * hands are finished first; then each client gets RECONNECT with a session token for
+     * its winnings (see ClientHandler.handOff) and continues on the new server.
+     * @param timeoutMillis how long to wait for open hands; clients left after that are disconnected
+     * @return how many clients were still connected when the time ran out
+     */
+    public int drain(long timeoutMillis) {
+        if (!running || draining) {
+            return 0;
+        }
+        draining = true;
+        log("Draining: no longer accepting connections, handing " + clients.size() + " client(s) off");
+        
+        // Connections still in the backlog are reset, unless the kernel migrates them (net.ipv4.tcp_migrate_req)
+        closeListeners(false);
+        joinAcceptors(); // Whoever they accepted is in clients now, or handed off by admit()
+        for (ClientHandler client : new ArrayList<>(clients)) {
+            client.handOff();
+        }
+        
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (clientsToHandOff() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int left = clientsToHandOff();
+        if (left > 0) {
+            log(left + " client(s) did not finish their hand in time and are disconnected");
+        }
+        stop();
+        return left;
+    }
+    
+    /**
+     * Clients not handed off yet; multiplexed connections only carry sessions and do not count.
+     */
+    private int clientsToHandOff() {
+        int count = 0;
+        for (ClientHandler client : clients) {
+            if (!client.carriesSessions()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public boolean isDraining() {
+        return draining;
     }
     
     /**
@@ -83,45 +575,159 @@ public class PokerServer {
         }
         
         running = false;
-        log("Stopping server...");
+        log("Stopping server... Admission totals: " + admission + ", stream handles held: " + getRetainedStreamHandles());
+        if (drainOnShutdown != null && Thread.currentThread() != drainOnShutdown) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(drainOnShutdown);
+            } catch (IllegalStateException e) {
+                // Already shutting down, the hook finds the server stopped
+            }
+        }
+        
+        if (hibernator != null) {
+            hibernator.interrupt();
+        }
         
         // Close all client connections
-        synchronized (clients) {
-            for (ClientHandler client : new ArrayList<>(clients)) {
-                client.disconnect();
-            }
-            clients.clear();
+        for (ClientHandler client : new ArrayList<>(clients)) {
+            client.disconnect();
         }
+        clients.clear();
+        
+        closeListeners(true);
+        joinAcceptors();
         
-        // Close server socket
-        if (serverSocket != null && !serverSocket.isClosed()) {
+        if (eventLoops != null) {
+            for (NioEventLoop loop : eventLoops) {
+                loop.stop();
+            }
+        }
+        if (clientExecutor != null) {
+            clientExecutor.shutdown();
+        }
+    }
+    
+    /**
+     * Close the listening sockets, which ends the accept loops.
+     * @param removeUnixSocket also delete the Unix domain socket file; not when draining,
+     *        as by then it belongs to the server that replaces this one
+     */
+    private void closeListeners(boolean removeUnixSocket) {
+        if (serverSockets != null) {
+            for (ServerSocket serverSocket : serverSockets) {
+                try {
+                    serverSocket.close();
+                } catch (IOException e) {
+                    log("Error closing server socket: " + e.getMessage());
+                }
+            }
+        }
+        if (acceptChannels != null) {
+            for (ServerSocketChannel acceptChannel : acceptChannels) {
+                try {
+                    acceptChannel.close();
+                } catch (IOException e) {
+                    log("Error closing server socket: " + e.getMessage());
+                }
+            }
+        }
+        if (localChannel != null && localChannel.isOpen()) {
             try {
-                serverSocket.close();
+                localChannel.close();
+                if (removeUnixSocket) {
+                    Files.deleteIfExists(config.getUnixSocketPath());
+                }
             } catch (IOException e) {
-                log("Error closing server socket: " + e.getMessage());
+                log("Error closing Unix domain socket: " + e.getMessage());
             }
         }
-        
-        // Wait for server thread to finish
+    }
+    
+    /**
+     * Wait for the server thread and the other accept loops to finish.
+     */
+    private void joinAcceptors() {
         if (serverThread != null) {
             try {
                 serverThread.join(2000);
+                for (Thread acceptor : acceptorThreads) {
+                    acceptor.join(2000);
+                }
+                if (localThread != null) {
+                    localThread.join(2000);
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
     }
     
+    /**
+     * Sweep for idle sessions a few times per hibernation delay until the server stops.
+     */
+    private void runHibernator() {
+        long idleNanos = config.getHibernateAfterSeconds() * 1_000_000_000L;
+        long checkMillis = Math.max(100, config.getHibernateAfterSeconds() * 1000L / 4);
+        while (running) {
+            try {
+                Thread.sleep(checkMillis);
+            } catch (InterruptedException e) {
+                return; // Stopped
+            }
+            hibernateIdleClients(System.nanoTime() - idleNanos);
+        }
+    }
+    
+    /**
+     * Hibernate every session that has had no message since cutoffNanos (a System.nanoTime() value).
+     */
+    void hibernateIdleClients(long cutoffNanos) {
+        for (ClientHandler client : clients) {
+            client.hibernateIfIdle(cutoffNanos);
+        }
+    }
+    
+    void countHibernated() {
+        hibernated.increment();
+    }
+    
+    void countRehydrated() {
+        rehydrated.increment();
+    }
+    
     /**
      * Remove a client from the active clients list.
      */
     public void removeClient(ClientHandler client) {
-        synchronized (clients) {
-            clients.remove(client);
+        tableFeeds.remove(client.getClientId());
+        if (clients.remove(client)) {
             log("Client " + client.getClientId() + " disconnected. Total clients: " + clients.size());
         }
     }
     
+    /**
+     * The feed spectators of a seated player's table get its events from, created when
+     * first asked for.
+     * @param tableId the player's client id
+     * @return the feed, or null if no seated player has that id
+     */
+    public TableFeed getTableFeed(int tableId) {
+        TableFeed feed = tableFeeds.get(tableId);
+        if (feed != null) {
+            return feed;
+        }
+        for (ClientHandler client : clients) {
+            if (client.getClientId() == tableId) {
+                feed = client.getTableFeed();
+                if (feed != null) {
+                    tableFeeds.put(tableId, feed);
+                }
+                return feed;
+            }
+        }
+        return null;
+    }
+    
     /**
      * Log a message to the status controller (thread-safe).
      */
@@ -133,14 +739,143 @@ public class PokerServer {
         }
     }
     
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+    
+    /**
+     * Sealer for stateless hands, or null when hands are kept in the session.
+     */
+    public HandTokens getHandTokens() {
+        return handTokens;
+    }
+    
+    /**
+     * Signer for the session tokens clients carry to a replacement server.
+     */
+    public SessionTokens getSessionTokens() {
+        return sessionTokens;
+    }
+    
+    /**
+     * Sessions of dropped connections waiting for their clients, or null if resumption is off.
+     */
+    public ParkedSessions getParkedSessions() {
+        return parkedSessions;
+    }
+    
+    public ServerConfig getConfig() {
+        return config;
+    }
+    
     public boolean isRunning() {
         return running;
     }
     
     public int getClientCount() {
-        synchronized (clients) {
-            return clients.size();
+        return clients.size();
+    }
+    
+    /**
+     * Connected sessions that are hibernating; the others are active.
+     */
+    public int getHibernatingCount() {
+        int count = 0;
+        for (ClientHandler client : clients) {
+            if (client.isHibernating()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Connected sessions that are not hibernating.
+     */
+    public int getActiveCount() {
+        return clients.size() - getHibernatingCount();
+    }
+    
+    /**
+     * Times a session hibernated, including sessions that have disconnected since.
+     */
+    public long getHibernatedTotal() {
+        return hibernated.sum();
+    }
+    
+    /**
+     * Times a hibernating session woke up with a message.
+     */
+    public long getRehydratedTotal() {
+        return rehydrated.sum();
+    }
+    
+    /**
+     * Objects held by the Java serialization streams of all connected clients.
+     * Each stays under its budget (see ObjectStreamChannel), so this grows only with the client count.
+     */
+    public long getRetainedStreamHandles() {
+        long total = 0;
+        for (ClientHandler client : clients) {
+            total += client.getRetainedStreamHandles();
         }
+        return total;
+    }
+    
+    /**
+     * How many messages wait for each client that has an outbound queue, by client id.
+     */
+    public Map<Integer, Integer> getOutboundQueueDepths() {
+        Map<Integer, Integer> depths = new TreeMap<>();
+        for (ClientHandler client : clients) {
+            OutboundQueue queue = client.getOutboundQueue();
+            if (queue != null) {
+                depths.put(client.getClientId(), queue.getQueuedMessages());
+            }
+        }
+        return depths;
+    }
+    
+    /**
+     * Messages dropped for slow clients that are still connected (SlowClientPolicy.SHED).
+     */
+    public long getShedMessages() {
+        long total = 0;
+        for (ClientHandler client : clients) {
+            OutboundQueue queue = client.getOutboundQueue();
+            if (queue != null) {
+                total += queue.getShedMessages();
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Write calls the NIO event loops made on client sockets; 0 in the thread modes.
+     */
+    public long getSocketWrites() {
+        long total = 0;
+        NioEventLoop[] loops = eventLoops;
+        if (loops != null) {
+            for (NioEventLoop loop : loops) {
+                total += loop.getSocketWrites();
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Frames (or TLS records) those writes carried, so getFramesWritten() / getSocketWrites()
+     * is how many went out per write.
+     */
+    public long getFramesWritten() {
+        long total = 0;
+        NioEventLoop[] loops = eventLoops;
+        if (loops != null) {
+            for (NioEventLoop loop : loops) {
+                total += loop.getFramesWritten();
+            }
+        }
+        return total;
     }
 }
-
@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes a blocking channel's messages on a writer thread of its own (run()), so a
+ * client that reads slowly never holds up the thread handling its requests, nor the
+ * drain thread handing it off. At most limit messages wait; a client that lets more
+ * pile up is too slow, and the next message is dropped or the connection fails
+ * (see ServerConfig.SlowClientPolicy). Receiving goes straight to the wrapped channel.
+ */
+public class QueuedChannel implements MessageChannel, OutboundQueue, Runnable {
+    // How long close() lets the writer finish a last message, e.g. RECONNECT
+    private static final long LINGER_MILLIS = 100;
+    
+    private final MessageChannel channel;
+    private final int limit;
+    private final ServerConfig.SlowClientPolicy policy;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queued = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final ArrayDeque<PokerInfo> queue = new ArrayDeque<>(); // Head is being written
+    private volatile int depth;
+    private volatile int peak;
+    private volatile long shed;
+    private IOException failure;    // From the writer, raised by the next send
+    private boolean closed;
+    
+    /**
+     * @param channel channel to write to, from the writer thread only
+     * @param limit most messages that may wait
+     * @param policy what to do with a message beyond the limit
+     */
+    public QueuedChannel(MessageChannel channel, int limit, ServerConfig.SlowClientPolicy policy) {
+        this.channel = channel;
+        this.limit = limit;
+        this.policy = policy;
+    }
+    
+    /**
+     * Queue a message for the writer.
+     * @throws IOException if the client is too slow, or writing an earlier message failed
+     */
+    @Override
+    public void send(PokerInfo info) throws IOException {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (queue.size() >= limit) {
+                if (policy == ServerConfig.SlowClientPolicy.SHED && OutboundQueue.isSheddable(info)) {
+                    shed++;
+                    return;
+                }
+                failure = OutboundQueue.tooSlow(queue.size());
+                throw failure;
+            }
+            queue.add(info);
+            depth = queue.size();
+            peak = Math.max(peak, depth);
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Writer loop: sends queued messages in order until the channel is closed and empty.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                PokerInfo next;
+                lock.lock();
+                try {
+                    while (queue.isEmpty() && !closed) {
+                        queued.await();
+                    }
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    next = queue.peek();
+                } finally {
+                    lock.unlock();
+                }
+                
+                channel.send(next); // Blocks while the client is not reading
+                
+                lock.lock();
+                try {
+                    queue.poll();
+                    depth = queue.size();
+                    if (queue.isEmpty()) {
+                        drained.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+                queue.clear();
+                depth = 0;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            channel.close();
+        }
+    }
+    
+    @Override
+    public PokerInfo receive() throws IOException {
+        return channel.receive();
+    }
+    
+    /**
+     * Close once the writer has sent what is queued, or after LINGER_MILLIS if the client
+     * is not reading.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queued.signal();
+            long remaining = TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+            while (!queue.isEmpty() && remaining > 0) {
+                remaining = drained.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        channel.close(); // Also ends a write that is stuck on a client that stopped reading
+    }
+    
+    /**
+     * The channel the writer writes to.
+     */
+    public MessageChannel getChannel() {
+        return channel;
+    }
+    
+    @Override
+    public int getQueuedMessages() {
+        return depth;
+    }
+    
+    @Override
+    public int getPeakQueuedMessages() {
+        return peak;
+    }
+    
+    @Override
+    public long getShedMessages() {
+        return shed;
+    }
+}
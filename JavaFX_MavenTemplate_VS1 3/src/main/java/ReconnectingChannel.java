@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.util.ArrayDeque;
+
+/**
+ * Client channel that carries a session across a rolling restart of the server (see
+ * PokerServer.drain). When the server sends RECONNECT, it connects again, which now
+ * reaches the server that took over the port, resumes the session with the token it was
+ * given, and sends again every request that has no reply yet. The caller only sees the
+ * replies, as if the server had never changed.
+ *
+ * A connection that fails before anything arrived on it is retried the same way: it was
+ * reset in the old server's backlog, so none of its requests were handled. Requests get
+ * request ids like in RequestPipeline (ids the caller set are kept), and as there, a
+ * reply means every earlier request that is still waiting got none. Supports one
+ * thread sending and receiving at a time.
+ *
+ * A channel opened with connectResumable also survives its connection dropping. It asks
+ * the server for a resume token up front, without waiting for the answer, and after a
+ * drop reattaches to the parked session with it (see ParkedSessions) in one round trip.
+ * The server ignores resent requests it had already handled and sends its last reply
+ * again, which is dropped here if it already arrived.
+ */
+public class ReconnectingChannel implements MessageChannel {
+    private static final int CONNECT_ATTEMPTS = 100;
+    private static final long RETRY_MILLIS = 20;
+    
+    private final String host;
+    private final int port;
+    private final WireFormat format;
+    private MessageChannel channel;
+    private boolean receivedOnChannel;  // Anything arrived on the current connection
+    private IOException sendFailure;    // Raised by receive() unless the server asks us to reconnect
+    private final ArrayDeque<PokerInfo> unanswered = new ArrayDeque<>(); // Oldest first
+    private int lastRequestId;
+    private int lastAnsweredId;         // Replies up to here were returned; a copy sent again is dropped
+    private int reconnects;
+    
+    // Resumable channels: the token to reattach with, and the request asking for a new one
+    private boolean resumable;
+    private byte[] resumeToken;
+    private int tokenRequestId;
+    
+    private ReconnectingChannel(String host, int port, WireFormat format) {
+        this.host = host;
+        this.port = port;
+        this.format = format;
+    }
+    
+    /**
+     * Connect to a server, retrying while the port refuses connections.
+     */
+    public static ReconnectingChannel connect(String host, int port, WireFormat format) throws IOException {
+        ReconnectingChannel reconnecting = new ReconnectingChannel(host, port, format);
+        reconnecting.channel = reconnecting.connectWithRetries();
+        return reconnecting;
+    }
+    
+    /**
+     * Connect like connect, and also reattach to the session if the connection drops.
+     */
+    public static ReconnectingChannel connectResumable(String host, int port, WireFormat format) throws IOException {
+        ReconnectingChannel reconnecting = connect(host, port, format);
+        reconnecting.resumable = true;
+        reconnecting.requestResumeToken();
+        return reconnecting;
+    }
+    
+    @Override
+    public void send(PokerInfo info) throws IOException {
+        if (info.getRequestId() == 0) {
+            info.setRequestId(++lastRequestId);
+        } else {
+            lastRequestId = Math.max(lastRequestId, info.getRequestId());
+        }
+        if (expectsReply(info.getMessageType())) {
+            unanswered.add(info);
+        }
+        try {
+            channel.send(info);
+        } catch (IOException e) {
+            // The server may have handed us off already; its RECONNECT is still to be read
+            if (sendFailure == null) {
+                sendFailure = e;
+            }
+        }
+    }
+    
+    @Override
+    public PokerInfo receive() throws IOException {
+        while (true) {
+            PokerInfo info;
+            try {
+                info = channel.receive();
+            } catch (IOException e) {
+                if (!receivedOnChannel) {
+                    reconnect(null);
+                } else if (resumeToken != null) {
+                    reconnect(resumeToken); // The connection dropped: reattach to the parked session
+                } else {
+                    throw sendFailure != null ? sendFailure : e;
+                }
+                continue;
+            }
+            receivedOnChannel = true;
+            
+            if (info.getMessageType() == PokerInfo.MessageType.RECONNECT) {
+                reconnect(info.getSessionToken());
+                continue;
+            }
+            int id = info.getRequestId();
+            if (id != 0 && id <= lastAnsweredId) {
+                continue; // The server's last reply, sent again after reattaching
+            }
+            if (id != 0) {
+                lastAnsweredId = id;
+                while (!unanswered.isEmpty() && unanswered.peek().getRequestId() <= id) {
+                    unanswered.poll();
+                }
+            }
+            if (id != 0 && id == tokenRequestId) {
+                tokenRequestId = 0;
+                if (info.getSessionToken() != null) {
+                    resumeToken = info.getSessionToken();
+                }
+                continue;
+            }
+            return info;
+        }
+    }
+    
+    /**
+     * Connect again and carry the session over: resume it with the token, if any, and
+     * send the requests still waiting for replies.
+     */
+    private void reconnect(byte[] sessionToken) throws IOException {
+        channel.close();
+        channel = connectWithRetries();
+        receivedOnChannel = false;
+        sendFailure = null;
+        reconnects++;
+        
+        byte[] newResumeToken = null;
+        if (sessionToken != null) {
+            PokerInfo reply = resume(sessionToken);
+            for (int attempt = 1; ParkedSessions.STILL_CONNECTED.equals(reply.getStatusMessage())
+                    && attempt < CONNECT_ATTEMPTS; attempt++) {
+                pause(); // The server is closing the old connection, which parks the session
+                reply = resume(sessionToken);
+            }
+            if (reply.getStatusMessage() != null) {
+                throw new IOException("Server refused to resume the session: " + reply.getStatusMessage());
+            }
+            newResumeToken = reply.getSessionToken();
+        }
+        for (PokerInfo request : unanswered) {
+            channel.send(request);
+        }
+        if (resumable) {
+            resumeToken = newResumeToken;
+            if (resumeToken == null) {
+                requestResumeToken(); // A new session, or one carried over from a draining server
+            }
+        }
+    }
+    
+    private PokerInfo resume(byte[] sessionToken) throws IOException {
+        PokerInfo resume = new PokerInfo();
+        resume.setMessageType(PokerInfo.MessageType.RESUME_SESSION);
+        resume.setSessionToken(sessionToken);
+        channel.send(resume);
+        PokerInfo reply = Connections.receiveReply(channel, position -> { });
+        receivedOnChannel = true;
+        if (reply.getMessageType() != PokerInfo.MessageType.RESUME_SESSION) {
+            throw new ProtocolException("Expected RESUME_SESSION, got " + reply.getMessageType());
+        }
+        return reply;
+    }
+    
+    /**
+     * Ask for a resume token without waiting; receive() takes it from the reply.
+     */
+    private void requestResumeToken() throws IOException {
+        PokerInfo request = new PokerInfo();
+        request.setMessageType(PokerInfo.MessageType.RESUME_SESSION);
+        request.setRequestId(++lastRequestId);
+        tokenRequestId = request.getRequestId();
+        channel.send(request);
+    }
+    
+    private MessageChannel connectWithRetries() throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return Connections.connect(host, port, format);
+            } catch (IOException e) {
+                if (attempt == CONNECT_ATTEMPTS) {
+                    throw e;
+                }
+            }
+            pause();
+        }
+    }
+    
+    private static void pause() throws InterruptedIOException {
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reconnecting");
+        }
+    }
+    
+    private static boolean expectsReply(PokerInfo.MessageType type) {
+        return type != PokerInfo.MessageType.PLAY_AGAIN && type != PokerInfo.MessageType.DISCONNECT;
+    }
+    
+    /**
+     * The token this channel reattaches with if its connection drops, or null.
+     */
+    public byte[] getResumeToken() {
+        return resumeToken;
+    }
+    
+    /**
+     * How many times the session moved to a new connection.
+     */
+    public int getReconnects() {
+        return reconnects;
+    }
+    
+    @Override
+    public void close() {
+        channel.close();
+    }
+}
@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Client side of request pipelining. Each request gets a fresh request id, so a client
+ * can send several requests without waiting and match the replies afterwards, for
+ * example sending the next INITIAL_BET right behind a PLAYER_ACTION.
+ *
+ * The server handles a session's requests in order and replies in that order, but
+ * some requests get no reply (PLAY_AGAIN, or a bet the server refuses). A reply to a
+ * later request therefore means every earlier request still waiting was dropped.
+ */
+public class RequestPipeline {
+    private final MessageChannel channel;
+    private final IntConsumer onQueuePosition;
+    private final ArrayDeque<Integer> outstanding = new ArrayDeque<>(); // Waiting for a reply, oldest first
+    private final HashMap<Integer, PokerInfo> arrived = new HashMap<>(); // Replies not yet picked up
+    private int lastRequestId;
+    
+    /**
+     * @param channel open channel to the server
+     * @param onQueuePosition called with the place in line while waiting for a seat (0 = seat ready)
+     */
+    public RequestPipeline(MessageChannel channel, IntConsumer onQueuePosition) {
+        this.channel = channel;
+        this.onQueuePosition = onQueuePosition;
+    }
+    
+    /**
+     * Send a request that expects a reply, without waiting for it.
+     * @return the request id to pass to await
+     */
+    public int send(PokerInfo request) throws IOException {
+        int requestId = nextRequestId();
+        request.setRequestId(requestId);
+        outstanding.add(requestId);
+        channel.send(request);
+        return requestId;
+    }
+    
+    /**
+     * Send a request that gets no reply, such as PLAY_AGAIN or DISCONNECT.
+     */
+    public void sendOneWay(PokerInfo request) throws IOException {
+        request.setRequestId(nextRequestId());
+        channel.send(request);
+    }
+    
+    /**
+     * Wait for the reply to a request, reading past replies to earlier ones (kept for their own await).
+     * @return the reply, or null if the server dropped the request
+     * @throws ProtocolException if the server replies to a request that is not waiting
+     */
+    public PokerInfo await(int requestId) throws IOException {
+        while (true) {
+            PokerInfo reply = arrived.remove(requestId);
+            if (reply != null) {
+                return reply;
+            }
+            if (!outstanding.contains(requestId)) {
+                return null;
+            }
+            
+            PokerInfo next = Connections.receiveReply(channel, onQueuePosition);
+            int id = next.getRequestId();
+            if (!outstanding.contains(id)) {
+                throw new ProtocolException("Reply to unknown request " + id);
+            }
+            // Requests older than this reply's got none and never will
+            while (outstanding.poll() != id) {
+                // Dropped
+            }
+            arrived.put(id, next);
+        }
+    }
+    
+    /**
+     * Number of requests sent that have neither been answered nor found dropped.
+     */
+    public int getOutstanding() {
+        return outstanding.size();
+    }
+    
+    public MessageChannel getChannel() {
+        return channel;
+    }
+    
+    private int nextRequestId() {
+        // Positive and never 0, which marks messages that answer no request
+        lastRequestId = lastRequestId == Integer.MAX_VALUE ? 1 : lastRequestId + 1;
+        return lastRequestId;
+    }
+}
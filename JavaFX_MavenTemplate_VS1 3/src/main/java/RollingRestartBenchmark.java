@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Players keep playing while the server is replaced:
+ *
+ *   java -cp target/classes RollingRestartBenchmark [players] [threads|nio]
+ *
+ * A second server binds the same port with SO_REUSEPORT and the first one drains. Every
+ * player plays hands back to back on a ReconnectingChannel. Reports the failed hands, and
+ * the hand times before and across the restart (the slowest hands are the handed-off ones).
+ */
+public class RollingRestartBenchmark {
+    private static final int PORT = 5601;
+    private static final long PHASE_MILLIS = 2000;
+    
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        ServerConfig.IoMode mode = args.length > 1 ? ServerConfig.IoMode.valueOf(args[1].toUpperCase())
+                : ServerConfig.IoMode.THREADS;
+        byte[] key = HandTokens.randomSecret();
+        
+        PokerServer oldServer = start(mode, players, key);
+        Thread.sleep(500);
+        AtomicBoolean playing = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Long> handNanos = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Exception> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            ReconnectingChannel channel = ReconnectingChannel.connect("localhost", PORT, WireFormat.BINARY);
+            Thread thread = new Thread(() -> play(channel, playing, handNanos, failures), "player-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        
+        Thread.sleep(PHASE_MILLIS);
+        long[] before = takeSorted(handNanos);
+        PokerServer newServer = start(mode, players, key);
+        Thread.sleep(200);
+        long drainStart = System.nanoTime();
+        int left = oldServer.drain(10_000);
+        long drainNanos = System.nanoTime() - drainStart;
+        Thread.sleep(PHASE_MILLIS);
+        int moved = newServer.getClientCount();
+        playing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long[] across = takeSorted(handNanos);
+        
+        System.out.printf("%d players, %s server%n", players, mode);
+        report("before restart", before);
+        report("across restart", across);
+        System.out.printf("drain took %.1f ms, %d client(s) cut off, %d on the new server, %d failed hands%n",
+                drainNanos / 1e6, left, moved, failures.size());
+        newServer.stop();
+        System.exit(0);
+    }
+    
+    private static PokerServer start(ServerConfig.IoMode mode, int players, byte[] key) {
+        ServerConfig config = new ServerConfig(PORT);
+        config.setIoMode(mode);
+        config.setReusePort(true);
+        config.setTokenKey(key);
+        config.setCommitments(false);
+        config.setMaxClients(players);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        return server;
+    }
+    
+    private static void play(MessageChannel channel, AtomicBoolean playing, ConcurrentLinkedQueue<Long> handNanos,
+                             ConcurrentLinkedQueue<Exception> failures) {
+        try {
+            while (playing.get()) {
+                long start = System.nanoTime();
+                PokerInfo bet = new PokerInfo();
+                bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+                bet.setAnteBet(10);
+                channel.send(bet);
+                PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+                PokerInfo play = new PokerInfo();
+                play.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+                play.setPlayerAction(ThreeCardLogic.playsQueenSixFour(dealt.getPlayerCards())
+                        ? PokerInfo.PlayerAction.PLAY : PokerInfo.PlayerAction.FOLD);
+                play.setHandId(dealt.getHandId());
+                channel.send(play);
+                channel.receive();
+                handNanos.add(System.nanoTime() - start);
+            }
+        } catch (Exception e) {
+            failures.add(e);
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private static long[] takeSorted(ConcurrentLinkedQueue<Long> handNanos) {
+        List<Long> times = new ArrayList<>();
+        Long next;
+        while ((next = handNanos.poll()) != null) {
+            times.add(next);
+        }
+        long[] sorted = times.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+    
+    private static void report(String phase, long[] sorted) {
+        System.out.printf("%-15s %7d hands, p50 %6.2f ms, p99 %6.2f ms, max %6.1f ms%n", phase, sorted.length,
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 99 / 100] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+}
@@ -0,0 +1,98 @@
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Deterministic shuffle used for every deal, so that a hand can be regenerated from its seed.
+ * Uses a SplitMix64 generator and a forward Fisher-Yates shuffle over card indexes (see Card.getIndex()).
+ * Because the shuffle runs front to back, the first N cards of a deck only depend on the first N
+ * draws, which lets replays regenerate a deal without shuffling the whole deck.
+ *
+ * Hand seeds are derived from the master seed with HMAC-SHA256, which cannot be run
+ * backwards: GAME_RESULT reveals each hand's seed, and that must not give away the
+ * master seed and with it every other deal.
+ */
+public final class SeededShuffle {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final String SEED_MAC = "HmacSHA256";
+    
+    private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(SEED_MAC);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    });
+    
+    private SeededShuffle() {
+    }
+    
+    /**
+     * Derive the seed for one hand of a session: the first 8 bytes of
+     * HMAC-SHA256(key = master seed, message = client id || hand id), all big-endian.
+     * @param masterSeed server master seed
+     * @param clientId client id the session was given
+     * @param handId hand number within the session (starts at 1)
+     * @return the hand seed
+     */
+    public static long handSeed(long masterSeed, int clientId, int handId) {
+        Mac mac = MACS.get();
+        try {
+            mac.init(new SecretKeySpec(ByteBuffer.allocate(Long.BYTES).putLong(masterSeed).array(), SEED_MAC));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot key the seed MAC", e);
+        }
+        byte[] digest = mac.doFinal(ByteBuffer.allocate(2 * Integer.BYTES).putInt(clientId).putInt(handId).array());
+        return ByteBuffer.wrap(digest).getLong();
+    }
+    
+    /**
+     * Fill order with a full shuffled deck of card indexes.
+     * @param seed hand seed
+     * @param order array of at least 52 entries
+     */
+    public static void shuffle(long seed, int[] order) {
+        deal(seed, Card.DECK_SIZE, order);
+    }
+    
+    /**
+     * Put the first count cards of the deck for this seed into out[0..count-1].
+     * Entries past count are left in an unspecified order.
+     * @param seed hand seed
+     * @param count number of cards to draw (at most 52)
+     * @param out array of at least 52 entries, used as scratch space
+     */
+    public static void deal(long seed, int count, int[] out) {
+        for (int i = 0; i < Card.DECK_SIZE; i++) {
+            out[i] = i;
+        }
+        
+        long state = seed;
+        int last = Math.min(count, Card.DECK_SIZE - 1);
+        for (int i = 0; i < last; i++) {
+            int bound = Card.DECK_SIZE - i;
+            
+            // Unbiased bounded draw (multiply-shift with rejection)
+            long product;
+            do {
+                state += GOLDEN_GAMMA;
+                product = (mix64(state) >>> 32) * bound;
+            } while ((product & 0xFFFFFFFFL) < (0x100000000L % bound));
+            int j = i + (int) (product >>> 32);
+            
+            int tmp = out[i];
+            out[i] = out[j];
+            out[j] = tmp;
+        }
+    }
+    
+    /**
+     * SplitMix64 finalizer.
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,520 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Settings for a PokerServer instance.
+ * Defaults match the interactive server; values can be overridden with
+ * poker.* system properties (e.g. -Dpoker.seed=42) when launching.
+ */
+public class ServerConfig {
+    /**
+     * How client connections are served.
+     */
+    public enum IoMode {
+        THREADS,            // One blocking platform thread per client
+        VIRTUAL_THREADS,    // One blocking virtual thread per client (Java 21+)
+        NIO                 // A few selector event loops shared by all clients (binary protocol only)
+    }
+    
+    /**
+     * What happens to a message for a client whose outbound queue is full.
+     */
+    public enum SlowClientPolicy {
+        DISCONNECT,         // The client is disconnected
+        SHED                // State updates a later one supersedes are dropped; anything else disconnects
+    }
+    
+    private int port;
+    private int maxClients;
+    private int waitQueueSize;
+    private IoMode ioMode;
+    private int eventLoops;
+    
+    // Outbound messages waiting per client, and what to do with a client that lets them pile up.
+    // In the thread modes messages only wait with writer threads, otherwise they are written as they are sent
+    private int outboundQueueLimit;
+    private SlowClientPolicy slowClientPolicy;
+    private boolean writerThreads;
+    
+    // NIO writes: frames sent during an event loop iteration go out together (see NioEventLoop)
+    private boolean writeCoalescing;
+    private int flushDeadlineMicros;
+    
+    // Listening: threads accepting connections, each on its own SO_REUSEPORT socket where supported
+    private int acceptors;
+    private int acceptBacklog;
+    
+    // Rolling restarts: a replacement server binds the same port while this one drains
+    private boolean reusePort;
+    private int drainTimeoutSeconds;
+    
+    // Dropped connections: the session is kept this long for the client to resume (see ParkedSessions)
+    private int resumeGraceSeconds;
+    
+    // Idle sessions: after this long without a message a session lets go of what it can rebuild; 0 = never
+    private int hibernateAfterSeconds;
+    
+    // Unix domain socket served alongside the TCP port, for clients on this host; null for none
+    private Path unixSocketPath;
+    
+    // TLS on the TCP port (see Tls); null serves plaintext. The Unix domain socket stays plaintext
+    private SSLContext tlsContext;
+    private int tlsSessionCacheSize;
+    private int tlsSessionTimeoutSeconds;
+    
+    // Seeded deals: every hand seed is derived from the master seed (see SeededShuffle)
+    private boolean seeded;
+    private long masterSeed;
+    
+    // Provably fair deals: hands publish a Merkle commitment of the deck (see ShuffleCommitments)
+    private boolean commitments;
+    private int commitmentBatchSize;
+    
+    // Stateless hands: the deal travels to the client in a sealed token (see HandTokens)
+    private boolean statelessHands;
+    private byte[] tokenKey;
+    private int tokenTtlSeconds;
+    
+    public ServerConfig(int port) {
+        this.port = port;
+        this.maxClients = 8;
+        this.waitQueueSize = 0;
+        this.ioMode = IoMode.THREADS;
+        this.eventLoops = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        this.outboundQueueLimit = 1024;
+        this.slowClientPolicy = SlowClientPolicy.DISCONNECT;
+        this.writeCoalescing = true;
+        this.flushDeadlineMicros = 50;
+        this.acceptors = 1;
+        this.acceptBacklog = 1024;
+        this.drainTimeoutSeconds = 30;
+        this.resumeGraceSeconds = 60;
+        this.hibernateAfterSeconds = 0;
+        this.tlsSessionCacheSize = 20000;
+        this.tlsSessionTimeoutSeconds = 3600;
+        this.seeded = false;
+        this.commitments = true;
+        this.commitmentBatchSize = 64;
+        this.statelessHands = false;
+        this.tokenTtlSeconds = 300;
+    }
+    
+    /**
+     * Build a config for the given port, applying any poker.* system properties.
+     * @param port port to listen on
+     * @return the config
+     */
+    public static ServerConfig fromSystemProperties(int port) {
+        ServerConfig config = new ServerConfig(port);
+        config.setMaxClients(Integer.getInteger("poker.maxClients", config.getMaxClients()));
+        config.setWaitQueueSize(Integer.getInteger("poker.waitQueue", config.getWaitQueueSize()));
+        config.setIoMode(IoMode.valueOf(System.getProperty("poker.io", config.getIoMode().name()).trim().toUpperCase()));
+        config.setEventLoops(Integer.getInteger("poker.eventLoops", config.getEventLoops()));
+        config.setOutboundQueueLimit(Integer.getInteger("poker.outboundLimit", config.getOutboundQueueLimit()));
+        config.setWriterThreads(Boolean.parseBoolean(System.getProperty("poker.writerThreads", "false")));
+        config.setSlowClientPolicy(SlowClientPolicy.valueOf(
+                System.getProperty("poker.slowClients", config.getSlowClientPolicy().name()).trim().toUpperCase()));
+        config.setWriteCoalescing(Boolean.parseBoolean(System.getProperty("poker.coalesceWrites", "true")));
+        config.setFlushDeadlineMicros(Integer.getInteger("poker.flushDeadline", config.getFlushDeadlineMicros()));
+        config.setAcceptors(Integer.getInteger("poker.acceptors", config.getAcceptors()));
+        config.setAcceptBacklog(Integer.getInteger("poker.backlog", config.getAcceptBacklog()));
+        config.setReusePort(Boolean.parseBoolean(System.getProperty("poker.reusePort", "false")));
+        config.setDrainTimeoutSeconds(Integer.getInteger("poker.drainTimeout", config.getDrainTimeoutSeconds()));
+        config.setResumeGraceSeconds(Integer.getInteger("poker.resumeGrace", config.getResumeGraceSeconds()));
+        config.setHibernateAfterSeconds(Integer.getInteger("poker.hibernateAfter", config.getHibernateAfterSeconds()));
+        String unixSocket = System.getProperty("poker.unixSocket");
+        if (unixSocket != null && !unixSocket.trim().isEmpty()) {
+            config.setUnixSocketPath(Path.of(unixSocket.trim()));
+        }
+        String keyStore = System.getProperty("poker.keyStore");
+        if (keyStore != null && !keyStore.trim().isEmpty()) {
+            char[] password = System.getProperty("poker.keyStorePassword", "").toCharArray();
+            try {
+                config.setTlsContext(Tls.serverContext(Path.of(keyStore.trim()), password));
+            } catch (IOException | GeneralSecurityException e) {
+                throw new IllegalArgumentException("Cannot load key store " + keyStore + ": " + e.getMessage(), e);
+            }
+        }
+        config.setTlsSessionCacheSize(Integer.getInteger("poker.tlsSessionCache", config.getTlsSessionCacheSize()));
+        config.setTlsSessionTimeoutSeconds(Integer.getInteger("poker.tlsSessionTimeout",
+                config.getTlsSessionTimeoutSeconds()));
+        
+        String seed = System.getProperty("poker.seed");
+        if (seed != null && !seed.trim().isEmpty()) {
+            config.setMasterSeed(parseSeed(seed));
+        }
+        config.setCommitments(Boolean.parseBoolean(System.getProperty("poker.commitments", "true")));
+        config.setCommitmentBatchSize(Integer.getInteger("poker.commitBatch", config.getCommitmentBatchSize()));
+        
+        config.setStatelessHands(Boolean.parseBoolean(System.getProperty("poker.stateless", "false")));
+        String tokenKey = System.getProperty("poker.tokenKey");
+        if (tokenKey != null && !tokenKey.trim().isEmpty()) {
+            config.setTokenKey(HandTokens.parseSecret(tokenKey));
+        }
+        config.setTokenTtlSeconds(Integer.getInteger("poker.tokenTtl", config.getTokenTtlSeconds()));
+        
+        return config;
+    }
+    
+    /**
+     * Parse a seed written either in decimal or as unsigned hex with a 0x prefix.
+     */
+    public static long parseSeed(String text) {
+        String value = text.trim();
+        if (value.startsWith("0x") || value.startsWith("0X")) {
+            return Long.parseUnsignedLong(value.substring(2), 16);
+        }
+        return Long.parseLong(value);
+    }
+    
+    /**
+     * Format a seed the way it is logged and accepted by parseSeed.
+     */
+    public static String formatSeed(long seed) {
+        return "0x" + Long.toHexString(seed);
+    }
+    
+    public int getPort() {
+        return port;
+    }
+    
+    public void setPort(int port) {
+        this.port = port;
+    }
+    
+    public int getMaxClients() {
+        return maxClients;
+    }
+    
+    /**
+     * Set how many clients may play at once (see AdmissionController).
+     */
+    public void setMaxClients(int maxClients) {
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("Need at least one client seat");
+        }
+        this.maxClients = maxClients;
+    }
+    
+    public int getWaitQueueSize() {
+        return waitQueueSize;
+    }
+    
+    /**
+     * Set how many clients may wait for a seat once all are taken; 0 rejects them right away.
+     */
+    public void setWaitQueueSize(int waitQueueSize) {
+        if (waitQueueSize < 0) {
+            throw new IllegalArgumentException("Wait queue size cannot be negative");
+        }
+        this.waitQueueSize = waitQueueSize;
+    }
+    
+    public IoMode getIoMode() {
+        return ioMode;
+    }
+    
+    public void setIoMode(IoMode ioMode) {
+        this.ioMode = ioMode;
+    }
+    
+    public int getEventLoops() {
+        return eventLoops;
+    }
+    
+    public void setEventLoops(int eventLoops) {
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException("Need at least one event loop");
+        }
+        this.eventLoops = eventLoops;
+    }
+    
+    public int getOutboundQueueLimit() {
+        return outboundQueueLimit;
+    }
+    
+    /**
+     * Set how many messages may wait for a client that is slow to read them (0 for no limit).
+     */
+    public void setOutboundQueueLimit(int outboundQueueLimit) {
+        if (outboundQueueLimit < 0) {
+            throw new IllegalArgumentException("Outbound queue limit cannot be negative");
+        }
+        this.outboundQueueLimit = outboundQueueLimit;
+    }
+    
+    public boolean isWriterThreads() {
+        return writerThreads;
+    }
+    
+    /**
+     * In the thread modes, write each client's messages on a writer thread of its own
+     * (see QueuedChannel), so a client that does not read cannot block its handler. Costs
+     * a thread hand-off per message. NIO connections always queue their output.
+     */
+    public void setWriterThreads(boolean writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+    
+    public boolean isWriteCoalescing() {
+        return writeCoalescing;
+    }
+    
+    /**
+     * In NIO mode, hold the frames a connection is sent until the end of the event loop
+     * iteration and write them with one gathering write, instead of one write each.
+     */
+    public void setWriteCoalescing(boolean writeCoalescing) {
+        this.writeCoalescing = writeCoalescing;
+    }
+    
+    public int getFlushDeadlineMicros() {
+        return flushDeadlineMicros;
+    }
+    
+    /**
+     * Set how long a coalesced frame may wait before the loop flushes in the middle of
+     * an iteration, so a long iteration does not hold early replies back.
+     */
+    public void setFlushDeadlineMicros(int flushDeadlineMicros) {
+        if (flushDeadlineMicros < 0) {
+            throw new IllegalArgumentException("Flush deadline cannot be negative");
+        }
+        this.flushDeadlineMicros = flushDeadlineMicros;
+    }
+    
+    public SlowClientPolicy getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+    
+    public void setSlowClientPolicy(SlowClientPolicy slowClientPolicy) {
+        if (slowClientPolicy == null) {
+            throw new IllegalArgumentException("Slow client policy is required");
+        }
+        this.slowClientPolicy = slowClientPolicy;
+    }
+    
+    public int getAcceptors() {
+        return acceptors;
+    }
+    
+    /**
+     * Set how many threads accept connections on the port. With more than one, each gets
+     * its own socket bound with SO_REUSEPORT (Linux, BSD) and the kernel spreads new
+     * connections over them; elsewhere they share a single socket.
+     */
+    public void setAcceptors(int acceptors) {
+        if (acceptors < 1) {
+            throw new IllegalArgumentException("Need at least one acceptor");
+        }
+        this.acceptors = acceptors;
+    }
+    
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+    
+    /**
+     * Set how many connections each listening socket may hold before they are accepted.
+     * The kernel caps it (net.core.somaxconn on Linux).
+     */
+    public void setAcceptBacklog(int acceptBacklog) {
+        if (acceptBacklog < 1) {
+            throw new IllegalArgumentException("Accept backlog must be at least 1");
+        }
+        this.acceptBacklog = acceptBacklog;
+    }
+    
+    public boolean isReusePort() {
+        return reusePort;
+    }
+    
+    /**
+     * Bind the port with SO_REUSEPORT even with a single acceptor, so a new server can
+     * start on it before this one drains (see PokerServer.drain). A server started this
+     * way also drains when the JVM is told to shut down.
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+    
+    public int getDrainTimeoutSeconds() {
+        return drainTimeoutSeconds;
+    }
+    
+    /**
+     * Set how long a draining server waits for open hands before closing what is left.
+     */
+    public void setDrainTimeoutSeconds(int drainTimeoutSeconds) {
+        if (drainTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("Drain timeout cannot be negative");
+        }
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+    }
+    
+    public int getResumeGraceSeconds() {
+        return resumeGraceSeconds;
+    }
+    
+    /**
+     * Set how long the session of a client whose connection dropped is kept for it to
+     * resume (0 turns resumable sessions off).
+     */
+    public void setResumeGraceSeconds(int resumeGraceSeconds) {
+        if (resumeGraceSeconds < 0) {
+            throw new IllegalArgumentException("Resume grace period cannot be negative");
+        }
+        this.resumeGraceSeconds = resumeGraceSeconds;
+    }
+    
+    public int getHibernateAfterSeconds() {
+        return hibernateAfterSeconds;
+    }
+    
+    /**
+     * Set how long a connected session may go without a message before it hibernates
+     * (0, the default, keeps every session awake; see ClientHandler.hibernate).
+     */
+    public void setHibernateAfterSeconds(int hibernateAfterSeconds) {
+        if (hibernateAfterSeconds < 0) {
+            throw new IllegalArgumentException("Hibernation delay cannot be negative");
+        }
+        this.hibernateAfterSeconds = hibernateAfterSeconds;
+    }
+    
+    public Path getUnixSocketPath() {
+        return unixSocketPath;
+    }
+    
+    /**
+     * Also listen on a Unix domain socket (Java 16+), which co-located clients reach
+     * with the host unix:/path. The file is replaced on start and removed on stop.
+     * @param unixSocketPath socket file, or null to serve TCP only
+     */
+    public void setUnixSocketPath(Path unixSocketPath) {
+        this.unixSocketPath = unixSocketPath;
+    }
+    
+    public SSLContext getTlsContext() {
+        return tlsContext;
+    }
+    
+    /**
+     * Serve TLS 1.3 on the TCP port with a context from Tls.serverContext.
+     * @param tlsContext the server's context, or null for plaintext
+     */
+    public void setTlsContext(SSLContext tlsContext) {
+        this.tlsContext = tlsContext;
+    }
+    
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+    
+    /**
+     * Set how many TLS sessions the server keeps for clients to resume (0 for no limit).
+     * Only used when session tickets are turned off (jdk.tls.server.enableSessionTicketExtension),
+     * otherwise the client carries its session in the ticket.
+     */
+    public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+        if (tlsSessionCacheSize < 0) {
+            throw new IllegalArgumentException("TLS session cache size cannot be negative");
+        }
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+    }
+    
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+    
+    /**
+     * Set how long a TLS session can be resumed, cached or in a ticket.
+     */
+    public void setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+        if (tlsSessionTimeoutSeconds < 1) {
+            throw new IllegalArgumentException("TLS session timeout must be at least a second");
+        }
+        this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+    }
+    
+    public boolean isSeeded() {
+        return seeded;
+    }
+    
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+    
+    /**
+     * Enable seeded deals with the given master seed.
+     */
+    public void setMasterSeed(long masterSeed) {
+        this.masterSeed = masterSeed;
+        this.seeded = true;
+    }
+    
+    public boolean isCommitments() {
+        return commitments;
+    }
+    
+    public void setCommitments(boolean commitments) {
+        this.commitments = commitments;
+    }
+    
+    public int getCommitmentBatchSize() {
+        return commitmentBatchSize;
+    }
+    
+    /**
+     * Set how many hands share one Merkle root.
+     * @param commitmentBatchSize a power of two
+     */
+    public void setCommitmentBatchSize(int commitmentBatchSize) {
+        if (commitmentBatchSize <= 0 || Integer.bitCount(commitmentBatchSize) != 1) {
+            throw new IllegalArgumentException("Commitment batch size must be a power of two: " + commitmentBatchSize);
+        }
+        this.commitmentBatchSize = commitmentBatchSize;
+    }
+    
+    public boolean isStatelessHands() {
+        return statelessHands;
+    }
+    
+    /**
+     * Send each deal to the client as a sealed token instead of keeping it in the session,
+     * so any server with the same token key can settle it.
+     */
+    public void setStatelessHands(boolean statelessHands) {
+        this.statelessHands = statelessHands;
+    }
+    
+    /**
+     * Secret shared by all servers settling each other's hands, or null for a random one.
+     */
+    public byte[] getTokenKey() {
+        return tokenKey;
+    }
+    
+    public void setTokenKey(byte[] tokenKey) {
+        if (tokenKey != null && tokenKey.length < HandTokens.KEY_SIZE) {
+            throw new IllegalArgumentException("Token key must be at least " + HandTokens.KEY_SIZE + " bytes");
+        }
+        this.tokenKey = tokenKey;
+    }
+    
+    public int getTokenTtlSeconds() {
+        return tokenTtlSeconds;
+    }
+    
+    /**
+     * Set how long a player may take to act on a stateless hand.
+     */
+    public void setTokenTtlSeconds(int tokenTtlSeconds) {
+        if (tokenTtlSeconds < 1) {
+            throw new IllegalArgumentException("Token lifetime must be at least a second");
+        }
+        this.tokenTtlSeconds = tokenTtlSeconds;
+    }
+}
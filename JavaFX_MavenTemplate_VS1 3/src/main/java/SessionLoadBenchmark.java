@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Plays hands on many concurrent sessions against an in-process server and reports
+ * hands per second, to compare the server's IO modes:
+ *
+ *   java -cp target/classes SessionLoadBenchmark threads 5000 20
+ *   java -cp target/classes SessionLoadBenchmark virtual_threads 5000 20   (Java 21+)
+ *   java -cp target/classes SessionLoadBenchmark nio 5000 20
+ *
+ * Every session bets, folds and bets again as soon as each reply arrives. The load is
+ * generated by one selector thread, so the server gets nearly all of the remaining CPU.
+ * Both ends of every connection live in this process, so the open-file limit must be
+ * above twice the session count.
+ */
+public class SessionLoadBenchmark {
+    private static final int PORT = 5599;
+    
+    /**
+     * Client side of one session: a tiny state machine driven by the server's replies.
+     */
+    private static class Session {
+        private final SocketChannel socket;
+        private final ByteBuffer input = ByteBuffer.allocate(512);
+        private boolean helloReceived;
+        private int handId;
+        
+        Session(SocketChannel socket) {
+            this.socket = socket;
+        }
+    }
+    
+    private static long hands;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: SessionLoadBenchmark <threads|virtual_threads|nio> [sessions] [seconds]");
+            return;
+        }
+        ServerConfig.IoMode mode = ServerConfig.IoMode.valueOf(args[0].toUpperCase());
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        
+        ServerConfig config = new ServerConfig(PORT);
+        config.setIoMode(mode);
+        config.setMaxClients(Integer.MAX_VALUE);
+        config.setCommitments(false);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        
+        // Connect every session before the clock starts
+        Selector selector = Selector.open();
+        ByteBuffer scratch = ByteBuffer.allocate(512);
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            SocketChannel socket = SocketChannel.open(new InetSocketAddress("127.0.0.1", PORT));
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            socket.configureBlocking(false);
+            socket.register(selector, SelectionKey.OP_READ, new Session(socket));
+        }
+        while (server.getClientCount() < sessions) {
+            Thread.sleep(50);
+        }
+        System.out.printf("%s: %d sessions connected in %.1f s, %d threads%n", mode, sessions,
+                (System.nanoTime() - connectStart) / 1e9, ManagementFactory.getThreadMXBean().getThreadCount());
+        
+        // Start a hand on every session, then keep answering replies
+        for (SelectionKey key : selector.keys()) {
+            Session session = (Session) key.attachment();
+            scratch.clear();
+            scratch.put(WireCodec.HELLO);
+            WireCodec.encodeFrame(bet(), scratch);
+            write(session, scratch);
+        }
+        
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long nextReport = start + 5_000_000_000L;
+        long reported = 0;
+        while (System.nanoTime() < end) {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                onReadable((Session) key.attachment(), scratch);
+            }
+            
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                System.out.printf("  %,d hands/s%n", (hands - reported) * 1_000_000_000L / (now - nextReport + 5_000_000_000L));
+                reported = hands;
+                nextReport = now + 5_000_000_000L;
+            }
+        }
+        
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.out.printf("%s: %d sessions, %,d hands in %.1f s = %,.0f hands/s, heap %.1f MB, %d threads%n",
+                mode, sessions, hands, elapsed, hands / elapsed,
+                (runtime.totalMemory() - runtime.freeMemory()) / 1e6,
+                ManagementFactory.getThreadMXBean().getThreadCount());
+        
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        server.stop();
+        System.exit(0);
+    }
+    
+    private static void onReadable(Session session, ByteBuffer scratch) throws IOException {
+        if (session.socket.read(session.input) < 0) {
+            throw new IOException("Server closed a session");
+        }
+        session.input.flip();
+        
+        if (!session.helloReceived) {
+            if (session.input.remaining() < WireCodec.HELLO.length) {
+                session.input.compact();
+                return;
+            }
+            session.input.position(session.input.position() + WireCodec.HELLO.length);
+            session.helloReceived = true;
+        }
+        
+        while (session.input.remaining() >= WireCodec.LENGTH_PREFIX) {
+            int start = session.input.position();
+            int length = session.input.getShort(start) & 0xFFFF;
+            if (session.input.remaining() < WireCodec.LENGTH_PREFIX + length) {
+                break;
+            }
+            ByteBuffer body = session.input.duplicate();
+            body.position(start + WireCodec.LENGTH_PREFIX).limit(start + WireCodec.LENGTH_PREFIX + length);
+            PokerInfo reply = WireCodec.decode(body);
+            session.input.position(start + WireCodec.LENGTH_PREFIX + length);
+            
+            scratch.clear();
+            if (reply.getMessageType() == PokerInfo.MessageType.CARDS_DEALT) {
+                session.handId = reply.getHandId();
+                WireCodec.encodeFrame(fold(session.handId), scratch);
+            } else {
+                hands++;
+                WireCodec.encodeFrame(bet(), scratch);
+            }
+            write(session, scratch);
+        }
+        session.input.compact();
+    }
+    
+    private static void write(Session session, ByteBuffer scratch) throws IOException {
+        scratch.flip();
+        while (scratch.hasRemaining()) {
+            session.socket.write(scratch);
+        }
+    }
+    
+    private static PokerInfo bet() {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        info.setAnteBet(5);
+        return info;
+    }
+    
+    private static PokerInfo fold(int handId) {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+        info.setPlayerAction(PokerInfo.PlayerAction.FOLD);
+        info.setHandId(handId);
+        return info;
+    }
+}
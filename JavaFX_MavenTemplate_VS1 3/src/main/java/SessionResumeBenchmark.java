@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reconnect storm: clients whose connections dropped in the middle of a hand all
+ * reattach to their parked sessions at once:
+ *
+ *   java -cp target/classes SessionResumeBenchmark [clients] [threads|virtual_threads|nio]
+ *
+ * Each client makes its session resumable, is dealt a hand and drops; then they all
+ * come back together. Reports the heap the server held per parked session, the time
+ * for each client to connect again and reattach (one RESUME_SESSION round trip), how long
+ * the whole storm took, and checks every open hand could still be settled.
+ */
+public class SessionResumeBenchmark {
+    private static final int PORT = 5607;
+    private static final int STORM_THREADS = 32;
+    
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        ServerConfig.IoMode mode = args.length > 1 ? ServerConfig.IoMode.valueOf(args[1].toUpperCase())
+                : ServerConfig.IoMode.NIO;
+        
+        ServerConfig config = new ServerConfig(PORT);
+        config.setIoMode(mode);
+        config.setMaxClients(clients);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        System.out.printf("%d clients, %s server%n", clients, mode);
+        
+        byte[][] tokens = new byte[clients][];
+        int[] handIds = new int[clients];
+        for (int i = 0; i < clients; i++) {
+            MessageChannel channel = Connections.connect("localhost", PORT, WireFormat.BINARY);
+            tokens[i] = resume(channel, null).getSessionToken();
+            channel.send(bet());
+            handIds[i] = Connections.receiveReply(channel, position -> { }).getHandId();
+            channel.close(); // Dropped with the hand open
+        }
+        ParkedSessions parked = server.getParkedSessions();
+        while (parked.getParkedCount() < clients) {
+            Thread.sleep(10);
+        }
+        while (server.getClientCount() > 0) {
+            Thread.sleep(10);
+        }
+        long heapParked = usedHeap();
+        
+        ExecutorService storm = Executors.newFixedThreadPool(STORM_THREADS);
+        List<Future<Long>> reattached = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            reattached.add(storm.submit(() -> reattach(tokens[client], handIds[client])));
+        }
+        long[] nanos = new long[clients];
+        for (int i = 0; i < clients; i++) {
+            nanos[i] = reattached.get(i).get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        storm.shutdown();
+        storm.awaitTermination(10, TimeUnit.SECONDS);
+        while (server.getClientCount() > 0) {
+            Thread.sleep(10);
+        }
+        // Measured against the idle server afterwards, when classes and caches are all loaded
+        System.out.printf("parked: %d sessions, %.0f bytes of heap each%n",
+                clients, (double) (heapParked - usedHeap()) / clients);
+        
+        Arrays.sort(nanos);
+        System.out.printf("storm: %d reattached in %.2f s (%.0f/s), reattach p50 %.2f ms, p99 %.2f ms; "
+                        + "%d resumed, %d expired, every open hand settled%n",
+                clients, seconds, clients / seconds, nanos[clients / 2] / 1e6, nanos[clients * 99 / 100] / 1e6,
+                parked.getResumedTotal(), parked.getExpiredTotal());
+        server.stop();
+        System.exit(0);
+    }
+    
+    /**
+     * Connect, reattach with the token and settle the open hand.
+     * @return the time from connecting to the reattached session's reply
+     */
+    private static long reattach(byte[] token, int handId) throws IOException {
+        long start = System.nanoTime();
+        MessageChannel channel = Connections.connect("localhost", PORT, WireFormat.BINARY);
+        try {
+            PokerInfo reply = resume(channel, token);
+            long nanos = System.nanoTime() - start;
+            if (reply.getStatusMessage() != null) {
+                throw new IOException("Not resumed: " + reply.getStatusMessage());
+            }
+            channel.receive(); // The CARDS_DEALT sent again
+            PokerInfo fold = new PokerInfo();
+            fold.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+            fold.setPlayerAction(PokerInfo.PlayerAction.FOLD);
+            fold.setHandId(handId);
+            channel.send(fold);
+            if (channel.receive().getTotalWinnings() != -10) {
+                throw new IOException("Open hand lost");
+            }
+            return nanos;
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private static PokerInfo resume(MessageChannel channel, byte[] token) throws IOException {
+        PokerInfo request = new PokerInfo();
+        request.setMessageType(PokerInfo.MessageType.RESUME_SESSION);
+        request.setSessionToken(token);
+        channel.send(request);
+        return Connections.receiveReply(channel, position -> { });
+    }
+    
+    private static PokerInfo bet() {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        bet.setAnteBet(10);
+        return bet;
+    }
+    
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
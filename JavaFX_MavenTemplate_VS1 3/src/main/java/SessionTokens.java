@@ -0,0 +1,135 @@
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs a player's session (winnings and hands played) into a token a draining server
+ * sends with RECONNECT, so the server taking over can continue it (see PokerServer.drain).
+ *
+ * A token is the session in the clear, followed by the first 16 bytes of an HMAC-SHA256
+ * over it with a key derived from the shared poker.tokenKey (see TokenKeys). Nothing in it is secret
+ * from the player, it only must not be altered. Like hand tokens, each is valid for the
+ * time to live and can be used once on a server.
+ */
+public class SessionTokens {
+    private static final int VERSION = 1;
+    private static final int NONCE_SIZE = 8;
+    private static final int TAG_SIZE = 16;
+    private static final int MAX_BODY = 32;
+    
+    private final SecretKeySpec macKey;
+    private final long ttlSeconds;
+    private final NonceFilter nonces;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Mac> mac;
+    
+    /**
+     * A session carried by a token.
+     */
+    public static class Session {
+        private final int winnings;
+        private final int handsPlayed;
+        
+        public Session(int winnings, int handsPlayed) {
+            this.winnings = winnings;
+            this.handsPlayed = handsPlayed;
+        }
+        
+        public int getWinnings() {
+            return winnings;
+        }
+        
+        public int getHandsPlayed() {
+            return handsPlayed;
+        }
+    }
+    
+    /**
+     * @param secret shared secret, at least HandTokens.KEY_SIZE bytes; the old and new server need the same
+     * @param ttlSeconds how long a player has to reconnect
+     */
+    public SessionTokens(byte[] secret, long ttlSeconds) {
+        if (secret == null || secret.length < HandTokens.KEY_SIZE) {
+            throw new IllegalArgumentException("Token secret must be at least " + HandTokens.KEY_SIZE + " bytes");
+        }
+        if (ttlSeconds <= 0) {
+            throw new IllegalArgumentException("Token lifetime must be positive: " + ttlSeconds);
+        }
+        this.macKey = new SecretKeySpec(TokenKeys.derive(secret, "3cp session token mac"), TokenKeys.MAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> TokenKeys.newMac(macKey));
+        this.ttlSeconds = ttlSeconds;
+        this.nonces = new NonceFilter(TokenKeys.nonceWindowMillis(ttlSeconds));
+    }
+    
+    /**
+     * Sign a session into a token.
+     */
+    public byte[] seal(int winnings, int handsPlayed) {
+        return seal(winnings, handsPlayed, System.currentTimeMillis() / 1000);
+    }
+    
+    byte[] seal(int winnings, int handsPlayed, long nowSeconds) {
+        byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+        ByteBuffer token = ByteBuffer.allocate(MAX_BODY + TAG_SIZE);
+        token.put((byte) VERSION);
+        token.putInt((int) nowSeconds);
+        WireCodec.putSigned(token, winnings);
+        WireCodec.putUnsigned(token, handsPlayed);
+        token.put(nonce);
+        Mac hmac = mac.get();
+        hmac.update(token.array(), 0, token.position());
+        token.put(hmac.doFinal(), 0, TAG_SIZE);
+        return Arrays.copyOf(token.array(), token.position());
+    }
+    
+    /**
+     * Check a token and return the session it carries. Succeeds at most once per token.
+     * @throws GeneralSecurityException if the token is forged, damaged, expired or already used
+     */
+    public Session open(byte[] token) throws GeneralSecurityException {
+        return open(token, System.currentTimeMillis() / 1000);
+    }
+    
+    Session open(byte[] token, long nowSeconds) throws GeneralSecurityException {
+        if (token == null || token.length < 1 + 4 + NONCE_SIZE + TAG_SIZE) {
+            throw new GeneralSecurityException("Missing or short session token");
+        }
+        int tagStart = token.length - TAG_SIZE;
+        Mac hmac = mac.get();
+        hmac.update(token, 0, tagStart);
+        byte[] expected = hmac.doFinal();
+        if (!MessageDigest.isEqual(Arrays.copyOf(expected, TAG_SIZE), Arrays.copyOfRange(token, tagStart, token.length))) {
+            throw new GeneralSecurityException("Session token signature does not match");
+        }
+        
+        ByteBuffer body = ByteBuffer.wrap(token, 0, tagStart);
+        Session session;
+        long issued;
+        try {
+            if (body.get() != VERSION) {
+                throw new GeneralSecurityException("Unknown session token version");
+            }
+            issued = body.getInt() & 0xFFFFFFFFL;
+            session = new Session(WireCodec.getSigned(body), WireCodec.getUnsigned(body));
+        } catch (ProtocolException | RuntimeException e) {
+            throw new GeneralSecurityException("Malformed session token", e);
+        }
+        
+        if (nowSeconds - issued > ttlSeconds) {
+            throw new GeneralSecurityException("Session token expired");
+        }
+        if (issued - nowSeconds > TokenKeys.MAX_CLOCK_SKEW_SECONDS) {
+            throw new GeneralSecurityException("Session token issued in the future");
+        }
+        if (!nonces.firstUse(ByteBuffer.wrap(expected).getLong())) {
+            throw new GeneralSecurityException("Session token already used");
+        }
+        return session;
+    }
+}
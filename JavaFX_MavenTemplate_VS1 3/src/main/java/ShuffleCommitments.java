@@ -0,0 +1,245 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Precomputed deck commitments for one client session.
+ *
+ * Hand seeds are picked a batch at a time. For each seed the shuffled deck is hashed
+ * (together with a random salt) into a leaf, and a Merkle tree is built over the batch.
+ * A hand then only attaches its precomputed leaf hash, proof path and the batch root;
+ * the seed and salt are revealed with the result so the client can check the deal
+ * (see FairnessVerifier). The next batch is prepared in the background once the
+ * current one is half used, so hashing stays off the response path.
+ *
+ * An idle session can compact() its commitments down to the next hand's seed and salt;
+ * the next hand then starts a new batch with them, so its leaf stays the one announced.
+ */
+public class ShuffleCommitments {
+    public static final int SALT_SIZE = 16;
+    
+    private static final SecureRandom RANDOM = new SecureRandom();
+    
+    /**
+     * Commitment data for one hand.
+     */
+    public static class Commitment {
+        private final int handId;
+        private final long seed;
+        private final byte[] salt;
+        private final int index;
+        private final Batch batch;
+        
+        private Commitment(int handId, long seed, byte[] salt, int index, Batch batch) {
+            this.handId = handId;
+            this.seed = seed;
+            this.salt = salt;
+            this.index = index;
+            this.batch = batch;
+        }
+        
+        public int getHandId() {
+            return handId;
+        }
+        
+        public long getSeed() {
+            return seed;
+        }
+        
+        public byte[] getSalt() {
+            return salt;
+        }
+        
+        public int getIndex() {
+            return index;
+        }
+        
+        public byte[] getLeaf() {
+            return batch.tree.getLeaf(index);
+        }
+        
+        public byte[] getProof() {
+            return batch.tree.getProof(index);
+        }
+        
+        public byte[] getRoot() {
+            return batch.tree.getRoot();
+        }
+    }
+    
+    /**
+     * One batch of hands and the tree committing to their decks.
+     */
+    private static class Batch {
+        private final int firstHandId;
+        private final long[] seeds;
+        private final byte[][] salts;
+        private final MerkleTree tree;
+        
+        private Batch(int firstHandId, long[] seeds, byte[][] salts, MerkleTree tree) {
+            this.firstHandId = firstHandId;
+            this.seeds = seeds;
+            this.salts = salts;
+            this.tree = tree;
+        }
+    }
+    
+    private final ServerConfig config;
+    private final int clientId;
+    private final int batchSize;
+    
+    private Batch current;
+    private int nextIndex;
+    private CompletableFuture<Batch> upcoming;
+    
+    // After compact(): the next hand and its seed and salt; keptSalt is null if nothing was kept
+    private int keptHandId;
+    private long keptSeed;
+    private byte[] keptSalt;
+    
+    public ShuffleCommitments(ServerConfig config, int clientId) {
+        this.config = config;
+        this.clientId = clientId;
+        this.batchSize = config.getCommitmentBatchSize();
+    }
+    
+    /**
+     * Take the commitment for the next hand. Hands must be taken in order.
+     * @param handId the hand being dealt
+     * @return its commitment (seed, salt, leaf, proof and root)
+     */
+    public Commitment next(int handId) {
+        if (current == null && keptSalt != null) {
+            current = generate(keptHandId, keptSeed, keptSalt);
+            keptSalt = null;
+            nextIndex = 0;
+        } else if (current == null || nextIndex == batchSize) {
+            current = upcoming != null ? upcoming.join() : generate(handId);
+            upcoming = null;
+            nextIndex = 0;
+        }
+        
+        int index = nextIndex;
+        if (current.firstHandId + index != handId) {
+            throw new IllegalStateException("Hand " + handId + " dealt out of order (expected "
+                    + (current.firstHandId + index) + ")");
+        }
+        nextIndex++;
+        
+        // Prepare the following batch off the response path once this one is half used
+        if (upcoming == null && nextIndex >= batchSize / 2) {
+            int firstHandId = current.firstHandId + batchSize;
+            upcoming = CompletableFuture.supplyAsync(() -> generate(firstHandId));
+        }
+        
+        return new Commitment(handId, current.seeds[index], current.salts[index], index, current);
+    }
+    
+    /**
+     * Leaf hash of the hand after the one last taken, so it can be published before that hand is bet.
+     * @return the leaf hash, or null if no hand has been taken yet
+     */
+    public byte[] peekNextLeaf() {
+        if (current == null) {
+            return null;
+        }
+        if (nextIndex < batchSize) {
+            return current.tree.getLeaf(nextIndex);
+        }
+        if (upcoming == null) {
+            upcoming = CompletableFuture.completedFuture(generate(current.firstHandId + batchSize));
+        }
+        return upcoming.join().tree.getLeaf(0);
+    }
+    
+    /**
+     * Let go of the precomputed batches, keeping only what the next hand needs: its seed
+     * and salt, if its leaf may have been published with peekNextLeaf. A batch being
+     * prepared in the background is dropped once it is done.
+     */
+    public void compact() {
+        if (current == null) {
+            return;
+        }
+        if (nextIndex < batchSize) {
+            keep(current.firstHandId + nextIndex, current.seeds[nextIndex], current.salts[nextIndex]);
+        } else if (upcoming != null) {
+            Batch next = upcoming.join();
+            keep(next.firstHandId, next.seeds[0], next.salts[0]);
+        }
+        current = null;
+        upcoming = null;
+        nextIndex = 0;
+    }
+    
+    private void keep(int handId, long seed, byte[] salt) {
+        keptHandId = handId;
+        keptSeed = seed;
+        keptSalt = salt;
+    }
+    
+    /**
+     * Whether the batches are released (compacted, or no hand dealt yet).
+     */
+    public boolean isCompact() {
+        return current == null && upcoming == null;
+    }
+    
+    private Batch generate(int firstHandId) {
+        return generate(firstHandId, 0, null);
+    }
+    
+    /**
+     * @param firstSalt salt of the first hand, with firstSeed its seed; null to pick both like the others
+     */
+    private Batch generate(int firstHandId, long firstSeed, byte[] firstSalt) {
+        long[] seeds = new long[batchSize];
+        byte[][] salts = new byte[batchSize][];
+        byte[][] leaves = new byte[batchSize][];
+        int[] order = new int[Card.DECK_SIZE];
+        MessageDigest digest = MerkleTree.sha256();
+        
+        for (int i = 0; i < batchSize; i++) {
+            if (i == 0 && firstSalt != null) {
+                seeds[i] = firstSeed;
+                salts[i] = firstSalt;
+            } else {
+                if (config.isSeeded()) {
+                    seeds[i] = SeededShuffle.handSeed(config.getMasterSeed(), clientId, firstHandId + i);
+                } else {
+                    seeds[i] = RANDOM.nextLong();
+                }
+                salts[i] = new byte[SALT_SIZE];
+                RANDOM.nextBytes(salts[i]);
+            }
+            leaves[i] = leafHash(digest, salts[i], seeds[i], order);
+        }
+        
+        return new Batch(firstHandId, seeds, salts, new MerkleTree(leaves));
+    }
+    
+    /**
+     * Hash committing to the deck a seed produces: SHA-256(0x00 || salt || seed || 52 card indexes).
+     * @param salt per-hand salt
+     * @param seed hand seed
+     * @return the leaf hash
+     */
+    public static byte[] leafHash(byte[] salt, long seed) {
+        return leafHash(MerkleTree.sha256(), salt, seed, new int[Card.DECK_SIZE]);
+    }
+    
+    private static byte[] leafHash(MessageDigest digest, byte[] salt, long seed, int[] order) {
+        SeededShuffle.shuffle(seed, order);
+        byte[] deck = new byte[Card.DECK_SIZE];
+        for (int i = 0; i < Card.DECK_SIZE; i++) {
+            deck[i] = (byte) order[i];
+        }
+        
+        digest.update(MerkleTree.LEAF_PREFIX);
+        digest.update(salt);
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(seed).array());
+        digest.update(deck);
+        return digest.digest();
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Players next to clients that send requests but never read the replies:
+ *
+ *   java -cp target/classes SlowClientBenchmark [players] [stalled] [threads|nio]
+ *
+ * Runs once without a limit on outbound queues (in the thread modes: without writer
+ * threads, so replies are written as they are sent) and once with the default limit.
+ * Reports the players' hand times, how many stalled clients were cut off, and the most
+ * replies waiting on the server at once.
+ */
+public class SlowClientBenchmark {
+    private static final int PORT = 5604;
+    private static final long PHASE_MILLIS = 5000;
+    private static final long SAMPLE_MILLIS = 250;
+    
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int stalled = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        ServerConfig.IoMode mode = args.length > 2 ? ServerConfig.IoMode.valueOf(args[2].toUpperCase())
+                : ServerConfig.IoMode.NIO;
+        
+        System.out.printf("%d players, %d stalled clients, %s server%n", players, stalled, mode);
+        for (int limit : new int[] {0, new ServerConfig(PORT).getOutboundQueueLimit()}) {
+            run(players, stalled, mode, limit);
+        }
+        System.exit(0);
+    }
+    
+    private static void run(int players, int stalled, ServerConfig.IoMode mode, int limit) throws Exception {
+        ServerConfig config = new ServerConfig(PORT);
+        config.setIoMode(mode);
+        config.setCommitments(false);
+        config.setMaxClients(players + stalled);
+        config.setOutboundQueueLimit(limit);
+        config.setWriterThreads(limit > 0);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        
+        AtomicBoolean running = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Long> handNanos = new ConcurrentLinkedQueue<>();
+        AtomicInteger cutOff = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            MessageChannel channel = Connections.connect("localhost", PORT, WireFormat.BINARY);
+            threads.add(new Thread(() -> play(channel, running, handNanos)));
+        }
+        List<Socket> stalledSockets = new ArrayList<>();
+        for (int i = 0; i < stalled; i++) {
+            Socket socket = new Socket();
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress("localhost", PORT));
+            stalledSockets.add(socket);
+            threads.add(new Thread(() -> flood(socket, running, cutOff)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        
+        long peakWaiting = 0;
+        for (long waited = 0; waited < PHASE_MILLIS; waited += SAMPLE_MILLIS) {
+            Thread.sleep(SAMPLE_MILLIS);
+            long waiting = 0;
+            for (int depth : server.getOutboundQueueDepths().values()) {
+                waiting += depth;
+            }
+            peakWaiting = Math.max(peakWaiting, waiting);
+        }
+        running.set(false);
+        for (Socket socket : stalledSockets) {
+            Connections.closeQuietly(socket);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        server.stop();
+        
+        long[] sorted = handNanos.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        System.out.printf("limit %-5s %7d hands, p50 %6.2f ms, p99 %7.2f ms; %d of %d stalled cut off, "
+                        + "at most %d replies waiting%n",
+                limit == 0 ? "none" : String.valueOf(limit), sorted.length, sorted[sorted.length / 2] / 1e6,
+                sorted[sorted.length * 99 / 100] / 1e6, cutOff.get(), stalled, peakWaiting);
+        Thread.sleep(500); // Let the port go
+    }
+    
+    private static void play(MessageChannel channel, AtomicBoolean running, ConcurrentLinkedQueue<Long> handNanos) {
+        try {
+            while (running.get()) {
+                long start = System.nanoTime();
+                channel.send(oneShot());
+                Connections.receiveReply(channel, position -> { });
+                handNanos.add(System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            System.err.println("Player failed: " + e.getMessage());
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Pipeline one-shot hands without ever reading, until the server cuts the client off.
+     */
+    private static void flood(Socket socket, AtomicBoolean running, AtomicInteger cutOff) {
+        ByteBuffer frame = ByteBuffer.allocate(256);
+        WireCodec.encodeFrame(oneShot(), frame);
+        frame.flip();
+        ByteBuffer frames = ByteBuffer.allocate(16 * 1024);
+        try {
+            OutputStream output = socket.getOutputStream();
+            output.write(WireCodec.HELLO);
+            while (running.get()) {
+                frames.clear();
+                while (frames.remaining() >= frame.remaining()) {
+                    frames.put(frame.duplicate());
+                }
+                output.write(frames.array(), 0, frames.position());
+                Thread.sleep(1);
+            }
+        } catch (IOException e) {
+            if (running.get()) {
+                cutOff.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static PokerInfo oneShot() {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+        bet.setAnteBet(10);
+        bet.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        return bet;
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One player's table watched by many spectators:
+ *
+ *   java -cp target/classes SpectatorBenchmark [spectators] [hands per second] [threads|virtual_threads|nio]
+ *
+ * This JVM runs the server; the player and the spectators run in a second JVM, so each
+ * side stays within its file descriptor limit (10,000 spectators take 20,000 sockets).
+ * The player plays one-shot hands at a fixed rate, and every result is a table event.
+ * The spectators are read by a single selector thread, which checks that each event it
+ * sees is a whole frame and decodes a sample of them to time how long after the
+ * player's request each spectator received it.
+ *
+ * Reports events per second, frames delivered, how many events spectators skipped
+ * because they were behind, the delivery lag, and the server's CPU time per event.
+ */
+public class SpectatorBenchmark {
+    private static final int PORT = 5606;
+    private static final long WARMUP_MILLIS = 3000;
+    private static final long PHASE_MILLIS = 10000;
+    private static final int SAMPLE_EVERY = 100;    // Spectators whose events are decoded and timed
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--clients")) {
+            runClients(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        int spectators = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int handsPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        ServerConfig.IoMode mode = args.length > 2 ? ServerConfig.IoMode.valueOf(args[2].toUpperCase())
+                : ServerConfig.IoMode.NIO;
+        
+        ServerConfig config = new ServerConfig(PORT);
+        config.setIoMode(mode);
+        config.setCommitments(false);
+        config.setMaxClients(spectators + 1);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        System.out.printf("%d spectators, %d hands/s, %s server%n", spectators, handsPerSecond, mode);
+        
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process clients = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "SpectatorBenchmark", "--clients", String.valueOf(spectators), String.valueOf(handsPerSecond))
+                .redirectErrorStream(true).start();
+        TableFeed feed = null;
+        long cpuStart = 0;
+        long eventsStart = 0;
+        long skippedStart = 0;
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(clients.getInputStream()))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith("table ")) {
+                    feed = server.getTableFeed(Integer.parseInt(line.substring(6).trim()));
+                } else if (line.equals("measuring")) {
+                    cpuStart = processCpuNanos();
+                    eventsStart = feed.getEventsPublished();
+                    skippedStart = feed.getSkippedEvents();
+                } else if (line.equals("done")) {
+                    long cpu = processCpuNanos() - cpuStart;
+                    long events = feed.getEventsPublished() - eventsStart;
+                    long skipped = feed.getSkippedEvents() - skippedStart;
+                    System.out.printf("server: %d events, %.1f ms CPU each (%.2f us per spectator), "
+                                    + "%.2f%% of deliveries skipped, %d spectators at the end%n",
+                            events, cpu / 1e6 / events, cpu / 1e3 / events / spectators,
+                            100.0 * skipped / ((double) events * spectators), feed.getSpectatorCount());
+                } else {
+                    System.out.println(line);
+                }
+            }
+        }
+        clients.waitFor();
+        server.stop();
+        System.exit(0);
+    }
+    
+    /**
+     * The client side, in its own JVM: connect the player and the spectators, then play.
+     */
+    private static void runClients(int spectators, int handsPerSecond) throws Exception {
+        MessageChannel player = Connections.connect("localhost", PORT, WireFormat.BINARY);
+        player.send(oneShot());
+        int tableId = Connections.receiveReply(player, position -> { }).getClientId();
+        System.out.println("table " + tableId);
+        
+        Selector selector = Selector.open();
+        ByteBuffer watch = ByteBuffer.allocate(64);
+        watch.put(WireCodec.HELLO);
+        PokerInfo request = new PokerInfo();
+        request.setMessageType(PokerInfo.MessageType.WATCH_TABLE);
+        request.setClientId(tableId);
+        WireCodec.encodeFrame(request, watch);
+        watch.flip();
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < spectators; i++) {
+            SocketChannel spectator = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+            spectator.write(watch.duplicate());
+            spectator.configureBlocking(false);
+            spectator.register(selector, SelectionKey.OP_READ, new Watcher(i % SAMPLE_EVERY == 0));
+        }
+        System.out.printf("%d spectators connected in %.1f s%n", spectators, (System.nanoTime() - connectStart) / 1e9);
+        
+        // Hand ids are counted per table, so the player's send times can be looked up by hand id
+        long[] sentNanos = new long[(int) ((WARMUP_MILLIS + PHASE_MILLIS) / 1000 + 5) * handsPerSecond + 1024];
+        AtomicBoolean running = new AtomicBoolean(true);
+        Reader reader = new Reader(selector, sentNanos, running);
+        Thread readerThread = new Thread(reader, "spectators");
+        readerThread.start();
+        
+        long interval = TimeUnit.SECONDS.toNanos(1) / handsPerSecond;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.MILLISECONDS.toNanos(WARMUP_MILLIS);
+        long end = measureFrom + TimeUnit.MILLISECONDS.toNanos(PHASE_MILLIS);
+        long next = start;
+        int hands = 0;
+        boolean measuring = false;
+        while (System.nanoTime() < end) {
+            if (!measuring && System.nanoTime() >= measureFrom) {
+                measuring = true;
+                reader.startMeasuring();
+                System.out.println("measuring");
+            }
+            int handId = hands + 2; // The first hand was played before the spectators came
+            if (handId < sentNanos.length) {
+                sentNanos[handId] = System.nanoTime();
+            }
+            player.send(oneShot());
+            Connections.receiveReply(player, position -> { });
+            hands++;
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+        Thread.sleep(500); // Let the last events arrive
+        running.set(false);
+        selector.wakeup();
+        readerThread.join();
+        
+        long[] lags = reader.lags();
+        Arrays.sort(lags);
+        double seconds = PHASE_MILLIS / 1000.0;
+        System.out.printf("clients: %.0f events/s, %.0f frames/s delivered, lag p50 %.2f ms, p99 %.2f ms, "
+                        + "max %.2f ms (%d sampled), %d spectators lost%n",
+                reader.measuredHands / seconds, reader.measuredFrames / seconds,
+                percentile(lags, 50), percentile(lags, 99), percentile(lags, 100), lags.length, reader.lost);
+        System.out.println("done");
+        player.close();
+        System.exit(0);
+    }
+    
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)] / 1e6;
+    }
+    
+    /**
+     * One spectator's connection on the client side.
+     */
+    private static class Watcher {
+        final boolean sampled;
+        final ByteBuffer input = ByteBuffer.allocate(1024);
+        boolean helloRead;
+        
+        Watcher(boolean sampled) {
+            this.sampled = sampled;
+        }
+    }
+    
+    /**
+     * Reads every spectator connection on one thread.
+     */
+    private static class Reader implements Runnable {
+        private final Selector selector;
+        private final long[] sentNanos;
+        private final AtomicBoolean running;
+        private long[] lags = new long[1 << 16];
+        private int lagCount;
+        private volatile boolean measuring;
+        long measuredFrames;
+        long measuredHands;
+        int lost;
+        
+        Reader(Selector selector, long[] sentNanos, AtomicBoolean running) {
+            this.selector = selector;
+            this.sentNanos = sentNanos;
+            this.running = running;
+        }
+        
+        void startMeasuring() {
+            measuring = true;
+        }
+        
+        long[] lags() {
+            return Arrays.copyOf(lags, lagCount);
+        }
+        
+        @Override
+        public void run() {
+            int lastHand = 0;
+            try {
+                while (running.get()) {
+                    selector.select();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Watcher watcher = (Watcher) key.attachment();
+                        SocketChannel channel = (SocketChannel) key.channel();
+                        if (channel.read(watcher.input) < 0) {
+                            lost++;
+                            key.cancel();
+                            channel.close();
+                            continue;
+                        }
+                        watcher.input.flip();
+                        if (!watcher.helloRead && watcher.input.remaining() >= WireCodec.HELLO.length) {
+                            watcher.input.position(WireCodec.HELLO.length);
+                            watcher.helloRead = true;
+                        }
+                        while (watcher.helloRead && watcher.input.remaining() >= WireCodec.LENGTH_PREFIX) {
+                            int start = watcher.input.position();
+                            int length = watcher.input.getShort(start) & 0xFFFF;
+                            if (watcher.input.remaining() < WireCodec.LENGTH_PREFIX + length) {
+                                break;
+                            }
+                            int type = watcher.input.get(start + WireCodec.LENGTH_PREFIX);
+                            boolean result = type == PokerInfo.MessageType.GAME_RESULT.ordinal();
+                            if (result && measuring) {
+                                measuredFrames++;
+                            }
+                            if (result && watcher.sampled) {
+                                ByteBuffer body = watcher.input.duplicate();
+                                body.position(start + WireCodec.LENGTH_PREFIX).limit(start + WireCodec.LENGTH_PREFIX + length);
+                                int handId = WireCodec.decode(body).getHandId();
+                                if (measuring && handId < sentNanos.length && sentNanos[handId] > 0) {
+                                    if (lagCount == lags.length) {
+                                        lags = Arrays.copyOf(lags, lagCount * 2);
+                                    }
+                                    lags[lagCount++] = System.nanoTime() - sentNanos[handId];
+                                    if (handId > lastHand) {
+                                        measuredHands += lastHand == 0 ? 1 : handId - lastHand;
+                                        lastHand = handId;
+                                    }
+                                }
+                            }
+                            watcher.input.position(start + WireCodec.LENGTH_PREFIX + length);
+                        }
+                        watcher.input.compact();
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Spectator reader failed: " + e.getMessage());
+            }
+        }
+    }
+    
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+    
+    private static PokerInfo oneShot() {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+        bet.setAnteBet(10);
+        bet.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        return bet;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Outcome of a settled hand, sent as a code and rendered by the client.
+ * Replaces the English sentence GAME_RESULT used to carry for every hand.
+ */
+public enum StatusCode {
+    FOLDED("Player folded. Lost Ante and Pair Plus."),
+    DEALER_NOT_QUALIFIED("Dealer not qualified. Play bet returned. Ante pushes."),
+    DEALER_WINS("Dealer wins. Lost Ante and Play."),
+    PLAYER_WINS("Player wins! Paid 1:1 on Ante and Play."),
+    TIE("Tie. Ante and Play push.");
+    
+    private static final StatusCode[] CODES = values();
+    
+    private final String text;
+    
+    StatusCode(String text) {
+        this.text = text;
+    }
+    
+    /**
+     * Text to show the player.
+     */
+    public String getText() {
+        return text;
+    }
+    
+    /**
+     * Compact code for the wire: 0 for none, otherwise ordinal + 1.
+     */
+    public static int toCode(StatusCode status) {
+        return status == null ? 0 : status.ordinal() + 1;
+    }
+    
+    /**
+     * @return the status for a wire code, or null for 0 and unknown codes
+     */
+    public static StatusCode fromCode(int code) {
+        return code <= 0 || code > CODES.length ? null : CODES[code - 1];
+    }
+}
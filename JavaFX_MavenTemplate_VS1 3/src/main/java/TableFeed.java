@@ -0,0 +1,202 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The hands played at one table (a seated player's game), for spectators that sent
+ * WATCH_TABLE. Every event is encoded once into a binary frame that no one modifies
+ * afterwards; spectators write it from duplicates of their own, so the cost of an
+ * event does not grow with the number of watchers beyond the writes themselves.
+ *
+ * Spectators only need the current state of the table, so a spectator that falls
+ * behind skips to the latest event instead of queueing the ones it missed:
+ * - NIO spectators are grouped by event loop, and an event reaches a loop as one task
+ *   that writes it to all of that loop's spectators. A loop that is still busy when
+ *   more events arrive delivers only the newest, and a connection whose socket is
+ *   backed up keeps only the newest until it drains (see NioConnection.sendShared).
+ * - Spectators on blocking connections write from their handler's thread, which wakes
+ *   up for each event and writes whatever is latest by then.
+ *
+ * When the player leaves, spectators get a WATCH_TABLE saying the table closed and
+ * are disconnected.
+ */
+public class TableFeed {
+    
+    /**
+     * One event as spectators receive it.
+     */
+    static class Event {
+        final long sequence;        // 1 for the table's first event; 0 before any
+        final byte[] bytes;         // Length-prefixed frame, for blocking channels
+        final ByteBuffer frame;     // The same bytes, read-only, for NIO connections
+        final boolean closing;
+        
+        Event(long sequence, byte[] bytes, boolean closing) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+            this.frame = bytes == null ? null : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            this.closing = closing;
+        }
+    }
+    
+    /**
+     * The spectators served by one event loop. The list is only touched on that loop's thread.
+     */
+    private class LoopSpectators implements Runnable {
+        private final NioEventLoop loop;
+        private final ArrayList<ClientHandler> spectators = new ArrayList<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        
+        LoopSpectators(NioEventLoop loop) {
+            this.loop = loop;
+        }
+        
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                loop.execute(this);
+            }
+        }
+        
+        @Override
+        public void run() {
+            scheduled.set(false);
+            Event event = latest; // Events published while this task waited are skipped
+            int kept = 0;
+            for (int i = 0; i < spectators.size(); i++) {
+                ClientHandler spectator = spectators.get(i);
+                if (spectator.deliver(event)) {
+                    spectators.set(kept++, spectator);
+                } else {
+                    count.decrementAndGet(); // Disconnected
+                }
+            }
+            spectators.subList(kept, spectators.size()).clear();
+        }
+    }
+    
+    private final int tableId;
+    private final Map<NioEventLoop, LoopSpectators> loops;
+    private final Set<Thread> waiting;          // Handler threads of blocking spectators
+    private final AtomicInteger count;
+    private final LongAdder skipped;
+    private ByteBuffer encodeBuffer;            // Only used while publishing
+    private volatile Event latest;
+    
+    public TableFeed(int tableId) {
+        this.tableId = tableId;
+        this.loops = new ConcurrentHashMap<>();
+        this.waiting = ConcurrentHashMap.newKeySet();
+        this.count = new AtomicInteger();
+        this.skipped = new LongAdder();
+        this.encodeBuffer = ByteBuffer.allocate(512);
+        this.latest = new Event(0, null, false);
+    }
+    
+    /**
+     * Publish an event to every spectator. Called by the player's handler.
+     * @param info the event; encoded right away, so it may be changed afterwards
+     */
+    public void publish(PokerInfo info) {
+        publish(info, false);
+    }
+    
+    /**
+     * Tell spectators the player left. Later events are ignored.
+     */
+    public void close() {
+        PokerInfo closed = new PokerInfo();
+        closed.setMessageType(PokerInfo.MessageType.WATCH_TABLE);
+        closed.setClientId(tableId);
+        closed.setStatusMessage("Table closed");
+        publish(closed, true);
+    }
+    
+    private synchronized void publish(PokerInfo info, boolean closing) {
+        if (latest.closing) {
+            return;
+        }
+        while (true) {
+            encodeBuffer.clear();
+            try {
+                WireCodec.encodeFrame(info, encodeBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                encodeBuffer = ByteBuffer.allocate(encodeBuffer.capacity() * 2);
+            }
+        }
+        latest = new Event(latest.sequence + 1, Arrays.copyOf(encodeBuffer.array(), encodeBuffer.position()), closing);
+        
+        for (LoopSpectators spectators : loops.values()) {
+            spectators.schedule();
+        }
+        for (Thread thread : waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    /**
+     * Add a spectator on an NIO connection. Called on that connection's loop thread,
+     * which delivers the latest event right away.
+     */
+    void watch(ClientHandler spectator, NioEventLoop loop) {
+        LoopSpectators spectators = loops.computeIfAbsent(loop, LoopSpectators::new);
+        spectators.spectators.add(spectator);
+        count.incrementAndGet();
+        spectator.deliver(latest);
+    }
+    
+    /**
+     * Add a spectator whose handler thread writes the events (see ClientHandler.watch).
+     */
+    void watch(Thread thread) {
+        waiting.add(thread);
+        count.incrementAndGet();
+    }
+    
+    void unwatch(Thread thread) {
+        if (waiting.remove(thread)) {
+            count.decrementAndGet();
+        }
+    }
+    
+    Event getLatest() {
+        return latest;
+    }
+    
+    void countSkipped(long events) {
+        skipped.add(events);
+    }
+    
+    public int getTableId() {
+        return tableId;
+    }
+    
+    /**
+     * Spectators watching. NIO spectators that disconnected are only noticed at the next event.
+     */
+    public int getSpectatorCount() {
+        return count.get();
+    }
+    
+    /**
+     * Events published so far, each encoded once.
+     */
+    public long getEventsPublished() {
+        return latest.sequence;
+    }
+    
+    /**
+     * Events spectators skipped because they were behind, summed over all spectators.
+     */
+    public long getSkippedEvents() {
+        return skipped.sum();
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 
 /**
@@ -252,5 +253,57 @@ public class ThreeCardLogic {
                 return 0;
         }
     }
+    
+    /**
+     * The usual player strategy: play any pair or better, or a high card hand of Q-6-4 or better.
+     * @param hand player's hand
+     * @return true to PLAY, false to FOLD
+     */
+    public static boolean playsQueenSixFour(ArrayList<Card> hand) {
+        if (evalHand(hand) > HIGH_CARD) {
+            return true;
+        }
+        int[] values = new int[3];
+        for (int i = 0; i < 3; i++) {
+            int value = hand.get(i).getRank().getValue();
+            values[i] = value == 1 ? 14 : value; // Ace high
+        }
+        Arrays.sort(values);
+        int[] threshold = {4, 6, 12};
+        for (int i = 2; i >= 0; i--) {
+            if (values[i] != threshold[i]) {
+                return values[i] > threshold[i];
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Net result of a whole hand for the player: Ante, Play (equal to the Ante) and Pair Plus.
+     * ClientHandler settles every hand with this, single or batched.
+     * @param player player's hand
+     * @param dealer dealer's hand
+     * @param anteBet the Ante
+     * @param pairPlusBet the Pair Plus bet, 0 if none
+     * @param play true if the player plays, false if they fold
+     * @return chips won (positive) or lost (negative)
+     */
+    public static int settle(ArrayList<Card> player, ArrayList<Card> dealer, int anteBet, int pairPlusBet, boolean play) {
+        if (!play) {
+            return -anteBet - pairPlusBet;
+        }
+        int playBet = anteBet;
+        int delta;
+        if (!dealerQualifies(dealer)) {
+            delta = playBet; // Play bet returned, Ante pushes
+        } else {
+            int comparison = compareHands(dealer, player);
+            delta = comparison < 0 ? -anteBet - playBet : comparison > 0 ? anteBet + playBet : 0;
+        }
+        if (pairPlusBet > 0) {
+            int payout = evalPPWinnings(player, pairPlusBet);
+            delta += payout > 0 ? payout - pairPlusBet : -pairPlusBet;
+        }
+        return delta;
+    }
 }
-
@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * TLS for the TCP port: SSL contexts for servers and clients, TLS 1.3 only, and a
+ * self-signed certificate for local testing.
+ *
+ * A reconnecting client skips the certificate exchange and key agreement when it resumes
+ * its previous session with the ticket the server gave it. That only works if the client
+ * keeps using the same SSLContext, whose session cache holds the ticket, so clients
+ * share one per JVM (see clientFromSystemProperties). Servers keep their resumable
+ * sessions in the context's server session cache (ServerConfig.setTlsSessionCacheSize).
+ */
+public final class Tls {
+    public static final String[] PROTOCOLS = {"TLSv1.3"};
+    public static final String SELF_SIGNED_ALIAS = "poker";
+    
+    private static SSLContext sharedClientContext;
+    private static boolean sharedClientContextLoaded;
+    
+    private Tls() {
+    }
+    
+    /**
+     * Create a server context from a PKCS12 key store holding the server's key and certificate.
+     */
+    public static SSLContext serverContext(Path keyStore, char[] password) throws IOException, GeneralSecurityException {
+        KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(load(keyStore, password), password);
+        SSLContext context = SSLContext.getInstance("TLSv1.3");
+        context.init(keys.getKeyManagers(), null, null);
+        return context;
+    }
+    
+    /**
+     * Create a client context that trusts the certificates in a PKCS12 trust store.
+     */
+    public static SSLContext clientContext(Path trustStore, char[] password) throws IOException, GeneralSecurityException {
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(load(trustStore, password));
+        SSLContext context = SSLContext.getInstance("TLSv1.3");
+        context.init(null, trust.getTrustManagers(), null);
+        return context;
+    }
+    
+    /**
+     * The context clients use, from -Dpoker.trustStore and -Dpoker.trustStorePassword,
+     * created once so every connection from this JVM can resume an earlier session.
+     * @return the context, or null to connect without TLS (no trust store given)
+     */
+    public static synchronized SSLContext clientFromSystemProperties() throws IOException {
+        if (!sharedClientContextLoaded) {
+            String trustStore = System.getProperty("poker.trustStore");
+            if (trustStore != null && !trustStore.trim().isEmpty()) {
+                char[] password = System.getProperty("poker.trustStorePassword", "").toCharArray();
+                try {
+                    sharedClientContext = clientContext(Path.of(trustStore.trim()), password);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Cannot load trust store " + trustStore + ": " + e.getMessage(), e);
+                }
+            }
+            sharedClientContextLoaded = true;
+        }
+        return sharedClientContext;
+    }
+    
+    /**
+     * Connect a TLS client socket and complete the handshake. Naming the host and port
+     * lets the context find a session to resume.
+     */
+    public static SSLSocket connect(SSLContext context, String host, int port) throws IOException {
+        Socket plain = new Socket();
+        try {
+            plain.connect(new InetSocketAddress(host, port));
+            plain.setTcpNoDelay(true);
+            SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(plain, host, port, true);
+            socket.setEnabledProtocols(PROTOCOLS);
+            socket.startHandshake();
+            return socket;
+        } catch (IOException e) {
+            Connections.closeQuietly(plain);
+            throw e;
+        }
+    }
+    
+    /**
+     * Layer the server side of TLS over an accepted socket. The handshake runs on the
+     * first read or write, i.e. on the thread that serves the connection.
+     */
+    public static SSLSocket serverSocket(SSLContext context, Socket accepted) throws IOException {
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(accepted, null, accepted.getPort(), true);
+        socket.setUseClientMode(false);
+        socket.setEnabledProtocols(PROTOCOLS);
+        return socket;
+    }
+    
+    /**
+     * Create the server side of TLS for a non-blocking connection (see TlsCodec).
+     */
+    public static SSLEngine serverEngine(SSLContext context) {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setEnabledProtocols(PROTOCOLS);
+        return engine;
+    }
+    
+    /**
+     * Create a self-signed certificate for CN=localhost with the JDK's keytool: a key store
+     * for the server and a trust store with only the certificate for clients.
+     */
+    public static void createSelfSigned(Path keyStore, Path trustStore, char[] password)
+            throws IOException, GeneralSecurityException {
+        Path keytool = Path.of(System.getProperty("java.home"), "bin", "keytool");
+        Files.deleteIfExists(keyStore);
+        run(keytool.toString(), "-genkeypair", "-alias", SELF_SIGNED_ALIAS, "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "365",
+                "-storetype", "PKCS12", "-keystore", keyStore.toString(), "-storepass", new String(password));
+        
+        Certificate certificate = load(keyStore, password).getCertificate(SELF_SIGNED_ALIAS);
+        KeyStore trusted = KeyStore.getInstance("PKCS12");
+        trusted.load(null, null);
+        trusted.setCertificateEntry(SELF_SIGNED_ALIAS, certificate);
+        try (OutputStream output = Files.newOutputStream(trustStore)) {
+            trusted.store(output, password);
+        }
+    }
+    
+    private static KeyStore load(Path path, char[] password) throws IOException, GeneralSecurityException {
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream input = Files.newInputStream(path)) {
+            store.load(input, password);
+        }
+        return store;
+    }
+    
+    private static void run(String... command) throws IOException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try {
+            String output = new String(process.getInputStream().readAllBytes());
+            if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                throw new IOException("keytool failed: " + output.trim());
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running keytool", e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * What TLS costs compared with plaintext TCP:
+ *
+ *   java -cp target/classes TlsBenchmark [hands] [threads|nio]
+ *
+ * Handshakes: connecting and playing a first hand, plaintext, with a full TLS handshake
+ * (the client's session is thrown away every time) and with a resumed TLS session.
+ * Throughput: one client keeps WINDOW one-shot hands in flight (see RequestPipeline).
+ * CPU is the whole process's, i.e. client and server together.
+ */
+public class TlsBenchmark {
+    private static final int PORT = 5602;
+    private static final int WINDOW = 64;
+    private static final int CONNECTIONS = 500;
+    private static final char[] PASSWORD = "benchmark".toCharArray();
+    
+    public static void main(String[] args) throws Exception {
+        int hands = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        ServerConfig.IoMode mode = args.length > 1 ? ServerConfig.IoMode.valueOf(args[1].toUpperCase())
+                : ServerConfig.IoMode.THREADS;
+        
+        Path dir = Files.createTempDirectory("poker-tls");
+        Tls.createSelfSigned(dir.resolve("server.p12"), dir.resolve("trust.p12"), PASSWORD);
+        SSLContext client = Tls.clientContext(dir.resolve("trust.p12"), PASSWORD);
+        PokerServer plainServer = start(PORT, mode, null);
+        PokerServer tlsServer = start(PORT + 1, mode, Tls.serverContext(dir.resolve("server.p12"), PASSWORD));
+        Thread.sleep(500);
+        
+        System.out.printf("%d connections and %d hands per run, %s server%n", CONNECTIONS, hands, mode);
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            boolean report = round == 1;
+            connectAndPlay("plaintext", PORT, null, false, report);
+            connectAndPlay("tls full", PORT + 1, client, true, report);
+            connectAndPlay("tls resumed", PORT + 1, client, false, report);
+            playPipelined("plaintext", PORT, null, hands, report);
+            playPipelined("tls", PORT + 1, client, hands, report);
+        }
+        
+        plainServer.stop();
+        tlsServer.stop();
+        System.exit(0);
+    }
+    
+    private static PokerServer start(int port, ServerConfig.IoMode mode, SSLContext tls) {
+        ServerConfig config = new ServerConfig(port);
+        config.setIoMode(mode);
+        config.setCommitments(false);
+        config.setTlsContext(tls);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        return server;
+    }
+    
+    /**
+     * Open CONNECTIONS connections one after the other, each playing a hand before it closes.
+     * @param forgetSession drop the client's TLS session each time, so no handshake is resumed
+     */
+    private static void connectAndPlay(String label, int port, SSLContext tls, boolean forgetSession,
+                                       boolean report) throws IOException {
+        long[] nanos = new long[CONNECTIONS];
+        long cpuStart = processCpuNanos();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            long start = System.nanoTime();
+            RequestPipeline pipeline = new RequestPipeline(Connections.connect("localhost", port, WireFormat.BINARY, tls),
+                    position -> { });
+            pipeline.await(pipeline.send(bet()));
+            nanos[i] = System.nanoTime() - start;
+            pipeline.getChannel().close();
+            if (forgetSession) {
+                forgetSessions(tls);
+            }
+        }
+        long cpu = processCpuNanos() - cpuStart;
+        Arrays.sort(nanos);
+        if (report) {
+            System.out.printf("%-12s connect + first hand: p50 %7.0f us, p99 %7.0f us, %6.0f us CPU each%n",
+                    label, nanos[CONNECTIONS / 2] / 1e3, nanos[CONNECTIONS * 99 / 100] / 1e3, cpu / 1e3 / CONNECTIONS);
+        }
+    }
+    
+    private static void forgetSessions(SSLContext tls) {
+        SSLSessionContext sessions = tls.getClientSessionContext();
+        for (byte[] id : Collections.list(sessions.getIds())) {
+            SSLSession session = sessions.getSession(id);
+            if (session != null) {
+                session.invalidate();
+            }
+        }
+    }
+    
+    private static void playPipelined(String label, int port, SSLContext tls, int hands, boolean report)
+            throws IOException {
+        RequestPipeline pipeline = new RequestPipeline(Connections.connect("localhost", port, WireFormat.BINARY, tls),
+                position -> { });
+        int[] ids = new int[hands];
+        long cpuStart = processCpuNanos();
+        long start = System.nanoTime();
+        for (int i = 0; i < hands; i++) {
+            if (i >= WINDOW) {
+                pipeline.await(ids[i - WINDOW]);
+            }
+            ids[i] = pipeline.send(bet());
+        }
+        for (int i = Math.max(0, hands - WINDOW); i < hands; i++) {
+            pipeline.await(ids[i]);
+        }
+        long elapsed = System.nanoTime() - start;
+        long cpu = processCpuNanos() - cpuStart;
+        pipeline.getChannel().close();
+        if (report) {
+            System.out.printf("%-12s %8.0f hands/s pipelined, %6.2f us CPU per hand%n",
+                    label, hands * 1e9 / elapsed, cpu / 1e3 / hands);
+        }
+    }
+    
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+    
+    private static PokerInfo bet() {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+        bet.setAnteBet(10);
+        bet.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        return bet;
+    }
+}
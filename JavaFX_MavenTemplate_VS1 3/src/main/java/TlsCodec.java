@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+
+/**
+ * TLS for a non-blocking connection: decrypts what the socket delivers and encrypts what
+ * the connection sends, with an SSLEngine. Used by NioConnection on its event loop, so
+ * the engine's handshake tasks (signing, key agreement) run on the loop thread as well;
+ * a resumed session skips most of that work.
+ */
+class TlsCodec {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    
+    /**
+     * Where encrypted output goes: the connection's socket.
+     */
+    interface Sink {
+        void write(ByteBuffer encrypted) throws IOException;
+    }
+    
+    private final SSLEngine engine;
+    private final ByteBuffer[] single = new ByteBuffer[1];
+    private ByteBuffer netIn;   // Encrypted input not unwrapped yet, in write mode
+    private ByteBuffer appIn;   // Decrypted input handed to the connection
+    private ByteBuffer netOut;  // Encrypted output, reused
+    private boolean inboundClosed;
+    
+    TlsCodec(SSLEngine engine) {
+        this.engine = engine;
+        this.netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        this.netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+    }
+    
+    /**
+     * Decrypt bytes read from the socket, answering the handshake as needed.
+     * @param encrypted bytes just read, in read mode; all are consumed
+     * @param sink takes handshake messages for the peer
+     * @return the decrypted bytes, in read mode, valid until the next call
+     */
+    ByteBuffer unwrap(ByteBuffer encrypted, Sink sink) throws IOException {
+        appIn.clear();
+        if (netIn.remaining() < encrypted.remaining()) {
+            netIn = grow(netIn, encrypted.remaining());
+        }
+        netIn.put(encrypted);
+        netIn.flip();
+        try {
+            while (true) {
+                SSLEngineResult.HandshakeStatus handshake = engine.getHandshakeStatus();
+                if (handshake == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    continue;
+                }
+                if (handshake == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    wrap(EMPTY, sink);
+                    continue;
+                }
+                if (!netIn.hasRemaining()) {
+                    break;
+                }
+                
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    break; // The rest of the record is still on its way
+                } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    inboundClosed = true;
+                    break;
+                }
+            }
+        } finally {
+            netIn.compact();
+        }
+        appIn.flip();
+        return appIn;
+    }
+    
+    /**
+     * Encrypt bytes for the peer.
+     * @param plain bytes to send, in read mode; all are consumed
+     */
+    void wrap(ByteBuffer plain, Sink sink) throws IOException {
+        single[0] = plain;
+        try {
+            wrap(single, 1, sink);
+        } finally {
+            single[0] = null;
+        }
+    }
+    
+    /**
+     * Encrypt several buffers for the peer, packing them into as few records as fit.
+     * @param plain buffers to send, in read mode; all are consumed
+     * @param count how many of them, from the first
+     */
+    void wrap(ByteBuffer[] plain, int count, Sink sink) throws IOException {
+        do {
+            netOut.clear();
+            SSLEngineResult result = engine.wrap(plain, 0, count, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                netOut = ByteBuffer.allocate(netOut.capacity() * 2);
+                continue;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED && result.bytesProduced() == 0) {
+                throw new ClosedChannelException();
+            }
+            netOut.flip();
+            if (netOut.hasRemaining()) {
+                sink.write(netOut);
+            }
+        } while (plain[count - 1].hasRemaining());
+    }
+    
+    /**
+     * Whether the peer closed its side with close_notify.
+     */
+    boolean isInboundClosed() {
+        return inboundClosed;
+    }
+    
+    /**
+     * Send close_notify, best effort.
+     */
+    void close(Sink sink) {
+        engine.closeOutbound();
+        try {
+            wrap(EMPTY, sink);
+        } catch (IOException | RuntimeException e) {
+            // Closing anyway
+        }
+    }
+    
+    private static ByteBuffer grow(ByteBuffer buffer, int more) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + more));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,52 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Key handling shared by HandTokens and SessionTokens: keys derived from the one shared
+ * secret, MAC instances, and how long a token's nonce has to be remembered.
+ */
+public class TokenKeys {
+    public static final String MAC_ALGORITHM = "HmacSHA256";
+    
+    // Clocks of different servers may disagree a little
+    public static final long MAX_CLOCK_SKEW_SECONDS = 30;
+    
+    private TokenKeys() {
+    }
+    
+    /**
+     * Derive a key for one purpose from the shared secret, so no two uses share a key.
+     */
+    public static byte[] derive(byte[] secret, String label) {
+        try {
+            Mac hmac = Mac.getInstance(MAC_ALGORITHM);
+            hmac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            return hmac.doFinal(label.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " not available", e);
+        }
+    }
+    
+    /**
+     * A MAC keyed with the given key. Mac objects are not thread safe; callers keep one per thread.
+     */
+    public static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac hmac = Mac.getInstance(MAC_ALGORITHM);
+            hmac.init(key);
+            return hmac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " not available", e);
+        }
+    }
+    
+    /**
+     * How long a used token must be remembered: its lifetime, plus the clock skew by
+     * which its issue time may lie in the future.
+     */
+    public static long nonceWindowMillis(long ttlSeconds) {
+        return (ttlSeconds + MAX_CLOCK_SKEW_SECONDS) * 1000;
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Access to Unix domain sockets (Java 16+) while the project still compiles for Java 11.
+ * Like VirtualThreads, the Java 16 API is looked up reflectively, so on older runtimes
+ * isSupported() is simply false.
+ *
+ * Co-located clients (bots, a gateway) skip the TCP loopback stack this way: no
+ * checksums, segmentation or Nagle, just a copy between the two processes' buffers.
+ * The channels are plain SocketChannels, so NIO and the wire formats work unchanged;
+ * only TCP socket options do not apply.
+ */
+public final class UnixSockets {
+    /** Prefix that makes a client "host" a socket path instead, e.g. unix:/tmp/poker.sock */
+    public static final String HOST_PREFIX = "unix:";
+    
+    private static final ProtocolFamily UNIX = lookupFamily();
+    private static final Method ADDRESS_OF = lookup("java.net.UnixDomainSocketAddress", "of", Path.class);
+    private static final Method OPEN_SERVER = lookup("java.nio.channels.ServerSocketChannel", "open", ProtocolFamily.class);
+    
+    private UnixSockets() {
+    }
+    
+    private static ProtocolFamily lookupFamily() {
+        try {
+            return StandardProtocolFamily.valueOf("UNIX");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static Method lookup(String className, String name, Class<?> parameter) {
+        try {
+            return Class.forName(className).getMethod(name, parameter);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether the running JVM has Unix domain socket channels.
+     */
+    public static boolean isSupported() {
+        return UNIX != null && ADDRESS_OF != null && OPEN_SERVER != null;
+    }
+    
+    /**
+     * Whether a client host names a Unix domain socket rather than a TCP host.
+     */
+    public static boolean isSocketHost(String host) {
+        return host != null && host.startsWith(HOST_PREFIX);
+    }
+    
+    /**
+     * The socket path named by a unix: host.
+     */
+    public static Path pathOf(String host) {
+        return Path.of(host.substring(HOST_PREFIX.length()));
+    }
+    
+    /**
+     * Listen on a socket file, replacing a stale one left by a server that did not stop cleanly.
+     * @param path socket file
+     * @param backlog accept backlog
+     * @return the bound channel, in blocking mode
+     */
+    public static ServerSocketChannel listen(Path path, int backlog) throws IOException {
+        ServerSocketChannel channel = (ServerSocketChannel) invoke(OPEN_SERVER, UNIX);
+        try {
+            Files.deleteIfExists(path);
+            channel.bind(address(path), backlog);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Connect to a server's socket file.
+     * @return the connected channel, in blocking mode
+     */
+    public static SocketChannel connect(Path path) throws IOException {
+        return SocketChannel.open(address(path));
+    }
+    
+    private static SocketAddress address(Path path) throws IOException {
+        return (SocketAddress) invoke(ADDRESS_OF, path);
+    }
+    
+    private static Object invoke(Method method, Object argument) throws IOException {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Unix domain sockets need Java 16 or newer (running "
+                    + System.getProperty("java.version") + ")");
+        }
+        try {
+            return method.invoke(null, argument);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not open Unix domain socket", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Could not open Unix domain socket", e);
+        }
+    }
+}
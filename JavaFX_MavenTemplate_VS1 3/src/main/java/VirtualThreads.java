@@ -0,0 +1,47 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads (Java 21+) while the project still compiles for Java 11.
+ * The executor factory is looked up reflectively, so on older runtimes isSupported()
+ * is simply false.
+ */
+public final class VirtualThreads {
+    private static final Method NEW_EXECUTOR = lookup();
+    
+    private VirtualThreads() {
+    }
+    
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether the running JVM has virtual threads.
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+    
+    /**
+     * Create an executor that starts a new virtual thread for every task.
+     * @return the executor
+     * @throws UnsupportedOperationException if the JVM is older than Java 21
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or newer (running "
+                    + System.getProperty("java.version") + ")");
+        }
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Could not create virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,517 @@
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Compact binary encoding of PokerInfo messages.
+ *
+ * A frame is a 2-byte big-endian body length followed by the body. The body starts with
+ * the message type (its MessageType ordinal) and then the fields used by that type, in a
+ * fixed order. Cards are single bytes (Card.getIndex()), ids and counts are unsigned
+ * var-ints and amounts are zig-zag var-ints.
+ */
+public final class WireCodec {
+    /**
+     * Sent by both sides when a binary connection opens: "3CP" and the protocol version.
+     * Version 2: PLAYER_ACTION carries only the action and hand id.
+     * Version 3: CARDS_DEALT and PLAYER_ACTION carry the hand token.
+     * Version 4: BATCH_HANDS and BATCH_RESULT.
+     * Version 5: ONE_SHOT_HAND, and GAME_RESULT carries the deal's commitment.
+     * Version 6: every message carries a request id after its type.
+     * Version 7: GAME_RESULT carries a status code; the text is only sent for free-text statuses.
+     * Version 8: RECONNECT and RESUME_SESSION.
+     * Version 9: WATCH_TABLE.
+     */
+    public static final byte[] HELLO = {'3', 'C', 'P', 9};
+    
+    /**
+     * Sent instead of HELLO by both sides of a multiplexed connection (see MultiplexedConnection):
+     * "3CM" and the multiplexing version. Its frames carry a session id in front of each
+     * body, and the bodies are messages of the HELLO version.
+     */
+    public static final byte[] MULTIPLEXED_HELLO = {'3', 'C', 'M', 1};
+    
+    public static final int LENGTH_PREFIX = 2;
+    public static final int MAX_BODY = 0xFFFF;
+    
+    private static final PokerInfo.MessageType[] TYPES = PokerInfo.MessageType.values();
+    private static final PokerInfo.PlayerAction[] ACTIONS = PokerInfo.PlayerAction.values();
+    private static final PokerInfo.Strategy[] STRATEGIES = PokerInfo.Strategy.values();
+    
+    private static final int FLAG_DEALER_HIDDEN = 1;
+    private static final int FLAG_DEALER_QUALIFIED = 2;
+    
+    private WireCodec() {
+    }
+    
+    /**
+     * Encode a message as a complete frame (length prefix and body).
+     * @param info message to encode
+     * @param out buffer to append to
+     * @throws java.nio.BufferOverflowException if out is too small
+     */
+    public static void encodeFrame(PokerInfo info, ByteBuffer out) {
+        int start = out.position();
+        if (out.remaining() < LENGTH_PREFIX) {
+            throw new BufferOverflowException();
+        }
+        out.position(start + LENGTH_PREFIX);
+        encode(info, out);
+        int length = out.position() - start - LENGTH_PREFIX;
+        if (length > MAX_BODY) {
+            throw new IllegalArgumentException("Message too large: " + length + " bytes");
+        }
+        out.putShort(start, (short) length);
+    }
+    
+    /**
+     * Encode a message as a frame of a multiplexed connection: the length prefix, the
+     * session id as an unsigned var-int, then the body.
+     * @throws java.nio.BufferOverflowException if out is too small
+     */
+    public static void encodeSessionFrame(int sessionId, PokerInfo info, ByteBuffer out) {
+        int start = out.position();
+        if (out.remaining() < LENGTH_PREFIX) {
+            throw new BufferOverflowException();
+        }
+        out.position(start + LENGTH_PREFIX);
+        putUnsigned(out, sessionId);
+        encode(info, out);
+        int length = out.position() - start - LENGTH_PREFIX;
+        if (length > MAX_BODY) {
+            throw new IllegalArgumentException("Message too large: " + length + " bytes");
+        }
+        out.putShort(start, (short) length);
+    }
+    
+    /**
+     * Encode a message body (no length prefix).
+     * @param info message to encode
+     * @param out buffer to append to
+     * @throws java.nio.BufferOverflowException if out is too small
+     */
+    public static void encode(PokerInfo info, ByteBuffer out) {
+        PokerInfo.MessageType type = info.getMessageType();
+        if (type == null) {
+            throw new IllegalArgumentException("Message has no type");
+        }
+        out.put((byte) type.ordinal());
+        putUnsigned(out, info.getRequestId());
+        
+        switch (type) {
+            case INITIAL_BET:
+                putSigned(out, info.getAnteBet());
+                putSigned(out, info.getPairPlusBet());
+                break;
+            case CARDS_DEALT:
+                putUnsigned(out, info.getClientId());
+                putUnsigned(out, info.getHandId());
+                putSigned(out, info.getAnteBet());
+                putSigned(out, info.getPairPlusBet());
+                out.put((byte) (info.isDealerCardsHidden() ? FLAG_DEALER_HIDDEN : 0));
+                putCards(out, info.getPlayerCards());
+                putCards(out, info.getDealerCards());
+                putBytes(out, info.getDeckCommitment());
+                putUnsigned(out, info.getCommitmentIndex());
+                putBytes(out, info.getCommitmentProof());
+                putBytes(out, info.getCommitmentRoot());
+                putBytes(out, info.getHandToken());
+                break;
+            case PLAYER_ACTION:
+                // The server kept the hand (or sealed it into the token), so only the decision and which hand
+                putAction(out, info.getPlayerAction());
+                putUnsigned(out, info.getHandId());
+                putBytes(out, info.getHandToken());
+                break;
+            case GAME_RESULT:
+                putUnsigned(out, info.getClientId());
+                putUnsigned(out, info.getHandId());
+                putAction(out, info.getPlayerAction());
+                out.put((byte) ((info.isDealerCardsHidden() ? FLAG_DEALER_HIDDEN : 0)
+                        | (info.isDealerQualified() ? FLAG_DEALER_QUALIFIED : 0)));
+                out.put((byte) info.getHandRankPlayer());
+                out.put((byte) info.getHandRankDealer());
+                putSigned(out, info.getPairPlusPayout());
+                putSigned(out, info.getAntePlayPayout());
+                putSigned(out, info.getDeltaWinningsThisHand());
+                putSigned(out, info.getTotalWinnings());
+                putCards(out, info.getPlayerCards());
+                putCards(out, info.getDealerCards());
+                out.putLong(info.getHandSeed());
+                putBytes(out, info.getHandSalt());
+                putBytes(out, info.getNextDeckCommitment());
+                // Clients render the status code; the text only goes out when there is no code
+                out.put((byte) StatusCode.toCode(info.getStatusCode()));
+                putString(out, info.getStatusCode() == null ? info.getStatusMessage() : null);
+                // Only one-shot hands have no CARDS_DEALT to carry the commitment
+                putBytes(out, info.getDeckCommitment());
+                putUnsigned(out, info.getCommitmentIndex());
+                putBytes(out, info.getCommitmentProof());
+                putBytes(out, info.getCommitmentRoot());
+                break;
+            case QUEUE_POSITION:
+                putUnsigned(out, info.getQueuePosition());
+                break;
+            case SERVER_FULL:
+                putString(out, info.getStatusMessage());
+                break;
+            case BATCH_HANDS: {
+                // Strategy (0 = explicit actions), hand count, then per hand: ante, pair plus [, action]
+                PokerInfo.Strategy strategy = info.getStrategy();
+                int[] antes = info.getBatchAnteBets();
+                int count = antes == null ? 0 : antes.length;
+                putStrategy(out, strategy);
+                putUnsigned(out, count);
+                for (int i = 0; i < count; i++) {
+                    putSigned(out, antes[i]);
+                    putSigned(out, info.getBatchPairPlusBets()[i]);
+                    if (strategy == null) {
+                        putAction(out, info.getBatchActions()[i]);
+                    }
+                }
+                break;
+            }
+            case BATCH_RESULT: {
+                // First hand id and totals, then per hand: action, net winnings, seed
+                int[] deltas = info.getBatchDeltas();
+                int count = deltas == null ? 0 : deltas.length;
+                putUnsigned(out, info.getClientId());
+                putUnsigned(out, info.getHandId());
+                putSigned(out, info.getDeltaWinningsThisHand());
+                putSigned(out, info.getTotalWinnings());
+                putUnsigned(out, count);
+                for (int i = 0; i < count; i++) {
+                    putAction(out, info.getBatchActions()[i]);
+                    putSigned(out, deltas[i]);
+                    out.putLong(info.getBatchSeeds()[i]);
+                }
+                putBytes(out, info.getNextDeckCommitment());
+                putString(out, info.getStatusMessage());
+                break;
+            }
+            case ONE_SHOT_HAND:
+                putSigned(out, info.getAnteBet());
+                putSigned(out, info.getPairPlusBet());
+                putStrategy(out, info.getStrategy());
+                break;
+            case SESSION_CREDIT:
+                putUnsigned(out, info.getSessionCredit());
+                break;
+            case RECONNECT:
+                putBytes(out, info.getSessionToken());
+                putString(out, info.getStatusMessage());
+                break;
+            case RESUME_SESSION:
+                // The request only needs the token; the reply adds the restored session or why it was refused
+                putBytes(out, info.getSessionToken());
+                putSigned(out, info.getTotalWinnings());
+                putUnsigned(out, info.getHandId());
+                putString(out, info.getStatusMessage());
+                break;
+            case WATCH_TABLE:
+                // The table to watch; the reply adds why watching was refused, or the table closed
+                putUnsigned(out, info.getClientId());
+                putString(out, info.getStatusMessage());
+                break;
+            case PLAY_AGAIN:
+            case DISCONNECT:
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Decode a message body (no length prefix).
+     * @param in buffer positioned at the start of the body, limited to its end
+     * @return the decoded message
+     * @throws ProtocolException if the body is malformed
+     */
+    public static PokerInfo decode(ByteBuffer in) throws ProtocolException {
+        try {
+            PokerInfo info = new PokerInfo();
+            int code = in.get() & 0xFF;
+            if (code >= TYPES.length) {
+                throw new ProtocolException("Unknown message type " + code);
+            }
+            PokerInfo.MessageType type = TYPES[code];
+            info.setMessageType(type);
+            info.setRequestId(getUnsigned(in));
+            
+            switch (type) {
+                case INITIAL_BET:
+                    info.setAnteBet(getSigned(in));
+                    info.setPairPlusBet(getSigned(in));
+                    break;
+                case CARDS_DEALT:
+                    info.setClientId(getUnsigned(in));
+                    info.setHandId(getUnsigned(in));
+                    info.setAnteBet(getSigned(in));
+                    info.setPairPlusBet(getSigned(in));
+                    info.setDealerCardsHidden((in.get() & FLAG_DEALER_HIDDEN) != 0);
+                    info.setPlayerCards(getCards(in));
+                    info.setDealerCards(getCards(in));
+                    info.setDeckCommitment(getBytes(in));
+                    info.setCommitmentIndex(getUnsigned(in));
+                    info.setCommitmentProof(getBytes(in));
+                    info.setCommitmentRoot(getBytes(in));
+                    info.setHandToken(getBytes(in));
+                    break;
+                case PLAYER_ACTION:
+                    info.setPlayerAction(getAction(in));
+                    info.setHandId(getUnsigned(in));
+                    info.setHandToken(getBytes(in));
+                    break;
+                case GAME_RESULT:
+                    info.setClientId(getUnsigned(in));
+                    info.setHandId(getUnsigned(in));
+                    info.setPlayerAction(getAction(in));
+                    int flags = in.get();
+                    info.setDealerCardsHidden((flags & FLAG_DEALER_HIDDEN) != 0);
+                    info.setDealerQualified((flags & FLAG_DEALER_QUALIFIED) != 0);
+                    info.setHandRankPlayer(in.get() & 0xFF);
+                    info.setHandRankDealer(in.get() & 0xFF);
+                    info.setPairPlusPayout(getSigned(in));
+                    info.setAntePlayPayout(getSigned(in));
+                    info.setDeltaWinningsThisHand(getSigned(in));
+                    info.setTotalWinnings(getSigned(in));
+                    info.setPlayerCards(getCards(in));
+                    info.setDealerCards(getCards(in));
+                    info.setHandSeed(in.getLong());
+                    info.setHandSalt(getBytes(in));
+                    info.setNextDeckCommitment(getBytes(in));
+                    info.setStatusCode(StatusCode.fromCode(in.get() & 0xFF));
+                    info.setStatusMessage(getString(in));
+                    info.setDeckCommitment(getBytes(in));
+                    info.setCommitmentIndex(getUnsigned(in));
+                    info.setCommitmentProof(getBytes(in));
+                    info.setCommitmentRoot(getBytes(in));
+                    break;
+                case QUEUE_POSITION:
+                    info.setQueuePosition(getUnsigned(in));
+                    break;
+                case SERVER_FULL:
+                    info.setStatusMessage(getString(in));
+                    break;
+                case BATCH_HANDS: {
+                    PokerInfo.Strategy strategy = getStrategy(in);
+                    int count = getBatchCount(in);
+                    int[] antes = new int[count];
+                    int[] pairPluses = new int[count];
+                    PokerInfo.PlayerAction[] actions = strategy == null ? new PokerInfo.PlayerAction[count] : null;
+                    for (int i = 0; i < count; i++) {
+                        antes[i] = getSigned(in);
+                        pairPluses[i] = getSigned(in);
+                        if (actions != null) {
+                            actions[i] = getAction(in);
+                        }
+                    }
+                    info.setStrategy(strategy);
+                    info.setBatchAnteBets(antes);
+                    info.setBatchPairPlusBets(pairPluses);
+                    info.setBatchActions(actions);
+                    break;
+                }
+                case BATCH_RESULT: {
+                    info.setClientId(getUnsigned(in));
+                    info.setHandId(getUnsigned(in));
+                    info.setDeltaWinningsThisHand(getSigned(in));
+                    info.setTotalWinnings(getSigned(in));
+                    int count = getBatchCount(in);
+                    PokerInfo.PlayerAction[] actions = new PokerInfo.PlayerAction[count];
+                    int[] deltas = new int[count];
+                    long[] seeds = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        actions[i] = getAction(in);
+                        deltas[i] = getSigned(in);
+                        seeds[i] = in.getLong();
+                    }
+                    info.setBatchActions(actions);
+                    info.setBatchDeltas(deltas);
+                    info.setBatchSeeds(seeds);
+                    info.setNextDeckCommitment(getBytes(in));
+                    info.setStatusMessage(getString(in));
+                    break;
+                }
+                case ONE_SHOT_HAND:
+                    info.setAnteBet(getSigned(in));
+                    info.setPairPlusBet(getSigned(in));
+                    info.setStrategy(getStrategy(in));
+                    break;
+                case SESSION_CREDIT:
+                    info.setSessionCredit(getUnsigned(in));
+                    break;
+                case RECONNECT:
+                    info.setSessionToken(getBytes(in));
+                    info.setStatusMessage(getString(in));
+                    break;
+                case RESUME_SESSION:
+                    info.setSessionToken(getBytes(in));
+                    info.setTotalWinnings(getSigned(in));
+                    info.setHandId(getUnsigned(in));
+                    info.setStatusMessage(getString(in));
+                    break;
+                case WATCH_TABLE:
+                    info.setClientId(getUnsigned(in));
+                    info.setStatusMessage(getString(in));
+                    break;
+                case PLAY_AGAIN:
+                case DISCONNECT:
+                default:
+                    break;
+            }
+            
+            if (in.hasRemaining()) {
+                throw new ProtocolException("Trailing bytes in " + type + " message");
+            }
+            return info;
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Truncated message");
+        } catch (RuntimeException e) {
+            // Whatever else a hostile body trips over is still just a bad message
+            ProtocolException malformed = new ProtocolException("Malformed message: " + e);
+            malformed.initCause(e);
+            throw malformed;
+        }
+    }
+    
+    // ===== Field helpers =====
+    
+    static void putUnsigned(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    /**
+     * Read a var-int that must fit in 31 bits (ids, counts and lengths), so it is never negative.
+     */
+    static int getUnsigned(ByteBuffer in) throws ProtocolException {
+        int value = getVarInt(in);
+        if (value < 0) {
+            throw new ProtocolException("Var-int out of range");
+        }
+        return value;
+    }
+    
+    /**
+     * Read a var-int as all 32 bits; zig-zag signed values use the top bit.
+     */
+    private static int getVarInt(ByteBuffer in) throws ProtocolException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("Malformed var-int");
+    }
+    
+    static void putSigned(ByteBuffer out, int value) {
+        putUnsigned(out, (value << 1) ^ (value >> 31));
+    }
+    
+    static int getSigned(ByteBuffer in) throws ProtocolException {
+        int raw = getVarInt(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+    
+    private static int getBatchCount(ByteBuffer in) throws ProtocolException {
+        int count = getUnsigned(in);
+        if (count < 0 || count > PokerInfo.MAX_BATCH_HANDS) {
+            throw new ProtocolException("Too many hands in batch: " + count);
+        }
+        return count;
+    }
+    
+    private static void putAction(ByteBuffer out, PokerInfo.PlayerAction action) {
+        out.put((byte) (action == null ? 0 : action.ordinal() + 1));
+    }
+    
+    private static PokerInfo.PlayerAction getAction(ByteBuffer in) throws ProtocolException {
+        int code = in.get() & 0xFF;
+        if (code == 0) {
+            return null;
+        }
+        if (code > ACTIONS.length) {
+            throw new ProtocolException("Unknown player action " + code);
+        }
+        return ACTIONS[code - 1];
+    }
+    
+    private static void putStrategy(ByteBuffer out, PokerInfo.Strategy strategy) {
+        out.put((byte) (strategy == null ? 0 : strategy.ordinal() + 1));
+    }
+    
+    private static PokerInfo.Strategy getStrategy(ByteBuffer in) throws ProtocolException {
+        int code = in.get() & 0xFF;
+        if (code == 0) {
+            return null;
+        }
+        if (code > STRATEGIES.length) {
+            throw new ProtocolException("Unknown strategy " + code);
+        }
+        return STRATEGIES[code - 1];
+    }
+    
+    static void putCards(ByteBuffer out, ArrayList<Card> cards) {
+        int count = cards == null ? 0 : cards.size();
+        out.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            out.put((byte) cards.get(i).getIndex());
+        }
+    }
+    
+    static ArrayList<Card> getCards(ByteBuffer in) throws ProtocolException {
+        int count = in.get() & 0xFF;
+        if (count > Card.DECK_SIZE) {
+            throw new ProtocolException("Too many cards: " + count);
+        }
+        ArrayList<Card> cards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = in.get() & 0xFF;
+            if (index >= Card.DECK_SIZE) {
+                throw new ProtocolException("Invalid card " + index);
+            }
+            cards.add(Card.of(index));
+        }
+        return cards;
+    }
+    
+    static void putBytes(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            putUnsigned(out, 0);
+            return;
+        }
+        putUnsigned(out, bytes.length);
+        out.put(bytes);
+    }
+    
+    static byte[] getBytes(ByteBuffer in) throws ProtocolException {
+        int length = getUnsigned(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new ProtocolException("Truncated message");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+    
+    static void putString(ByteBuffer out, String text) {
+        putBytes(out, text == null ? null : text.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    static String getString(ByteBuffer in) throws ProtocolException {
+        byte[] bytes = getBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+}
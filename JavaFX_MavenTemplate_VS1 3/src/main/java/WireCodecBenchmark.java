@@ -0,0 +1,186 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Compares Java serialization of PokerInfo with the binary WireCodec:
+ * bytes per message and nanoseconds per encode + decode, for each message of a hand.
+ *
+ * Java serialization is measured the way the server uses it, on one long-lived stream,
+ * so class descriptors are only paid for once (the first-message size is shown separately).
+ *
+ * Usage: WireCodecBenchmark [iterations]
+ */
+public class WireCodecBenchmark {
+    // Keeps decoded results observable so the JIT cannot drop the work
+    private static volatile long sink;
+    
+    private static PokerInfo[] sampleHand(int hand) {
+        ShuffleCommitments commitments = new ShuffleCommitments(new ServerConfig(0), 1);
+        for (int i = 1; i < hand; i++) {
+            commitments.next(i);
+        }
+        ShuffleCommitments.Commitment commitment = commitments.next(hand);
+        ArrayList<Card> player = new ArrayList<>();
+        ArrayList<Card> dealer = new ArrayList<>();
+        new DealReplay().replay(commitment.getSeed(), player, dealer);
+        
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        bet.setAnteBet(10);
+        bet.setPairPlusBet(5);
+        
+        PokerInfo dealt = new PokerInfo();
+        dealt.setMessageType(PokerInfo.MessageType.CARDS_DEALT);
+        dealt.setClientId(1);
+        dealt.setHandId(hand);
+        dealt.setAnteBet(10);
+        dealt.setPairPlusBet(5);
+        dealt.setPlayerCards(player);
+        dealt.setDealerCards(dealer);
+        dealt.setDeckCommitment(commitment.getLeaf());
+        dealt.setCommitmentIndex(commitment.getIndex());
+        dealt.setCommitmentProof(commitment.getProof());
+        dealt.setCommitmentRoot(commitment.getRoot());
+        
+        PokerInfo action = new PokerInfo();
+        action.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+        action.setPlayerAction(PokerInfo.PlayerAction.PLAY);
+        action.setHandId(hand);
+        
+        PokerInfo result = new PokerInfo();
+        result.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        result.setClientId(1);
+        result.setHandId(hand);
+        result.setPlayerCards(player);
+        result.setDealerCards(dealer);
+        result.setDealerCardsHidden(false);
+        result.setDealerQualified(true);
+        result.setHandRankPlayer(ThreeCardLogic.evalHand(player));
+        result.setHandRankDealer(ThreeCardLogic.evalHand(dealer));
+        result.setAntePlayPayout(20);
+        result.setDeltaWinningsThisHand(15);
+        result.setTotalWinnings(-35);
+        result.setHandSeed(commitment.getSeed());
+        result.setHandSalt(commitment.getSalt());
+        result.setNextDeckCommitment(commitments.peekNextLeaf());
+        result.setStatusCode(StatusCode.PLAYER_WINS);
+        
+        PokerInfo again = new PokerInfo();
+        again.setMessageType(PokerInfo.MessageType.PLAY_AGAIN);
+        
+        return new PokerInfo[] {bet, dealt, action, result, again};
+    }
+    
+    private static int javaFirstMessageSize(PokerInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        int header = bytes.size();
+        out.writeObject(info);
+        out.flush();
+        return bytes.size() - header;
+    }
+    
+    /**
+     * Steady-state bytes per message on a long-lived stream (fresh objects each time, like the server).
+     */
+    private static long javaSteadySize(PokerInfo.MessageType type, int messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(sampleHand(1)[type.ordinal()]);
+        out.flush();
+        int warm = bytes.size();
+        for (int i = 0; i < messages; i++) {
+            out.writeObject(sampleHand(2 + (i % 4))[type.ordinal()]);
+        }
+        out.flush();
+        return (bytes.size() - warm) / messages;
+    }
+    
+    private static PokerInfo[] deepCopies(PokerInfo info, int count) throws Exception {
+        PokerInfo[] copies = new PokerInfo[count];
+        for (int i = 0; i < count; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(info);
+            out.flush();
+            copies[i] = (PokerInfo) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        }
+        return copies;
+    }
+    
+    private static double javaNanos(PokerInfo info, int iterations) throws Exception {
+        // Distinct objects each message, written on one long-lived stream as a connection would;
+        // the stream is reset every 256 messages so copies are not sent as back-references
+        final int copies = 256;
+        PokerInfo[] messages = deepCopies(info, copies);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (i % copies == 0) {
+                out.reset();
+            }
+            out.writeObject(messages[i % copies]);
+        }
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < iterations; i++) {
+            in.readObject();
+        }
+        return (double) (System.nanoTime() - start) / iterations;
+    }
+    
+    private static double binaryNanos(PokerInfo info, int iterations) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        long start = System.nanoTime();
+        long check = 0;
+        for (int i = 0; i < iterations; i++) {
+            buffer.clear();
+            WireCodec.encode(info, buffer);
+            buffer.flip();
+            check += WireCodec.decode(buffer).getHandId();
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += check;
+        return (double) elapsed / iterations;
+    }
+    
+    private static int binarySize(PokerInfo info) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        WireCodec.encodeFrame(info, buffer);
+        return buffer.position();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length >= 1 ? Integer.parseInt(args[0]) : 200_000;
+        PokerInfo[] hand = sampleHand(1);
+        
+        // Warm up both paths
+        for (PokerInfo info : hand) {
+            javaNanos(info, iterations / 4);
+            binaryNanos(info, iterations);
+        }
+        
+        System.out.printf("%-14s %12s %12s %10s %12s %12s%n",
+                "Message", "Java first", "Java steady", "Binary", "Java ns", "Binary ns");
+        long javaTotal = 0;
+        long binaryTotal = 0;
+        for (PokerInfo info : hand) {
+            int first = javaFirstMessageSize(info);
+            long steady = javaSteadySize(info.getMessageType(), 1000);
+            int binary = binarySize(info);
+            double javaNs = javaNanos(info, iterations / 4);
+            double binaryNs = binaryNanos(info, iterations);
+            javaTotal += steady;
+            binaryTotal += binary;
+            System.out.printf("%-14s %12d %12d %10d %12.0f %12.0f%n",
+                    info.getMessageType(), first, steady, binary, javaNs, binaryNs);
+        }
+        System.out.printf("Per hand (steady state): Java %d bytes, binary %d bytes%n", javaTotal, binaryTotal);
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Encodings a client can use on the wire. The server detects which one a
+ * connection uses from its first bytes, so both can be served on one port.
+ */
+public enum WireFormat {
+    BINARY,     // Compact frames (see WireCodec)
+    JAVA;       // Java serialization of PokerInfo, used by older clients
+    
+    /**
+     * The format clients use, from -Dpoker.wire=binary|java (binary by default).
+     */
+    public static WireFormat fromSystemProperty() {
+        String value = System.getProperty("poker.wire", "binary");
+        return valueOf(value.trim().toUpperCase());
+    }
+}
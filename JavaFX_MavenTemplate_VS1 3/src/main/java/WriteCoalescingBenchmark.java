@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Socket writes on the NIO server with and without write coalescing:
+ *
+ *   java -cp target/classes WriteCoalescingBenchmark [clients] [window]
+ *
+ * Every client keeps window one-shot hands in flight (see RequestPipeline), so several
+ * requests arrive in one read and their replies can leave in one write. Reports hands per
+ * second, the time from sending a request to reading its reply, and the server's write
+ * calls per second and frames per write (strace -c -e trace=write,writev shows the same).
+ */
+public class WriteCoalescingBenchmark {
+    private static final int PORT = 5605;
+    private static final long PHASE_MILLIS = 5000;
+    private static final int SAMPLES = 4 * 1024 * 1024; // Round trips recorded, over all clients
+    
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int window = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        
+        System.out.printf("%d clients, %d hands in flight each, NIO server%n", clients, window);
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            for (boolean coalescing : new boolean[] {false, true}) {
+                run(clients, window, coalescing, round == 1);
+            }
+        }
+        System.exit(0);
+    }
+    
+    private static void run(int clients, int window, boolean coalescing, boolean report) throws Exception {
+        ServerConfig config = new ServerConfig(PORT);
+        config.setIoMode(ServerConfig.IoMode.NIO);
+        config.setCommitments(false);
+        config.setMaxClients(clients);
+        config.setWriteCoalescing(coalescing);
+        PokerServer server = new PokerServer(config, null);
+        server.start();
+        Thread.sleep(500);
+        
+        AtomicBoolean running = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            RequestPipeline pipeline = new RequestPipeline(Connections.connect("localhost", PORT, WireFormat.BINARY),
+                    position -> { });
+            threads.add(new Thread(() -> play(pipeline, clients, window, running, latencies)));
+        }
+        
+        long writesStart = server.getSocketWrites();
+        long framesStart = server.getFramesWritten();
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(PHASE_MILLIS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long writes = server.getSocketWrites() - writesStart;
+        long frames = server.getFramesWritten() - framesStart;
+        server.stop();
+        
+        long[] sorted = latencies.stream().flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(sorted);
+        if (report) {
+            System.out.printf("coalescing %-3s %8.0f hands/s, p50 %6.3f ms, p99 %6.3f ms; %8.0f writes/s, "
+                            + "%5.2f frames per write%n",
+                    coalescing ? "on" : "off", sorted.length / seconds, sorted[sorted.length / 2] / 1e6,
+                    sorted[sorted.length * 99 / 100] / 1e6, writes / seconds, (double) frames / writes);
+        }
+        Thread.sleep(500); // Let the port go
+    }
+    
+    /**
+     * Keep window hands in flight until stopped, recording each one's round trip.
+     */
+    private static void play(RequestPipeline pipeline, int clients, int window, AtomicBoolean running,
+                             ConcurrentLinkedQueue<long[]> latencies) {
+        long[] nanos = new long[SAMPLES / clients];
+        int[] ids = new int[window];
+        long[] sent = new long[window];
+        int count = 0;
+        try {
+            int i = 0;
+            for (; running.get(); i++) {
+                int slot = i % window;
+                if (i >= window) {
+                    pipeline.await(ids[slot]);
+                    if (count < nanos.length) {
+                        nanos[count++] = System.nanoTime() - sent[slot];
+                    }
+                }
+                sent[slot] = System.nanoTime();
+                ids[slot] = pipeline.send(oneShot());
+            }
+            for (int j = Math.max(0, i - window); j < i; j++) {
+                pipeline.await(ids[j % window]); // Hands still in flight
+            }
+        } catch (IOException e) {
+            System.err.println("Client failed: " + e.getMessage());
+        } finally {
+            latencies.add(Arrays.copyOf(nanos, count));
+            pipeline.getChannel().close();
+        }
+    }
+    
+    private static PokerInfo oneShot() {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+        bet.setAnteBet(10);
+        bet.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        return bet;
+    }
+}
@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Several acceptor threads on one port, each on its own SO_REUSEPORT socket where supported.
+ */
+class AcceptorsTest {
+
+    private final TestServers servers = new TestServers();
+
+    @AfterEach
+    void stopServers() {
+        servers.stopAll();
+    }
+
+    private ServerConfig startServer(ServerConfig.IoMode mode, int acceptors) throws IOException {
+        ServerConfig config = TestServers.config(mode);
+        config.setAcceptors(acceptors);
+        config.setMaxClients(64);
+        config.setCommitments(false);
+        servers.start(config);
+        return config;
+    }
+
+    private static PokerInfo deal(MessageChannel channel) throws IOException {
+        channel.send(TestServers.bet(10));
+        return Connections.receiveReply(channel, position -> { });
+    }
+
+    private static long acceptorThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("poker-acceptor-"))
+                .count();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Acceptors — clients connecting all at once are all dealt in")
+    void testStorm(ServerConfig.IoMode mode) throws Exception {
+        ServerConfig config = startServer(mode, 4);
+        TestServers.connectWhenReady(config.getPort()).close();
+
+        List<CompletableFuture<PokerInfo>> clients = new ArrayList<>();
+        for (int i = 0; i < 48; i++) {
+            clients.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    MessageChannel channel = Connections.connect("localhost", config.getPort(), WireFormat.BINARY);
+                    try {
+                        return deal(channel);
+                    } finally {
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (CompletableFuture<PokerInfo> client : clients) {
+            assertEquals(PokerInfo.MessageType.CARDS_DEALT, client.get(30, TimeUnit.SECONDS).getMessageType());
+        }
+    }
+
+    @Test
+    @DisplayName("Acceptors — the extra threads start with the server and end with stop()")
+    void testStop() throws Exception {
+        long before = acceptorThreads();
+        ServerConfig config = startServer(ServerConfig.IoMode.THREADS, 3);
+        MessageChannel channel = TestServers.connectWhenReady(config.getPort());
+        assertEquals(PokerInfo.MessageType.CARDS_DEALT, deal(channel).getMessageType());
+        assertEquals(before + 2, acceptorThreads());
+
+        servers.get(0).stop();
+        assertEquals(before, acceptorThreads());
+        assertThrows(IOException.class, () -> Connections.connect("localhost", config.getPort(), WireFormat.BINARY));
+    }
+
+    @Test
+    @DisplayName("Acceptors — counts and backlogs below 1 are refused")
+    void testConfig() {
+        ServerConfig config = new ServerConfig(0);
+        assertEquals(1, config.getAcceptors());
+        assertThrows(IllegalArgumentException.class, () -> config.setAcceptors(0));
+        assertThrows(IllegalArgumentException.class, () -> config.setAcceptBacklog(0));
+    }
+}
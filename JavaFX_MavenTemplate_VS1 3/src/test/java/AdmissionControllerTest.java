@@ -0,0 +1,278 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Tests for admission decisions and the wait queue, alone and behind a running server.
+ */
+class AdmissionControllerTest {
+
+    /** Waiter that records its callbacks. */
+    private static class RecordingWaiter implements AdmissionController.Waiter {
+        volatile boolean admitted;
+        final AtomicInteger changes = new AtomicInteger();
+
+        @Override
+        public void admitted() {
+            admitted = true;
+        }
+
+        @Override
+        public void queueChanged() {
+            changes.incrementAndGet();
+        }
+    }
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    // ==================== AdmissionController ====================
+
+    @Test
+    @DisplayName("Admission — seats, then queue, then reject")
+    void testDecisions() {
+        AdmissionController admission = new AdmissionController(2, 1);
+        assertEquals(AdmissionController.Decision.ADMITTED, admission.admit(new RecordingWaiter()));
+        assertEquals(AdmissionController.Decision.ADMITTED, admission.admit(new RecordingWaiter()));
+        RecordingWaiter waiter = new RecordingWaiter();
+        assertEquals(AdmissionController.Decision.QUEUED, admission.admit(waiter));
+        assertEquals(AdmissionController.Decision.REJECTED, admission.admit(new RecordingWaiter()));
+
+        assertEquals(2, admission.getActive());
+        assertEquals(1, admission.getWaiting());
+        assertEquals(2, admission.getAdmittedCount());
+        assertEquals(1, admission.getQueuedCount());
+        assertEquals(1, admission.getRejectedCount());
+        assertFalse(waiter.admitted);
+    }
+
+    @Test
+    @DisplayName("Admission — released seats go to the queue in order and positions move up")
+    void testQueueOrder() {
+        AdmissionController admission = new AdmissionController(1, 3);
+        admission.admit(new RecordingWaiter());
+        RecordingWaiter first = new RecordingWaiter();
+        RecordingWaiter second = new RecordingWaiter();
+        admission.admit(first);
+        admission.admit(second);
+        assertEquals(1, admission.positionOf(first));
+        assertEquals(2, admission.positionOf(second));
+
+        admission.release();
+        assertTrue(first.admitted);
+        assertFalse(second.admitted);
+        assertEquals(0, admission.positionOf(first));
+        assertEquals(1, admission.positionOf(second));
+        assertEquals(1, second.changes.get());
+        assertEquals(1, admission.getActive());
+    }
+
+    @Test
+    @DisplayName("Admission — a seat change wakes a bounded number of waiters, and in turn all of them")
+    void testBoundedNotify() {
+        int queued = 1000;
+        AdmissionController admission = new AdmissionController(1, queued);
+        admission.admit(new RecordingWaiter());
+        List<RecordingWaiter> waiters = new ArrayList<>();
+        for (int i = 0; i < queued; i++) {
+            RecordingWaiter waiter = new RecordingWaiter();
+            waiters.add(waiter);
+            admission.admit(waiter);
+        }
+
+        admission.release();
+        int woken = 0;
+        for (RecordingWaiter waiter : waiters) {
+            woken += waiter.changes.get();
+        }
+        assertTrue(woken > 0 && woken <= 128, "Woke " + woken + " waiters for one seat change");
+        assertTrue(waiters.get(1).changes.get() > 0);
+
+        // The sweep reaches the back of the line after a handful of seat changes
+        for (int i = 0; i < queued / 64; i++) {
+            admission.release();
+        }
+        for (RecordingWaiter waiter : waiters) {
+            assertTrue(waiter.admitted || waiter.changes.get() > 0);
+        }
+    }
+
+    @Test
+    @DisplayName("Admission — leaving the queue frees the place without taking a seat")
+    void testCancel() {
+        AdmissionController admission = new AdmissionController(1, 2);
+        admission.admit(new RecordingWaiter());
+        RecordingWaiter leaving = new RecordingWaiter();
+        RecordingWaiter staying = new RecordingWaiter();
+        admission.admit(leaving);
+        admission.admit(staying);
+
+        assertTrue(admission.cancel(leaving));
+        assertFalse(admission.cancel(leaving));
+        assertEquals(1, admission.positionOf(staying));
+        assertEquals(1, admission.getWaiting());
+        assertEquals(1, admission.getAbandonedCount());
+
+        admission.release();
+        assertTrue(staying.admitted);
+        assertFalse(leaving.admitted);
+    }
+
+    @Test
+    @DisplayName("Admission — a released seat goes to the head of the line, never to a new arrival")
+    void testNoQueueJumping() throws Exception {
+        int queued = 2000;
+        AdmissionController admission = new AdmissionController(1, queued + 1);
+        admission.admit(new RecordingWaiter());
+        for (int i = 0; i < queued; i++) {
+            admission.admit(new RecordingWaiter());
+        }
+
+        AtomicInteger jumped = new AtomicInteger();
+        Thread arrivals = new Thread(() -> {
+            while (admission.getWaiting() > 1) {
+                RecordingWaiter newcomer = new RecordingWaiter();
+                AdmissionController.Decision decision = admission.admit(newcomer);
+                if (decision == AdmissionController.Decision.ADMITTED) {
+                    jumped.incrementAndGet();
+                    admission.release();
+                } else if (decision == AdmissionController.Decision.QUEUED && !admission.cancel(newcomer)) {
+                    admission.release(); // Reached the head fairly; pass the seat on
+                }
+            }
+        });
+        arrivals.start();
+        for (int i = 0; i < queued; i++) {
+            admission.release();
+        }
+        arrivals.join();
+
+        assertEquals(0, jumped.get());
+        assertEquals(1, admission.getActive());
+    }
+
+    @Test
+    @DisplayName("Admission — positions count from the head, including places left further ahead")
+    void testPositions() {
+        AdmissionController admission = new AdmissionController(1, 4);
+        admission.admit(new RecordingWaiter());
+        RecordingWaiter first = new RecordingWaiter();
+        RecordingWaiter middle = new RecordingWaiter();
+        RecordingWaiter last = new RecordingWaiter();
+        admission.admit(first);
+        admission.admit(middle);
+        admission.admit(last);
+
+        assertTrue(admission.cancel(middle));
+        assertEquals(0, last.changes.get(), "nobody moved up yet");
+        assertEquals(3, admission.positionOf(last));
+
+        admission.release();
+        assertTrue(first.admitted);
+        assertEquals(1, admission.positionOf(last));
+        assertEquals(1, last.changes.get());
+    }
+
+    @Test
+    @DisplayName("Admission — concurrent arrivals and departures never exceed the limits")
+    void testConcurrentChurn() throws Exception {
+        AdmissionController admission = new AdmissionController(4, 4);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        AtomicInteger violations = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 20000; i++) {
+                    RecordingWaiter waiter = new RecordingWaiter();
+                    AdmissionController.Decision decision = admission.admit(waiter);
+                    if (admission.getActive() > 4 || admission.getWaiting() > 4) {
+                        violations.incrementAndGet();
+                    }
+                    if (decision == AdmissionController.Decision.ADMITTED) {
+                        admission.release();
+                    } else if (decision == AdmissionController.Decision.QUEUED) {
+                        if (!admission.cancel(waiter)) {
+                            admission.release();
+                        }
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(0, violations.get());
+        assertEquals(0, admission.getActive());
+        assertEquals(0, admission.getWaiting());
+        assertEquals(threads * 20000L, admission.getAdmittedCount() + admission.getRejectedCount()
+                + admission.getAbandonedCount());
+    }
+
+    // ==================== Server ====================
+
+    private int startServer(ServerConfig.IoMode mode, int seats, int queue) throws Exception {
+        ServerConfig config = TestServers.config(mode);
+        config.setMaxClients(seats);
+        config.setWaitQueueSize(queue);
+        server = servers.start(config);
+        return config.getPort();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Server — a waiting client is told its place, then seated when a player leaves")
+    void testWaitForSeat(ServerConfig.IoMode mode) throws Exception {
+        int port = startServer(mode, 1, 1);
+        MessageChannel seated = TestServers.connectWhenReady(port);
+        seated.send(TestServers.bet(5));
+        assertEquals(PokerInfo.MessageType.CARDS_DEALT, seated.receive().getMessageType());
+
+        MessageChannel waiting = Connections.connect("localhost", port, WireFormat.BINARY);
+        waiting.send(TestServers.bet(5)); // Held by the server until a seat is free
+        PokerInfo update = waiting.receive();
+        assertEquals(PokerInfo.MessageType.QUEUE_POSITION, update.getMessageType());
+        assertEquals(1, update.getQueuePosition());
+
+        MessageChannel rejected = Connections.connect("localhost", port, WireFormat.BINARY);
+        assertThrows(ConnectException.class, () -> Connections.receiveReply(rejected, position -> { }));
+        rejected.close();
+
+        seated.close();
+        List<Integer> positions = new ArrayList<>();
+        PokerInfo dealt = Connections.receiveReply(waiting, positions::add);
+        assertEquals(List.of(0), positions);
+        assertEquals(PokerInfo.MessageType.CARDS_DEALT, dealt.getMessageType());
+        waiting.close();
+
+        AdmissionController admission = server.getAdmission();
+        assertEquals(2, admission.getAdmittedCount());
+        assertEquals(1, admission.getQueuedCount());
+        assertEquals(1, admission.getRejectedCount());
+    }
+}
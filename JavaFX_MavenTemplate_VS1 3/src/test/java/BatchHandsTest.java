@@ -0,0 +1,150 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * BATCH_HANDS must settle every hand exactly as if it had been played on its own.
+ */
+class BatchHandsTest {
+
+    private static final long MASTER_SEED = 42;
+
+    private final TestServers servers = new TestServers();
+
+    @AfterEach
+    void stopServers() {
+        servers.stopAll();
+    }
+
+    private MessageChannel connect(WireFormat format) throws Exception {
+        ServerConfig config = new ServerConfig(TestServers.freePort());
+        config.setMasterSeed(MASTER_SEED);
+        config.setCommitments(false);
+        servers.start(config);
+        return TestServers.connectWhenReady(config.getPort(), format);
+    }
+
+    private static PokerInfo batch(int count, PokerInfo.Strategy strategy) {
+        int[] antes = new int[count];
+        int[] pairPluses = new int[count];
+        for (int i = 0; i < count; i++) {
+            antes[i] = 5 + i % 21;
+            pairPluses[i] = i % 3 == 0 ? 0 : 5;
+        }
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.BATCH_HANDS);
+        info.setBatchAnteBets(antes);
+        info.setBatchPairPlusBets(pairPluses);
+        info.setStrategy(strategy);
+        return info;
+    }
+
+    /**
+     * Play one hand the step-by-step way and return its result.
+     */
+    private static PokerInfo playHand(MessageChannel channel, int anteBet, int pairPlusBet,
+                                      PokerInfo.PlayerAction action) throws IOException {
+        PokerInfo bet = TestServers.bet(anteBet);
+        bet.setPairPlusBet(pairPlusBet);
+        channel.send(bet);
+        PokerInfo dealt = channel.receive();
+
+        PokerInfo decision = TestServers.fold(dealt);
+        decision.setPlayerAction(action);
+        channel.send(decision);
+        return channel.receive();
+    }
+
+    @Test
+    @DisplayName("Batches — every hand matches the same hand played on its own")
+    void testMatchesSingleHands() throws Exception {
+        MessageChannel batched = connect(WireFormat.BINARY);
+        MessageChannel single = connect(WireFormat.JAVA);
+        try {
+            PokerInfo request = batch(200, PokerInfo.Strategy.QUEEN_SIX_FOUR);
+            batched.send(request);
+            PokerInfo result = batched.receive();
+            assertEquals(PokerInfo.MessageType.BATCH_RESULT, result.getMessageType());
+            assertNull(result.getStatusMessage());
+            assertEquals(1, result.getHandId());
+            assertEquals(200, result.getBatchDeltas().length);
+
+            // Same master seed and client id on the twin server, so the same deals
+            int total = 0;
+            for (int i = 0; i < 200; i++) {
+                PokerInfo hand = playHand(single, request.getBatchAnteBets()[i], request.getBatchPairPlusBets()[i],
+                        result.getBatchActions()[i]);
+                assertEquals(ThreeCardLogic.playsQueenSixFour(hand.getPlayerCards()),
+                        result.getBatchActions()[i] == PokerInfo.PlayerAction.PLAY);
+                assertEquals(hand.getHandSeed(), result.getBatchSeeds()[i], "seed of hand " + (i + 1));
+                assertEquals(hand.getDeltaWinningsThisHand(), result.getBatchDeltas()[i], "hand " + (i + 1));
+                total = hand.getTotalWinnings();
+            }
+            assertEquals(total, result.getTotalWinnings());
+            assertEquals(total, Arrays.stream(result.getBatchDeltas()).sum());
+            assertEquals(total, result.getDeltaWinningsThisHand());
+
+            // Hand numbers carry on after the batch
+            batched.send(batch(1, PokerInfo.Strategy.ALWAYS_FOLD));
+            assertEquals(201, batched.receive().getHandId());
+        } finally {
+            batched.close();
+            single.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Batches — explicit actions are followed hand by hand")
+    void testExplicitActions() throws Exception {
+        MessageChannel channel = connect(WireFormat.BINARY);
+        try {
+            PokerInfo request = batch(4, null);
+            request.setBatchActions(new PokerInfo.PlayerAction[] {
+                PokerInfo.PlayerAction.FOLD, PokerInfo.PlayerAction.PLAY,
+                PokerInfo.PlayerAction.FOLD, PokerInfo.PlayerAction.PLAY});
+            channel.send(request);
+            PokerInfo result = channel.receive();
+            assertArrayEquals(request.getBatchActions(), result.getBatchActions());
+            assertEquals(-5, result.getBatchDeltas()[0]);
+            assertEquals(-7 - 5, result.getBatchDeltas()[2]);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Batches — invalid batches are answered with a reason and play no hands")
+    void testRejected() throws Exception {
+        // Java serialization can carry batches the binary encoder would never build
+        MessageChannel channel = connect(WireFormat.JAVA);
+        try {
+            PokerInfo badBet = batch(3, PokerInfo.Strategy.ALWAYS_PLAY);
+            badBet.getBatchAnteBets()[2] = 100;
+            channel.send(badBet);
+            PokerInfo result = channel.receive();
+            assertEquals("Hand 3: Invalid ante bet: 100", result.getStatusMessage());
+            assertEquals(0, result.getBatchDeltas().length);
+
+            PokerInfo noActions = batch(2, null);
+            channel.send(noActions);
+            assertNotNull(channel.receive().getStatusMessage());
+
+            // A hand dealt the usual way must be finished first
+            PokerInfo bet = new PokerInfo();
+            bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+            bet.setAnteBet(5);
+            channel.send(bet);
+            PokerInfo dealt = channel.receive();
+            assertEquals(1, dealt.getHandId());
+            channel.send(batch(2, PokerInfo.Strategy.ALWAYS_PLAY));
+            assertEquals("Finish hand #1 first", channel.receive().getStatusMessage());
+        } finally {
+            channel.close();
+        }
+    }
+}
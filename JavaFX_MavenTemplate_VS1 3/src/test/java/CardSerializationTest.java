@@ -0,0 +1,145 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compact Java-serialized forms of Card and of PokerInfo's card lists.
+ */
+class CardSerializationTest {
+
+    private final ArrayList<Socket> sockets = new ArrayList<>();
+
+    @AfterEach
+    void closeSockets() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private static ArrayList<Card> cards(int... indexes) {
+        ArrayList<Card> cards = new ArrayList<>();
+        for (int index : indexes) {
+            cards.add(Card.of(index));
+        }
+        return cards;
+    }
+
+    /**
+     * Two channels talking over a loopback connection: [0] is the server side, [1] the client side.
+     */
+    private ObjectStreamChannel[] connectedPair() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Socket client = new Socket("localhost", listener.getLocalPort());
+            Socket server = listener.accept();
+            sockets.add(client);
+            sockets.add(server);
+            // Each side reads the other's stream header while opening, so open one side on another thread
+            CompletableFuture<ObjectStreamChannel> opening = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new ObjectStreamChannel(new BufferedInputStream(client.getInputStream()),
+                            client.getOutputStream(), () -> { });
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            ObjectStreamChannel serverSide = new ObjectStreamChannel(new BufferedInputStream(server.getInputStream()),
+                    server.getOutputStream(), () -> { });
+            return new ObjectStreamChannel[] {serverSide, opening.get()};
+        }
+    }
+
+    // ==================== Card ====================
+
+    @Test
+    @DisplayName("Card — the compact form is a fraction of the original and resolves to the shared instance")
+    void testCompactCard() throws Exception {
+        Card card = Card.of(37);
+        byte[] compact = serialize(card.serialForm());
+        byte[] original = serialize(card);
+        assertSame(card, deserialize(compact));
+        assertTrue(compact.length * 2 < original.length, compact.length + " vs " + original.length);
+    }
+
+    @Test
+    @DisplayName("Card — the original form also resolves to the shared instance")
+    void testOriginalCard() throws Exception {
+        Card card = new Card(Suit.SPADES, Rank.ACE);
+        Card read = (Card) deserialize(serialize(card));
+        assertSame(Card.of(card.getIndex()), read);
+    }
+
+    // ==================== PokerInfo ====================
+
+    @Test
+    @DisplayName("PokerInfo — written outside a channel, the original form round-trips")
+    void testOriginalPokerInfo() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        info.setPlayerCards(cards(0, 13, 51));
+        info.setDealerCards(null);
+        info.setTotalWinnings(-40);
+        PokerInfo read = (PokerInfo) deserialize(serialize(info));
+        assertEquals(cards(0, 13, 51), read.getPlayerCards());
+        assertNull(read.getDealerCards());
+        assertEquals(-40, read.getTotalWinnings());
+    }
+
+    @Test
+    @DisplayName("PokerInfo — cards are packed once the peer has announced it reads them")
+    void testPackedAfterAnnouncement() throws Exception {
+        ObjectStreamChannel[] pair = connectedPair();
+        ObjectStreamChannel server = pair[0];
+        ObjectStreamChannel client = pair[1];
+        assertFalse(server.isPackingCards());
+        assertFalse(client.isPackingCards());
+
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        client.send(bet);
+        server.receive();
+        assertTrue(server.isPackingCards());
+
+        PokerInfo dealt = new PokerInfo();
+        dealt.setMessageType(PokerInfo.MessageType.CARDS_DEALT);
+        dealt.setPlayerCards(cards(7, 8, 9));
+        dealt.setDealerCards(new ArrayList<>(List.of()));
+        dealt.setHandId(3);
+        server.send(dealt);
+        PokerInfo read = client.receive();
+        assertEquals(cards(7, 8, 9), read.getPlayerCards());
+        assertSame(Card.of(8), read.getPlayerCards().get(1));
+        assertTrue(read.getDealerCards().isEmpty());
+        assertEquals(3, read.getHandId());
+        assertEquals(cards(7, 8, 9), dealt.getPlayerCards()); // Left as it was after writing
+        assertTrue(client.isPackingCards());
+    }
+}
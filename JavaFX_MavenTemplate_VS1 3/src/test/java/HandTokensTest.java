@@ -0,0 +1,201 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for sealed hand tokens, the replay filter and settling a hand on another server.
+ */
+class HandTokensTest {
+
+    private static final byte[] SECRET = HandTokens.parseSecret("000102030405060708090a0b0c0d0e0f");
+    private static final long NOW = 1_700_000_000L;
+
+    private final TestServers servers = new TestServers();
+
+    @AfterEach
+    void stopServers() {
+        servers.stopAll();
+    }
+
+    private static ArrayList<Card> cards(int... indexes) {
+        ArrayList<Card> cards = new ArrayList<>();
+        for (int index : indexes) {
+            cards.add(Card.of(index));
+        }
+        return cards;
+    }
+
+    private static DealtHand hand() {
+        return new DealtHand(42, 10, 5, cards(0, 13, 26), cards(1, 2, 3), 0x1234L, new byte[16], -75, 99L);
+    }
+
+    // ==================== HandTokens ====================
+
+    @Test
+    @DisplayName("Tokens — a sealed hand opens to the same cards, bets and seed")
+    void testRoundTrip() throws Exception {
+        HandTokens tokens = new HandTokens(SECRET, 60);
+        DealtHand opened = tokens.open(tokens.seal(hand(), NOW), NOW + 5);
+
+        assertEquals(42, opened.getHandId());
+        assertEquals(10, opened.getAnteBet());
+        assertEquals(5, opened.getPairPlusBet());
+        assertEquals(-75, opened.getWinningsBefore());
+        assertEquals(99L, opened.getSession());
+        assertEquals(cards(0, 13, 26), opened.getPlayerCards());
+        assertEquals(cards(1, 2, 3), opened.getDealerCards());
+        assertEquals(0x1234L, opened.getSeed());
+        assertArrayEquals(new byte[16], opened.getSalt());
+    }
+
+    @Test
+    @DisplayName("Tokens — the dealt cards are not readable in the token")
+    void testEncrypted() {
+        HandTokens tokens = new HandTokens(SECRET, 60);
+        byte[] first = tokens.seal(hand(), NOW);
+        byte[] second = tokens.seal(hand(), NOW);
+        assertFalse(Arrays.equals(first, second)); // Fresh IV every time
+        assertTrue(first.length < 100);
+    }
+
+    @Test
+    @DisplayName("Tokens — any changed byte, or another key, is refused")
+    void testTampering() {
+        HandTokens tokens = new HandTokens(SECRET, 60);
+        byte[] token = tokens.seal(hand(), NOW);
+        for (int i = 0; i < token.length; i++) {
+            byte[] changed = token.clone();
+            changed[i] ^= 1;
+            assertThrows(GeneralSecurityException.class, () -> tokens.open(changed, NOW));
+        }
+
+        HandTokens other = new HandTokens(HandTokens.randomSecret(), 60);
+        assertThrows(GeneralSecurityException.class, () -> other.open(token, NOW));
+        assertThrows(GeneralSecurityException.class, () -> tokens.open(null, NOW));
+    }
+
+    @Test
+    @DisplayName("Tokens — expire after their lifetime and settle only once")
+    void testExpiryAndReplay() throws Exception {
+        HandTokens tokens = new HandTokens(SECRET, 60);
+        byte[] stale = tokens.seal(hand(), NOW);
+        assertThrows(GeneralSecurityException.class, () -> tokens.open(stale, NOW + 61));
+
+        byte[] token = tokens.seal(hand(), NOW);
+        tokens.open(token, NOW + 1);
+        GeneralSecurityException replay = assertThrows(GeneralSecurityException.class, () -> tokens.open(token, NOW + 2));
+        assertTrue(replay.getMessage().contains("already used"));
+        assertEquals(1, tokens.getRememberedNonces());
+    }
+
+    // ==================== NonceFilter ====================
+
+    @Test
+    @DisplayName("Nonces — remembered for at least a window, forgotten after two")
+    void testNonceWindow() {
+        long window = 1_000_000_000L; // 1 s, in the nanos firstUse is given
+        NonceFilter filter = new NonceFilter(1000);
+        long start = System.nanoTime();
+
+        assertTrue(filter.firstUse(7, start));
+        assertFalse(filter.firstUse(7, start + window / 2));
+        assertFalse(filter.firstUse(7, start + window + 1)); // Now in the previous generation
+        assertTrue(filter.firstUse(0, start + window + 2));
+        assertFalse(filter.firstUse(0, start + window + 3));
+        assertTrue(filter.firstUse(7, start + 3 * window));
+    }
+
+    @Test
+    @DisplayName("Nonces — many distinct nonces are all kept")
+    void testNonceGrowth() {
+        NonceFilter filter = new NonceFilter(60_000);
+        long now = System.nanoTime();
+        for (long i = 1; i <= 10_000; i++) {
+            assertTrue(filter.firstUse(i * 0x9E3779B97F4A7C15L, now));
+        }
+        for (long i = 1; i <= 10_000; i++) {
+            assertFalse(filter.firstUse(i * 0x9E3779B97F4A7C15L, now));
+        }
+        assertEquals(10_000, filter.size());
+    }
+
+    // ==================== Stateless servers ====================
+
+    private int startServer() throws Exception {
+        ServerConfig config = TestServers.config(ServerConfig.IoMode.THREADS);
+        config.setStatelessHands(true);
+        config.setTokenKey(SECRET);
+        servers.start(config);
+        return config.getPort();
+    }
+
+    @Test
+    @DisplayName("Stateless servers — a hand dealt by one server is settled by another, once")
+    void testSettleElsewhere() throws Exception {
+        MessageChannel first = TestServers.connectWhenReady(startServer());
+        MessageChannel second = TestServers.connectWhenReady(startServer());
+        try {
+            first.send(TestServers.bet(10));
+            PokerInfo dealt = first.receive();
+            assertNotNull(dealt.getHandToken());
+
+            // The player reconnects to another server mid-hand
+            second.send(TestServers.fold(dealt));
+            PokerInfo result = second.receive();
+            assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+            assertEquals(dealt.getHandId(), result.getHandId());
+            assertEquals(dealt.getPlayerCards(), result.getPlayerCards());
+            assertEquals(-10, result.getTotalWinnings());
+
+            // Replaying the token gets no second result; the next reply is the next deal
+            second.send(TestServers.fold(dealt));
+            second.send(TestServers.bet(10));
+            PokerInfo next = second.receive();
+            assertEquals(PokerInfo.MessageType.CARDS_DEALT, next.getMessageType());
+
+            second.send(TestServers.fold(next));
+            assertEquals(-20, second.receive().getTotalWinnings()); // Total carried over from the first server
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Stateless servers — open hands settled in any order all count toward the total")
+    void testInterleavedHands() throws Exception {
+        int port = startServer();
+        MessageChannel player = TestServers.connectWhenReady(port);
+        MessageChannel elsewhere = TestServers.connectWhenReady(startServer());
+        try {
+            // Two hands open at once, settled oldest first where they were dealt
+            player.send(TestServers.bet(10));
+            PokerInfo firstHand = player.receive();
+            player.send(TestServers.bet(10));
+            PokerInfo secondHand = player.receive();
+            player.send(TestServers.fold(firstHand));
+            assertEquals(-10, player.receive().getTotalWinnings());
+            player.send(TestServers.fold(secondHand));
+            assertEquals(-20, player.receive().getTotalWinnings());
+
+            // Two more, settled newest first on another server
+            player.send(TestServers.bet(10));
+            PokerInfo third = player.receive();
+            player.send(TestServers.bet(10));
+            PokerInfo fourth = player.receive();
+            elsewhere.send(TestServers.fold(fourth));
+            assertEquals(-30, elsewhere.receive().getTotalWinnings());
+            elsewhere.send(TestServers.fold(third));
+            assertEquals(-40, elsewhere.receive().getTotalWinnings());
+        } finally {
+            player.close();
+            elsewhere.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Idle sessions: after a while without a message a session hibernates, letting go of its
+ * deck, commitment batches and channel buffers, and wakes up with its next message as if
+ * nothing happened.
+ */
+class HibernationTest {
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+    private int port;
+
+    @AfterEach
+    void stop() {
+        servers.stopAll();
+    }
+
+    private void startServer(ServerConfig.IoMode mode, int hibernateAfterSeconds) throws Exception {
+        ServerConfig config = TestServers.config(mode);
+        config.setHibernateAfterSeconds(hibernateAfterSeconds);
+        server = servers.start(config);
+        port = config.getPort();
+    }
+
+    /**
+     * Sweep until the sessions idle since now have hibernated, like the sweeper does over time
+     * (a blocking connection is skipped while its thread is still busy with the last message).
+     */
+    private void hibernateAll(int expected) throws InterruptedException {
+        long cutoff = System.nanoTime();
+        for (int i = 0; i < 100 && server.getHibernatingCount() < expected; i++) {
+            server.hibernateIdleClients(cutoff);
+            Thread.sleep(10);
+        }
+        assertEquals(expected, server.getHibernatingCount());
+    }
+
+    // ==== Waking up ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Hibernation — a session wakes up with its winnings, hand count and announced deck")
+    void testWakeUp(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 0);
+        MessageChannel channel = TestServers.connectWhenReady(port);
+        try {
+            FairnessVerifier verifier = new FairnessVerifier();
+            for (int hand = 1; hand <= 3; hand++) {
+                channel.send(TestServers.bet(10));
+                PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+                assertEquals(hand, dealt.getHandId());
+                channel.send(TestServers.fold(dealt));
+                PokerInfo result = channel.receive();
+                assertNull(verifier.verifyHand(dealt, result), "hand " + hand);
+                assertEquals(-10 * hand, result.getTotalWinnings(), "winnings carried over");
+
+                hibernateAll(1);
+                assertEquals(0, server.getActiveCount());
+            }
+            assertEquals(3, server.getHibernatedTotal());
+            assertEquals(2, server.getRehydratedTotal());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Hibernation — a hand left open while idle is settled as dealt")
+    void testOpenHand(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 0);
+        MessageChannel channel = TestServers.connectWhenReady(port);
+        try {
+            channel.send(TestServers.bet(15));
+            PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+            hibernateAll(1);
+
+            channel.send(TestServers.fold(dealt));
+            PokerInfo result = channel.receive();
+            assertEquals(dealt.getHandId(), result.getHandId());
+            assertEquals(-15, result.getTotalWinnings());
+            assertEquals(0, server.getHibernatingCount());
+            assertEquals(1, server.getActiveCount());
+            assertEquals(1, server.getRehydratedTotal());
+        } finally {
+            channel.close();
+        }
+    }
+
+    // ==== Who hibernates ====
+
+    @Test
+    @DisplayName("Hibernation — only sessions idle for the whole delay hibernate")
+    void testOnlyIdle() throws Exception {
+        startServer(ServerConfig.IoMode.NIO, 0);
+        MessageChannel channel = TestServers.connectWhenReady(port);
+        try {
+            channel.send(TestServers.bet(10));
+            Connections.receiveReply(channel, position -> { });
+            server.hibernateIdleClients(System.nanoTime() - 60_000_000_000L);
+            Thread.sleep(100);
+            assertEquals(0, server.getHibernatingCount());
+            assertEquals(1, server.getActiveCount());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Hibernation — the sweeper hibernates idle sessions on its own")
+    void testSweeper() throws Exception {
+        startServer(ServerConfig.IoMode.THREADS, 1);
+        MessageChannel channel = TestServers.connectWhenReady(port);
+        try {
+            channel.send(TestServers.bet(10));
+            PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+            for (int i = 0; i < 300 && server.getHibernatingCount() == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, server.getHibernatingCount());
+
+            channel.send(TestServers.fold(dealt));
+            assertEquals(-10, channel.receive().getTotalWinnings());
+            assertEquals(1, server.getRehydratedTotal());
+        } finally {
+            channel.close();
+        }
+    }
+
+    // ==== Configuration ====
+
+    @Test
+    @DisplayName("Hibernation — off by default, and the delay cannot be negative")
+    void testConfig() {
+        ServerConfig config = new ServerConfig(0);
+        assertEquals(0, config.getHibernateAfterSeconds());
+        config.setHibernateAfterSeconds(30);
+        assertEquals(30, config.getHibernateAfterSeconds());
+        assertThrows(IllegalArgumentException.class, () -> config.setHibernateAfterSeconds(-1));
+    }
+}
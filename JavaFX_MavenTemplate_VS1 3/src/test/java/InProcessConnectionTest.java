@@ -0,0 +1,126 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clients in the same JVM talking to their handler without sockets or encoding.
+ */
+class InProcessConnectionTest {
+
+    private final TestServers servers = new TestServers();
+
+    @AfterEach
+    void stopServers() {
+        servers.stopAll();
+    }
+
+    private static PokerInfo playHand(MessageChannel channel) throws IOException {
+        channel.send(TestServers.bet(10));
+        PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+        channel.send(TestServers.play(dealt));
+        return channel.receive();
+    }
+
+    @Test
+    @DisplayName("In-process — hands play out exactly as over a socket, without starting the server")
+    void testSameAsSocket() throws Exception {
+        ServerConfig config = new ServerConfig(TestServers.freePort());
+        config.setMasterSeed(42);
+        servers.start(config);
+        MessageChannel socket = TestServers.connectWhenReady(config.getPort());
+        MessageChannel local = servers.create(config).connectInProcess();
+        try {
+            for (int hand = 0; hand < 20; hand++) {
+                PokerInfo expected = playHand(socket);
+                PokerInfo actual = playHand(local);
+                assertEquals(expected.getPlayerCards(), actual.getPlayerCards());
+                assertEquals(expected.getDealerCards(), actual.getDealerCards());
+                assertEquals(expected.getTotalWinnings(), actual.getTotalWinnings());
+                assertEquals(expected.getStatusMessage(), actual.getStatusMessage());
+                assertEquals(expected.getCommitmentIndex(), actual.getCommitmentIndex());
+            }
+        } finally {
+            socket.close();
+            local.close();
+        }
+    }
+
+    @Test
+    @DisplayName("In-process — queued clients wait with their messages held, full servers turn them away")
+    void testAdmission() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setMaxClients(1);
+        config.setWaitQueueSize(1);
+        PokerServer server = servers.create(config);
+
+        MessageChannel seated = server.connectInProcess();
+        MessageChannel waiting = server.connectInProcess();
+        MessageChannel turnedAway = server.connectInProcess();
+        assertThrows(ConnectException.class, () -> Connections.receiveReply(turnedAway, position -> { }));
+
+        PokerInfo update = waiting.receive();
+        assertEquals(PokerInfo.MessageType.QUEUE_POSITION, update.getMessageType());
+        assertEquals(1, update.getQueuePosition());
+        waiting.send(TestServers.bet(5)); // Held until a seat is free
+
+        assertEquals(PokerInfo.MessageType.GAME_RESULT, playHand(seated).getMessageType());
+        seated.close();
+        assertThrows(EOFException.class, seated::receive);
+
+        List<Integer> positions = new ArrayList<>();
+        PokerInfo dealt = Connections.receiveReply(waiting, positions::add);
+        assertEquals(List.of(0), positions);
+        assertEquals(PokerInfo.MessageType.CARDS_DEALT, dealt.getMessageType());
+        assertEquals(5, dealt.getAnteBet());
+        waiting.close();
+        assertEquals(0, server.getClientCount());
+    }
+
+    @Test
+    @DisplayName("In-process — clients on many threads, each pipelining, get every reply in order")
+    void testConcurrentClients() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setMaxClients(4);
+        config.setCommitments(false);
+        PokerServer server = servers.create(config);
+        int hands = 5000;
+
+        List<CompletableFuture<Integer>> clients = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            MessageChannel channel = server.connectInProcess();
+            clients.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    RequestPipeline pipeline = new RequestPipeline(channel, position -> { });
+                    int[] ids = new int[hands];
+                    for (int i = 0; i < hands; i++) {
+                        PokerInfo oneShot = TestServers.bet(5);
+                        oneShot.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+                        oneShot.setStrategy(PokerInfo.Strategy.ALWAYS_FOLD);
+                        ids[i] = pipeline.send(oneShot);
+                    }
+                    int total = 0;
+                    for (int id : ids) {
+                        total = pipeline.await(id).getTotalWinnings();
+                    }
+                    channel.close();
+                    return total;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (CompletableFuture<Integer> client : clients) {
+            assertEquals(-5 * hands, client.get(30, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Per-type lean messages, their PokerInfo adapter, and status codes.
+ */
+class LeanMessagesTest {
+
+    private static ArrayList<Card> cards(int... indexes) {
+        ArrayList<Card> cards = new ArrayList<>();
+        for (int index : indexes) {
+            cards.add(Card.of(index));
+        }
+        return cards;
+    }
+
+    /**
+     * Serialize the lean form of a message and turn what is read back into a PokerInfo.
+     */
+    private static PokerInfo roundTrip(PokerInfo info) throws Exception {
+        LeanMessages.LeanMessage lean = LeanMessages.toLean(info);
+        assertNotNull(lean, info.getMessageType() + " has a lean form");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(lean);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return ((LeanMessages.LeanMessage) in.readObject()).toPokerInfo();
+        }
+    }
+
+    @Test
+    @DisplayName("Lean messages — bets and actions survive the adapter")
+    void testRequests() throws Exception {
+        PokerInfo bet = new PokerInfo();
+        bet.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        bet.setRequestId(9);
+        bet.setAnteBet(25);
+        bet.setPairPlusBet(5);
+        PokerInfo read = roundTrip(bet);
+        assertEquals(PokerInfo.MessageType.INITIAL_BET, read.getMessageType());
+        assertEquals(9, read.getRequestId());
+        assertEquals(25, read.getAnteBet());
+        assertEquals(5, read.getPairPlusBet());
+
+        PokerInfo action = new PokerInfo();
+        action.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+        action.setPlayerAction(PokerInfo.PlayerAction.FOLD);
+        action.setHandId(70_000);
+        action.setHandToken(new byte[] {1, 2});
+        read = roundTrip(action);
+        assertEquals(PokerInfo.PlayerAction.FOLD, read.getPlayerAction());
+        assertEquals(70_000, read.getHandId());
+        assertArrayEquals(new byte[] {1, 2}, read.getHandToken());
+    }
+
+    @Test
+    @DisplayName("Lean messages — deals and results survive the adapter")
+    void testResponses() throws Exception {
+        PokerInfo dealt = new PokerInfo();
+        dealt.setMessageType(PokerInfo.MessageType.CARDS_DEALT);
+        dealt.setClientId(4);
+        dealt.setHandId(12);
+        dealt.setAnteBet(10);
+        dealt.setPlayerCards(cards(0, 25, 51));
+        dealt.setDealerCards(cards(1, 2, 3));
+        dealt.setDeckCommitment(new byte[] {7});
+        dealt.setCommitmentIndex(3);
+        PokerInfo read = roundTrip(dealt);
+        assertEquals(12, read.getHandId());
+        assertEquals(cards(0, 25, 51), read.getPlayerCards());
+        assertEquals(cards(1, 2, 3), read.getDealerCards());
+        assertTrue(read.isDealerCardsHidden());
+        assertArrayEquals(new byte[] {7}, read.getDeckCommitment());
+        assertEquals(3, read.getCommitmentIndex());
+
+        PokerInfo result = new PokerInfo();
+        result.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        result.setHandId(12);
+        result.setPlayerAction(PokerInfo.PlayerAction.PLAY);
+        result.setDealerQualified(true);
+        result.setHandRankPlayer(ThreeCardLogic.PAIR);
+        result.setDeltaWinningsThisHand(-20);
+        result.setTotalWinnings(-120);
+        result.setPlayerCards(cards(4, 17, 9));
+        result.setDealerCards(cards(1, 2, 3));
+        result.setHandSeed(-5L);
+        result.setStatusCode(StatusCode.DEALER_WINS);
+        read = roundTrip(result);
+        assertEquals(PokerInfo.PlayerAction.PLAY, read.getPlayerAction());
+        assertFalse(read.isDealerCardsHidden());
+        assertTrue(read.isDealerQualified());
+        assertEquals(ThreeCardLogic.PAIR, read.getHandRankPlayer());
+        assertEquals(-20, read.getDeltaWinningsThisHand());
+        assertEquals(-120, read.getTotalWinnings());
+        assertEquals(cards(4, 17, 9), read.getPlayerCards());
+        assertEquals(-5L, read.getHandSeed());
+        assertEquals(StatusCode.DEALER_WINS, read.getStatusCode());
+        assertEquals("Dealer wins. Lost Ante and Play.", read.getStatusMessage());
+    }
+
+    @Test
+    @DisplayName("Lean messages — only the messages of a hand have a lean form")
+    void testOtherTypes() {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.BATCH_RESULT);
+        assertNull(LeanMessages.toLean(info));
+        info.setMessageType(null);
+        assertNull(LeanMessages.toLean(info));
+    }
+
+    @Test
+    @DisplayName("Status codes — peers without them get the text in statusMessage")
+    void testStatusTextForOlderPeers() throws Exception {
+        PokerInfo result = new PokerInfo();
+        result.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        result.setStatusCode(StatusCode.TIE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(result);
+        }
+        assertTrue(new String(bytes.toByteArray(), "ISO-8859-1").contains("Tie. Ante and Play push."));
+
+        PokerInfo read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (PokerInfo) in.readObject();
+        }
+        assertEquals("Tie. Ante and Play push.", read.getStatusMessage());
+        assertEquals(StatusCode.TIE, result.getStatusCode()); // The sender keeps its code
+    }
+}
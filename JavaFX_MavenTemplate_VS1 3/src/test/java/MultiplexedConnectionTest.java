@@ -0,0 +1,226 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Many game sessions over one connection: independent, flow-controlled and served fairly.
+ */
+class MultiplexedConnectionTest {
+
+    private final TestServers servers = new TestServers();
+    private final ArrayList<MultiplexedClient> clients = new ArrayList<>();
+
+    @AfterEach
+    void stopServers() {
+        for (MultiplexedClient client : clients) {
+            client.close();
+        }
+        servers.stopAll();
+    }
+
+    private static ServerConfig config() throws IOException {
+        return new ServerConfig(TestServers.freePort());
+    }
+
+    private MultiplexedClient connect(ServerConfig config) throws Exception {
+        MultiplexedClient client = TestServers.whenReady(() -> MultiplexedClient.connect("localhost", config.getPort()));
+        clients.add(client);
+        return client;
+    }
+
+    private static PokerInfo oneShot(int ante) {
+        PokerInfo info = TestServers.bet(ante);
+        info.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+        info.setStrategy(PokerInfo.Strategy.ALWAYS_FOLD);
+        return info;
+    }
+
+    private static PokerInfo playHand(MessageChannel channel, int ante) throws IOException {
+        channel.send(TestServers.bet(ante));
+        PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+        channel.send(TestServers.play(dealt));
+        return channel.receive();
+    }
+
+    // ==== Independent sessions ====
+
+    @Test
+    @DisplayName("Sessions — each plays like its own connection, with its own deck and winnings")
+    void testSameAsSeparateConnections() throws Exception {
+        ServerConfig muxConfig = config();
+        muxConfig.setMasterSeed(42);
+        servers.start(muxConfig);
+        MultiplexedClient client = connect(muxConfig);
+
+        ServerConfig socketConfig = config();
+        socketConfig.setMasterSeed(42);
+        servers.start(socketConfig);
+        // The multiplexed connection itself takes the first client id
+        List<MessageChannel> sockets = new ArrayList<>();
+        sockets.add(TestServers.connectWhenReady(socketConfig.getPort()));
+
+        List<MessageChannel> sessions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sessions.add(client.openSession());
+            sockets.add(Connections.connect("localhost", socketConfig.getPort(), WireFormat.BINARY));
+            playHand(sessions.get(i), 5); // Opens the session, so ids are handed out in order
+            playHand(sockets.get(i + 1), 5);
+        }
+        try {
+            for (int hand = 0; hand < 10; hand++) {
+                for (int i = 0; i < 3; i++) {
+                    PokerInfo expected = playHand(sockets.get(i + 1), 5 + i);
+                    PokerInfo actual = playHand(sessions.get(i), 5 + i);
+                    assertEquals(expected.getPlayerCards(), actual.getPlayerCards());
+                    assertEquals(expected.getDealerCards(), actual.getDealerCards());
+                    assertEquals(expected.getTotalWinnings(), actual.getTotalWinnings());
+                    assertEquals(expected.getHandId(), actual.getHandId());
+                }
+            }
+            assertEquals(3, client.getSessionCount());
+        } finally {
+            for (MessageChannel socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Sessions — closing one leaves the others playing, closing the connection ends them all")
+    void testClose() throws Exception {
+        ServerConfig config = config();
+        PokerServer server = servers.start(config);
+        MultiplexedClient client = connect(config);
+        MultiplexedClient.Session first = client.openSession();
+        MultiplexedClient.Session second = client.openSession();
+        playHand(first, 5);
+        playHand(second, 5);
+
+        first.close();
+        assertThrows(EOFException.class, first::receive);
+        assertEquals(PokerInfo.MessageType.GAME_RESULT, playHand(second, 5).getMessageType());
+        for (int i = 0; i < 100 && server.getClientCount() != 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, server.getClientCount(), "the connection and its remaining session");
+
+        server.stop();
+        assertThrows(EOFException.class, second::receive);
+        assertThrows(EOFException.class, () -> second.send(TestServers.bet(5)));
+    }
+
+    @Test
+    @DisplayName("Sessions — each is admitted on its own, a full server turns away only the extra one")
+    void testAdmission() throws Exception {
+        ServerConfig config = config();
+        config.setMaxClients(2);
+        config.setWaitQueueSize(0);
+        servers.start(config);
+        MultiplexedClient client = connect(config);
+        MultiplexedClient.Session first = client.openSession();
+        MultiplexedClient.Session second = client.openSession();
+        MultiplexedClient.Session third = client.openSession();
+        playHand(first, 5);
+        playHand(second, 5);
+
+        third.send(TestServers.bet(5));
+        assertThrows(ConnectException.class, () -> Connections.receiveReply(third, position -> { }));
+        assertEquals(PokerInfo.MessageType.GAME_RESULT, playHand(first, 5).getMessageType());
+        assertEquals(PokerInfo.MessageType.GAME_RESULT, playHand(second, 5).getMessageType());
+    }
+
+    // ==== Flow control and fairness ====
+
+    @Test
+    @DisplayName("Flow control — a session pipelining far past its window waits for credit and loses nothing")
+    void testCredit() throws Exception {
+        ServerConfig config = config();
+        config.setCommitments(false);
+        servers.start(config);
+        MultiplexedClient client = connect(config);
+        MultiplexedClient.Session session = client.openSession();
+        RequestPipeline pipeline = new RequestPipeline(session, position -> { });
+        int hands = 20 * MultiplexedConnection.SESSION_WINDOW;
+
+        int[] ids = new int[hands];
+        Thread sender = new Thread(() -> {
+            try {
+                for (int i = 0; i < hands; i++) {
+                    ids[i] = pipeline.send(oneShot(5));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        sender.start();
+        sender.join(10_000);
+        assertFalse(sender.isAlive(), "sending stalled waiting for credit");
+        int total = 0;
+        for (int id : ids) {
+            total = pipeline.await(id).getTotalWinnings();
+        }
+        assertEquals(-5 * hands, total);
+    }
+
+    @Test
+    @DisplayName("Fairness — a session with a full window of big batches holds another back by one message at most")
+    void testFairness() throws Exception {
+        ServerConfig config = config();
+        config.setCommitments(false);
+        servers.start(config);
+        int[] antes = new int[PokerInfo.MAX_BATCH_HANDS];
+        Arrays.fill(antes, 5);
+        PokerInfo batch = new PokerInfo();
+        batch.setMessageType(PokerInfo.MessageType.BATCH_HANDS);
+        batch.setBatchAnteBets(antes);
+        batch.setBatchPairPlusBets(new int[antes.length]);
+        batch.setStrategy(PokerInfo.Strategy.ALWAYS_FOLD);
+
+        // Session 1 fills its window with batches and session 2 asks for one hand, all in a
+        // single write so the server has every frame before it finishes the first batch
+        ByteBuffer frames = ByteBuffer.allocate(1 << 20);
+        frames.put(WireCodec.MULTIPLEXED_HELLO);
+        for (int i = 0; i < MultiplexedConnection.SESSION_WINDOW; i++) {
+            WireCodec.encodeSessionFrame(1, batch, frames);
+        }
+        WireCodec.encodeSessionFrame(2, oneShot(5), frames);
+
+        Socket socket = TestServers.whenReady(() -> new Socket("localhost", config.getPort()));
+        try {
+            socket.getOutputStream().write(frames.array(), 0, frames.position());
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            input.readFully(new byte[WireCodec.MULTIPLEXED_HELLO.length]);
+            int batchesFirst = 0;
+            while (true) {
+                byte[] body = new byte[input.readUnsignedShort()];
+                input.readFully(body);
+                ByteBuffer frame = ByteBuffer.wrap(body);
+                int session = WireCodec.getUnsigned(frame);
+                PokerInfo reply = WireCodec.decode(frame);
+                if (session == 2) {
+                    assertEquals(PokerInfo.MessageType.GAME_RESULT, reply.getMessageType());
+                    break;
+                }
+                if (reply.getMessageType() == PokerInfo.MessageType.BATCH_RESULT) {
+                    batchesFirst++;
+                }
+            }
+            assertTrue(batchesFirst <= 2, batchesFirst + " batches were served before the other session's hand");
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Plays hands against a server running in NIO mode.
+ */
+class NioServerTest {
+
+    private final TestServers servers = new TestServers();
+    private int port;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        ServerConfig config = TestServers.config(ServerConfig.IoMode.NIO);
+        config.setEventLoops(2);
+        config.setMasterSeed(42);
+        port = config.getPort();
+        servers.start(config);
+        TestServers.connectWhenReady(port).close();
+    }
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    @Test
+    @DisplayName("NIO — a binary client plays hands over an event loop")
+    void testPlayHands() throws Exception {
+        MessageChannel channel = Connections.connect("localhost", port, WireFormat.BINARY);
+        try {
+            for (int hand = 1; hand <= 3; hand++) {
+                channel.send(TestServers.bet(10));
+                PokerInfo dealt = channel.receive();
+                assertEquals(PokerInfo.MessageType.CARDS_DEALT, dealt.getMessageType());
+                assertEquals(hand, dealt.getHandId());
+                assertEquals(3, dealt.getPlayerCards().size());
+
+                channel.send(TestServers.fold(dealt));
+                PokerInfo result = channel.receive();
+                assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+                assertEquals(-10 * hand, result.getTotalWinnings());
+                assertEquals(SeededShuffle.handSeed(42, dealt.getClientId(), hand), result.getHandSeed());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("NIO — frames split across reads and batched in one write are both decoded")
+    void testPartialAndBatchedFrames() throws Exception {
+        ByteBuffer frames = ByteBuffer.allocate(256);
+        frames.put(WireCodec.HELLO);
+        WireCodec.encodeFrame(TestServers.bet(5), frames);
+        int firstEnd = frames.position();
+        PokerInfo first = new PokerInfo();
+        first.setHandId(1);
+        WireCodec.encodeFrame(TestServers.fold(first), frames);
+        byte[] bytes = new byte[frames.position()];
+        frames.flip();
+        frames.get(bytes);
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream output = socket.getOutputStream();
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+
+            // Hello and the bet one byte at a time, then the fold in one piece
+            for (int i = 0; i < firstEnd; i++) {
+                output.write(bytes[i]);
+                output.flush();
+                Thread.sleep(2);
+            }
+            output.write(bytes, firstEnd, bytes.length - firstEnd);
+            output.flush();
+
+            byte[] hello = new byte[WireCodec.HELLO.length];
+            input.readFully(hello);
+            assertArrayEquals(WireCodec.HELLO, hello);
+            PokerInfo.MessageType[] expected = {PokerInfo.MessageType.CARDS_DEALT, PokerInfo.MessageType.GAME_RESULT};
+            for (PokerInfo.MessageType type : expected) {
+                byte[] body = new byte[input.readUnsignedShort()];
+                input.readFully(body);
+                PokerInfo reply = WireCodec.decode(ByteBuffer.wrap(body));
+                assertEquals(type, reply.getMessageType());
+                assertEquals(1, reply.getHandId());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("NIO — a malformed frame closes only its connection, and the loops keep serving")
+    void testMalformedFrame() throws Exception {
+        byte[] frame = {0, 7, (byte) PokerInfo.MessageType.SERVER_FULL.ordinal(), 0,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        // One bad client per event loop, so the loop the next client lands on has seen one
+        for (int i = 0; i < 2; i++) {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.getOutputStream().write(WireCodec.HELLO);
+                socket.getOutputStream().write(frame);
+                socket.getOutputStream().flush();
+                socket.setSoTimeout(5000);
+                InputStream input = socket.getInputStream();
+                input.readNBytes(WireCodec.HELLO.length);
+                assertEquals(-1, input.read());
+            }
+        }
+
+        MessageChannel channel = Connections.connect("localhost", port, WireFormat.BINARY);
+        try {
+            channel.send(TestServers.bet(10));
+            PokerInfo dealt = channel.receive();
+            assertEquals(PokerInfo.MessageType.CARDS_DEALT, dealt.getMessageType());
+            channel.send(TestServers.fold(dealt));
+            assertEquals(PokerInfo.MessageType.GAME_RESULT, channel.receive().getMessageType());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("NIO — a malformed hello closes the connection")
+    void testBadHello() throws Exception {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.getOutputStream().write(new byte[] {'H', 'T', 'T', 'P'});
+            socket.getOutputStream().flush();
+            socket.setSoTimeout(5000);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+}
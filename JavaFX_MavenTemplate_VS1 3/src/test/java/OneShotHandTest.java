@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ONE_SHOT_HAND plays a whole hand in one round trip, with the same deal, decision
+ * and payout as the step-by-step flow.
+ */
+class OneShotHandTest {
+
+    private final TestServers servers = new TestServers();
+
+    @AfterEach
+    void stopServers() {
+        servers.stopAll();
+    }
+
+    private MessageChannel connect(boolean commitments) throws Exception {
+        ServerConfig config = new ServerConfig(TestServers.freePort());
+        config.setMasterSeed(7);
+        config.setCommitments(commitments);
+        servers.start(config);
+        return TestServers.connectWhenReady(config.getPort());
+    }
+
+    private static PokerInfo oneShot(int anteBet, int pairPlusBet, PokerInfo.Strategy strategy) {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+        info.setAnteBet(anteBet);
+        info.setPairPlusBet(pairPlusBet);
+        info.setStrategy(strategy);
+        return info;
+    }
+
+    @Test
+    @DisplayName("One-shot hands — same cards, decision and payout as playing step by step")
+    void testMatchesStepByStep() throws Exception {
+        MessageChannel oneShot = connect(false);
+        MessageChannel stepwise = connect(false);
+        try {
+            for (int hand = 1; hand <= 50; hand++) {
+                int pairPlus = hand % 2 == 0 ? 5 : 0;
+                oneShot.send(oneShot(10, pairPlus, PokerInfo.Strategy.QUEEN_SIX_FOUR));
+                PokerInfo result = oneShot.receive();
+                assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+                assertEquals(hand, result.getHandId());
+
+                // Same master seed and client id on the twin server, so the same deal
+                PokerInfo bet = TestServers.bet(10);
+                bet.setPairPlusBet(pairPlus);
+                stepwise.send(bet);
+                PokerInfo dealt = stepwise.receive();
+                assertEquals(dealt.getPlayerCards(), result.getPlayerCards());
+
+                PokerInfo action = TestServers.play(dealt);
+                assertEquals(action.getPlayerAction(), result.getPlayerAction());
+                stepwise.send(action);
+                PokerInfo settled = stepwise.receive();
+                assertEquals(settled.getDeltaWinningsThisHand(), result.getDeltaWinningsThisHand());
+                assertEquals(settled.getTotalWinnings(), result.getTotalWinnings());
+                assertEquals(settled.getStatusMessage(), result.getStatusMessage());
+            }
+        } finally {
+            oneShot.close();
+            stepwise.close();
+        }
+    }
+
+    @Test
+    @DisplayName("One-shot hands — the result carries a commitment the client can verify")
+    void testVerifiable() throws Exception {
+        MessageChannel channel = connect(true);
+        try {
+            FairnessVerifier verifier = new FairnessVerifier();
+            for (int hand = 1; hand <= 3; hand++) {
+                channel.send(oneShot(5, 0, PokerInfo.Strategy.ALWAYS_PLAY));
+                PokerInfo result = channel.receive();
+                assertTrue(FairnessVerifier.isCommitted(result));
+                assertNull(verifier.verifyHand(result, result));
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("One-shot hands — invalid requests are answered with a reason and deal nothing")
+    void testRejected() throws Exception {
+        MessageChannel channel = connect(false);
+        try {
+            channel.send(oneShot(100, 0, PokerInfo.Strategy.ALWAYS_PLAY));
+            PokerInfo result = channel.receive();
+            assertEquals(0, result.getHandId());
+            assertEquals("Invalid ante bet: 100", result.getStatusMessage());
+
+            channel.send(oneShot(5, 0, null));
+            assertEquals("No strategy specified", channel.receive().getStatusMessage());
+
+            channel.send(oneShot(5, 0, PokerInfo.Strategy.ALWAYS_FOLD));
+            result = channel.receive();
+            assertEquals(1, result.getHandId());
+            assertEquals(-5, result.getTotalWinnings());
+        } finally {
+            channel.close();
+        }
+    }
+}
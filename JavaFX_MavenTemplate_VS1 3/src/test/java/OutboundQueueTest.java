@@ -0,0 +1,196 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Outbound queues: replies wait per client until it reads them, and a client that lets
+ * too many pile up is shed or disconnected instead of holding up the server.
+ */
+class OutboundQueueTest {
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+    private int port;
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    private void startServer(ServerConfig.IoMode mode, boolean writerThreads) throws Exception {
+        ServerConfig config = TestServers.config(mode);
+        config.setCommitments(false);
+        config.setOutboundQueueLimit(64);
+        config.setWriterThreads(writerThreads);
+        port = config.getPort();
+        server = servers.start(config);
+    }
+
+    private static PokerInfo message(PokerInfo.MessageType type) {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(type);
+        return info;
+    }
+
+    /**
+     * A channel whose sends block until released, like a client that stopped reading.
+     */
+    private static class StalledChannel implements MessageChannel {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ConcurrentLinkedQueue<PokerInfo> sent = new ConcurrentLinkedQueue<>();
+        volatile boolean closed;
+
+        @Override
+        public void send(PokerInfo info) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (closed) {
+                throw new IOException("closed");
+            }
+            sent.add(info);
+        }
+
+        @Override
+        public PokerInfo receive() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            release.countDown();
+        }
+    }
+
+    private static void awaitDepth(QueuedChannel queued, int depth) throws InterruptedException {
+        for (int i = 0; i < 200 && queued.getQueuedMessages() != depth; i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(depth, queued.getQueuedMessages());
+    }
+
+    // ==== QueuedChannel ====
+
+    @Test
+    @DisplayName("Queue — a full queue sheds position updates but fails on replies")
+    void testShed() throws Exception {
+        StalledChannel stalled = new StalledChannel();
+        QueuedChannel queued = new QueuedChannel(stalled, 2, ServerConfig.SlowClientPolicy.SHED);
+        Thread writer = new Thread(queued);
+        writer.start();
+
+        queued.send(message(PokerInfo.MessageType.CARDS_DEALT)); // Being written, still counts
+        queued.send(message(PokerInfo.MessageType.GAME_RESULT));
+        awaitDepth(queued, 2);
+        queued.send(message(PokerInfo.MessageType.QUEUE_POSITION));
+        assertEquals(1, queued.getShedMessages());
+        IOException tooSlow = assertThrows(IOException.class,
+                () -> queued.send(message(PokerInfo.MessageType.GAME_RESULT)));
+        assertTrue(tooSlow.getMessage().contains("too slow"));
+        assertEquals(2, queued.getPeakQueuedMessages());
+
+        stalled.release.countDown();
+        queued.close();
+        writer.join(5000);
+        assertEquals(2, stalled.sent.size(), "what was queued is still written before closing");
+        assertEquals(0, queued.getQueuedMessages());
+    }
+
+    @Test
+    @DisplayName("Queue — with DISCONNECT even a position update fails a full queue")
+    void testDisconnect() throws Exception {
+        StalledChannel stalled = new StalledChannel();
+        QueuedChannel queued = new QueuedChannel(stalled, 1, ServerConfig.SlowClientPolicy.DISCONNECT);
+        Thread writer = new Thread(queued);
+        writer.start();
+
+        queued.send(message(PokerInfo.MessageType.CARDS_DEALT));
+        awaitDepth(queued, 1);
+        assertThrows(IOException.class, () -> queued.send(message(PokerInfo.MessageType.QUEUE_POSITION)));
+        assertEquals(0, queued.getShedMessages());
+
+        long start = System.nanoTime();
+        queued.close(); // The client never reads: closing gives up after the linger time
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+        assertTrue(stalled.closed);
+    }
+
+    // ==== Slow clients on a server ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Slow clients — a client that never reads is disconnected, others keep playing")
+    void testStalledClient(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, true);
+        MessageChannel player = TestServers.connectWhenReady(port);
+        PokerInfo first = message(PokerInfo.MessageType.ONE_SHOT_HAND);
+        first.setAnteBet(10);
+        first.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        player.send(first);
+        assertEquals(PokerInfo.MessageType.GAME_RESULT, Connections.receiveReply(player, position -> { }).getMessageType());
+        assertEquals(1, server.getOutboundQueueDepths().size());
+
+        // Pipeline one-shot hands and never read a reply
+        ByteBuffer frames = ByteBuffer.allocate(64 * 1024);
+        frames.put(WireCodec.HELLO);
+        PokerInfo hand = message(PokerInfo.MessageType.ONE_SHOT_HAND);
+        hand.setAnteBet(10);
+        hand.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        ByteBuffer frame = ByteBuffer.allocate(256);
+        WireCodec.encodeFrame(hand, frame);
+        frame.flip();
+        try (Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress("localhost", port));
+            OutputStream output = stalled.getOutputStream();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            boolean cutOff = false;
+            while (!cutOff && System.nanoTime() < deadline) {
+                while (frames.remaining() >= frame.remaining()) {
+                    frames.put(frame.duplicate());
+                }
+                try {
+                    output.write(frames.array(), 0, frames.position());
+                } catch (IOException e) {
+                    cutOff = true; // Reset by the server
+                }
+                frames.clear();
+                cutOff |= server.getClientCount() == 1;
+            }
+            assertTrue(cutOff, "the stalled client was disconnected");
+        }
+
+        player.send(first);
+        assertEquals(PokerInfo.MessageType.GAME_RESULT, Connections.receiveReply(player, position -> { }).getMessageType());
+        player.close();
+    }
+
+    @Test
+    @DisplayName("Slow clients — without writer threads, thread mode writes on the handler's thread")
+    void testNoQueue() throws Exception {
+        startServer(ServerConfig.IoMode.THREADS, false);
+        MessageChannel player = TestServers.connectWhenReady(port);
+        player.send(TestServers.bet(10));
+        assertEquals(PokerInfo.MessageType.CARDS_DEALT, Connections.receiveReply(player, position -> { }).getMessageType());
+        assertTrue(server.getOutboundQueueDepths().isEmpty());
+        player.close();
+    }
+}
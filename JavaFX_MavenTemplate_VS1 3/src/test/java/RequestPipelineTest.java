@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Pipelined requests: replies carry the request's id, come in request order, and
+ * requests the server drops are recognized as such.
+ */
+class RequestPipelineTest {
+
+    private final TestServers servers = new TestServers();
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    private RequestPipeline connect(ServerConfig.IoMode mode, WireFormat format) throws Exception {
+        ServerConfig config = TestServers.config(mode);
+        config.setCommitments(false);
+        servers.start(config);
+        return new RequestPipeline(TestServers.connectWhenReady(config.getPort(), format), position -> { });
+    }
+
+    private static PokerInfo foldOpenHand() {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+        info.setPlayerAction(PokerInfo.PlayerAction.FOLD);
+        info.setHandId(0); // The open hand, whichever it is by then
+        return info;
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Pipelining — many requests in flight are answered in order")
+    void testInOrder(ServerConfig.IoMode mode) throws Exception {
+        RequestPipeline pipeline = connect(mode, WireFormat.BINARY);
+        try {
+            int hands = 50;
+            int[] ids = new int[hands * 2];
+            for (int hand = 0; hand < hands; hand++) {
+                ids[2 * hand] = pipeline.send(TestServers.bet(5));
+                ids[2 * hand + 1] = pipeline.send(foldOpenHand());
+            }
+            assertEquals(hands * 2, pipeline.getOutstanding());
+
+            for (int hand = 0; hand < hands; hand++) {
+                PokerInfo dealt = pipeline.await(ids[2 * hand]);
+                assertEquals(PokerInfo.MessageType.CARDS_DEALT, dealt.getMessageType());
+                assertEquals(ids[2 * hand], dealt.getRequestId());
+                assertEquals(hand + 1, dealt.getHandId());
+
+                PokerInfo result = pipeline.await(ids[2 * hand + 1]);
+                assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+                assertEquals(hand + 1, result.getHandId());
+                assertEquals(-5 * (hand + 1), result.getTotalWinnings());
+            }
+            assertEquals(0, pipeline.getOutstanding());
+        } finally {
+            pipeline.getChannel().close();
+        }
+    }
+
+    @Test
+    @DisplayName("Pipelining — a request without a reply is reported as dropped")
+    void testDropped() throws Exception {
+        // Java serialization clients carry request ids too
+        RequestPipeline pipeline = connect(ServerConfig.IoMode.THREADS, WireFormat.JAVA);
+        try {
+            int refused = pipeline.send(TestServers.bet(100));
+            int accepted = pipeline.send(TestServers.bet(10));
+            int settle = pipeline.send(foldOpenHand());
+
+            // Read out of order: the later replies are kept until asked for
+            PokerInfo result = pipeline.await(settle);
+            assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+            assertEquals(PokerInfo.MessageType.CARDS_DEALT, pipeline.await(accepted).getMessageType());
+            assertNull(pipeline.await(refused));
+            assertEquals(0, pipeline.getOutstanding());
+        } finally {
+            pipeline.getChannel().close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Rolling restarts: a new server binds the same port, the old one drains and hands its
+ * clients over with their winnings.
+ */
+class RollingRestartTest {
+
+    private static final byte[] KEY = HandTokens.parseSecret("000102030405060708090a0b0c0d0e0f");
+
+    private final TestServers servers = new TestServers();
+
+    @AfterEach
+    void stopServers() {
+        servers.stopAll();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            assumeTrue(probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT), "needs SO_REUSEPORT");
+            return probe.getLocalPort();
+        }
+    }
+
+    private PokerServer start(int port, ServerConfig.IoMode mode) {
+        ServerConfig config = new ServerConfig(port);
+        config.setIoMode(mode);
+        config.setReusePort(true);
+        config.setTokenKey(KEY);
+        config.setCommitments(false);
+        config.setMaxClients(16);
+        return servers.start(config);
+    }
+
+    // ==== Restart under load ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Restart — players keep playing through a restart, no hand fails and no winnings are lost")
+    void testRestartUnderLoad(ServerConfig.IoMode mode) throws Exception {
+        int port = freePort();
+        PokerServer oldServer = start(port, mode);
+
+        int players = 6;
+        AtomicBoolean playing = new AtomicBoolean(true);
+        AtomicInteger handsPlayed = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<ReconnectingChannel> channels = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            ReconnectingChannel channel = ReconnectingChannel.connect("localhost", port, WireFormat.BINARY);
+            channels.add(channel);
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int hand = 1; playing.get(); hand++) {
+                        channel.send(TestServers.bet(10));
+                        PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+                        assertEquals(PokerInfo.MessageType.CARDS_DEALT, dealt.getMessageType());
+                        assertEquals(hand, dealt.getHandId(), "hand numbers continue on the new server");
+                        channel.send(TestServers.fold(dealt));
+                        PokerInfo result = channel.receive();
+                        assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+                        assertEquals(-10 * hand, result.getTotalWinnings(), "winnings carried over");
+                        handsPlayed.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        while (handsPlayed.get() < 100 && failures.isEmpty()) {
+            Thread.sleep(10);
+        }
+        PokerServer newServer = start(port, mode);
+        Thread.sleep(200); // Let it bind
+        int beforeDrain = handsPlayed.get();
+        assertEquals(0, oldServer.drain(5000), "every client finished its hand in time");
+        assertFalse(oldServer.isRunning());
+
+        while (handsPlayed.get() < beforeDrain + 100 && failures.isEmpty()) {
+            Thread.sleep(10);
+        }
+        playing.set(false);
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        for (Throwable failure : failures) {
+            throw new AssertionError("A hand failed across the restart", failure);
+        }
+        assertEquals(players, newServer.getClientCount());
+        for (ReconnectingChannel channel : channels) {
+            assertEquals(1, channel.getReconnects());
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Restart — a client in the middle of a hand finishes it before it is handed off")
+    void testOpenHandFinishes() throws Exception {
+        int port = freePort();
+        PokerServer oldServer = start(port, ServerConfig.IoMode.THREADS);
+        ReconnectingChannel channel = ReconnectingChannel.connect("localhost", port, WireFormat.BINARY);
+        channel.send(TestServers.bet(10));
+        PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+        PokerServer newServer = start(port, ServerConfig.IoMode.THREADS);
+        Thread.sleep(200);
+
+        Thread drain = new Thread(() -> oldServer.drain(5000));
+        drain.start();
+        Thread.sleep(100);
+        assertTrue(drain.isAlive(), "waits for the open hand");
+        channel.send(TestServers.fold(dealt));
+        assertEquals(-10, channel.receive().getTotalWinnings());
+        drain.join(5000);
+        assertFalse(drain.isAlive());
+
+        channel.send(TestServers.bet(10));
+        PokerInfo next = Connections.receiveReply(channel, position -> { });
+        assertEquals(2, next.getHandId());
+        channel.send(TestServers.fold(next));
+        assertEquals(-20, channel.receive().getTotalWinnings());
+        assertEquals(1, newServer.getClientCount());
+        channel.close();
+    }
+
+    // ==== Session tokens ====
+
+    @Test
+    @DisplayName("Session tokens — carry the session, work once, and refuse changes or another key")
+    void testSessionTokens() throws Exception {
+        SessionTokens tokens = new SessionTokens(KEY, 60);
+        byte[] token = tokens.seal(-1234, 77);
+        SessionTokens.Session session = tokens.open(token);
+        assertEquals(-1234, session.getWinnings());
+        assertEquals(77, session.getHandsPlayed());
+        assertThrows(GeneralSecurityException.class, () -> tokens.open(token));
+
+        byte[] changed = tokens.seal(10, 1);
+        changed[6] ^= 1;
+        assertThrows(GeneralSecurityException.class, () -> tokens.open(changed));
+        byte[] other = new SessionTokens(HandTokens.randomSecret(), 60).seal(10, 1);
+        assertThrows(GeneralSecurityException.class, () -> tokens.open(other));
+        byte[] old = tokens.seal(10, 1, System.currentTimeMillis() / 1000 - 61);
+        assertThrows(GeneralSecurityException.class, () -> tokens.open(old));
+    }
+
+    @Test
+    @DisplayName("Session tokens — a session that has played cannot take over another")
+    void testResumeOnlyOnce() throws Exception {
+        int port = freePort();
+        PokerServer server = start(port, ServerConfig.IoMode.THREADS);
+        MessageChannel channel = ReconnectingChannel.connect("localhost", port, WireFormat.BINARY);
+        PokerInfo resume = new PokerInfo();
+        resume.setMessageType(PokerInfo.MessageType.RESUME_SESSION);
+        resume.setSessionToken(server.getSessionTokens().seal(500, 3));
+        channel.send(resume);
+        PokerInfo reply = channel.receive();
+        assertNull(reply.getStatusMessage());
+        assertEquals(500, reply.getTotalWinnings());
+
+        resume.setRequestId(0);
+        resume.setSessionToken(server.getSessionTokens().seal(9000, 3));
+        channel.send(resume);
+        reply = channel.receive();
+        assertEquals("Session already started", reply.getStatusMessage());
+        assertEquals(500, reply.getTotalWinnings());
+        channel.close();
+    }
+}
@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for seeded deals: determinism, full permutations, and that
+ * DealReplay regenerates exactly what Deck deals for the same seed.
+ */
+class SeededShuffleTest {
+
+    @Test
+    @DisplayName("shuffle — same seed gives the same order")
+    void testShuffle_Deterministic() {
+        int[] a = new int[Card.DECK_SIZE];
+        int[] b = new int[Card.DECK_SIZE];
+        SeededShuffle.shuffle(12345L, a);
+        SeededShuffle.shuffle(12345L, b);
+        assertArrayEquals(a, b);
+    }
+
+    @Test
+    @DisplayName("shuffle — produces a permutation of all 52 cards")
+    void testShuffle_Permutation() {
+        int[] order = new int[Card.DECK_SIZE];
+        SeededShuffle.shuffle(-7L, order);
+        HashSet<Integer> seen = new HashSet<>();
+        for (int index : order) {
+            assertTrue(index >= 0 && index < Card.DECK_SIZE);
+            seen.add(index);
+        }
+        assertEquals(Card.DECK_SIZE, seen.size());
+    }
+
+    @Test
+    @DisplayName("handSeed — differs per client and per hand")
+    void testHandSeed_Distinct() {
+        long master = 99L;
+        assertNotEquals(SeededShuffle.handSeed(master, 1, 1), SeededShuffle.handSeed(master, 2, 1));
+        assertNotEquals(SeededShuffle.handSeed(master, 1, 1), SeededShuffle.handSeed(master, 1, 2));
+        assertEquals(SeededShuffle.handSeed(master, 3, 4), SeededShuffle.handSeed(master, 3, 4));
+    }
+
+    @Test
+    @DisplayName("handSeed — HMAC-SHA256 of client and hand id keyed with the master seed, so it cannot be run back")
+    void testHandSeed_Hmac() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(ByteBuffer.allocate(8).putLong(42L).array(), "HmacSHA256"));
+        byte[] digest = mac.doFinal(ByteBuffer.allocate(8).putInt(7).putInt(3).array());
+        assertEquals(ByteBuffer.wrap(digest).getLong(), SeededShuffle.handSeed(42L, 7, 3));
+    }
+
+    @Test
+    @DisplayName("DealReplay — matches the cards Deck deals for the seed")
+    void testReplay_MatchesDeck() {
+        DealReplay replay = new DealReplay();
+        Deck deck = new Deck();
+        for (int hand = 1; hand <= 200; hand++) {
+            long seed = SeededShuffle.handSeed(2024L, 5, hand);
+            deck.reset(seed);
+            ArrayList<Card> player = deck.dealCards(3);
+            ArrayList<Card> dealer = deck.dealCards(3);
+
+            ArrayList<Card> replayPlayer = new ArrayList<>();
+            ArrayList<Card> replayDealer = new ArrayList<>();
+            replay.replay(seed, replayPlayer, replayDealer);
+
+            assertEquals(player, replayPlayer);
+            assertEquals(dealer, replayDealer);
+        }
+    }
+
+    @Test
+    @DisplayName("Card.of — round-trips with getIndex")
+    void testCardIndex_RoundTrip() {
+        for (int i = 0; i < Card.DECK_SIZE; i++) {
+            assertEquals(i, Card.of(i).getIndex());
+        }
+        assertEquals(new Card(Suit.HEARTS, Rank.QUEEN), Card.of(new Card(Suit.HEARTS, Rank.QUEEN).getIndex()));
+    }
+}
@@ -0,0 +1,307 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Resumable sessions: a client whose connection drops reattaches with its resume token
+ * and keeps its winnings, its hand count and the hand it had open.
+ */
+class SessionResumeTest {
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+    private int port;
+    private DroppingProxy proxy;
+
+    @AfterEach
+    void stop() throws IOException {
+        if (proxy != null) {
+            proxy.close();
+        }
+        servers.stopAll();
+    }
+
+    private void startServer(ServerConfig.IoMode mode, int graceSeconds) throws Exception {
+        ServerConfig config = TestServers.config(mode);
+        config.setCommitments(false);
+        config.setResumeGraceSeconds(graceSeconds);
+        server = servers.start(config);
+        port = config.getPort();
+    }
+
+    /**
+     * Forwards connections to the server and can cut them all at once, like a network drop.
+     */
+    private static class DroppingProxy {
+        private final ServerSocket listener;
+        private final int target;
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        DroppingProxy(int target) throws IOException {
+            this.listener = new ServerSocket(0);
+            this.target = target;
+            Thread acceptor = new Thread(this::acceptLoop, "dropping-proxy");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return listener.getLocalPort();
+        }
+
+        private void acceptLoop() {
+            try {
+                while (true) {
+                    Socket client = listener.accept();
+                    Socket upstream = new Socket("localhost", target);
+                    sockets.add(client);
+                    sockets.add(upstream);
+                    pipe(client, upstream);
+                    pipe(upstream, client);
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+
+        private static void pipe(Socket from, Socket to) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    // Dropped
+                } finally {
+                    Connections.closeQuietly(to);
+                }
+            }, "dropping-proxy-pipe");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void dropAll() {
+            for (Socket socket : sockets) {
+                Connections.closeQuietly(socket);
+            }
+            sockets.clear();
+        }
+
+        void close() throws IOException {
+            listener.close();
+            dropAll();
+        }
+    }
+
+    private static PokerInfo resume(MessageChannel channel, byte[] token) throws IOException {
+        PokerInfo request = new PokerInfo();
+        request.setMessageType(PokerInfo.MessageType.RESUME_SESSION);
+        request.setSessionToken(token);
+        channel.send(request);
+        PokerInfo reply = Connections.receiveReply(channel, position -> { });
+        assertEquals(PokerInfo.MessageType.RESUME_SESSION, reply.getMessageType());
+        return reply;
+    }
+
+    private void awaitParked(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getParkedSessions().getParkedCount() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, server.getParkedSessions().getParkedCount());
+    }
+
+    // ==== Reattaching ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Resume — a dropped session comes back with its winnings, hand count and open hand")
+    void testDropMidHand(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 60);
+        MessageChannel first = TestServers.connectWhenReady(port);
+        byte[] token = resume(first, null).getSessionToken();
+        assertNotNull(token);
+        first.send(TestServers.bet(10));
+        first.send(TestServers.fold(Connections.receiveReply(first, position -> { })));
+        assertEquals(-10, first.receive().getTotalWinnings());
+        first.send(TestServers.bet(15));
+        PokerInfo dealt = Connections.receiveReply(first, position -> { });
+        first.close(); // Dropped with hand 2 open
+        awaitParked(1);
+
+        MessageChannel second = TestServers.connectWhenReady(port);
+        try {
+            PokerInfo reply = resume(second, token);
+            assertNull(reply.getStatusMessage());
+            assertEquals(-10, reply.getTotalWinnings());
+            assertEquals(2, reply.getHandId());
+            assertNotNull(reply.getSessionToken());
+            assertFalse(Arrays.equals(token, reply.getSessionToken()), "a new token for the next drop");
+
+            PokerInfo replayed = second.receive();
+            assertEquals(PokerInfo.MessageType.CARDS_DEALT, replayed.getMessageType(), "the last reply, sent again");
+            assertEquals(dealt.getHandId(), replayed.getHandId());
+            assertEquals(dealt.getPlayerCards(), replayed.getPlayerCards());
+
+            second.send(TestServers.fold(dealt));
+            assertEquals(-25, second.receive().getTotalWinnings(), "the open hand settled as dealt");
+            assertEquals(1, server.getParkedSessions().getResumedTotal());
+        } finally {
+            second.close();
+        }
+
+        MessageChannel third = TestServers.connectWhenReady(port);
+        try {
+            assertEquals("Unknown or expired session", resume(third, token).getStatusMessage(), "a token works once");
+        } finally {
+            third.close();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Resume — ReconnectingChannel rides out drops at any point without losing a hand")
+    void testReconnectingChannel(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 60);
+        TestServers.connectWhenReady(port).close();
+        proxy = new DroppingProxy(port);
+        ReconnectingChannel channel = ReconnectingChannel.connectResumable("localhost", proxy.getPort(), WireFormat.BINARY);
+        try {
+            int drops = 0;
+            // A drop right after a reply got through is only noticed with the next hand, so one more after the last
+            for (int hand = 1; hand <= 31; hand++) {
+                channel.send(TestServers.bet(10));
+                if (hand % 3 == 2) {
+                    proxy.dropAll(); // Before or after the server handled the bet
+                    drops++;
+                }
+                PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+                assertEquals(PokerInfo.MessageType.CARDS_DEALT, dealt.getMessageType());
+                assertEquals(hand, dealt.getHandId(), "no hand dealt twice or lost");
+                channel.send(TestServers.fold(dealt));
+                if (hand % 3 == 0) {
+                    proxy.dropAll();
+                    drops++;
+                }
+                PokerInfo result = channel.receive();
+                assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+                assertEquals(-10 * hand, result.getTotalWinnings(), "winnings carried over");
+            }
+            assertEquals(drops, channel.getReconnects());
+            assertEquals(drops, server.getParkedSessions().getResumedTotal());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Resume — a client that reattaches before the drop is noticed takes over from the old connection")
+    void testStillConnected() throws Exception {
+        startServer(ServerConfig.IoMode.NIO, 60);
+        MessageChannel old = TestServers.connectWhenReady(port);
+        byte[] token = resume(old, null).getSessionToken();
+        old.send(TestServers.bet(10));
+        PokerInfo dealt = Connections.receiveReply(old, position -> { });
+
+        MessageChannel taking = TestServers.connectWhenReady(port);
+        try {
+            assertEquals(ParkedSessions.STILL_CONNECTED, resume(taking, token).getStatusMessage());
+            assertThrows(IOException.class, old::receive, "the old connection is closed");
+            awaitParked(1);
+            PokerInfo reply = resume(taking, token);
+            assertNull(reply.getStatusMessage());
+            assertEquals(1, reply.getHandId());
+            assertEquals(PokerInfo.MessageType.CARDS_DEALT, taking.receive().getMessageType());
+            taking.send(TestServers.fold(dealt));
+            assertEquals(-10, taking.receive().getTotalWinnings());
+        } finally {
+            taking.close();
+            old.close();
+        }
+    }
+
+    // ==== What is not kept ====
+
+    @Test
+    @DisplayName("Resume — a client that says goodbye, or never asked, leaves nothing parked")
+    void testNotKept() throws Exception {
+        startServer(ServerConfig.IoMode.THREADS, 60);
+        MessageChannel leaving = TestServers.connectWhenReady(port);
+        byte[] token = resume(leaving, null).getSessionToken();
+        PokerInfo goodbye = new PokerInfo();
+        goodbye.setMessageType(PokerInfo.MessageType.DISCONNECT);
+        leaving.send(goodbye);
+        leaving.close();
+
+        MessageChannel plain = TestServers.connectWhenReady(port);
+        plain.send(TestServers.bet(10));
+        Connections.receiveReply(plain, position -> { });
+        plain.close();
+        for (int i = 0; i < 100 && server.getClientCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, server.getParkedSessions().getParkedCount());
+        assertEquals(0, server.getParkedSessions().getResumableCount());
+        MessageChannel again = TestServers.connectWhenReady(port);
+        try {
+            assertEquals("Unknown or expired session", resume(again, token).getStatusMessage());
+        } finally {
+            again.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Resume — a session is refused once its grace period is over")
+    void testExpired() throws Exception {
+        startServer(ServerConfig.IoMode.NIO, 1);
+        MessageChannel first = TestServers.connectWhenReady(port);
+        byte[] token = resume(first, null).getSessionToken();
+        first.close();
+        awaitParked(1);
+        Thread.sleep(1100);
+
+        MessageChannel second = TestServers.connectWhenReady(port);
+        try {
+            assertEquals("Session expired", resume(second, token).getStatusMessage());
+            assertEquals(1, server.getParkedSessions().getExpiredTotal());
+        } finally {
+            second.close();
+        }
+    }
+
+    // ==== Configuration ====
+
+    @Test
+    @DisplayName("Resume — on by default for 60 s, off with a grace period of 0")
+    void testConfig() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        assertEquals(60, config.getResumeGraceSeconds());
+        assertThrows(IllegalArgumentException.class, () -> config.setResumeGraceSeconds(-1));
+
+        startServer(ServerConfig.IoMode.THREADS, 0);
+        assertNull(server.getParkedSessions());
+        MessageChannel channel = TestServers.connectWhenReady(port);
+        try {
+            PokerInfo reply = resume(channel, null);
+            assertEquals("Session resumption is off", reply.getStatusMessage());
+            assertNull(reply.getSessionToken());
+        } finally {
+            channel.close();
+        }
+    }
+}
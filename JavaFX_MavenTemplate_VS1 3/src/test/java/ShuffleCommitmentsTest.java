@@ -0,0 +1,157 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for deck commitments: Merkle proofs, batch rollover, and the
+ * client-side FairnessVerifier accepting honest deals and rejecting tampered ones.
+ */
+class ShuffleCommitmentsTest {
+
+    private static byte[][] leaves(int count) {
+        byte[][] leaves = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            leaves[i] = ShuffleCommitments.leafHash(new byte[ShuffleCommitments.SALT_SIZE], i);
+        }
+        return leaves;
+    }
+
+    // =========================================================
+    // =============== MerkleTree Tests ========================
+    // =========================================================
+
+    @Test
+    @DisplayName("MerkleTree — every leaf verifies against the root")
+    void testMerkle_AllLeavesVerify() {
+        MerkleTree tree = new MerkleTree(leaves(16));
+        for (int i = 0; i < 16; i++) {
+            assertTrue(MerkleTree.verify(tree.getLeaf(i), i, tree.getProof(i), tree.getRoot()));
+        }
+    }
+
+    @Test
+    @DisplayName("MerkleTree — wrong index or leaf fails")
+    void testMerkle_WrongIndexFails() {
+        MerkleTree tree = new MerkleTree(leaves(8));
+        assertFalse(MerkleTree.verify(tree.getLeaf(3), 4, tree.getProof(3), tree.getRoot()));
+        assertFalse(MerkleTree.verify(tree.getLeaf(2), 3, tree.getProof(3), tree.getRoot()));
+    }
+
+    @Test
+    @DisplayName("MerkleTree — single leaf tree has an empty proof")
+    void testMerkle_SingleLeaf() {
+        MerkleTree tree = new MerkleTree(leaves(1));
+        assertEquals(0, tree.getProof(0).length);
+        assertTrue(MerkleTree.verify(tree.getLeaf(0), 0, tree.getProof(0), tree.getRoot()));
+    }
+
+    @Test
+    @DisplayName("MerkleTree — rejects leaf counts that are not powers of two")
+    void testMerkle_RejectsOddCount() {
+        assertThrows(IllegalArgumentException.class, () -> new MerkleTree(leaves(3)));
+    }
+
+    // =========================================================
+    // =============== Commitment / Verifier Tests =============
+    // =========================================================
+
+    private static PokerInfo deal(ShuffleCommitments.Commitment c) {
+        ArrayList<Card> player = new ArrayList<>();
+        ArrayList<Card> dealer = new ArrayList<>();
+        new DealReplay().replay(c.getSeed(), player, dealer);
+        PokerInfo deal = new PokerInfo();
+        deal.setPlayerCards(player);
+        deal.setDeckCommitment(c.getLeaf());
+        deal.setCommitmentIndex(c.getIndex());
+        deal.setCommitmentProof(c.getProof());
+        deal.setCommitmentRoot(c.getRoot());
+        return deal;
+    }
+
+    private static PokerInfo result(ShuffleCommitments.Commitment c, byte[] nextLeaf) {
+        PokerInfo result = new PokerInfo();
+        result.setHandSeed(c.getSeed());
+        result.setHandSalt(c.getSalt());
+        result.setNextDeckCommitment(nextLeaf);
+        return result;
+    }
+
+    @Test
+    @DisplayName("verifyHand — honest hands verify across batch boundaries")
+    void testVerifier_HonestHands() {
+        ServerConfig config = new ServerConfig(0);
+        config.setCommitmentBatchSize(4);
+        ShuffleCommitments commitments = new ShuffleCommitments(config, 1);
+        FairnessVerifier verifier = new FairnessVerifier();
+
+        for (int hand = 1; hand <= 10; hand++) {
+            ShuffleCommitments.Commitment c = commitments.next(hand);
+            PokerInfo result = result(c, commitments.peekNextLeaf());
+            assertNull(verifier.verifyHand(deal(c), result), "hand " + hand);
+        }
+    }
+
+    @Test
+    @DisplayName("verifyHand — seeded mode commits to the replayable seeds")
+    void testVerifier_SeededSeeds() {
+        ServerConfig config = new ServerConfig(0);
+        config.setMasterSeed(42L);
+        ShuffleCommitments commitments = new ShuffleCommitments(config, 7);
+        for (int hand = 1; hand <= 3; hand++) {
+            assertEquals(SeededShuffle.handSeed(42L, 7, hand), commitments.next(hand).getSeed());
+        }
+    }
+
+    @Test
+    @DisplayName("verifyHand — a revealed seed that differs from the commitment fails")
+    void testVerifier_WrongSeedFails() {
+        ShuffleCommitments commitments = new ShuffleCommitments(new ServerConfig(0), 1);
+        ShuffleCommitments.Commitment c = commitments.next(1);
+        PokerInfo result = result(c, null);
+        result.setHandSeed(c.getSeed() + 1);
+        assertNotNull(new FairnessVerifier().verifyHand(deal(c), result));
+    }
+
+    @Test
+    @DisplayName("verifyHand — a deck other than the announced one fails")
+    void testVerifier_UnannouncedDeckFails() {
+        ShuffleCommitments commitments = new ShuffleCommitments(new ServerConfig(0), 1);
+        FairnessVerifier verifier = new FairnessVerifier();
+        ShuffleCommitments.Commitment first = commitments.next(1);
+        assertNull(verifier.verifyHand(deal(first), result(first, new byte[MerkleTree.HASH_SIZE])));
+
+        ShuffleCommitments.Commitment second = commitments.next(2);
+        assertNotNull(verifier.verifyHand(deal(second), result(second, null)));
+    }
+
+    @Test
+    @DisplayName("compact — the announced deck survives compacting anywhere in a batch")
+    void testCommitments_Compact() {
+        ServerConfig config = new ServerConfig(0);
+        config.setCommitmentBatchSize(4);
+        ShuffleCommitments commitments = new ShuffleCommitments(config, 1);
+        FairnessVerifier verifier = new FairnessVerifier();
+        commitments.compact(); // Nothing taken yet
+
+        for (int hand = 1; hand <= 10; hand++) {
+            ShuffleCommitments.Commitment c = commitments.next(hand);
+            PokerInfo result = result(c, commitments.peekNextLeaf());
+            if (hand % 3 != 0) {
+                commitments.compact();
+                assertTrue(commitments.isCompact());
+            }
+            assertNull(verifier.verifyHand(deal(c), result), "hand " + hand);
+        }
+    }
+
+    @Test
+    @DisplayName("next — hands must be taken in order")
+    void testCommitments_OutOfOrder() {
+        ShuffleCommitments commitments = new ShuffleCommitments(new ServerConfig(0), 1);
+        commitments.next(1);
+        assertThrows(IllegalStateException.class, () -> commitments.next(3));
+    }
+}
@@ -0,0 +1,255 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Spectators watching a player's table: events encoded once and shared, spectators
+ * that fall behind skipping to the latest event, and the table closing with its player.
+ */
+class SpectatorTest {
+
+    // Batch results of about 11 KB each: more than the socket buffers hold
+    private static final int BACKLOG_BATCHES = 1000;
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+    private int port;
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    private void startServer(ServerConfig.IoMode mode, int maxClients) throws Exception {
+        ServerConfig config = TestServers.config(mode);
+        config.setMaxClients(maxClients);
+        config.setCommitments(false);
+        port = config.getPort();
+        server = servers.start(config);
+    }
+
+    private static PokerInfo watch(MessageChannel spectator, int tableId) throws IOException {
+        PokerInfo watch = new PokerInfo();
+        watch.setMessageType(PokerInfo.MessageType.WATCH_TABLE);
+        watch.setClientId(tableId);
+        spectator.send(watch);
+        PokerInfo reply = Connections.receiveReply(spectator, position -> { });
+        assertEquals(PokerInfo.MessageType.WATCH_TABLE, reply.getMessageType());
+        return reply;
+    }
+
+    /**
+     * Read table events until the result of the given hand arrives.
+     * @return every event read, the result last
+     */
+    private static List<PokerInfo> readUntilResult(MessageChannel spectator, int handId) throws IOException {
+        List<PokerInfo> events = new ArrayList<>();
+        while (true) {
+            PokerInfo event = spectator.receive();
+            events.add(event);
+            boolean result = event.getMessageType() == PokerInfo.MessageType.GAME_RESULT
+                    || event.getMessageType() == PokerInfo.MessageType.BATCH_RESULT;
+            if (result && event.getHandId() >= handId) {
+                return events;
+            }
+        }
+    }
+
+    // ==== Watching ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Spectators — see every hand from joining on, and the latest one when joining late, until the player leaves")
+    void testWatch(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 2); // Spectators give up their seat once watching
+        MessageChannel player = TestServers.connectWhenReady(port);
+        PokerInfo first = TestServers.foldHand(player, 10);
+        int tableId = first.getClientId();
+
+        MessageChannel spectator = TestServers.connectWhenReady(port);
+        try {
+            PokerInfo ack = watch(spectator, tableId);
+            assertNull(ack.getStatusMessage());
+            assertEquals(tableId, ack.getClientId());
+
+            assertEquals(-20, TestServers.foldHand(player, 10).getTotalWinnings());
+            List<PokerInfo> events = readUntilResult(spectator, first.getHandId() + 1);
+            assertTrue(events.size() <= 2, "the cards, unless already superseded, then the result");
+            for (PokerInfo event : events) {
+                if (event.getMessageType() == PokerInfo.MessageType.CARDS_DEALT) {
+                    assertEquals(3, event.getPlayerCards().size());
+                    assertTrue(event.getDealerCards() == null || event.getDealerCards().isEmpty(),
+                            "spectators do not see the dealer's cards before the result");
+                    assertNull(event.getHandToken());
+                }
+            }
+            assertEquals(-20, events.get(events.size() - 1).getTotalWinnings());
+            assertEquals(0, events.get(events.size() - 1).getRequestId());
+            assertEquals(1, server.getTableFeed(tableId).getSpectatorCount());
+
+            MessageChannel late = TestServers.connectWhenReady(port);
+            try {
+                assertNull(watch(late, tableId).getStatusMessage());
+                PokerInfo latest = late.receive();
+                assertEquals(PokerInfo.MessageType.GAME_RESULT, latest.getMessageType());
+                assertEquals(first.getHandId() + 1, latest.getHandId());
+            } finally {
+                late.close();
+            }
+
+            player.close();
+            PokerInfo closed = spectator.receive();
+            assertEquals(PokerInfo.MessageType.WATCH_TABLE, closed.getMessageType());
+            assertEquals("Table closed", closed.getStatusMessage());
+            assertThrows(IOException.class, spectator::receive);
+        } finally {
+            spectator.close();
+            player.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Spectators — an unknown table is refused and the client can still play")
+    void testUnknownTable() throws Exception {
+        startServer(ServerConfig.IoMode.NIO, 4);
+        MessageChannel client = TestServers.connectWhenReady(port);
+        try {
+            assertEquals("No table 999", watch(client, 999).getStatusMessage());
+            assertEquals(-10, TestServers.foldHand(client, 10).getTotalWinnings());
+            assertEquals("Session already started", watch(client, 999).getStatusMessage());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Spectators — every event is encoded once, however many watch")
+    void testSharedEvents() throws Exception {
+        startServer(ServerConfig.IoMode.NIO, 2);
+        MessageChannel player = TestServers.connectWhenReady(port);
+        int tableId = TestServers.foldHand(player, 10).getClientId();
+
+        List<MessageChannel> spectators = new ArrayList<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                MessageChannel spectator = TestServers.connectWhenReady(port);
+                spectators.add(spectator);
+                assertNull(watch(spectator, tableId).getStatusMessage());
+            }
+            int lastHand = 0;
+            for (int hand = 0; hand < 5; hand++) {
+                lastHand = TestServers.foldHand(player, 10).getHandId();
+            }
+            for (MessageChannel spectator : spectators) {
+                List<PokerInfo> events = readUntilResult(spectator, lastHand);
+                assertEquals(-60, events.get(events.size() - 1).getTotalWinnings());
+            }
+            TableFeed feed = server.getTableFeed(tableId);
+            assertEquals(50, feed.getSpectatorCount());
+            assertEquals(10, feed.getEventsPublished(), "two events for each hand since the table was first watched");
+        } finally {
+            for (MessageChannel spectator : spectators) {
+                spectator.close();
+            }
+            player.close();
+        }
+    }
+
+    // ==== Falling behind ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Spectators — one that stops reading skips to the latest event and the player is not held up")
+    void testLaggingSpectator(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 2);
+        MessageChannel player = TestServers.connectWhenReady(port);
+        int tableId = TestServers.foldHand(player, 10).getClientId();
+
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress("localhost", port));
+        MessageChannel spectator = Connections.open(socket, WireFormat.BINARY);
+        try {
+            assertNull(watch(spectator, tableId).getStatusMessage());
+            TableFeed feed = server.getTableFeed(tableId);
+
+            // More than the socket buffers hold, while the spectator reads nothing
+            PokerInfo batch = new PokerInfo();
+            batch.setMessageType(PokerInfo.MessageType.BATCH_HANDS);
+            int[] antes = new int[PokerInfo.MAX_BATCH_HANDS];
+            Arrays.fill(antes, 10);
+            batch.setBatchAnteBets(antes);
+            batch.setBatchPairPlusBets(new int[antes.length]);
+            batch.setStrategy(PokerInfo.Strategy.ALWAYS_FOLD);
+            int lastHand = 0;
+            for (int i = 0; i < BACKLOG_BATCHES; i++) {
+                player.send(batch);
+                lastHand = Connections.receiveReply(player, position -> { }).getHandId();
+            }
+
+            List<PokerInfo> events = readUntilResult(spectator, lastHand);
+            assertEquals(lastHand, events.get(events.size() - 1).getHandId(), "caught up with the latest");
+            assertTrue(events.size() < BACKLOG_BATCHES, "fewer events than were published");
+            assertTrue(feed.getSkippedEvents() > 0);
+        } finally {
+            spectator.close();
+            player.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Spectators — cannot play while watching")
+    void testSpectatorCannotPlay() throws Exception {
+        startServer(ServerConfig.IoMode.NIO, 2);
+        MessageChannel player = TestServers.connectWhenReady(port);
+        int tableId = TestServers.foldHand(player, 10).getClientId();
+        MessageChannel spectator = TestServers.connectWhenReady(port);
+        try {
+            assertNull(watch(spectator, tableId).getStatusMessage());
+            PokerInfo bet = TestServers.bet(10);
+            bet.setRequestId(5);
+            spectator.send(bet); // Ignored
+
+            int handId = TestServers.foldHand(player, 10).getHandId();
+            for (PokerInfo event : readUntilResult(spectator, handId)) {
+                assertEquals(0, event.getRequestId(), "no reply to the spectator's bet");
+            }
+        } finally {
+            spectator.close();
+            player.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Spectators — a closed table disconnects spectators that join late")
+    void testClosedTable() throws Exception {
+        startServer(ServerConfig.IoMode.NIO, 2);
+        MessageChannel player = TestServers.connectWhenReady(port);
+        int tableId = TestServers.foldHand(player, 10).getClientId();
+        MessageChannel spectator = TestServers.connectWhenReady(port);
+        try {
+            assertNull(watch(spectator, tableId).getStatusMessage());
+            player.close();
+            assertEquals("Table closed", spectator.receive().getStatusMessage());
+            assertThrows(EOFException.class, spectator::receive);
+            for (int i = 0; i < 100 && server.getClientCount() > 0; i++) {
+                Thread.sleep(10);
+            }
+            assertNull(server.getTableFeed(tableId));
+        } finally {
+            spectator.close();
+        }
+    }
+}
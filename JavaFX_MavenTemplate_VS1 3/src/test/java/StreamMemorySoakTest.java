@@ -0,0 +1,205 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Long Java-serialization sessions must not grow the object streams' handle tables.
+ * The soak plays poker.soakHands hands (default 1,000,000) on a single connection.
+ */
+class StreamMemorySoakTest {
+
+    /**
+     * One direction of an in-memory connection; reads block until bytes arrive.
+     * Lets the soak run a real ClientHandler and real object streams at memory speed.
+     */
+    private static class Pipe {
+        private byte[] buffer = new byte[8192];
+        private int start;
+        private int end;
+
+        final OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                synchronized (Pipe.this) {
+                    if (end + length > buffer.length) {
+                        byte[] larger = new byte[Math.max(buffer.length, (end - start + length) * 2)];
+                        System.arraycopy(buffer, start, larger, 0, end - start);
+                        end -= start;
+                        start = 0;
+                        buffer = larger;
+                    }
+                    System.arraycopy(bytes, offset, buffer, end, length);
+                    end += length;
+                    Pipe.this.notifyAll();
+                }
+            }
+        };
+
+        final InputStream input = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                synchronized (Pipe.this) {
+                    while (start == end) {
+                        try {
+                            Pipe.this.wait();
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                    }
+                    int count = Math.min(length, end - start);
+                    System.arraycopy(buffer, start, bytes, offset, count);
+                    start += count;
+                    if (start == end) {
+                        start = 0;
+                        end = 0;
+                    }
+                    return count;
+                }
+            }
+        };
+    }
+
+    private static final int SOAK_HANDS = Integer.getInteger("poker.soakHands", 1_000_000);
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    private ObjectStreamChannel connect() throws Exception {
+        ServerConfig config = new ServerConfig(TestServers.freePort());
+        config.setCommitments(false);
+        server = servers.start(config);
+        return (ObjectStreamChannel) TestServers.connectWhenReady(config.getPort(), WireFormat.JAVA);
+    }
+
+    private static void playHand(MessageChannel channel, PokerInfo bet) throws IOException {
+        channel.send(bet);
+        PokerInfo dealt = channel.receive();
+
+        channel.send(TestServers.fold(dealt));
+        assertEquals(PokerInfo.MessageType.GAME_RESULT, channel.receive().getMessageType());
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Test
+    @DisplayName("Streams — without a budget every message stays in the handle table")
+    void testUnboundedGrowth() throws Exception {
+        ObjectStreamChannel channel = connect();
+        try {
+            channel.setHandleBudget(Integer.MAX_VALUE);
+            for (int hand = 0; hand < 500; hand++) {
+                playHand(channel, TestServers.bet(5));
+            }
+            // At least one PokerInfo per message, twice per hand (the cards travel packed)
+            assertTrue(channel.isPackingCards());
+            assertTrue(channel.getRetainedHandles() >= 500 * 2, "handles: " + channel.getRetainedHandles());
+            assertEquals(0, channel.getResetCount());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Streams — the server reports the handles its Java clients hold")
+    void testServerMetric() throws Exception {
+        ObjectStreamChannel channel = connect();
+        try {
+            for (int hand = 0; hand < 500; hand++) {
+                playHand(channel, TestServers.bet(5));
+            }
+            long held = server.getRetainedStreamHandles();
+            assertTrue(held > 0 && held < channel.getHandleBudget(), "handles: " + held);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Play one hand through a ClientHandler, delivering each message by hand.
+     */
+    private static void playHand(MessageChannel client, MessageChannel serverSide, ClientHandler handler,
+                                 PokerInfo bet) throws IOException {
+        client.send(bet);
+        handler.handleMessage(serverSide.receive());
+        PokerInfo dealt = client.receive();
+
+        client.send(TestServers.fold(dealt));
+        handler.handleMessage(serverSide.receive());
+        assertEquals(PokerInfo.MessageType.GAME_RESULT, client.receive().getMessageType());
+    }
+
+    @Test
+    @DisplayName("Streams — a million hands on one connection keep handles and heap flat")
+    void testSoak() throws Exception {
+        Pipe toServer = new Pipe();
+        Pipe toClient = new Pipe();
+        // Each side reads the other's stream header while opening, so open one side on another thread
+        CompletableFuture<ObjectStreamChannel> opening = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new ObjectStreamChannel(toServer.input, toClient.output, () -> { });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        ObjectStreamChannel client = new ObjectStreamChannel(toClient.input, toServer.output, () -> { });
+        ObjectStreamChannel serverSide = opening.get();
+
+        ServerConfig config = new ServerConfig(0);
+        config.setCommitments(false);
+        ClientHandler handler = new ClientHandler(serverSide, 1, new PokerServer(config, null));
+
+        int budget = client.getHandleBudget();
+        int warmup = Math.max(1000, SOAK_HANDS / 20);
+        for (int hand = 0; hand < warmup; hand++) {
+            playHand(client, serverSide, handler, TestServers.bet(5));
+        }
+        long baseline = usedHeapAfterGc();
+
+        for (int hand = warmup; hand < SOAK_HANDS; hand++) {
+            playHand(client, serverSide, handler, TestServers.bet(5));
+            if (hand % 10_000 == 0) {
+                assertTrue(client.getRetainedHandles() < budget);
+                assertTrue(serverSide.getRetainedHandles() < budget);
+            }
+        }
+        long growth = usedHeapAfterGc() - baseline;
+
+        assertTrue(client.getResetCount() > 0);
+        assertTrue(serverSide.getResetCount() > 0);
+        assertTrue(growth < 8L * 1024 * 1024, "heap grew by " + growth / 1024 + " KB over " + SOAK_HANDS + " hands");
+    }
+}
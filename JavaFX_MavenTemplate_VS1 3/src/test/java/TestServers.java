@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/**
+ * Servers started by a test class, and the messages its players send. Keep one per test
+ * instance and stop it in an @AfterEach method.
+ */
+class TestServers {
+
+    private final ArrayList<PokerServer> servers = new ArrayList<>();
+
+    /**
+     * A port nobody is listening on right now.
+     */
+    static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    /**
+     * Default settings on a free port, in the given mode.
+     */
+    static ServerConfig config(ServerConfig.IoMode mode) throws IOException {
+        ServerConfig config = new ServerConfig(freePort());
+        config.setIoMode(mode);
+        return config;
+    }
+
+    /**
+     * Create a server without starting it, for in-process clients; it is stopped by stopAll.
+     */
+    PokerServer create(ServerConfig config) {
+        PokerServer server = new PokerServer(config, null);
+        servers.add(server);
+        return server;
+    }
+
+    /**
+     * Start a server; it is stopped by stopAll.
+     */
+    PokerServer start(ServerConfig config) {
+        PokerServer server = create(config);
+        server.start();
+        return server;
+    }
+
+    PokerServer get(int index) {
+        return servers.get(index);
+    }
+
+    void stopAll() {
+        for (PokerServer server : servers) {
+            server.stop();
+        }
+        servers.clear();
+    }
+
+    /**
+     * Open a connection once the server is listening. Probing with a spare socket could
+     * take one of the few seats, so retry the real connection instead.
+     */
+    static <T> T whenReady(Callable<T> connect) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            try {
+                return connect.call();
+            } catch (IOException e) {
+                Thread.sleep(20);
+            }
+        }
+        fail("Server did not start");
+        return null;
+    }
+
+    static MessageChannel connectWhenReady(int port) throws Exception {
+        return connectWhenReady(port, WireFormat.BINARY);
+    }
+
+    static MessageChannel connectWhenReady(int port, WireFormat format) throws Exception {
+        return whenReady(() -> Connections.connect("localhost", port, format));
+    }
+
+    static PokerInfo bet(int ante) {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        info.setAnteBet(ante);
+        return info;
+    }
+
+    /**
+     * Fold a dealt hand, returning its hand token for stateless servers.
+     */
+    static PokerInfo fold(PokerInfo dealt) {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+        info.setPlayerAction(PokerInfo.PlayerAction.FOLD);
+        info.setHandId(dealt.getHandId());
+        info.setHandToken(dealt.getHandToken());
+        return info;
+    }
+
+    /**
+     * Play a dealt hand the Queen-Six-Four way.
+     */
+    static PokerInfo play(PokerInfo dealt) {
+        PokerInfo info = fold(dealt);
+        if (ThreeCardLogic.playsQueenSixFour(dealt.getPlayerCards())) {
+            info.setPlayerAction(PokerInfo.PlayerAction.PLAY);
+        }
+        return info;
+    }
+
+    /**
+     * Bet, fold the cards once they arrive (after any queue updates) and return the result.
+     */
+    static PokerInfo foldHand(MessageChannel channel, int ante) throws IOException {
+        channel.send(bet(ante));
+        PokerInfo dealt = Connections.receiveReply(channel, position -> { });
+        assertEquals(PokerInfo.MessageType.CARDS_DEALT, dealt.getMessageType());
+        channel.send(fold(dealt));
+        return channel.receive();
+    }
+}
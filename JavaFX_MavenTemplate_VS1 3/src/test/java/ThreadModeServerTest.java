@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Plays hands against the thread-per-client modes. VIRTUAL_THREADS falls back to
+ * platform threads on runtimes older than Java 21, so both modes must always work.
+ */
+class ThreadModeServerTest {
+
+    private final TestServers servers = new TestServers();
+
+    private int startServer(ServerConfig.IoMode mode) throws Exception {
+        ServerConfig config = TestServers.config(mode);
+        servers.start(config);
+        return config.getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "VIRTUAL_THREADS"})
+    @DisplayName("Thread modes — binary and Java serialization clients play side by side")
+    void testBothWireFormats(ServerConfig.IoMode mode) throws Exception {
+        int port = startServer(mode);
+        MessageChannel binary = TestServers.connectWhenReady(port);
+        MessageChannel java = TestServers.connectWhenReady(port, WireFormat.JAVA);
+        try {
+            for (int hand = 1; hand <= 2; hand++) {
+                assertEquals(-5 * hand, TestServers.foldHand(binary, 5).getTotalWinnings());
+                assertEquals(-5 * hand, TestServers.foldHand(java, 5).getTotalWinnings());
+            }
+        } finally {
+            binary.close();
+            java.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Thread modes — actions settle the hand the server dealt, whatever the client sends")
+    void testServerKeepsHand() throws Exception {
+        int port = startServer(ServerConfig.IoMode.THREADS);
+        // Java serialization can still carry cards and bets, so use it to try a forged hand
+        MessageChannel channel = TestServers.connectWhenReady(port, WireFormat.JAVA);
+        try {
+            channel.send(TestServers.bet(5));
+            PokerInfo dealt = channel.receive();
+
+            PokerInfo stale = new PokerInfo();
+            stale.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+            stale.setPlayerAction(PokerInfo.PlayerAction.PLAY);
+            stale.setHandId(dealt.getHandId() + 1);
+            channel.send(stale); // Ignored: no such hand
+
+            PokerInfo forged = new PokerInfo();
+            forged.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+            forged.setPlayerAction(PokerInfo.PlayerAction.PLAY);
+            forged.setHandId(dealt.getHandId());
+            forged.setAnteBet(25);
+            forged.setPlayBet(25);
+            forged.setPlayerCards(new ArrayList<>(List.of(Card.of(12), Card.of(11), Card.of(10))));
+            channel.send(forged);
+            channel.send(forged); // Ignored: already settled
+
+            PokerInfo result = channel.receive();
+            assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+            assertEquals(dealt.getPlayerCards(), result.getPlayerCards());
+            assertTrue(Math.abs(result.getAntePlayPayout()) <= 10);
+
+            channel.send(TestServers.bet(5));
+            assertEquals(dealt.getHandId() + 1, channel.receive().getHandId());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Thread modes — a bet while a hand is open is refused, so the open hand cannot be dropped")
+    void testBetWhileHandOpen() throws Exception {
+        int port = startServer(ServerConfig.IoMode.THREADS);
+        MessageChannel channel = TestServers.connectWhenReady(port);
+        try {
+            channel.send(TestServers.bet(10));
+            PokerInfo dealt = channel.receive();
+            channel.send(TestServers.bet(10)); // Ignored: hand 1 is still open
+
+            channel.send(TestServers.fold(dealt));
+            PokerInfo result = channel.receive();
+            assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+            assertEquals(dealt.getHandId(), result.getHandId());
+            assertEquals(-10, result.getTotalWinnings());
+
+            channel.send(TestServers.bet(10));
+            assertEquals(dealt.getHandId() + 1, channel.receive().getHandId());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Virtual threads — executor is available exactly when the runtime has them")
+    void testVirtualThreadSupport() {
+        boolean java21 = Runtime.version().feature() >= 21;
+        assertEquals(java21, VirtualThreads.isSupported());
+        if (!java21) {
+            assertThrows(UnsupportedOperationException.class, VirtualThreads::newPerTaskExecutor);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -365,4 +366,42 @@ class ThreeCardLogicTest {
         hand.add(new Card(Suit.CLUBS, Rank.SIX));
         assertTrue(ThreeCardLogic.dealerQualifies(hand));
     }
+
+    // =========================================================
+    // =============== Strategy and settle Tests ===============
+    // =========================================================
+
+    private static ArrayList<Card> cards(Card... cards) {
+        return new ArrayList<>(List.of(cards));
+    }
+
+    @Test
+    @DisplayName("playsQueenSixFour — Q-6-4 plays, Q-6-3 folds, any pair plays")
+    void testPlaysQueenSixFour() {
+        assertTrue(ThreeCardLogic.playsQueenSixFour(cards(new Card(Suit.HEARTS, Rank.QUEEN),
+                new Card(Suit.CLUBS, Rank.SIX), new Card(Suit.SPADES, Rank.FOUR))));
+        assertFalse(ThreeCardLogic.playsQueenSixFour(cards(new Card(Suit.HEARTS, Rank.QUEEN),
+                new Card(Suit.CLUBS, Rank.SIX), new Card(Suit.SPADES, Rank.THREE))));
+        assertTrue(ThreeCardLogic.playsQueenSixFour(cards(new Card(Suit.HEARTS, Rank.ACE),
+                new Card(Suit.CLUBS, Rank.TWO), new Card(Suit.SPADES, Rank.FIVE))));
+        assertTrue(ThreeCardLogic.playsQueenSixFour(cards(new Card(Suit.HEARTS, Rank.TWO),
+                new Card(Suit.CLUBS, Rank.TWO), new Card(Suit.SPADES, Rank.THREE))));
+    }
+
+    @Test
+    @DisplayName("settle — fold loses Ante and Pair Plus, a win pays Ante and Play")
+    void testSettle() {
+        ArrayList<Card> pairOfKings = cards(new Card(Suit.HEARTS, Rank.KING),
+                new Card(Suit.CLUBS, Rank.KING), new Card(Suit.SPADES, Rank.FOUR));
+        ArrayList<Card> queenHigh = cards(new Card(Suit.HEARTS, Rank.QUEEN),
+                new Card(Suit.CLUBS, Rank.EIGHT), new Card(Suit.SPADES, Rank.TWO));
+        ArrayList<Card> jackHigh = cards(new Card(Suit.HEARTS, Rank.JACK),
+                new Card(Suit.CLUBS, Rank.EIGHT), new Card(Suit.SPADES, Rank.TWO));
+
+        assertEquals(-15, ThreeCardLogic.settle(pairOfKings, queenHigh, 10, 5, false));
+        assertEquals(20, ThreeCardLogic.settle(pairOfKings, queenHigh, 10, 0, true));
+        assertEquals(-20, ThreeCardLogic.settle(queenHigh, pairOfKings, 10, 0, true));
+        assertEquals(10, ThreeCardLogic.settle(queenHigh, jackHigh, 10, 0, true)); // Dealer does not qualify
+        assertEquals(20 + 5, ThreeCardLogic.settle(pairOfKings, queenHigh, 10, 5, true)); // Pair pays 1:1
+    }
 }
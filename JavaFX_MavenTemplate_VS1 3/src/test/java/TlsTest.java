@@ -0,0 +1,194 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * TLS on the TCP port, with a self-signed certificate: hands over SSLSocket and
+ * SSLEngine connections, resumed sessions and clients that do not speak TLS.
+ */
+class TlsTest {
+
+    private static final char[] PASSWORD = "test-password".toCharArray();
+
+    @TempDir
+    static Path directory;
+
+    private static SSLContext serverContext;
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+    private int port;
+
+    @BeforeAll
+    static void createCertificate() throws Exception {
+        Tls.createSelfSigned(directory.resolve("server.p12"), directory.resolve("trust.p12"), PASSWORD);
+        serverContext = Tls.serverContext(directory.resolve("server.p12"), PASSWORD);
+    }
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    private void startServer(ServerConfig.IoMode mode, int maxClients) throws IOException {
+        ServerConfig config = TestServers.config(mode);
+        config.setMaxClients(maxClients);
+        config.setCommitments(false);
+        config.setTlsContext(serverContext);
+        port = config.getPort();
+        server = servers.start(config);
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        return Tls.clientContext(directory.resolve("trust.p12"), PASSWORD);
+    }
+
+    private SSLSocket connectWhenReady(SSLContext client) throws Exception {
+        return TestServers.whenReady(() -> Tls.connect(client, "localhost", port));
+    }
+
+    // ==== Playing over TLS ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("TLS — hands are played over TLS 1.3")
+    void testPlay(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 8);
+        SSLSocket socket = connectWhenReady(clientContext());
+        assertEquals("TLSv1.3", socket.getSession().getProtocol());
+        MessageChannel channel = Connections.open(socket, WireFormat.BINARY);
+        try {
+            for (int hand = 1; hand <= 3; hand++) {
+                assertEquals(-10 * hand, TestServers.foldHand(channel, 10).getTotalWinnings());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @DisplayName("TLS — Java serialization clients are served too in thread mode")
+    void testJavaSerialization() throws Exception {
+        startServer(ServerConfig.IoMode.THREADS, 8);
+        MessageChannel channel = Connections.open(connectWhenReady(clientContext()), WireFormat.JAVA);
+        try {
+            assertEquals(-10, TestServers.foldHand(channel, 10).getTotalWinnings());
+        } finally {
+            channel.close();
+        }
+    }
+
+    // ==== Session resumption ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("TLS — a client reconnecting with the same context resumes its session")
+    void testResumption(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 8);
+        SSLContext client = clientContext();
+        SSLSocket first = connectWhenReady(client);
+        long created = first.getSession().getCreationTime();
+        MessageChannel channel = Connections.open(first, WireFormat.BINARY);
+        assertEquals(-10, TestServers.foldHand(channel, 10).getTotalWinnings());
+        channel.close();
+
+        Thread.sleep(5); // A new session would get a later creation time
+        SSLSocket second = Tls.connect(client, "localhost", port);
+        assertEquals(created, second.getSession().getCreationTime(), "resumed the first session");
+        channel = Connections.open(second, WireFormat.BINARY);
+        assertEquals(-10, TestServers.foldHand(channel, 10).getTotalWinnings());
+        channel.close();
+
+        SSLSessionContext sessions = client.getClientSessionContext();
+        for (byte[] id : Collections.list(sessions.getIds())) {
+            SSLSession session = sessions.getSession(id);
+            if (session != null) {
+                session.invalidate();
+            }
+        }
+
+        SSLSocket third = Tls.connect(client, "localhost", port);
+        assertNotEquals(created, third.getSession().getCreationTime(), "invalidated sessions are not resumed");
+        third.close();
+    }
+
+    // ==== Turning clients away ====
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("TLS — a full server turns TLS clients away with SERVER_FULL")
+    void testRejected(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 1);
+        SSLContext client = clientContext();
+        MessageChannel seated = Connections.open(connectWhenReady(client), WireFormat.BINARY);
+        assertEquals(-10, TestServers.foldHand(seated, 10).getTotalWinnings()); // Seated for sure
+
+        // Read without sending: the server may already have closed, and writing the hello would fail
+        ByteBuffer received = ByteBuffer.allocate(1024);
+        try (SSLSocket turnedAway = Tls.connect(client, "localhost", port)) {
+            InputStream input = turnedAway.getInputStream();
+            int next;
+            while ((next = input.read()) >= 0) {
+                received.put((byte) next);
+            }
+        }
+        try {
+            received.flip();
+            for (byte expected : WireCodec.HELLO) {
+                assertEquals(expected, received.get());
+            }
+            received.getShort();
+            assertEquals(PokerInfo.MessageType.SERVER_FULL, WireCodec.decode(received).getMessageType());
+            assertEquals(-20, TestServers.foldHand(seated, 10).getTotalWinnings());
+        } finally {
+            seated.close();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("TLS — a plaintext client gets no game, and the server keeps serving")
+    void testPlaintextClient(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 8);
+        SSLSocket socket = connectWhenReady(clientContext());
+        assertThrows(IOException.class, () -> {
+            MessageChannel plain = Connections.connect("localhost", port, WireFormat.BINARY, null);
+            try {
+                TestServers.foldHand(plain, 10);
+            } finally {
+                plain.close();
+            }
+        });
+        MessageChannel channel = Connections.open(socket, WireFormat.BINARY);
+        assertEquals(-10, TestServers.foldHand(channel, 10).getTotalWinnings());
+        channel.close();
+    }
+
+    // ==== Configuration ====
+
+    @Test
+    @DisplayName("TLS — session cache size and timeout are validated")
+    void testConfig() {
+        ServerConfig config = new ServerConfig(0);
+        config.setTlsSessionCacheSize(0);
+        assertThrows(IllegalArgumentException.class, () -> config.setTlsSessionCacheSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> config.setTlsSessionTimeoutSeconds(0));
+    }
+}
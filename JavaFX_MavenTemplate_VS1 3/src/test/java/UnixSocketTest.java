@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Clients on the server's host connecting over a Unix domain socket instead of TCP.
+ */
+class UnixSocketTest {
+
+    @TempDir
+    Path directory;
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+    private Path socketPath;
+
+    @BeforeEach
+    void requireSupport() {
+        assumeTrue(UnixSockets.isSupported(), "Unix domain sockets need Java 16+");
+    }
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    private int startServer(ServerConfig.IoMode mode, int maxClients) throws Exception {
+        socketPath = directory.resolve("poker.sock");
+        ServerConfig config = TestServers.config(mode);
+        config.setMaxClients(maxClients);
+        config.setCommitments(false);
+        config.setUnixSocketPath(socketPath);
+        server = servers.start(config);
+        return config.getPort();
+    }
+
+    private MessageChannel connectWhenReady(WireFormat format) throws Exception {
+        return TestServers.whenReady(() -> Connections.connect(UnixSockets.HOST_PREFIX + socketPath, 0, format));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Unix sockets — hands are played just as over TCP, next to TCP clients")
+    void testPlay(ServerConfig.IoMode mode) throws Exception {
+        int port = startServer(mode, 8);
+        MessageChannel local = connectWhenReady(WireFormat.BINARY);
+        MessageChannel remote = Connections.connect("localhost", port, WireFormat.BINARY);
+        try {
+            for (int hand = 1; hand <= 3; hand++) {
+                assertEquals(-10 * hand, TestServers.foldHand(local, 10).getTotalWinnings());
+            }
+            assertEquals(-10, TestServers.foldHand(remote, 10).getTotalWinnings());
+            assertEquals(2, server.getClientCount());
+        } finally {
+            local.close();
+            remote.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Unix sockets — Java serialization clients are served too")
+    void testJavaSerialization() throws Exception {
+        startServer(ServerConfig.IoMode.THREADS, 8);
+        MessageChannel channel = connectWhenReady(WireFormat.JAVA);
+        try {
+            PokerInfo result = TestServers.foldHand(channel, 10);
+            assertEquals(PokerInfo.MessageType.GAME_RESULT, result.getMessageType());
+            assertEquals(-10, result.getTotalWinnings());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerConfig.IoMode.class, names = {"THREADS", "NIO"})
+    @DisplayName("Unix sockets — a full server turns local clients away with SERVER_FULL")
+    void testRejected(ServerConfig.IoMode mode) throws Exception {
+        startServer(mode, 1);
+        MessageChannel seated = connectWhenReady(WireFormat.BINARY);
+        // Read without sending: the server may already have closed, and writing the hello would fail
+        ByteBuffer received = ByteBuffer.allocate(1024);
+        try (SocketChannel turnedAway = UnixSockets.connect(socketPath)) {
+            while (turnedAway.read(received) >= 0) {
+                // Until the server closes
+            }
+        }
+        try {
+            received.flip();
+            for (byte expected : WireCodec.HELLO) {
+                assertEquals(expected, received.get());
+            }
+            received.getShort();
+            assertEquals(PokerInfo.MessageType.SERVER_FULL, WireCodec.decode(received).getMessageType());
+            assertEquals(-10, TestServers.foldHand(seated, 10).getTotalWinnings());
+        } finally {
+            seated.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Unix sockets — a stale socket file is replaced on start and removed on stop")
+    void testSocketFile() throws Exception {
+        socketPath = directory.resolve("poker.sock");
+        Files.createFile(socketPath); // Left behind by a server that did not stop cleanly
+        startServer(ServerConfig.IoMode.THREADS, 8);
+        MessageChannel channel = connectWhenReady(WireFormat.BINARY);
+        channel.close();
+
+        server.stop();
+        assertFalse(Files.exists(socketPath));
+    }
+}
@@ -0,0 +1,305 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Round-trip tests for the binary wire codec.
+ */
+class WireCodecTest {
+
+    private static PokerInfo roundTrip(PokerInfo info) throws ProtocolException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        WireCodec.encodeFrame(info, buffer);
+        buffer.flip();
+        int length = buffer.getShort() & 0xFFFF;
+        assertEquals(buffer.remaining(), length);
+        return WireCodec.decode(buffer);
+    }
+
+    private static ArrayList<Card> cards(int... indexes) {
+        ArrayList<Card> cards = new ArrayList<>();
+        for (int index : indexes) {
+            cards.add(Card.of(index));
+        }
+        return cards;
+    }
+
+    @Test
+    @DisplayName("INITIAL_BET — bets survive the round trip")
+    void testInitialBet() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.INITIAL_BET);
+        info.setAnteBet(25);
+        info.setPairPlusBet(5);
+        PokerInfo decoded = roundTrip(info);
+        assertEquals(PokerInfo.MessageType.INITIAL_BET, decoded.getMessageType());
+        assertEquals(25, decoded.getAnteBet());
+        assertEquals(5, decoded.getPairPlusBet());
+    }
+
+    @Test
+    @DisplayName("CARDS_DEALT — cards and commitment survive the round trip")
+    void testCardsDealt() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.CARDS_DEALT);
+        info.setClientId(300);
+        info.setHandId(70000);
+        info.setPlayerCards(cards(0, 13, 51));
+        info.setDealerCards(cards(1, 2, 3));
+        info.setDeckCommitment(new byte[] {1, 2, 3});
+        info.setCommitmentIndex(9);
+        info.setCommitmentRoot(new byte[] {4});
+        PokerInfo decoded = roundTrip(info);
+        assertEquals(300, decoded.getClientId());
+        assertEquals(70000, decoded.getHandId());
+        assertEquals(info.getPlayerCards(), decoded.getPlayerCards());
+        assertEquals(info.getDealerCards(), decoded.getDealerCards());
+        assertTrue(decoded.isDealerCardsHidden());
+        assertArrayEquals(new byte[] {1, 2, 3}, decoded.getDeckCommitment());
+        assertEquals(9, decoded.getCommitmentIndex());
+        assertNull(decoded.getCommitmentProof());
+    }
+
+    @Test
+    @DisplayName("PLAYER_ACTION — no cards or bets go on the wire")
+    void testPlayerAction() throws ProtocolException {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.PLAYER_ACTION);
+        info.setPlayerAction(PokerInfo.PlayerAction.PLAY);
+        info.setHandId(300);
+        info.setAnteBet(25);
+        info.setPlayerCards(cards(0, 13, 51));
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        WireCodec.encode(info, buffer);
+        assertEquals(6, buffer.position()); // type, request id, action, 2-byte var-int, no token
+
+        PokerInfo decoded = roundTrip(info);
+        assertEquals(PokerInfo.PlayerAction.PLAY, decoded.getPlayerAction());
+        assertEquals(300, decoded.getHandId());
+        assertEquals(0, decoded.getAnteBet());
+        assertTrue(decoded.getPlayerCards().isEmpty());
+    }
+
+    @Test
+    @DisplayName("GAME_RESULT — negative amounts, flags, seed and status survive the round trip")
+    void testGameResult() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        info.setPlayerAction(PokerInfo.PlayerAction.FOLD);
+        info.setDealerCardsHidden(false);
+        info.setDealerQualified(true);
+        info.setHandRankPlayer(ThreeCardLogic.STRAIGHT_FLUSH);
+        info.setDeltaWinningsThisHand(-50);
+        info.setTotalWinnings(Integer.MIN_VALUE);
+        info.setHandSeed(-1L);
+        info.setStatusMessage("Tie. Ante and Play push.");
+        PokerInfo decoded = roundTrip(info);
+        assertEquals(PokerInfo.PlayerAction.FOLD, decoded.getPlayerAction());
+        assertFalse(decoded.isDealerCardsHidden());
+        assertTrue(decoded.isDealerQualified());
+        assertEquals(ThreeCardLogic.STRAIGHT_FLUSH, decoded.getHandRankPlayer());
+        assertEquals(-50, decoded.getDeltaWinningsThisHand());
+        assertEquals(Integer.MIN_VALUE, decoded.getTotalWinnings());
+        assertEquals(-1L, decoded.getHandSeed());
+        assertEquals("Tie. Ante and Play push.", decoded.getStatusMessage());
+    }
+
+    @Test
+    @DisplayName("GAME_RESULT — a status code travels as one byte and renders as its text")
+    void testStatusCode() throws Exception {
+        PokerInfo coded = new PokerInfo();
+        coded.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        coded.setStatusCode(StatusCode.DEALER_NOT_QUALIFIED);
+        PokerInfo decoded = roundTrip(coded);
+        assertEquals(StatusCode.DEALER_NOT_QUALIFIED, decoded.getStatusCode());
+        assertEquals(StatusCode.DEALER_NOT_QUALIFIED.getText(), decoded.getStatusMessage());
+
+        PokerInfo text = new PokerInfo();
+        text.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        text.setStatusMessage(StatusCode.DEALER_NOT_QUALIFIED.getText());
+        ByteBuffer codedFrame = ByteBuffer.allocate(1024);
+        ByteBuffer textFrame = ByteBuffer.allocate(1024);
+        WireCodec.encodeFrame(coded, codedFrame);
+        WireCodec.encodeFrame(text, textFrame);
+        assertTrue(codedFrame.position() + 30 < textFrame.position());
+    }
+
+    @Test
+    @DisplayName("ONE_SHOT_HAND — bets and strategy survive the round trip")
+    void testOneShotHand() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+        info.setAnteBet(15);
+        info.setPairPlusBet(10);
+        info.setStrategy(PokerInfo.Strategy.ALWAYS_FOLD);
+        PokerInfo decoded = roundTrip(info);
+        assertEquals(15, decoded.getAnteBet());
+        assertEquals(10, decoded.getPairPlusBet());
+        assertEquals(PokerInfo.Strategy.ALWAYS_FOLD, decoded.getStrategy());
+    }
+
+    @Test
+    @DisplayName("GAME_RESULT — a one-shot hand's commitment survives the round trip")
+    void testGameResultCommitment() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        info.setDeckCommitment(new byte[] {1, 2});
+        info.setCommitmentIndex(5);
+        info.setCommitmentProof(new byte[] {3});
+        info.setCommitmentRoot(new byte[] {4});
+        PokerInfo decoded = roundTrip(info);
+        assertArrayEquals(new byte[] {1, 2}, decoded.getDeckCommitment());
+        assertEquals(5, decoded.getCommitmentIndex());
+        assertArrayEquals(new byte[] {3}, decoded.getCommitmentProof());
+        assertArrayEquals(new byte[] {4}, decoded.getCommitmentRoot());
+    }
+
+    @Test
+    @DisplayName("BATCH_HANDS — bets and either actions or a strategy survive the round trip")
+    void testBatchHands() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.BATCH_HANDS);
+        info.setBatchAnteBets(new int[] {5, 25});
+        info.setBatchPairPlusBets(new int[] {0, 10});
+        info.setBatchActions(new PokerInfo.PlayerAction[] {PokerInfo.PlayerAction.FOLD, PokerInfo.PlayerAction.PLAY});
+        PokerInfo decoded = roundTrip(info);
+        assertArrayEquals(new int[] {5, 25}, decoded.getBatchAnteBets());
+        assertArrayEquals(new int[] {0, 10}, decoded.getBatchPairPlusBets());
+        assertArrayEquals(info.getBatchActions(), decoded.getBatchActions());
+        assertNull(decoded.getStrategy());
+
+        info.setBatchActions(null);
+        info.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+        decoded = roundTrip(info);
+        assertEquals(PokerInfo.Strategy.QUEEN_SIX_FOUR, decoded.getStrategy());
+        assertNull(decoded.getBatchActions());
+    }
+
+    @Test
+    @DisplayName("BATCH_RESULT — per-hand actions, deltas and seeds survive the round trip")
+    void testBatchResult() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.BATCH_RESULT);
+        info.setClientId(3);
+        info.setHandId(41);
+        info.setBatchActions(new PokerInfo.PlayerAction[] {PokerInfo.PlayerAction.PLAY, PokerInfo.PlayerAction.FOLD});
+        info.setBatchDeltas(new int[] {50, -5});
+        info.setBatchSeeds(new long[] {-1L, 7L});
+        info.setDeltaWinningsThisHand(45);
+        info.setTotalWinnings(-100);
+        info.setNextDeckCommitment(new byte[] {9, 9});
+        PokerInfo decoded = roundTrip(info);
+        assertEquals(41, decoded.getHandId());
+        assertArrayEquals(info.getBatchActions(), decoded.getBatchActions());
+        assertArrayEquals(new int[] {50, -5}, decoded.getBatchDeltas());
+        assertArrayEquals(new long[] {-1L, 7L}, decoded.getBatchSeeds());
+        assertEquals(45, decoded.getDeltaWinningsThisHand());
+        assertEquals(-100, decoded.getTotalWinnings());
+        assertArrayEquals(new byte[] {9, 9}, decoded.getNextDeckCommitment());
+    }
+
+    @Test
+    @DisplayName("BATCH_HANDS — more than MAX_BATCH_HANDS hands is refused")
+    void testBatchTooLarge() {
+        ByteBuffer tooMany = ByteBuffer.allocate(16);
+        tooMany.put((byte) PokerInfo.MessageType.BATCH_HANDS.ordinal()).put((byte) 0).put((byte) 0);
+        WireCodec.putUnsigned(tooMany, PokerInfo.MAX_BATCH_HANDS + 1);
+        tooMany.flip();
+        assertThrows(ProtocolException.class, () -> WireCodec.decode(tooMany));
+    }
+
+    @Test
+    @DisplayName("Request ids — survive the round trip on every message type")
+    void testRequestId() throws Exception {
+        for (PokerInfo.MessageType type : PokerInfo.MessageType.values()) {
+            PokerInfo info = new PokerInfo();
+            info.setMessageType(type);
+            info.setRequestId(123_456);
+            assertEquals(123_456, roundTrip(info).getRequestId(), type.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Session frames — the session id comes before the body, SESSION_CREDIT keeps its credit")
+    void testSessionFrame() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.SESSION_CREDIT);
+        info.setSessionCredit(16);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        WireCodec.encodeSessionFrame(300, info, buffer);
+        buffer.flip();
+        assertEquals(buffer.remaining() - 2, buffer.getShort() & 0xFFFF);
+        assertEquals(300, WireCodec.getUnsigned(buffer));
+        PokerInfo decoded = WireCodec.decode(buffer);
+        assertEquals(PokerInfo.MessageType.SESSION_CREDIT, decoded.getMessageType());
+        assertEquals(16, decoded.getSessionCredit());
+    }
+
+    @Test
+    @DisplayName("RECONNECT and RESUME_SESSION — the session token and restored total survive the round trip")
+    void testReconnect() throws Exception {
+        byte[] token = {1, 2, 3, 4, 5};
+        PokerInfo reconnect = new PokerInfo();
+        reconnect.setMessageType(PokerInfo.MessageType.RECONNECT);
+        reconnect.setSessionToken(token);
+        reconnect.setStatusMessage("Server restarting");
+        PokerInfo decoded = roundTrip(reconnect);
+        assertArrayEquals(token, decoded.getSessionToken());
+        assertEquals("Server restarting", decoded.getStatusMessage());
+
+        PokerInfo resumed = new PokerInfo();
+        resumed.setMessageType(PokerInfo.MessageType.RESUME_SESSION);
+        resumed.setRequestId(9);
+        resumed.setTotalWinnings(-340);
+        resumed.setHandId(57);
+        decoded = roundTrip(resumed);
+        assertEquals(9, decoded.getRequestId());
+        assertEquals(-340, decoded.getTotalWinnings());
+        assertEquals(57, decoded.getHandId());
+        assertNull(decoded.getSessionToken());
+        assertNull(decoded.getStatusMessage());
+    }
+
+    @Test
+    @DisplayName("decode — rejects truncated bodies and bad card bytes")
+    void testMalformed() {
+        ByteBuffer truncated = ByteBuffer.wrap(new byte[] {(byte) PokerInfo.MessageType.INITIAL_BET.ordinal()});
+        assertThrows(ProtocolException.class, () -> WireCodec.decode(truncated));
+
+        ByteBuffer badCard = ByteBuffer.wrap(new byte[] {
+            (byte) PokerInfo.MessageType.CARDS_DEALT.ordinal(), 0, 1, 0, 0, 0, 0, 1, 60, 0});
+        assertThrows(ProtocolException.class, () -> WireCodec.decode(badCard));
+    }
+
+    @Test
+    @DisplayName("decode — lengths and counts past 31 bits are refused, not turned negative")
+    void testNegativeLengths() {
+        ByteBuffer hugeLength = ByteBuffer.wrap(new byte[] {
+            (byte) PokerInfo.MessageType.SERVER_FULL.ordinal(), 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+        assertThrows(ProtocolException.class, () -> WireCodec.decode(hugeLength));
+
+        ByteBuffer negativeCount = ByteBuffer.allocate(16);
+        negativeCount.put((byte) PokerInfo.MessageType.BATCH_HANDS.ordinal()).put((byte) 0).put((byte) 0);
+        negativeCount.put(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+        negativeCount.flip();
+        assertThrows(ProtocolException.class, () -> WireCodec.decode(negativeCount));
+    }
+
+    @Test
+    @DisplayName("GAME_RESULT — hand ranks are read as unsigned bytes")
+    void testHandRanksUnsigned() throws Exception {
+        PokerInfo info = new PokerInfo();
+        info.setMessageType(PokerInfo.MessageType.GAME_RESULT);
+        info.setHandRankPlayer(200);
+        info.setHandRankDealer(ThreeCardLogic.PAIR);
+        PokerInfo decoded = roundTrip(info);
+        assertEquals(200, decoded.getHandRankPlayer());
+        assertEquals(ThreeCardLogic.PAIR, decoded.getHandRankDealer());
+    }
+}
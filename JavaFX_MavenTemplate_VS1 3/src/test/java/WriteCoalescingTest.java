@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Write coalescing on the NIO server: replies to requests that arrive together leave
+ * together, in one gathering write, and still in order.
+ */
+class WriteCoalescingTest {
+
+    private static final int HANDS = 32;
+
+    private final TestServers servers = new TestServers();
+    private PokerServer server;
+    private int port;
+
+    @AfterEach
+    void stopServer() {
+        servers.stopAll();
+    }
+
+    private void startServer(boolean coalescing) throws Exception {
+        ServerConfig config = TestServers.config(ServerConfig.IoMode.NIO);
+        config.setCommitments(false);
+        config.setWriteCoalescing(coalescing);
+        port = config.getPort();
+        server = servers.start(config);
+    }
+
+    /**
+     * The hello and HANDS one-shot hands, ready to go out in a single write.
+     */
+    private static byte[] pipelinedHands() {
+        ByteBuffer frames = ByteBuffer.allocate(16 * 1024);
+        frames.put(WireCodec.HELLO);
+        for (int i = 1; i <= HANDS; i++) {
+            PokerInfo hand = new PokerInfo();
+            hand.setMessageType(PokerInfo.MessageType.ONE_SHOT_HAND);
+            hand.setAnteBet(10);
+            hand.setStrategy(PokerInfo.Strategy.QUEEN_SIX_FOUR);
+            hand.setRequestId(i);
+            WireCodec.encodeFrame(hand, frames);
+        }
+        byte[] bytes = new byte[frames.position()];
+        frames.flip();
+        frames.get(bytes);
+        return bytes;
+    }
+
+    private static PokerInfo readFrame(DataInputStream input) throws IOException {
+        byte[] body = new byte[input.readUnsignedShort()];
+        input.readFully(body);
+        return WireCodec.decode(ByteBuffer.wrap(body));
+    }
+
+    // ==== Coalescing ====
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Coalescing — pipelined replies arrive in order, fewer writes when coalescing")
+    void testPipelinedReplies(boolean coalescing) throws Exception {
+        startServer(coalescing);
+        try (Socket socket = TestServers.whenReady(() -> new Socket("localhost", port))) {
+            socket.getOutputStream().write(pipelinedHands());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            byte[] hello = new byte[WireCodec.HELLO.length];
+            input.readFully(hello);
+            assertArrayEquals(WireCodec.HELLO, hello);
+            for (int i = 1; i <= HANDS; i++) {
+                PokerInfo reply = readFrame(input);
+                assertEquals(PokerInfo.MessageType.GAME_RESULT, reply.getMessageType());
+                assertEquals(i, reply.getRequestId());
+            }
+        }
+
+        // The loop counts a write once it returns, which can be after the client has read it
+        for (int i = 0; i < 100 && server.getFramesWritten() < HANDS + 1; i++) {
+            Thread.sleep(10);
+        }
+        long writes = server.getSocketWrites();
+        assertEquals(HANDS + 1, server.getFramesWritten());
+        if (coalescing) {
+            assertTrue(writes < HANDS / 2, "replies were written together, " + writes + " writes");
+        } else {
+            assertEquals(HANDS + 1, writes);
+        }
+    }
+
+    @Test
+    @DisplayName("Coalescing — a client keeps playing hand after hand")
+    void testConversation() throws Exception {
+        startServer(true);
+        MessageChannel channel = TestServers.connectWhenReady(port);
+        try {
+            for (int hand = 0; hand < 20; hand++) {
+                assertEquals(-10 * (hand + 1), TestServers.foldHand(channel, 10).getTotalWinnings());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    // ==== Configuration ====
+
+    @Test
+    @DisplayName("Coalescing — on by default, and the flush deadline cannot be negative")
+    void testConfig() {
+        ServerConfig config = new ServerConfig(0);
+        assertTrue(config.isWriteCoalescing());
+        config.setFlushDeadlineMicros(0);
+        assertThrows(IllegalArgumentException.class, () -> config.setFlushDeadlineMicros(-1));
+    }
+}